@@ -0,0 +1,25 @@
+package com.proximus.mmgr;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. Runs the JMH benchmarks selected on the command line (all by default) with the
+ * GC profiler, so that the allocation rate (gc.alloc.rate.norm, in bytes per operation) is reported next to the
+ * throughput of each benchmark. Accepts the usual JMH command line options, for example:<p>
+ * <b>java -jar target/benchmarks.jar ElementBenchmark -rf json</b>
+ * @author Jonathan Puvilland
+ *
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
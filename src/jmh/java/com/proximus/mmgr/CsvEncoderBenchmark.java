@@ -0,0 +1,90 @@
+package com.proximus.mmgr;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.proximus.mmgr.SimpleElementBenchmark.DiscardingWriter;
+
+/**
+ * Measures the CsvEncoder throughput on plain values, values needing quotes, and large multi-line view texts
+ * holding quotes. Results are reported per encoded value; divide by <i>valueLength</i> for a per-character rate.
+ * @author Jonathan Puvilland
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvEncoderBenchmark {
+	@Param({ "plain", "separator", "sql" })
+	public String valueKind;
+
+	@Param({ "16", "20000" })
+	public int valueLength;
+
+	private CsvEncoder encoder;
+	private String value;
+	private char[] valueChars;
+	private StringBuilder out;
+	private BufferedWriter writer;
+
+	@Setup
+	public void setUp() {
+		String pattern;
+		if(valueKind.equals("plain"))
+			pattern = "customer_identifier_";
+		else if(valueKind.equals("separator"))
+			pattern = "customer, identifier ";
+		else
+			pattern = "SELECT \"col\", other\nFROM t\n";
+
+		StringBuilder text = new StringBuilder(valueLength + pattern.length());
+		while(text.length() < valueLength)
+			text.append(pattern);
+
+		encoder = CsvEncoder.getInstance(',');
+		value = text.substring(0, valueLength);
+		valueChars = value.toCharArray();
+		out = new StringBuilder(2 * valueLength + 2);
+		writer = new BufferedWriter(new DiscardingWriter(), 65536);
+	}
+
+	@Benchmark
+	public StringBuilder encodeToStringBuilder() throws IOException {
+		out.setLength(0);
+		encoder.encode(value, out);
+		return out;
+	}
+
+	@Benchmark
+	public void encodeToWriter() throws IOException {
+		encoder.encode(value, writer);
+	}
+
+	@Benchmark
+	public StringBuilder encodeCharArray() throws IOException {
+		out.setLength(0);
+		encoder.encode(valueChars, 0, valueChars.length, out);
+		return out;
+	}
+
+	@Benchmark
+	public boolean needsQuoting() {
+		return encoder.needsQuoting(value);
+	}
+}
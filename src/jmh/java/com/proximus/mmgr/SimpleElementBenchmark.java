@@ -0,0 +1,88 @@
+package com.proximus.mmgr;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the construction and the formatting of a SimpleElement.
+ * @author Jonathan Puvilland
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleElementBenchmark {
+	private SimpleElement element;
+	private SimpleElement separatorElement;
+	private BufferedWriter writer;
+
+	@Setup
+	public void setUp() {
+		element = new SimpleElement("folder1.folder2.script1", "script1", "a simple script", "folder1.folder2", "S");
+		separatorElement = new SimpleElement("folder1.folder2.script1", "script1", "a script, with separators",
+				"folder1.folder2", "S");
+		writer = new BufferedWriter(new DiscardingWriter());
+	}
+
+	@Benchmark
+	public SimpleElement construct() {
+		return new SimpleElement("folder1.folder2.script1", "script1", "a simple script", "folder1.folder2", "S");
+	}
+
+	@Benchmark
+	public String getRecord() {
+		return element.getRecord();
+	}
+
+	@Benchmark
+	public String getRecordWithSeparators() {
+		return separatorElement.getRecord();
+	}
+
+	@Benchmark
+	public String getHeader() {
+		return element.getHeader();
+	}
+
+	@Benchmark
+	public void writeRecord() throws IOException {
+		element.writeRecord(writer);
+	}
+
+	/**
+	 * A Writer discarding its output, so that only the formatting cost is measured.
+	 */
+	public static class DiscardingWriter extends Writer {
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.proximus.mmgr.AbstractElement;
+
+/**
+ * Compares the heap retained by a catalog held as flat Elements, one DatabaseElement, TableElement and ColumnElement
+ * per object of the catalog, and as a <i>CatalogTree</i>. Each benchmark loads a synthetic catalog of 10 Databases of
+ * 500 Tables and reports, next to its time, the heap retained by the loaded catalog (<b>retainedBytes</b>) and its
+ * size per Column (<b>bytesPerColumn</b>), measured after full garbage collections. The Tables are retrieved by
+ * Database and discarded once loaded, as during an export, so that only the catalog is retained.<p>
+ * The synthetic data types are shared constants, not the distinct Strings read from the HiveMetastore: the flat
+ * figure is a lower bound. Run with a heap large enough for the flat catalog, for example
+ * <b>java -jar target/benchmarks.jar CatalogFootprintBenchmark -jvmArgs -Xmx4g</b>
+ * @author Jonathan Puvilland
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CatalogFootprintBenchmark {
+	private static final int NBR_DATABASES = 10;
+	private static final int NBR_TABLES_PER_DATABASE = 500;
+
+	@Param({ "20", "100" })
+	public int nbrColumnsPerTable;
+
+	@Param({ "0", "40" })
+	public int commentLength;
+
+	/**
+	 * The heap retained by the catalog loaded by a benchmark.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+		public long retainedBytes;
+		public long bytesPerColumn;
+	}
+
+	private SyntheticMetastoreSource createSource() {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(NBR_DATABASES, NBR_TABLES_PER_DATABASE,
+				nbrColumnsPerTable);
+		source.setCommentLength(commentLength);
+		return source;
+	}
+
+	private static long usedHeap() {
+		for(int i = 0; i < 3; i++)
+			System.gc();
+
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private void recordFootprint(Footprint footprint, long usedBefore) {
+		footprint.retainedBytes = usedHeap() - usedBefore;
+		footprint.bytesPerColumn = footprint.retainedBytes /
+				((long) NBR_DATABASES * NBR_TABLES_PER_DATABASE * nbrColumnsPerTable);
+	}
+
+	@Benchmark
+	public List<AbstractElement<?>> flatElements(Footprint footprint) throws TException {
+		SyntheticMetastoreSource source = createSource();
+		long usedBefore = usedHeap();
+		List<AbstractElement<?>> elements = new ArrayList<AbstractElement<?>>();
+
+		for(String dbName : source.getAllDatabases()) {
+			elements.add(new DatabaseElement(source.getDatabase(dbName)));
+
+			for(Table table : source.getTableObjectsByName(dbName, source.getAllTables(dbName))) {
+				elements.add(new TableElement(table));
+
+				for(FieldSchema column : table.getSd().getCols())
+					elements.add(new ColumnElement(table, column));
+			}
+		}
+
+		recordFootprint(footprint, usedBefore);
+		return elements;
+	}
+
+	@Benchmark
+	public CatalogTree catalogTree(Footprint footprint) throws TException {
+		SyntheticMetastoreSource source = createSource();
+		long usedBefore = usedHeap();
+		CatalogTree catalog = new CatalogTree();
+
+		for(String dbName : source.getAllDatabases()) {
+			catalog.addDatabase(source.getDatabase(dbName));
+
+			for(Table table : source.getTableObjectsByName(dbName, source.getAllTables(dbName)))
+				catalog.addTable(table);
+		}
+
+		recordFootprint(footprint, usedBefore);
+		return catalog;
+	}
+}
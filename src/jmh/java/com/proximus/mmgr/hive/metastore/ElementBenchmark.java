@@ -0,0 +1,132 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.proximus.mmgr.SimpleElementBenchmark.DiscardingWriter;
+
+/**
+ * Measures the construction of the HiveMetastore Elements from Thrift objects, and the formatting of their records.
+ * The <i>viewTextLength</i> parameter sets the size of the view texts of the Table, from a plain table (0) to a
+ * large multi-line view.
+ * @author Jonathan Puvilland
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElementBenchmark {
+	@Param({ "0", "20000" })
+	public int viewTextLength;
+
+	private Database database;
+	private Table table;
+	private FieldSchema column;
+	private DatabaseElement dbElement;
+	private TableElement tableElement;
+	private ColumnElement colElement;
+	private BufferedWriter writer;
+	private StringBuilder records;
+	private ColumnElement columnCursor;
+
+	@Setup
+	public void setUp() throws TException {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(1, 10, 20);
+		source.setViewTextLength(viewTextLength);
+		source.setViewFrequency(viewTextLength > 0 ? 1 : 0);
+
+		database = source.getDatabase(SyntheticMetastoreSource.databaseName(0));
+		table = source.getTable(database.getName(), SyntheticMetastoreSource.tableName(0));
+		column = table.getSd().getCols().get(0);
+
+		dbElement = new DatabaseElement(database);
+		tableElement = new TableElement(table);
+		colElement = new ColumnElement(table, column);
+		writer = new BufferedWriter(new DiscardingWriter());
+		records = new StringBuilder(65536);
+		columnCursor = new ColumnElement();
+		columnCursor.setTable(table);
+	}
+
+	@Benchmark
+	public DatabaseElement constructDatabase() {
+		return new DatabaseElement(database);
+	}
+
+	@Benchmark
+	public TableElement constructTable() {
+		return new TableElement(table);
+	}
+
+	@Benchmark
+	public ColumnElement constructColumn() {
+		return new ColumnElement(table, column);
+	}
+
+	@Benchmark
+	public String getDatabaseRecord() {
+		return dbElement.getRecord();
+	}
+
+	@Benchmark
+	public String getTableRecord() {
+		return tableElement.getRecord();
+	}
+
+	@Benchmark
+	public String getColumnRecord() {
+		return colElement.getRecord();
+	}
+
+	@Benchmark
+	public void writeTableRecord() throws IOException {
+		tableElement.writeRecord(writer);
+	}
+
+	@Benchmark
+	public void writeColumnRecord() throws IOException {
+		colElement.writeRecord(writer);
+	}
+
+	@Benchmark
+	public StringBuilder appendTableRecord() {
+		records.setLength(0);
+		tableElement.appendRecord(records);
+		return records;
+	}
+
+	@Benchmark
+	public StringBuilder appendColumnRecord() {
+		records.setLength(0);
+		colElement.appendRecord(records);
+		return records;
+	}
+
+	@Benchmark
+	public StringBuilder appendColumnRecordWithCursor() {
+		records.setLength(0);
+		columnCursor.setColumn(column);
+		columnCursor.appendRecord(records);
+		return records;
+	}
+}
@@ -0,0 +1,91 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a complete export of a synthetic catalog of 10 Databases, 1000 Tables and 50000 Columns to csv files
+ * in a temporary folder. One operation is one export. The <i>latencyMicros</i> parameter simulates the
+ * HiveMetastore round-trip of each call.
+ * @author Jonathan Puvilland
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExportBenchmark {
+	@Param({ "1", "4" })
+	public int nbrWorkers;
+
+	@Param({ "100" })
+	public int tableBatchSize;
+
+	@Param({ "0", "1000" })
+	public int latencyMicros;
+
+	private File outputDir;
+	private Properties metastoreReaderProperties;
+
+	@Setup
+	public void setUp() throws IOException {
+		LogManager.getLogManager().reset();
+		outputDir = Files.createTempDirectory("ExportBenchmark").toFile();
+		metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+	}
+
+	@TearDown
+	public void tearDown() {
+		for(File file : outputDir.listFiles())
+			file.delete();
+		outputDir.delete();
+	}
+
+	@Benchmark
+	public void export() {
+		List<MetastoreSource> sources = new ArrayList<MetastoreSource>(nbrWorkers);
+		for(int i = 0; i < nbrWorkers; i++) {
+			SyntheticMetastoreSource source = new SyntheticMetastoreSource(10, 100, 50);
+			source.setLatencyMicros(latencyMicros);
+			sources.add(source);
+		}
+
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(sources);
+		MetastoreExporter exporter;
+
+		if(nbrWorkers > 1)
+			exporter = new ParallelMetastoreExporter(bufferedWriters, sourcePool, tableBatchSize, nbrWorkers);
+		else
+			exporter = new MetastoreExporter(bufferedWriters, sourcePool, tableBatchSize);
+
+		try {
+			exporter.export();
+		} finally {
+			bufferedWriters.closeBufferedWriters();
+			sourcePool.close();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a complete export of a catalog of 10 Databases, 1000 Tables and 50000 Columns read through the
+ * HiveMetastore api with the same catalog read from an embedded Derby HiveMetastore database. One operation is one
+ * export. The api export reads a SyntheticMetastoreSource whose <i>latencyMicros</i> simulates the HiveMetastore
+ * round-trip; the JDBC export reads the Derby tables loaded from the same source, with <i>fetchSize</i> rows per
+ * fetch.
+ * @author Jonathan Puvilland
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JdbcExportBenchmark {
+	private static final String JDBC_URL = "jdbc:derby:memory:JdbcExportBenchmark";
+
+	@Param({ "0", "1000" })
+	public int latencyMicros;
+
+	@Param({ "1000" })
+	public int fetchSize;
+
+	private File outputDir;
+	private Properties metastoreReaderProperties;
+	private Connection connection;
+
+	@Setup
+	public void setUp() throws IOException, SQLException, TException {
+		LogManager.getLogManager().reset();
+		outputDir = Files.createTempDirectory("JdbcExportBenchmark").toFile();
+		metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+
+		connection = DriverManager.getConnection(JDBC_URL + ";create=true");
+		JdbcMetastoreLoader loader = new JdbcMetastoreLoader(connection);
+		loader.createSchema();
+		loader.load(new SyntheticMetastoreSource(10, 100, 50));
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException {
+		connection.close();
+
+		try {
+			DriverManager.getConnection(JDBC_URL + ";drop=true");
+		} catch (SQLException dropped) {
+			// Derby reports a dropped database with an exception
+		}
+
+		for(File file : outputDir.listFiles())
+			file.delete();
+		outputDir.delete();
+	}
+
+	@Benchmark
+	public void apiExport() {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(10, 100, 50);
+		source.setLatencyMicros(latencyMicros);
+
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.singletonList(source));
+
+		try {
+			new MetastoreExporter(bufferedWriters, sourcePool, 100).export();
+		} finally {
+			bufferedWriters.closeBufferedWriters();
+			sourcePool.close();
+		}
+	}
+
+	@Benchmark
+	public void jdbcExport() {
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+
+		try {
+			new JdbcMetastoreExporter(bufferedWriters, JDBC_URL, new Properties(), 100, fetchSize).export();
+		} finally {
+			bufferedWriters.closeBufferedWriters();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to write a multi-GB column output file with each output sink. Column records are formatted
+ * once in a chunk of about 1 MB, the chunk being written until <i>sizeMegabytes</i> are written, so that only the
+ * sink is measured. One operation is one complete file.
+ * @author Jonathan Puvilland
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OutputSinkBenchmark {
+	@Param({ "writer", "channel" })
+	public String outputSink;
+
+	@Param({ "2048" })
+	public int sizeMegabytes;
+
+	@Param({ "1048576" })
+	public int bufferSize;
+
+	private File outputDir;
+	private Properties metastoreReaderProperties;
+	private StringBuilder chunk;
+
+	@Setup
+	public void setUp() throws IOException, TException {
+		LogManager.getLogManager().reset();
+		outputDir = Files.createTempDirectory("OutputSinkBenchmark").toFile();
+		metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		metastoreReaderProperties.setProperty("output_sink", outputSink);
+		metastoreReaderProperties.setProperty("output_buffer_size", Integer.toString(bufferSize));
+
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(1, 1000, 50);
+		ColumnElement columnCursor = new ColumnElement();
+		chunk = new StringBuilder(1 << 21);
+
+		for(int i = 0; chunk.length() < 1 << 20; i++) {
+			Table table = source.getTable("db_0000", SyntheticMetastoreSource.tableName(i % 1000));
+			columnCursor.setTable(table);
+
+			for(int j = 0; j < table.getSd().getColsSize(); j++) {
+				columnCursor.setColumn(table.getSd().getCols().get(j));
+				MetastoreExporter.appendRecord(chunk, columnCursor);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		for(File file : outputDir.listFiles())
+			file.delete();
+		outputDir.delete();
+	}
+
+	@Benchmark
+	public long writeColumnFile() throws IOException {
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		Writer columnWriter = bufferedWriters.getColumnBufferedWriter();
+		long sizeChars = (long) sizeMegabytes << 20;
+		long written = 0;
+
+		try {
+			while(written < sizeChars) {
+				columnWriter.append(chunk);
+				written += chunk.length();
+			}
+		} finally {
+			bufferedWriters.closeBufferedWriters();
+		}
+
+		return written;
+	}
+}
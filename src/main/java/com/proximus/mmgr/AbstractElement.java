@@ -31,18 +31,36 @@ import org.apache.commons.lang.NullArgumentException;
  */
 public abstract class AbstractElement <AttributeType extends Enum<AttributeType>> implements ElementWritable {
 	
-	private char separator;
-    private Map<AttributeType, String> attributes;
+	private CsvEncoder encoder;
+	private final ElementSchema<AttributeType> schema;
+    private final CharSequence[] values;
 	
 	/**
-	 * Initializes the Map structure for storing the Element's attributes key-value pairs.
-	 * The keys or attribute names must be listed in an enumeration type <i>AttributeType</i>.
+	 * Initializes the structure for storing the Element's attributes values.
+	 * The attribute names must be listed in an enumeration type <i>AttributeType</i>.
 	 * A default enumeration of attributes is available in the <i>DefaultElementAttributes</i> interface.
 	 * @param attrType the enumeration class holding the attributes of the element
 	 */
     public AbstractElement(Class<AttributeType> attrType) {
-    	this.separator = DEFAULT_SEPARATOR;
-        this.attributes = new EnumMap<AttributeType, String>(attrType);
+    	this(ElementSchema.forType(attrType));
+    }
+    
+	/**
+	 * Initializes the structure for storing the Element's attributes values. Values are kept in an array indexed
+	 * by the attribute ordinal, the attribute names being held once by the shared schema.
+	 * @param schema the schema of the Element's type
+	 */
+    protected AbstractElement(ElementSchema<AttributeType> schema) {
+    	this.encoder = CsvEncoder.getInstance(DEFAULT_SEPARATOR);
+    	this.schema = schema;
+        this.values = new CharSequence[schema.size()];
+    }
+    
+    /**
+     * @return the schema shared by all the Elements of this type.
+     */
+    public ElementSchema<AttributeType> getSchema() {
+    	return schema;
     }
 
 	/**
@@ -50,15 +68,16 @@ public abstract class AbstractElement <AttributeType extends Enum<AttributeType>
 	 * @return the separator used to separate the Element's attribute.
 	 */
 	public char getSeparator() {
-		return separator;
+		return encoder.getSeparator();
 	}
 	
 	/**
 	 * Sets the Element's attributes separator.
 	 * @param separator the separator used to separate the Element's attribute.
+	 * @throws IllegalArgumentException when the separator is a quote, a carriage return or a line feed.
 	 */
 	public void setSeparator(char separator) {
-		this.separator = separator;
+		this.encoder = CsvEncoder.getInstance(separator);
 	}
 	
 	/**
@@ -67,7 +86,8 @@ public abstract class AbstractElement <AttributeType extends Enum<AttributeType>
 	 * @return the attribute value.
 	 */
     public String getAttribute(AttributeType attrName) {
-        return this.attributes.get(attrName);
+    	CharSequence value = this.values[attrName.ordinal()];
+        return value == null ? null : value.toString();
     }
     
     /**
@@ -79,19 +99,35 @@ public abstract class AbstractElement <AttributeType extends Enum<AttributeType>
      */
     public void setAttribute(AttributeType attrName, String attrValue) throws NullArgumentException{
 
-    	if((attrName.toString() == "id" || attrName.toString() == "name") &&
-    	   (attrValue == null || attrValue.isEmpty()))
+    	setAttributeValue(attrName, attrValue);
+	}
+    
+    /**
+     * Sets the value of an attribute to a character sequence, which is read each time a record is formatted.
+     * Used by reusable Elements to point an attribute to a mutable sequence like a <i>QualifiedName</i>, without
+     * creating a String per record.
+     * @param attrName the name of the attribute from the Element's type enumeration.
+     * @param attrValue the value to set for the attribute.
+     * @throws NullArgumentException when <b>id</b> or <b>name</b> is set to a null or empty value.
+     */
+    protected void setAttributeValue(AttributeType attrName, CharSequence attrValue) throws NullArgumentException {
+    	if(schema.isMandatory(attrName) && (attrValue == null || attrValue.length() == 0))
 				throw new NullArgumentException(attrName.toString());
 
-		this.attributes.put(attrName, attrValue);
-	}
+		this.values[attrName.ordinal()] = attrValue;
+    }
     
     /**
      * Returns the list of all the attributes in the form of a key-value pair.
-     * @return the list of attributes.
+     * @return a copy of the attributes, in record order.
      */
     public Map<AttributeType, String> getAttributes() {
-    	return this.attributes;
+    	Map<AttributeType, String> attributes = new EnumMap<AttributeType, String>(schema.getAttributeType());
+    	
+    	for(int i = 0; i < values.length; i++)
+    		attributes.put(schema.getAttribute(i), values[i] == null ? null : values[i].toString());
+    	
+    	return attributes;
     }
 	
 	/**
@@ -100,49 +136,96 @@ public abstract class AbstractElement <AttributeType extends Enum<AttributeType>
 	 */
 	public String getHeader() {
 		StringBuilder header = new StringBuilder();
-		
-		for(AttributeType attrName : attributes.keySet()) {
-			header.append(attrName);
-			header.append(separator);
-		}
-		
-		return	header.substring(0, header.length() -1);
+		appendHeader(header);
+		return header.toString();
 	}
 
 	/**
 	 * Retrieves the Element's attributes value. Replaces null values by empty string. Surrounds values with hyphen
-	 * when value contains the Element separator.
+	 * when value contains the Element separator, a hyphen or a line break, and doubles the hyphens of the value.
 	 * @return a formated string of the Element's attributes value separated by the Element separator.
 	 */
 	public String getRecord() {
 		StringBuilder record = new StringBuilder();
+		appendRecord(record);
+		return record.toString();
+	}
 
-		for(AttributeType attrName : attributes.keySet()) {
-			String attribute = getAttribute(attrName);
+	/**
+	 * Appends the Element's attributes name separated by the Element separator.
+	 * @param header the buffer receiving the header
+	 */
+	public void appendHeader(StringBuilder header) {
+		try {
+			appendHeader((Appendable) header);
+		} catch (IOException ioException) {
+			// a StringBuilder never throws IOException
+			throw new IllegalStateException(ioException);
+		}
+	}
 
-			//replace null attributes with empty string
-			if(attribute == null || attribute.equals(HYPHEN + "null" + HYPHEN))
-				attribute = "";
+	/**
+	 * Appends the Element's attributes value separated by the Element separator.
+	 * @param record the buffer receiving the record
+	 */
+	public void appendRecord(StringBuilder record) {
+		try {
+			appendRecord((Appendable) record);
+		} catch (IOException ioException) {
+			// a StringBuilder never throws IOException
+			throw new IllegalStateException(ioException);
+		}
+	}
 
-			//adds hyphen escape character if separator is present in attribute's text
-			else if(attribute.indexOf(separator) != -1)
-				attribute = HYPHEN_ESCAPE + attribute + HYPHEN_ESCAPE;
+	/**
+	 * Appends the Element's attributes name. The header only depends on the Element's type and separator, and is
+	 * cached by the schema.
+	 */
+	@Override
+	public void appendHeader(Appendable out) throws IOException {
+		out.append(schema.getHeader(encoder.getSeparator()));
+	}
 
-			record.append(attribute + separator);
+	/**
+	 * Appends the Element's attributes value to the output. Null values are written as empty strings. Values are
+	 * encoded as RFC 4180 csv fields by the Element's CsvEncoder.
+	 */
+	@Override
+	public void appendRecord(Appendable out) throws IOException {
+		char separator = encoder.getSeparator();
+
+		for(int i = 0; i < values.length; i++) {
+			if(i > 0)
+				out.append(separator);
+
+			appendValue(out, values[i]);
 		}
+	}
+
+	/**
+	 * Appends a single attribute value to the output, escaping it in place.
+	 * @param out the destination of the value
+	 * @param attribute the attribute value, possibly null
+	 * @throws IOException in case of any IO failure when writing to the destination
+	 */
+	protected void appendValue(Appendable out, CharSequence attribute) throws IOException {
+		//null attributes are written as empty string
+		if(attribute == null || HYPHEN_NULL.contentEquals(attribute))
+			return;
 
-		return record.substring(0, record.length() - 1);
+		//adds hyphen escape characters if separator, hyphen or line breaks are present in attribute's text
+		encoder.encode(attribute, out);
 	}
 
 	@Override
-	public void writeRecord(BufferedWriter buffer) throws IOException {		
-		buffer.write(getRecord());
+	public void writeRecord(BufferedWriter buffer) throws IOException {
+		appendRecord((Appendable) buffer);
 		buffer.newLine();
 	}
 
 	@Override
 	public void writeHeader(BufferedWriter buffer) throws IOException {
-		buffer.write(getHeader());
+		appendHeader((Appendable) buffer);
 		buffer.newLine();
 	}
 }
\ No newline at end of file
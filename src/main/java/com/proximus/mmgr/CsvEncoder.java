@@ -0,0 +1,182 @@
+package com.proximus.mmgr;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Encodes attribute values as RFC 4180 csv fields. A value is surrounded with quotes when it contains the separator,
+ * a quote, a carriage return or a line feed; quotes inside a quoted value are doubled. Multi-line values (for example
+ * the SQL text of a view) are kept intact inside the quotes.<p>
+ * Each value is scanned once: the characters before the first special character are not inspected again, and values
+ * without special character are appended as is. Values are copied to the output by runs of characters, without
+ * intermediate String, so that large values are not duplicated in memory.<p>
+ * An encoder is immutable and can be shared between threads.
+ * @author Jonathan Puvilland
+ *
+ */
+public final class CsvEncoder {
+	public static final char QUOTE = '"';
+	private static final CsvEncoder[] ASCII_ENCODERS = new CsvEncoder[128];
+
+	static {
+		for(char separator = 0; separator < ASCII_ENCODERS.length; separator++)
+			if(isValidSeparator(separator))
+				ASCII_ENCODERS[separator] = new CsvEncoder(separator);
+	}
+
+	private final char separator;
+
+	/**
+	 * Creates an encoder for the specified separator.
+	 * @param separator the character separating the fields of a record
+	 * @throws IllegalArgumentException when the separator is a quote, a carriage return or a line feed.
+	 */
+	public CsvEncoder(char separator) {
+		if(!isValidSeparator(separator))
+			throw new IllegalArgumentException("Invalid csv separator: " + (int) separator);
+
+		this.separator = separator;
+	}
+
+	/**
+	 * Returns a shared encoder for the specified separator.
+	 * @param separator the character separating the fields of a record
+	 * @return an encoder for the separator.
+	 * @throws IllegalArgumentException when the separator is a quote, a carriage return or a line feed.
+	 */
+	public static CsvEncoder getInstance(char separator) {
+		if(separator < ASCII_ENCODERS.length && ASCII_ENCODERS[separator] != null)
+			return ASCII_ENCODERS[separator];
+
+		return new CsvEncoder(separator);
+	}
+
+	private static boolean isValidSeparator(char separator) {
+		return separator != QUOTE && separator != '\n' && separator != '\r';
+	}
+
+	/**
+	 * @return the character separating the fields of a record.
+	 */
+	public char getSeparator() {
+		return separator;
+	}
+
+	private boolean isSpecial(char c) {
+		return c == separator || c == QUOTE || c == '\n' || c == '\r';
+	}
+
+	/**
+	 * @param value an attribute value
+	 * @return true when the value must be surrounded with quotes.
+	 */
+	public boolean needsQuoting(CharSequence value) {
+		if(value == null)
+			return false;
+
+		for(int i = 0, length = value.length(); i < length; i++)
+			if(isSpecial(value.charAt(i)))
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * Appends a value to the output as a csv field. A null value is written as an empty field.
+	 * @param value the value to encode, possibly null
+	 * @param out the destination of the field
+	 * @throws IOException in case of any IO failure when writing to the destination
+	 */
+	public void encode(CharSequence value, Appendable out) throws IOException {
+		if(value == null)
+			return;
+
+		int length = value.length();
+		int i = 0;
+
+		while(i < length && !isSpecial(value.charAt(i)))
+			i++;
+
+		if(i == length) {
+			out.append(value);
+			return;
+		}
+
+		out.append(QUOTE);
+
+		// a quote ends the current run (quote included) and starts the next run, so it is written twice
+		int runStart = 0;
+		for(; i < length; i++) {
+			if(value.charAt(i) == QUOTE) {
+				appendRun(out, value, runStart, i + 1);
+				runStart = i;
+			}
+		}
+
+		appendRun(out, value, runStart, length);
+		out.append(QUOTE);
+	}
+
+	/**
+	 * Appends a range of a character array to the output as a csv field.
+	 * @param chars the characters of the value
+	 * @param offset the index of the first character of the value
+	 * @param length the number of characters of the value
+	 * @param out the destination of the field
+	 * @throws IOException in case of any IO failure when writing to the destination
+	 */
+	public void encode(char[] chars, int offset, int length, Appendable out) throws IOException {
+		int end = offset + length;
+		int i = offset;
+
+		while(i < end && !isSpecial(chars[i]))
+			i++;
+
+		if(i == end) {
+			appendRun(out, chars, offset, end);
+			return;
+		}
+
+		out.append(QUOTE);
+
+		int runStart = offset;
+		for(; i < end; i++) {
+			if(chars[i] == QUOTE) {
+				appendRun(out, chars, runStart, i + 1);
+				runStart = i;
+			}
+		}
+
+		appendRun(out, chars, runStart, end);
+		out.append(QUOTE);
+	}
+
+	/**
+	 * Copies the characters [start, end) of a value, using the bulk methods of the usual destinations so that no
+	 * sub-sequence is created.
+	 */
+	private static void appendRun(Appendable out, CharSequence value, int start, int end) throws IOException {
+		if(start == end)
+			return;
+
+		if(out instanceof StringBuilder)
+			((StringBuilder) out).append(value, start, end);
+		else if(out instanceof Writer && value instanceof String)
+			((Writer) out).write((String) value, start, end - start);
+		else
+			out.append(value, start, end);
+	}
+
+	private static void appendRun(Appendable out, char[] chars, int start, int end) throws IOException {
+		if(start == end)
+			return;
+
+		if(out instanceof StringBuilder)
+			((StringBuilder) out).append(chars, start, end - start);
+		else if(out instanceof Writer)
+			((Writer) out).write(chars, start, end - start);
+		else
+			out.append(CharBuffer.wrap(chars, start, end - start));
+	}
+}
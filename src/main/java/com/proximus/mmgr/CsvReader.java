@@ -0,0 +1,134 @@
+package com.proximus.mmgr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the RFC 4180 csv records written by the <i>CsvEncoder</i>. A record ends at a line feed, a carriage return
+ * or a carriage return followed by a line feed outside of quotes: multi-line quoted values are part of a single
+ * record. Records are returned as read, then split into fields by <i>parseFields</i>, which removes the quotes
+ * surrounding a field and un-doubles the quotes inside it.<p>
+ * The characters are read by blocks from the underlying Reader, which does not need to be buffered.
+ * @author Jonathan Puvilland
+ *
+ */
+public final class CsvReader implements Closeable {
+	private static final int BUFFER_SIZE = 65536;
+
+	private final Reader in;
+	private final char separator;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final StringBuilder record = new StringBuilder();
+	private int position;
+	private int limit;
+	private boolean skipLineFeed;
+
+	/**
+	 * Creates a reader of csv records.
+	 * @param in the source of the records
+	 * @param separator the character separating the fields of a record
+	 */
+	public CsvReader(Reader in, char separator) {
+		this.in = in;
+		this.separator = separator;
+	}
+
+	/**
+	 * @return the character separating the fields of a record.
+	 */
+	public char getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * Reads the next record, without its line separator. An empty line is returned as an empty record.
+	 * @return the record, or null at the end of the input.
+	 * @throws IOException in case of any IO failure when reading the source
+	 */
+	public String readRecord() throws IOException {
+		record.setLength(0);
+		boolean quoted = false;
+
+		while(true) {
+			if(position == limit) {
+				limit = in.read(buffer, 0, buffer.length);
+				position = 0;
+
+				if(limit <= 0) {
+					limit = 0;
+					return record.length() == 0 && !quoted ? null : record.toString();
+				}
+			}
+
+			char c = buffer[position++];
+
+			if(skipLineFeed) {
+				skipLineFeed = false;
+				if(c == '\n')
+					continue;
+			}
+
+			if(!quoted && (c == '\n' || c == '\r')) {
+				skipLineFeed = c == '\r';
+				return record.toString();
+			}
+
+			if(c == CsvEncoder.QUOTE)
+				quoted = !quoted;
+
+			record.append(c);
+		}
+	}
+
+	/**
+	 * Splits a record into its fields. Empty fields are returned as empty strings.
+	 * @param record a record returned by <i>readRecord</i>
+	 * @return the values of the fields of the record.
+	 */
+	public String[] parseFields(CharSequence record) {
+		return parseFields(record, separator);
+	}
+
+	/**
+	 * Splits a record into its fields. Empty fields are returned as empty strings.
+	 * @param record a csv record, without line separator
+	 * @param separator the character separating the fields of the record
+	 * @return the values of the fields of the record.
+	 */
+	public static String[] parseFields(CharSequence record, char separator) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for(int i = 0; i < record.length(); i++) {
+			char c = record.charAt(i);
+
+			if(quoted) {
+				if(c != CsvEncoder.QUOTE)
+					field.append(c);
+				else if(i + 1 < record.length() && record.charAt(i + 1) == CsvEncoder.QUOTE)
+					field.append(record.charAt(++i));
+				else
+					quoted = false;
+			} else if(c == CsvEncoder.QUOTE) {
+				quoted = true;
+			} else if(c == separator) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+
+		fields.add(field.toString());
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,139 @@
+package com.proximus.mmgr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The schema of a type of Element, derived once from its enumeration of attributes and shared by all the Elements
+ * of that type. The schema holds the order of the attributes (the order of the enumeration constants), the index of
+ * each attribute name, and the header record, cached per separator both as a String and as UTF-8 bytes.<p>
+ * Elements store their values in an array indexed by the attribute ordinal, so the schema is the only place where
+ * attribute names are kept.
+ * @author Jonathan Puvilland
+ * @param <AttributeType> An enumeation of the attributes applicable to the element
+ */
+public final class ElementSchema <AttributeType extends Enum<AttributeType>> {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final ClassValue<ElementSchema<?>> SCHEMAS = new ClassValue<ElementSchema<?>>() {
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		protected ElementSchema<?> computeValue(Class<?> attrType) {
+			return new ElementSchema(attrType.asSubclass(Enum.class));
+		}
+	};
+
+	private final Class<AttributeType> attrType;
+	private final AttributeType[] attributes;
+	private final Map<String, AttributeType> attributesByName;
+	private final int idIndex;
+	private final int nameIndex;
+	private final ConcurrentMap<Character, String> headers = new ConcurrentHashMap<Character, String>();
+	private final ConcurrentMap<Character, ByteBuffer> headerBytes = new ConcurrentHashMap<Character, ByteBuffer>();
+
+	private ElementSchema(Class<AttributeType> attrType) {
+		this.attrType = attrType;
+		this.attributes = attrType.getEnumConstants();
+
+		Map<String, AttributeType> attributesByName = new HashMap<String, AttributeType>();
+		for(AttributeType attribute : attributes)
+			attributesByName.put(attribute.name(), attribute);
+		this.attributesByName = Collections.unmodifiableMap(attributesByName);
+
+		this.idIndex = indexOf("id");
+		this.nameIndex = indexOf("name");
+	}
+
+	/**
+	 * Returns the schema of an enumeration of attributes. The schema is created on first use and shared afterwards.
+	 * @param attrType the enumeration class holding the attributes of the element
+	 * @return the schema of the enumeration.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <AttributeType extends Enum<AttributeType>> ElementSchema<AttributeType> forType(
+			Class<AttributeType> attrType) {
+		return (ElementSchema<AttributeType>) SCHEMAS.get(attrType);
+	}
+
+	/**
+	 * @return the enumeration class holding the attributes.
+	 */
+	public Class<AttributeType> getAttributeType() {
+		return attrType;
+	}
+
+	/**
+	 * @return the number of attributes.
+	 */
+	public int size() {
+		return attributes.length;
+	}
+
+	/**
+	 * @param index the position of an attribute in the records
+	 * @return the attribute at the specified position.
+	 */
+	public AttributeType getAttribute(int index) {
+		return attributes[index];
+	}
+
+	/**
+	 * @param attrName the name of an attribute
+	 * @return the position of the attribute in the records, or -1 if the attribute is not part of the schema.
+	 */
+	public int indexOf(String attrName) {
+		AttributeType attribute = attributesByName.get(attrName);
+		return attribute == null ? -1 : attribute.ordinal();
+	}
+
+	/**
+	 * @param attribute an attribute of the schema
+	 * @return true for the <b>id</b> and <b>name</b> attributes, which cannot be empty.
+	 */
+	public boolean isMandatory(AttributeType attribute) {
+		int index = attribute.ordinal();
+		return index == idIndex || index == nameIndex;
+	}
+
+	/**
+	 * Returns the header record: the attributes name, in record order, separated by the specified separator.
+	 * @param separator the separator of the attributes
+	 * @return the header, without line separator.
+	 */
+	public String getHeader(char separator) {
+		String header = headers.get(separator);
+
+		if(header == null) {
+			StringBuilder builder = new StringBuilder();
+			for(AttributeType attribute : attributes) {
+				if(builder.length() > 0)
+					builder.append(separator);
+				builder.append(attribute.name());
+			}
+			header = builder.toString();
+			headers.putIfAbsent(separator, header);
+		}
+
+		return header;
+	}
+
+	/**
+	 * Returns the header record encoded in UTF-8, ready to be written to a byte output.
+	 * @param separator the separator of the attributes
+	 * @return a read-only buffer holding the header, without line separator.
+	 */
+	public ByteBuffer getHeaderBytes(char separator) {
+		ByteBuffer bytes = headerBytes.get(separator);
+
+		if(bytes == null) {
+			bytes = ByteBuffer.wrap(getHeader(separator).getBytes(UTF8)).asReadOnlyBuffer();
+			headerBytes.putIfAbsent(separator, bytes);
+		}
+
+		return bytes.duplicate();
+	}
+}
@@ -15,6 +15,7 @@ public interface ElementWritable {
 	public static final char DEFAULT_SEPARATOR = ',';
 	public static final char HYPHEN = '"';
 	public static final String HYPHEN_ESCAPE = "\"";
+	public static final String HYPHEN_NULL = HYPHEN_ESCAPE + "null" + HYPHEN_ESCAPE;
 	
 	/**
 	 * Generates a record of the Element attributes name (header)
@@ -28,6 +29,21 @@ public interface ElementWritable {
 	 */
 	public String getRecord();
 	
+	/**
+	 * Appends the Element attributes name (header) to the specified output, without line separator.
+	 * @param out the destination of the header, for example a StringBuilder or a Writer
+	 * @throws IOException in case of any IO failure when writing to the destination
+	 */
+	public void appendHeader(Appendable out) throws IOException;
+	
+	/**
+	 * Appends the Element attributes value to the specified output, without line separator. Attribute values are
+	 * streamed to the output as they are escaped, no intermediate String is created.
+	 * @param out the destination of the record, for example a StringBuilder or a Writer
+	 * @throws IOException in case of any IO failure when writing to the destination
+	 */
+	public void appendRecord(Appendable out) throws IOException;
+	
 	/**
 	 * Writes a a record of the Element's attributes name (header) to the specified file
 	 * @param buffer the buffer wrapping the destination file
@@ -0,0 +1,259 @@
+package com.proximus.mmgr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A Writer encoding characters in UTF-8 straight into a direct ByteBuffer, written to a FileChannel in large
+ * sequential writes.<p>
+ * Characters are copied in a character buffer, encoded by an explicit UTF-8 encoder into the direct buffer when the
+ * character buffer is full, and the direct buffer is written to the file when full. A direct buffer is written by
+ * the operating system without the intermediate copy made for heap buffers. Both buffers are allocated once; their
+ * size is configurable, 1 MB for the direct buffer by default.<p>
+ * The file can be preallocated to an expected size, reserving its blocks before the export starts; it is truncated
+ * to the size actually written when the writer is closed. Malformed characters (unpaired surrogates) are replaced.
+ * <p>
+ * Like other Writers, this class is not thread-safe.
+ * @author Jonathan Puvilland
+ *
+ */
+public final class FileChannelWriter extends Writer {
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAX_BYTES_PER_CHAR = 3;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final CharsetEncoder encoder;
+	private final CharBuffer chars;
+	private final ByteBuffer bytes;
+	private long bytesWritten;
+	private boolean closed;
+
+	/**
+	 * Opens a file for writing, with the default buffer size and no preallocation. An existing file is truncated.
+	 * @param file the file to write
+	 * @throws IOException when the file cannot be opened.
+	 */
+	public FileChannelWriter(File file) throws IOException {
+		this(file, DEFAULT_BUFFER_SIZE, 0);
+	}
+
+	/**
+	 * Opens a file for writing. An existing file is truncated.
+	 * @param file the file to write
+	 * @param bufferSize the size in bytes of the direct buffer
+	 * @param preallocateBytes the expected size of the file, reserved when the file is opened; 0 for none
+	 * @throws IOException when the file cannot be opened.
+	 */
+	public FileChannelWriter(File file, int bufferSize, long preallocateBytes) throws IOException {
+		this(file, bufferSize, preallocateBytes, false);
+	}
+
+	/**
+	 * Opens a file for writing.
+	 * @param file the file to write
+	 * @param bufferSize the size in bytes of the direct buffer
+	 * @param preallocateBytes the expected size of the file, reserved when the file is opened; 0 for none
+	 * @param append true to write after the current content of the file, false to truncate it
+	 * @throws IOException when the file cannot be opened.
+	 */
+	public FileChannelWriter(File file, int bufferSize, long preallocateBytes, boolean append) throws IOException {
+		if(bufferSize < MAX_BYTES_PER_CHAR * 2)
+			throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+
+		this.file = new RandomAccessFile(file, "rw");
+		this.channel = this.file.getChannel();
+
+		try {
+			if(append) {
+				bytesWritten = channel.size();
+				channel.position(bytesWritten);
+			} else {
+				channel.truncate(0);
+			}
+
+			if(preallocateBytes > bytesWritten)
+				this.file.setLength(preallocateBytes);
+		} catch (IOException ioException) {
+			this.file.close();
+			throw ioException;
+		}
+
+		this.encoder = UTF8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.bytes = ByteBuffer.allocateDirect(bufferSize);
+		// one character encodes to at most 3 bytes, surrogate pairs to 4 bytes for 2 characters
+		this.chars = CharBuffer.allocate(bufferSize / MAX_BYTES_PER_CHAR);
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		ensureOpen();
+		if(!chars.hasRemaining())
+			encodeChars(false);
+		chars.put((char) c);
+	}
+
+	@Override
+	public void write(char[] buffer, int offset, int length) throws IOException {
+		ensureOpen();
+
+		while(length > 0) {
+			if(!chars.hasRemaining())
+				encodeChars(false);
+
+			int count = Math.min(length, chars.remaining());
+			chars.put(buffer, offset, count);
+			offset += count;
+			length -= count;
+		}
+	}
+
+	@Override
+	public void write(String value, int offset, int length) throws IOException {
+		ensureOpen();
+
+		while(length > 0) {
+			if(!chars.hasRemaining())
+				encodeChars(false);
+
+			int count = Math.min(length, chars.remaining());
+			int position = chars.position();
+			value.getChars(offset, offset + count, chars.array(), chars.arrayOffset() + position);
+			chars.position(position + count);
+			offset += count;
+			length -= count;
+		}
+	}
+
+	@Override
+	public Writer append(CharSequence value) throws IOException {
+		if(value == null)
+			return append("null");
+
+		return append(value, 0, value.length());
+	}
+
+	@Override
+	public Writer append(CharSequence value, int start, int end) throws IOException {
+		if(value == null)
+			return append("null", start, end);
+
+		if(value instanceof String) {
+			write((String) value, start, end - start);
+			return this;
+		}
+
+		ensureOpen();
+
+		while(start < end) {
+			if(!chars.hasRemaining())
+				encodeChars(false);
+
+			int count = Math.min(end - start, chars.remaining());
+			int position = chars.position();
+
+			if(value instanceof StringBuilder)
+				((StringBuilder) value).getChars(start, start + count, chars.array(), chars.arrayOffset() + position);
+			else
+				for(int i = 0; i < count; i++)
+					chars.array()[chars.arrayOffset() + position + i] = value.charAt(start + i);
+
+			chars.position(position + count);
+			start += count;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Encodes the buffered characters into the direct buffer. A high surrogate ending the buffer is kept until
+	 * its low surrogate is written.
+	 */
+	private void encodeChars(boolean endOfInput) throws IOException {
+		chars.flip();
+
+		while(true) {
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+
+			if(result.isOverflow())
+				writeBytes();
+			else if(result.isUnderflow())
+				break;
+			else
+				try {
+					result.throwException();
+				} catch (CharacterCodingException codingException) {
+					throw new IOException(codingException);
+				}
+		}
+
+		chars.compact();
+	}
+
+	/**
+	 * Writes the content of the direct buffer to the file.
+	 */
+	private void writeBytes() throws IOException {
+		bytes.flip();
+
+		while(bytes.hasRemaining())
+			bytesWritten += channel.write(bytes);
+
+		bytes.clear();
+	}
+
+	/**
+	 * @return the number of bytes written to the file, appended content included, buffered characters excluded.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Writes the buffered characters to the file. Does not force the file to the storage device.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		encodeChars(false);
+		writeBytes();
+	}
+
+	/**
+	 * Flushes the buffers, truncates a preallocated file to the size written and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed)
+			return;
+
+		try {
+			encodeChars(true);
+			while(encoder.flush(bytes).isOverflow())
+				writeBytes();
+			writeBytes();
+			channel.truncate(bytesWritten);
+		} finally {
+			closed = true;
+			file.close();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if(closed)
+			throw new IOException("Writer closed");
+	}
+}
@@ -0,0 +1,317 @@
+package com.proximus.mmgr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+/**
+ * An OutputStream compressing its data in parallel blocks, in the style of <i>pigz</i>, producing a single standard
+ * gzip (or zlib) stream readable by any decompressor.<p>
+ * Data is cut in blocks of <i>blockSize</i> bytes, each block being compressed by a task of a shared thread pool.
+ * A block is primed with the last 32 KB of the previous block as dictionary, so the compression ratio is close to a
+ * sequential compression, and is ended with a sync flush so that the compressed blocks can be concatenated in a
+ * single deflate stream. The checksum of the uncompressed data is computed by the writing thread, while the blocks
+ * are compressed. Compressed blocks are written in order; the number of blocks being compressed is bounded, so a
+ * writer producing faster than the pool compresses waits for the oldest block. The Deflaters of the stream are
+ * reused by its blocks and ended when the stream is closed.
+ * @author Jonathan Puvilland
+ *
+ */
+public final class ParallelDeflaterOutputStream extends OutputStream {
+	public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	/**
+	 * The format of the compressed stream.
+	 */
+	public enum Format {
+		/** gzip (RFC 1952), with a CRC32 checksum */
+		GZIP(".gz"),
+		/** zlib (RFC 1950), with an Adler32 checksum */
+		ZLIB(".zz");
+
+		private final String extension;
+
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		/**
+		 * @return the usual file name extension of the format.
+		 */
+		public String getExtension() {
+			return extension;
+		}
+	}
+
+	private final OutputStream out;
+	private final Format format;
+	private final ExecutorService compressors;
+	private final int level;
+	private final int maxBlocksInFlight;
+	private final Checksum checksum;
+	private final Deque<Future<byte[]>> blocksInFlight = new ArrayDeque<Future<byte[]>>();
+	private final Deque<Deflater> deflaters = new ArrayDeque<Deflater>();
+	private boolean deflatersEnded;
+	private byte[] block;
+	private int blockLength;
+	private byte[] dictionary;
+	private long uncompressedSize;
+	private boolean closed;
+
+	/**
+	 * Creates a compressed stream.
+	 * @param out the destination of the compressed data
+	 * @param format the format of the compressed stream
+	 * @param compressors the thread pool compressing the blocks, possibly shared by several streams
+	 * @param nbrThreads the number of threads of the pool, bounding the number of blocks in flight
+	 * @param level the compression level, from 1 (fastest) to 9 (best compression)
+	 * @param blockSize the size of the uncompressed blocks
+	 * @throws IOException when the stream header cannot be written.
+	 */
+	public ParallelDeflaterOutputStream(OutputStream out, Format format, ExecutorService compressors, int nbrThreads,
+			int level, int blockSize) throws IOException {
+		if(blockSize < DICTIONARY_SIZE)
+			throw new IllegalArgumentException("Block size must be at least " + DICTIONARY_SIZE + ": " + blockSize);
+
+		this.out = out;
+		this.format = format;
+		this.compressors = compressors;
+		this.level = level;
+		this.maxBlocksInFlight = Math.max(2, 2 * nbrThreads);
+		this.checksum = format == Format.GZIP ? new CRC32() : new Adler32();
+		this.block = new byte[blockSize];
+
+		writeHeader();
+	}
+
+	private void writeHeader() throws IOException {
+		if(format == Format.GZIP)
+			// magic, deflate method, no flags, no modification time, no extra flags, unknown OS
+			out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff });
+		else
+			// 32 KB window deflate, FCHECK making the header a multiple of 31
+			out.write(new byte[] { 0x78, (byte) 0x9c });
+	}
+
+	private void writeTrailer() throws IOException {
+		long value = checksum.getValue();
+
+		if(format == Format.GZIP) {
+			writeIntLittleEndian(value);
+			writeIntLittleEndian(uncompressedSize);
+		} else {
+			out.write((int) (value >>> 24));
+			out.write((int) (value >>> 16));
+			out.write((int) (value >>> 8));
+			out.write((int) value);
+		}
+	}
+
+	private void writeIntLittleEndian(long value) throws IOException {
+		out.write((int) value);
+		out.write((int) (value >>> 8));
+		out.write((int) (value >>> 16));
+		out.write((int) (value >>> 24));
+	}
+
+	/**
+	 * @return the number of uncompressed bytes written to the stream.
+	 */
+	public long getUncompressedSize() {
+		return uncompressedSize;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if(blockLength == block.length)
+			submitBlock(false);
+
+		block[blockLength++] = (byte) b;
+		checksum.update(b);
+		uncompressedSize++;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		ensureOpen();
+		checksum.update(bytes, offset, length);
+		uncompressedSize += length;
+
+		while(length > 0) {
+			if(blockLength == block.length)
+				submitBlock(false);
+
+			int count = Math.min(length, block.length - blockLength);
+			System.arraycopy(bytes, offset, block, blockLength, count);
+			blockLength += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Hands the current block to the compressors and starts a new block. Waits for the oldest block when too many
+	 * blocks are being compressed.
+	 */
+	private void submitBlock(boolean lastBlock) throws IOException {
+		final byte[] input = block;
+		final int inputLength = blockLength;
+		final byte[] inputDictionary = dictionary;
+		final boolean finish = lastBlock;
+
+		// the dictionary of the next block is the end of this block
+		if(inputLength >= DICTIONARY_SIZE)
+			dictionary = Arrays.copyOfRange(input, inputLength - DICTIONARY_SIZE, inputLength);
+
+		blocksInFlight.addLast(compressors.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() {
+				return compress(input, inputLength, inputDictionary, finish);
+			}
+		}));
+
+		block = new byte[block.length];
+		blockLength = 0;
+
+		while(blocksInFlight.size() >= maxBlocksInFlight)
+			writeOldestBlock();
+	}
+
+	private void writeOldestBlock() throws IOException {
+		try {
+			out.write(blocksInFlight.removeFirst().get());
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing", interruptedException);
+		} catch (ExecutionException executionException) {
+			throw new IOException("Block compression failed", executionException.getCause());
+		}
+	}
+
+	/**
+	 * Compresses a block into raw deflate data, ended by a sync flush, or by the final block of the stream.
+	 */
+	private byte[] compress(byte[] input, int inputLength, byte[] dictionary, boolean finish) {
+		Deflater deflater = borrowDeflater();
+
+		try {
+			return compress(deflater, input, inputLength, dictionary, finish);
+		} finally {
+			releaseDeflater(deflater);
+		}
+	}
+
+	private static byte[] compress(Deflater deflater, byte[] input, int inputLength, byte[] dictionary,
+			boolean finish) {
+		if(dictionary != null)
+			deflater.setDictionary(dictionary);
+		deflater.setInput(input, 0, inputLength);
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(inputLength / 4 + 64);
+		byte[] buffer = new byte[64 * 1024];
+
+		if(finish) {
+			deflater.finish();
+			while(!deflater.finished())
+				compressed.write(buffer, 0, deflater.deflate(buffer));
+		} else {
+			int length;
+			do {
+				length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+				compressed.write(buffer, 0, length);
+			} while(length == buffer.length);
+		}
+
+		return compressed.toByteArray();
+	}
+
+	private Deflater borrowDeflater() {
+		Deflater deflater;
+
+		synchronized(deflaters) {
+			deflater = deflaters.pollFirst();
+		}
+
+		if(deflater == null)
+			return new Deflater(level, true);
+
+		deflater.reset();
+		return deflater;
+	}
+
+	/**
+	 * Keeps a Deflater for the next blocks, or ends it when the stream is closed, a cancelled block being possibly
+	 * compressed after the close.
+	 */
+	private void releaseDeflater(Deflater deflater) {
+		synchronized(deflaters) {
+			if(deflatersEnded)
+				deflater.end();
+			else
+				deflaters.addFirst(deflater);
+		}
+	}
+
+	/**
+	 * Ends the Deflaters of the stream, releasing their native memory.
+	 */
+	private void endDeflaters() {
+		synchronized(deflaters) {
+			deflatersEnded = true;
+
+			for(Deflater deflater : deflaters)
+				deflater.end();
+			deflaters.clear();
+		}
+	}
+
+	/**
+	 * Flushes the destination. The current block is not compressed before it is full or the stream is closed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		out.flush();
+	}
+
+	/**
+	 * Compresses the last block, waits for all the blocks, writes the stream trailer and closes the destination.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed)
+			return;
+
+		closed = true;
+
+		try {
+			submitBlock(true);
+			while(!blocksInFlight.isEmpty())
+				writeOldestBlock();
+			writeTrailer();
+		} finally {
+			for(Future<byte[]> blockInFlight : blocksInFlight)
+				blockInFlight.cancel(false);
+			endDeflaters();
+			out.close();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if(closed)
+			throw new IOException("Stream closed");
+	}
+}
@@ -0,0 +1,108 @@
+package com.proximus.mmgr;
+
+/**
+ * A mutable character sequence made of a prefix, a separator and a name, for example <b>db.table.column</b>.
+ * The characters are read from the prefix and the name on demand: re-pointing the sequence to another name and
+ * writing it to a StringBuilder does not create any String. A String is only built by <i>toString</i>.
+ * @author Jonathan Puvilland
+ *
+ */
+public final class QualifiedName implements CharSequence {
+	public static final char DEFAULT_SEPARATOR = '.';
+
+	private final char separator;
+	private String prefix;
+	private String name;
+
+	/**
+	 * Creates an empty qualified name using the default '.' separator.
+	 */
+	public QualifiedName() {
+		this(DEFAULT_SEPARATOR);
+	}
+
+	/**
+	 * Creates an empty qualified name.
+	 * @param separator the character between the prefix and the name
+	 */
+	public QualifiedName(char separator) {
+		this.separator = separator;
+		this.prefix = "";
+		this.name = "";
+	}
+
+	/**
+	 * Creates a qualified name using the default '.' separator.
+	 * @param prefix the qualified name of the parent, possibly empty
+	 * @param name the name
+	 */
+	public QualifiedName(String prefix, String name) {
+		this(DEFAULT_SEPARATOR);
+		set(prefix, name);
+	}
+
+	/**
+	 * Re-points the qualified name to another prefix and name.
+	 * @param prefix the qualified name of the parent. A null or empty prefix is omitted, with its separator.
+	 * @param name the name
+	 * @return this qualified name
+	 */
+	public QualifiedName set(String prefix, String name) {
+		this.prefix = prefix == null ? "" : prefix;
+		this.name = name == null ? "" : name;
+		return this;
+	}
+
+	/**
+	 * Re-points the qualified name to another name, keeping the prefix.
+	 * @param name the name
+	 * @return this qualified name
+	 */
+	public QualifiedName setName(String name) {
+		this.name = name == null ? "" : name;
+		return this;
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	private int separatorLength() {
+		return prefix.isEmpty() ? 0 : 1;
+	}
+
+	@Override
+	public int length() {
+		return prefix.length() + separatorLength() + name.length();
+	}
+
+	@Override
+	public char charAt(int index) {
+		int prefixLength = prefix.length();
+
+		if(index < prefixLength)
+			return prefix.charAt(index);
+
+		if(prefixLength > 0 && index == prefixLength)
+			return separator;
+
+		return name.charAt(index - prefixLength - separatorLength());
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().substring(start, end);
+	}
+
+	@Override
+	public String toString() {
+		if(prefix.isEmpty())
+			return name;
+
+		return new StringBuilder(length()).append(prefix).append(separator).append(name).toString();
+	}
+}
@@ -0,0 +1,387 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Table;
+
+import com.proximus.mmgr.QualifiedName;
+import com.proximus.mmgr.hive.metastore.ElementAttributes.ColumnAttributes;
+import com.proximus.mmgr.hive.metastore.ElementAttributes.DatabasetAttributes;
+import com.proximus.mmgr.hive.metastore.ElementAttributes.TableAttributes;
+
+/**
+ * An in-memory catalog of Hive Metadata organized as a tree of Databases holding Tables holding Columns, sized to
+ * keep catalogs of tens of millions of Columns in the heap, for example to compare or sort them.<p>
+ * Unlike the Elements, whose <b>id</b> and <b>parent</b> attributes repeat the names of all their ancestors, each
+ * node only holds its own name: ids and parent ids are derived on demand from the path of the node in the tree.
+ * Database, Table and Column names are interned by the catalog, so that a name shared by many Tables, like
+ * <i>id</i> or <i>dt</i>, is held once. Data types and table types are dictionary-encoded: a Column holds the code of
+ * its data type in the dictionary of the catalog.<p>
+ * The Columns of a Table are not held as objects but in arrays of the Table node, indexed by the Column position;
+ * the partition keys follow the Columns. The nodes are copied to reusable Elements to format their records.<p>
+ * The catalog is not thread-safe.
+ * @author Jonathan Puvilland
+ *
+ */
+class CatalogTree {
+	private final Map<String, String> names = new HashMap<String, String>();
+	private final Map<String, Integer> dataTypeCodes = new HashMap<String, Integer>();
+	private final List<String> dataTypes = new ArrayList<String>();
+	private final Map<String, DatabaseNode> databases = new TreeMap<String, DatabaseNode>();
+	private long nbrTables;
+	private long nbrColumns;
+
+	/**
+	 * A Database of the catalog, holding its Tables sorted by name.
+	 */
+	static final class DatabaseNode {
+		private final String name;
+		private final Map<String, TableNode> tables = new TreeMap<String, TableNode>();
+		private String description;
+		private String locationUri;
+		private String ownerName;
+
+		private DatabaseNode(String name) {
+			this.name = name;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the id of the Database, its name.
+		 */
+		String getId() {
+			return name;
+		}
+
+		/**
+		 * @param tableName the name of a Table of the Database
+		 * @return the Table node, or null when the Table is not in the catalog.
+		 */
+		TableNode getTable(String tableName) {
+			return tables.get(tableName);
+		}
+
+		/**
+		 * @return the Tables of the Database, sorted by name.
+		 */
+		Collection<TableNode> getTables() {
+			return Collections.unmodifiableCollection(tables.values());
+		}
+
+		/**
+		 * Points a Database Element to this Database. All the attributes are replaced.
+		 * @param element the reusable Database Element
+		 */
+		void copyTo(DatabaseElement element) {
+			element.setAttribute(DatabasetAttributes.id, name);
+			element.setAttribute(DatabasetAttributes.name, name);
+			element.setAttribute(DatabasetAttributes.description, description);
+			element.setAttribute(DatabasetAttributes.parent, DatabaseElement.DATABASE_DEFAULT_PARENT);
+			element.setAttribute(DatabasetAttributes.type, DatabaseElement.DATABASE_ELEMENT_TYPE);
+			element.setAttribute(DatabasetAttributes.locationUri, locationUri);
+			element.setAttribute(DatabasetAttributes.ownerName, ownerName);
+		}
+	}
+
+	/**
+	 * A Table of the catalog, holding the name, data type code and comment of each of its Columns.
+	 */
+	static final class TableNode {
+		private final CatalogTree catalog;
+		private final DatabaseNode database;
+		private final String name;
+		private String tableType;
+		private String description;
+		private String locationUri;
+		private String ownerName;
+		private String viewOriginalText;
+		private String viewExpandedText;
+		private String[] columnNames;
+		private String[] columnComments;
+		private int[] columnDataTypes;
+		private int nbrPartitionKeys;
+
+		private TableNode(CatalogTree catalog, DatabaseNode database, String name) {
+			this.catalog = catalog;
+			this.database = database;
+			this.name = name;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		DatabaseNode getDatabase() {
+			return database;
+		}
+
+		/**
+		 * @return the id of the Table, derived from the names of its Database and of the Table.
+		 */
+		String getId() {
+			return new QualifiedName(database.name, name).toString();
+		}
+
+		/**
+		 * @return the number of Columns of the Table, including its partition keys.
+		 */
+		int getNbrColumns() {
+			return columnNames.length;
+		}
+
+		int getNbrPartitionKeys() {
+			return nbrPartitionKeys;
+		}
+
+		String getColumnName(int column) {
+			return columnNames[column];
+		}
+
+		String getColumnDataType(int column) {
+			return catalog.dataTypes.get(columnDataTypes[column]);
+		}
+
+		String getColumnComment(int column) {
+			return columnComments[column];
+		}
+
+		/**
+		 * @param column the position of a Column of the Table
+		 * @return the id of the Column, derived from the names of its Database, Table and of the Column.
+		 */
+		String getColumnId(int column) {
+			return new QualifiedName(getId(), columnNames[column]).toString();
+		}
+
+		/**
+		 * Points a Table Element to this Table. All the attributes are replaced.
+		 * @param element the reusable Table Element
+		 */
+		void copyTo(TableElement element) {
+			element.setAttribute(TableAttributes.id, getId());
+			element.setAttribute(TableAttributes.name, name);
+			element.setAttribute(TableAttributes.parent, database.name);
+			element.setAttribute(TableAttributes.type, TableElement.TABLE_ELEMENT_TYPE);
+			element.setAttribute(TableAttributes.tableType, tableType);
+			element.setAttribute(TableAttributes.ownerName, ownerName);
+			element.setAttribute(TableAttributes.viewOriginalText, viewOriginalText);
+			element.setAttribute(TableAttributes.viewExpandedText, viewExpandedText);
+			element.setAttribute(TableAttributes.locationUri, locationUri);
+			element.setAttribute(TableAttributes.description, description);
+		}
+
+		/**
+		 * Points a Column Element to a Column or partition key of this Table. The Element must have been pointed to
+		 * this Table with <i>setTable</i>.
+		 * @param element the reusable Column Element
+		 * @param column the position of the Column
+		 */
+		void copyColumnTo(ColumnElement element, int column) {
+			element.setColumn(columnNames[column], getColumnDataType(column), columnComments[column]);
+
+			if(column >= columnNames.length - nbrPartitionKeys)
+				element.setAttribute(ColumnAttributes.type, ColumnElement.PARTITION_KEY_ELEMENT_TYPE);
+		}
+	}
+
+	/**
+	 * Adds or replaces a Database. The Tables of a replaced Database are kept.
+	 * @param database a HiveMetastore Database object
+	 * @return the Database node.
+	 */
+	DatabaseNode addDatabase(Database database) {
+		DatabaseNode node = getOrCreateDatabase(database.getName());
+		node.description = database.getDescription();
+		node.locationUri = database.getLocationUri();
+		node.ownerName = intern(database.getOwnerName());
+		return node;
+	}
+
+	private DatabaseNode getOrCreateDatabase(String dbName) {
+		DatabaseNode node = databases.get(dbName);
+
+		if(node == null) {
+			node = new DatabaseNode(intern(dbName));
+			databases.put(node.name, node);
+		}
+
+		return node;
+	}
+
+	/**
+	 * Adds or replaces a Table with its Columns and partition keys. The Database of the Table is created, without
+	 * attributes, when it is not in the catalog.
+	 * @param table a HiveMetastore Table object, holding its Columns in its Storage Descriptor
+	 * @return the Table node.
+	 */
+	TableNode addTable(Table table) {
+		DatabaseNode database = getOrCreateDatabase(table.getDbName());
+		TableNode previous = database.tables.get(table.getTableName());
+		TableNode node = new TableNode(this, database, previous != null ? previous.name :
+				intern(table.getTableName()));
+
+		node.tableType = intern(table.getTableType());
+		node.ownerName = intern(table.getOwner());
+		node.viewOriginalText = table.getViewOriginalText();
+		node.viewExpandedText = table.getViewExpandedText();
+		node.locationUri = table.getSd() != null ? table.getSd().getLocation() : null;
+		node.description = table.getParametersSize() > 0 ? table.getParameters().get("comment") : null;
+
+		List<FieldSchema> columns = table.getSd() != null && table.getSd().getCols() != null ?
+				table.getSd().getCols() : Collections.<FieldSchema>emptyList();
+		// like the export, partition keys are only listed with the Columns of the Storage Descriptor
+		List<FieldSchema> partitionKeys = table.getSd() != null && table.getSd().getCols() != null &&
+				table.getPartitionKeysSize() > 0 ? table.getPartitionKeys() : Collections.<FieldSchema>emptyList();
+		int size = columns.size() + partitionKeys.size();
+
+		node.columnNames = new String[size];
+		node.columnComments = new String[size];
+		node.columnDataTypes = new int[size];
+		node.nbrPartitionKeys = partitionKeys.size();
+
+		for(int i = 0; i < size; i++) {
+			FieldSchema column = i < columns.size() ? columns.get(i) : partitionKeys.get(i - columns.size());
+			node.columnNames[i] = intern(column.getName());
+			node.columnComments[i] = column.getComment();
+			node.columnDataTypes[i] = encodeDataType(column.getType());
+		}
+
+		database.tables.put(node.name, node);
+
+		if(previous == null)
+			nbrTables++;
+		else
+			nbrColumns -= previous.columnNames.length;
+		nbrColumns += size;
+
+		return node;
+	}
+
+	/**
+	 * Removes a Database and all its Tables.
+	 * @param dbName the name of the Database
+	 * @return true when the Database was in the catalog.
+	 */
+	boolean removeDatabase(String dbName) {
+		DatabaseNode node = databases.remove(dbName);
+
+		if(node == null)
+			return false;
+
+		for(TableNode table : node.tables.values())
+			nbrColumns -= table.columnNames.length;
+		nbrTables -= node.tables.size();
+
+		return true;
+	}
+
+	/**
+	 * Removes a Table and its Columns.
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @return true when the Table was in the catalog.
+	 */
+	boolean removeTable(String dbName, String tableName) {
+		DatabaseNode database = databases.get(dbName);
+		TableNode node = database == null ? null : database.tables.remove(tableName);
+
+		if(node == null)
+			return false;
+
+		nbrTables--;
+		nbrColumns -= node.columnNames.length;
+		return true;
+	}
+
+	/**
+	 * @param dbName the name of a Database
+	 * @return the Database node, or null when the Database is not in the catalog.
+	 */
+	DatabaseNode getDatabase(String dbName) {
+		return databases.get(dbName);
+	}
+
+	/**
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @return the Table node, or null when the Table is not in the catalog.
+	 */
+	TableNode getTable(String dbName, String tableName) {
+		DatabaseNode database = databases.get(dbName);
+		return database == null ? null : database.tables.get(tableName);
+	}
+
+	/**
+	 * @return the Databases of the catalog, sorted by name.
+	 */
+	Collection<DatabaseNode> getDatabases() {
+		return Collections.unmodifiableCollection(databases.values());
+	}
+
+	int getNbrDatabases() {
+		return databases.size();
+	}
+
+	long getNbrTables() {
+		return nbrTables;
+	}
+
+	long getNbrColumns() {
+		return nbrColumns;
+	}
+
+	/**
+	 * @return the number of distinct names held by the catalog.
+	 */
+	int getNbrNames() {
+		return names.size();
+	}
+
+	/**
+	 * @return the number of distinct data types held by the dictionary of the catalog.
+	 */
+	int getNbrDataTypes() {
+		return dataTypes.size();
+	}
+
+	/**
+	 * Returns the single instance of a name held by the catalog. Names are kept as long as the catalog, even when
+	 * their nodes are removed.
+	 */
+	private String intern(String name) {
+		if(name == null)
+			return null;
+
+		String interned = names.get(name);
+
+		if(interned == null) {
+			interned = name;
+			names.put(interned, interned);
+		}
+
+		return interned;
+	}
+
+	private int encodeDataType(String dataType) {
+		Integer code = dataTypeCodes.get(dataType);
+
+		if(code == null) {
+			code = dataTypes.size();
+			dataTypes.add(dataType);
+			dataTypeCodes.put(dataType, code);
+		}
+
+		return code;
+	}
+}
@@ -4,21 +4,31 @@ import org.apache.hadoop.hive.metastore.api.FieldSchema;
 import org.apache.hadoop.hive.metastore.api.Table;
 
 import com.proximus.mmgr.AbstractElement;
+import com.proximus.mmgr.ElementSchema;
 import com.proximus.mmgr.ElementWritable;
+import com.proximus.mmgr.QualifiedName;
 import com.proximus.mmgr.hive.metastore.ElementAttributes.ColumnAttributes;
 
 /**
  * A sub-type of Elements that captures the Metadata of a HiveMetastore Column. The list of attributes is declared
  * in the <i>ColumnAttributes</i> interface. All the Element's manipulation methods are inherited from the
- * <i>AbstractElement</i> parent class.
+ * <i>AbstractElement</i> parent class.<p>
+ * A ColumnElement can be reused as a cursor over the Columns of a Table: <i>setTable</i> computes the Table's
+ * qualified name once, then <i>setColumn</i> re-points the Element to each Column. The Column id is read from the
+ * Table's qualified name and the Column name when the record is written, so no String is created per Column.<p>
+ * The partition keys of a Table are exported as Columns of type <b>PKEY</b>, a Hive partition key not being part of
+ * the Columns of the Table's Storage Descriptor.
  * @author Jonathan Puvilland
  *
  */
 public class ColumnElement extends AbstractElement<ColumnAttributes> implements ElementWritable {
 	public static final String COL_ELEMENT_TYPE = "COL";
+	public static final String PARTITION_KEY_ELEMENT_TYPE = "PKEY";
+	static final ElementSchema<ColumnAttributes> SCHEMA = ElementSchema.forType(ColumnAttributes.class);
+	private final QualifiedName id = new QualifiedName();
 	
 	public ColumnElement() {
-		super(ColumnAttributes.class);
+		super(SCHEMA);
 		this.setAttribute(ColumnAttributes.id, "id");
 		this.setAttribute(ColumnAttributes.name, "name");
 	}
@@ -29,12 +39,59 @@ public class ColumnElement extends AbstractElement<ColumnAttributes> implements
 	 * @param col a HiveMetastore Column (FieldSchema) object
 	 */
 	public ColumnElement(Table table, FieldSchema col) {
-		super(ColumnAttributes.class);
-		this.setAttribute(ColumnAttributes.id, table.getDbName() + "." + table.getTableName() + "." + col.getName());
-		this.setAttribute(ColumnAttributes.name, col.getName());
-		this.setAttribute(ColumnAttributes.description, col.getComment());
-		this.setAttribute(ColumnAttributes.parent, table.getDbName() + "." + table.getTableName());
+		super(SCHEMA);
+		setTable(table);
+		setColumn(col);
+	}
+	
+	/**
+	 * Points this Element to the Columns of a HiveMetastore Table. Must be followed by <i>setColumn</i>.
+	 * @param table a HiveMetastore Table object
+	 */
+	public void setTable(Table table) {
+		setTable(table.getDbName(), table.getTableName());
+	}
+	
+	/**
+	 * Points this Element to the Columns of a Table.
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 */
+	public void setTable(String dbName, String tableName) {
+		String tableId = dbName == null ? tableName : dbName + "." + tableName;
+		id.set(tableId, null);
+		this.setAttribute(ColumnAttributes.parent, tableId);
 		this.setAttribute(ColumnAttributes.type, COL_ELEMENT_TYPE);
-		this.setAttribute(ColumnAttributes.dataType, col.getType());
+	}
+	
+	/**
+	 * Re-points this Element to a Column of the current Table.
+	 * @param col a HiveMetastore Column (FieldSchema) object
+	 */
+	public void setColumn(FieldSchema col) {
+		setColumn(col.getName(), col.getType(), col.getComment());
+	}
+	
+	/**
+	 * Re-points this Element to a Column of the current Table.
+	 * @param colName the name of the Column
+	 * @param dataType the Hive data type of the Column
+	 * @param comment the comment of the Column, possibly null
+	 */
+	public void setColumn(String colName, String dataType, String comment) {
+		this.setAttribute(ColumnAttributes.type, COL_ELEMENT_TYPE);
+		this.setAttribute(ColumnAttributes.name, colName);
+		this.setAttributeValue(ColumnAttributes.id, id.setName(colName));
+		this.setAttribute(ColumnAttributes.description, comment);
+		this.setAttribute(ColumnAttributes.dataType, dataType);
+	}
+	
+	/**
+	 * Re-points this Element to a partition key of the current Table.
+	 * @param partitionKey a HiveMetastore partition key (FieldSchema) object
+	 */
+	public void setPartitionKey(FieldSchema partitionKey) {
+		setColumn(partitionKey.getName(), partitionKey.getType(), partitionKey.getComment());
+		this.setAttribute(ColumnAttributes.type, PARTITION_KEY_ELEMENT_TYPE);
 	}
 }
@@ -1,6 +1,7 @@
 package com.proximus.mmgr.hive.metastore;
 
 import com.proximus.mmgr.AbstractElement;
+import com.proximus.mmgr.ElementSchema;
 import com.proximus.mmgr.ElementWritable;
 import com.proximus.mmgr.hive.metastore.ElementAttributes.DatabasetAttributes;
 
@@ -15,13 +16,14 @@ import org.apache.hadoop.hive.metastore.api.Database;
  */
 public class DatabaseElement extends AbstractElement<DatabasetAttributes> implements ElementWritable {
 	public static final String DATABASE_ELEMENT_TYPE = "DB";
+	static final ElementSchema<DatabasetAttributes> SCHEMA = ElementSchema.forType(DatabasetAttributes.class);
 	public static final String DATABASE_DEFAULT_PARENT = "";
 	
 	/**
 	 * Creates an empty Database Element.
 	 */
 	public DatabaseElement() {
-		super(DatabasetAttributes.class);
+		super(SCHEMA);
 		this.setAttribute(DatabasetAttributes.id, "id");
 		this.setAttribute(DatabasetAttributes.name, "name");
 	}
@@ -31,7 +33,7 @@ public class DatabaseElement extends AbstractElement<DatabasetAttributes> implem
 	 * @param db a HiveMetastore Database object
 	 */
 	public DatabaseElement(Database db) {
-		super(DatabasetAttributes.class);
+		super(SCHEMA);
 		this.setAttribute(DatabasetAttributes.id, db.getName());
 		this.setAttribute(DatabasetAttributes.name, db.getName());
 		this.setAttribute(DatabasetAttributes.description, db.getDescription());
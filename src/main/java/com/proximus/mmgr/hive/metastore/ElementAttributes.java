@@ -10,4 +10,7 @@ interface ElementAttributes {
 	static enum TableAttributes { type, id, name, description, parent, tableType, locationUri, ownerName, 
 		viewOriginalText, viewExpandedText };
 	static enum ColumnAttributes { type, id, name, description, parent, dataType };
+	static enum PartitionAttributes { type, id, name, description, parent, locationUri, createTime };
+	static enum StatisticsAttributes { type, id, name, description, parent, numRows, rawDataSize, totalSize, numFiles,
+		numNulls, numDistinctValues, avgLength, maxLength, numTrues, numFalses, lowValue, highValue };
 }
\ No newline at end of file
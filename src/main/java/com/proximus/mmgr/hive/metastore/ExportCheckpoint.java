@@ -0,0 +1,362 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A journal of the work completed by a long-running export, from which an interrupted export is resumed instead of
+ * started over.<p>
+ * The export is made of units: the record of a Database, or a batch of Tables with their Columns and Partitions.
+ * Exporters surround the writes of each unit with <i>beginWrites</i> and <i>end...Writes</i>. When a unit ends and
+ * <i>intervalMillis</i> elapsed since the previous checkpoint, a checkpoint waits for the units being written,
+ * flushes the output files and appends to the journal the units completed since the previous checkpoint, followed
+ * by a <b>CHECKPOINT</b> line holding the size of each output file: at that instant, the output files hold exactly
+ * the header records and the records of the units listed in the journal.<p>
+ * When resuming, the output files are truncated to the sizes of the last complete checkpoint and the units it lists
+ * are skipped, without being retrieved again; the units completed after it are exported again. A unit failing after
+ * part of its records was written leaves the output files inconsistent: no checkpoint is taken afterwards, and a
+ * resume restarts from the previous checkpoint.<p>
+ * The journal is a UTF-8 text file with one line per unit, <b>DATABASE,dbName</b> or
+ * <b>TABLES,dbName,tableName1,tableName2...</b> (Hive names do not contain commas), and one
+ * <b>CHECKPOINT,databaseOffset,tableOffset,columnOffset,partitionOffset,checksum</b> line per checkpoint, the
+ * checksum detecting a line cut by a crash.
+ * @author Jonathan Puvilland
+ *
+ */
+class ExportCheckpoint {
+	static final String DATABASE_UNIT = "DATABASE";
+	static final String TABLES_UNIT = "TABLES";
+	static final String CHECKPOINT = "CHECKPOINT";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Logger logger = Logger.getLogger(ExportCheckpoint.class.getName());
+
+	private final File journalFile;
+	private final long intervalMillis;
+	private final Set<String> doneDatabases;
+	private final Set<String> doneTables;
+	private final List<String> doneUnits;
+	private final long[] resumeOffsets;
+	private final ReentrantReadWriteLock unitLock = new ReentrantReadWriteLock();
+	private final List<String> completedUnits = new ArrayList<String>();
+	private MetadataBufferedWriters bufferedWriters;
+	private FileOutputStream journalStream;
+	private Writer journal;
+	private volatile long lastCheckpointMillis;
+	private volatile boolean inconsistent;
+	private long nbrCheckpoints;
+
+	private ExportCheckpoint(File journalFile, long intervalMillis, List<String> doneUnits, long[] resumeOffsets) {
+		this.journalFile = journalFile;
+		this.intervalMillis = intervalMillis;
+		this.doneUnits = doneUnits;
+		this.resumeOffsets = resumeOffsets;
+		this.doneDatabases = new HashSet<String>();
+		this.doneTables = new HashSet<String>();
+
+		for(String unit : doneUnits) {
+			String[] fields = unit.split(",");
+
+			if(fields[0].equals(DATABASE_UNIT))
+				doneDatabases.add(fields[1]);
+			else
+				for(int i = 2; i < fields.length; i++)
+					doneTables.add(fields[1] + "." + fields[i]);
+		}
+	}
+
+	/**
+	 * Creates the checkpoints of a new export. The journal is overwritten when it is opened.
+	 * @param journalFile the journal file
+	 * @param intervalMillis the minimum time between two checkpoints, in milliseconds
+	 * @return the checkpoints of the export.
+	 */
+	static ExportCheckpoint start(File journalFile, long intervalMillis) {
+		return new ExportCheckpoint(journalFile, intervalMillis, new ArrayList<String>(), null);
+	}
+
+	/**
+	 * Loads the journal of an interrupted export. Units listed after the last complete checkpoint are ignored; a
+	 * missing journal, or a journal without complete checkpoint, results in a new export.
+	 * @param journalFile the journal file
+	 * @param intervalMillis the minimum time between two checkpoints, in milliseconds
+	 * @return the checkpoints of the resumed export.
+	 * @throws IOException when the journal cannot be read or is not a checkpoint journal.
+	 */
+	static ExportCheckpoint resume(File journalFile, long intervalMillis) throws IOException {
+		if(!journalFile.exists()) {
+			logger.log(Level.WARNING, "No checkpoint journal " + journalFile.getAbsolutePath() + ", the export " +
+					"starts from the beginning.");
+			return start(journalFile, intervalMillis);
+		}
+
+		List<String> doneUnits = new ArrayList<String>();
+		List<String> pendingUnits = new ArrayList<String>();
+		long[] offsets = null;
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), UTF8));
+
+		try {
+			for(String line = in.readLine(); line != null; line = in.readLine()) {
+				if(line.startsWith(DATABASE_UNIT + ",") || line.startsWith(TABLES_UNIT + ",")) {
+					pendingUnits.add(line);
+					continue;
+				}
+
+				long[] checkpointOffsets = parseCheckpoint(line);
+				if(checkpointOffsets == null)
+					break;
+
+				doneUnits.addAll(pendingUnits);
+				pendingUnits.clear();
+				offsets = checkpointOffsets;
+			}
+		} finally {
+			in.close();
+		}
+
+		if(offsets == null) {
+			logger.log(Level.WARNING, "No complete checkpoint in journal " + journalFile.getAbsolutePath() +
+					", the export starts from the beginning.");
+			return start(journalFile, intervalMillis);
+		}
+
+		logger.log(Level.INFO, "Resuming export after " + doneUnits.size() + " completed units of checkpoint " +
+				"journal " + journalFile.getAbsolutePath());
+		return new ExportCheckpoint(journalFile, intervalMillis, doneUnits, offsets);
+	}
+
+	/**
+	 * @return the offsets of a complete checkpoint line, or null when the line is cut or is not a checkpoint.
+	 */
+	private static long[] parseCheckpoint(String line) {
+		String[] fields = line.split(",");
+
+		if(fields.length != 6 || !fields[0].equals(CHECKPOINT))
+			return null;
+
+		try {
+			long[] offsets = new long[4];
+			for(int i = 0; i < offsets.length; i++)
+				offsets[i] = Long.parseLong(fields[i + 1]);
+
+			return Long.parseLong(fields[5]) == checksum(offsets) ? offsets : null;
+		} catch (NumberFormatException formatException) {
+			return null;
+		}
+	}
+
+	private static long checksum(long[] offsets) {
+		long checksum = 17;
+
+		for(long offset : offsets)
+			checksum = 31 * checksum + offset;
+
+		return checksum;
+	}
+
+	/**
+	 * @return true when the export resumes an interrupted export from a checkpoint.
+	 */
+	boolean isResumed() {
+		return resumeOffsets != null;
+	}
+
+	/**
+	 * @return the sizes of the database, table, column and partition output files at the last checkpoint, or null
+	 * when the export is not resumed.
+	 */
+	long[] getResumeOffsets() {
+		return resumeOffsets == null ? null : resumeOffsets.clone();
+	}
+
+	/**
+	 * @param dbName the name of a Database
+	 * @return true when the Database record was written before the resumed checkpoint.
+	 */
+	boolean isDatabaseDone(String dbName) {
+		return doneDatabases.contains(dbName);
+	}
+
+	/**
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @return true when the Table was written before the resumed checkpoint.
+	 */
+	boolean isTableDone(String dbName, String tableName) {
+		return doneTables.contains(dbName + "." + tableName);
+	}
+
+	/**
+	 * Opens the journal. The journal of a resumed export is rewritten with the units of the resumed checkpoint, so
+	 * that the units ignored by the resume are not mistaken for completed units later on.
+	 * @param bufferedWriters the writers of the output files, opened at the resumed offsets
+	 * @throws IOException when the journal cannot be written.
+	 */
+	void open(MetadataBufferedWriters bufferedWriters) throws IOException {
+		this.bufferedWriters = bufferedWriters;
+
+		if(resumeOffsets != null) {
+			File tmpFile = new File(journalFile.getPath() + ".tmp");
+			Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), UTF8));
+
+			try {
+				for(String unit : doneUnits)
+					out.write(unit + "\n");
+				out.write(checkpointLine(resumeOffsets));
+			} finally {
+				out.close();
+			}
+
+			if(journalFile.exists() && !journalFile.delete())
+				throw new IOException("Cannot replace checkpoint journal " + journalFile);
+			if(!tmpFile.renameTo(journalFile))
+				throw new IOException("Cannot rename " + tmpFile + " to " + journalFile);
+		}
+
+		journalStream = new FileOutputStream(journalFile, resumeOffsets != null);
+		journal = new BufferedWriter(new OutputStreamWriter(journalStream, UTF8));
+		lastCheckpointMillis = System.currentTimeMillis();
+	}
+
+	private static String checkpointLine(long[] offsets) {
+		StringBuilder line = new StringBuilder(CHECKPOINT);
+
+		for(long offset : offsets)
+			line.append(',').append(offset);
+
+		return line.append(',').append(checksum(offsets)).append('\n').toString();
+	}
+
+	/**
+	 * Starts writing the records of a unit. No checkpoint is taken until the unit ends.
+	 */
+	void beginWrites() {
+		unitLock.readLock().lock();
+	}
+
+	/**
+	 * Ends writing the record of a Database.
+	 * @param dbName the name of the Database
+	 * @param written false when the unit failed, possibly after part of its records was written
+	 */
+	void endDatabaseWrites(String dbName, boolean written) {
+		endWrites(written ? DATABASE_UNIT + "," + dbName : null);
+	}
+
+	/**
+	 * Ends writing the records of a batch of Tables.
+	 * @param dbName the name of the Database holding the Tables
+	 * @param tableNames the names of the Tables of the batch
+	 * @param written false when the unit failed, possibly after part of its records was written
+	 */
+	void endTableWrites(String dbName, List<String> tableNames, boolean written) {
+		if(!written) {
+			endWrites(null);
+			return;
+		}
+
+		StringBuilder unit = new StringBuilder(TABLES_UNIT).append(',').append(dbName);
+		for(String tableName : tableNames)
+			unit.append(',').append(tableName);
+
+		endWrites(unit.toString());
+	}
+
+	private void endWrites(String unit) {
+		try {
+			if(unit == null) {
+				if(!inconsistent)
+					logger.log(Level.WARNING, "Export unit failed after writing part of its records, no more " +
+							"checkpoints are taken.");
+				inconsistent = true;
+			} else {
+				synchronized(completedUnits) {
+					completedUnits.add(unit);
+				}
+			}
+		} finally {
+			unitLock.readLock().unlock();
+		}
+
+		if(System.currentTimeMillis() - lastCheckpointMillis >= intervalMillis)
+			checkpoint(false);
+	}
+
+	/**
+	 * Takes a checkpoint, once the units being written have ended. A checkpoint which cannot be written disables
+	 * the following ones, the journal keeping the previous checkpoint.
+	 * @param force true to take the checkpoint even when the interval did not elapse
+	 */
+	private void checkpoint(boolean force) {
+		unitLock.writeLock().lock();
+
+		try {
+			if(inconsistent || journal == null ||
+					(!force && System.currentTimeMillis() - lastCheckpointMillis < intervalMillis))
+				return;
+
+			long[] offsets = bufferedWriters.flushOutputs();
+
+			for(String unit : completedUnits)
+				journal.write(unit + "\n");
+			journal.write(checkpointLine(offsets));
+			journal.flush();
+			journalStream.getFD().sync();
+
+			completedUnits.clear();
+			lastCheckpointMillis = System.currentTimeMillis();
+			nbrCheckpoints++;
+		} catch (IOException ioException) {
+			inconsistent = true;
+			logger.log(Level.SEVERE, "Cannot write checkpoint, no more checkpoints are taken.", ioException);
+		} finally {
+			unitLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Ends the export. The journal of a complete export is deleted; the journal of an incomplete export receives a
+	 * last checkpoint, from which the export can be resumed.
+	 * @param complete true when the export completed without failure
+	 */
+	void close(boolean complete) {
+		if(!complete)
+			checkpoint(true);
+
+		try {
+			if(journal != null)
+				journal.close();
+		} catch (IOException ioException) {
+			logger.log(Level.WARNING, "Cannot close checkpoint journal.", ioException);
+		}
+
+		if(complete) {
+			if(!journalFile.delete())
+				logger.log(Level.WARNING, "Cannot delete checkpoint journal " + journalFile.getAbsolutePath());
+		} else {
+			logger.log(Level.WARNING, "Export incomplete after " + nbrCheckpoints + " checkpoints, run again with " +
+					"--resume to resume it from checkpoint journal " + journalFile.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * @return the number of checkpoints taken by the export.
+	 */
+	long getNbrCheckpoints() {
+		return nbrCheckpoints;
+	}
+}
@@ -0,0 +1,354 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.security.InvalidParameterException;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runs the exports in a long-running process, so that the configuration, the Kerberos login and the HiveMetastore
+ * connections of the pool are set up once, and the JIT-compiled code kept, for all the exports.<p>
+ * An export starts at each time of the <i>daemon_schedule</i> cron expression, when the <i>daemon_trigger_file</i>
+ * appears in the output folder, or when the <b>triggerExport</b> operation of the JMX bean is invoked. The exports
+ * run one at a time: a scheduled or JMX export requested while an export runs is skipped, and a trigger file is
+ * kept until the running export completes. The Kerberos credentials are renewed every
+ * <i>kerberos_renew_interval_seconds</i> seconds in the background.
+ * @author Jonathan Puvilland
+ *
+ */
+class ExportDaemon implements ExportDaemonMXBean {
+	static final String OBJECT_NAME = "com.proximus.mmgr:type=HiveMetastoreExportDaemon";
+	private static final Logger logger = Logger.getLogger(ExportDaemon.class.getName());
+	private static final String DEFAULT_TRIGGER_FILE = "HiveMetastoreReader.trigger";
+	private static final int DEFAULT_RENEW_INTERVAL_SECONDS = 3600;
+	private static final long TRIGGER_POLL_MILLIS = 5000;
+	private static final long SHUTDOWN_TIMEOUT_MINUTES = 10;
+
+	private final Properties hiveMetastoreProps;
+	private final MetastoreSourcePool sourcePool;
+	private final ResilientMetastoreSource.CallStatistics callStatistics;
+	private final ExportMetrics metrics;
+	private final ExportSchedule schedule;
+	private final File triggerFile;
+	private final long renewIntervalMillis;
+	private final ExecutorService exportExecutor;
+	private final ScheduledExecutorService timer;
+	private final AtomicBoolean exportRunning = new AtomicBoolean();
+	private final AtomicBoolean stopped = new AtomicBoolean();
+	private final CountDownLatch terminated = new CountDownLatch(1);
+	private final AtomicLong nbrExports = new AtomicLong();
+	private final AtomicLong nbrFailedExports = new AtomicLong();
+	private final AtomicLong nbrSkippedExports = new AtomicLong();
+	private volatile Date lastExportStart;
+	private volatile boolean lastExportComplete;
+	private volatile Date nextScheduledExport;
+	private ObjectName registeredName;
+
+	/**
+	 * Creates a daemon exporting from an opened pool of sources.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param sourcePool the pool of HiveMetastore sources kept by the daemon, or null for the jdbc source.
+	 * @param callStatistics the statistics of the retried calls of the sources.
+	 * @param metrics the metrics receiving the latency of the calls of the sources, reset at each export.
+	 * @throws InvalidParameterException when the schedule is invalid.
+	 */
+	ExportDaemon(Properties hiveMetastoreProps, MetastoreSourcePool sourcePool,
+			ResilientMetastoreSource.CallStatistics callStatistics, ExportMetrics metrics)
+			throws InvalidParameterException {
+		this.hiveMetastoreProps = hiveMetastoreProps;
+		this.sourcePool = sourcePool;
+		this.callStatistics = callStatistics;
+		this.metrics = metrics;
+
+		String cronExpression = hiveMetastoreProps.getProperty("daemon_schedule");
+		this.schedule = cronExpression == null || cronExpression.trim().isEmpty() ? null :
+				new ExportSchedule(cronExpression);
+
+		String triggerFileName = hiveMetastoreProps.getProperty("daemon_trigger_file", DEFAULT_TRIGGER_FILE);
+		this.triggerFile = triggerFileName.trim().isEmpty() ? null :
+				new File(hiveMetastoreProps.getProperty("metastore_output_dir") + "/" + triggerFileName.trim());
+
+		String authenticationMethod = hiveMetastoreProps.getProperty("authentication_method", "none");
+		this.renewIntervalMillis = authenticationMethod.equals("none") ? 0 : TimeUnit.SECONDS.toMillis(
+				HiveMetastoreReader.getIntProperty(hiveMetastoreProps, "kerberos_renew_interval_seconds",
+						DEFAULT_RENEW_INTERVAL_SECONDS, 0));
+
+		this.exportExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("export-daemon-export"));
+		this.timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("export-daemon-timer"));
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final String name;
+
+		DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Publishes the daemon and the export metrics over JMX, and starts the schedule, the polling of the trigger file
+	 * and the renewal of the credentials.
+	 */
+	void start() {
+		metrics.register();
+		register();
+
+		if(schedule != null)
+			scheduleNextExport();
+
+		if(triggerFile != null)
+			timer.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					pollTriggerFile();
+				}
+			}, 0, TRIGGER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+		if(renewIntervalMillis > 0)
+			timer.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					renewCredentials();
+				}
+			}, renewIntervalMillis, renewIntervalMillis, TimeUnit.MILLISECONDS);
+
+		logger.log(Level.INFO, "Export daemon started, schedule: " + schedule + ", trigger file: " + triggerFile);
+	}
+
+	private void scheduleNextExport() {
+		Date next = schedule.next(new Date());
+		nextScheduledExport = next;
+
+		if(next == null) {
+			logger.log(Level.WARNING, "No export scheduled by " + schedule + " within 5 years.");
+			return;
+		}
+
+		try {
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					requestExport("scheduled");
+					scheduleNextExport();
+				}
+			}, Math.max(0, next.getTime() - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException rejectedException) {
+			// the daemon is stopping
+			nextScheduledExport = null;
+		}
+	}
+
+	/**
+	 * Starts an export when the trigger file exists and no export is running. The file is deleted when the export
+	 * starts, so that an export triggered during another export runs after it.
+	 */
+	void pollTriggerFile() {
+		if(!triggerFile.exists() || exportRunning.get())
+			return;
+
+		if(requestExport("triggered") && !triggerFile.delete())
+			logger.log(Level.WARNING, "Cannot delete the trigger file " + triggerFile + ".");
+	}
+
+	private void renewCredentials() {
+		try {
+			HiveMetastoreReader.renewCredentials(hiveMetastoreProps);
+		} catch (IOException ioException) {
+			logger.log(Level.WARNING, "Cannot renew the Kerberos credentials.", ioException);
+		}
+	}
+
+	/**
+	 * Starts an export in the background, unless an export is already running.
+	 * @param reason the reason of the export, logged
+	 * @return true when the export was started.
+	 */
+	boolean requestExport(final String reason) {
+		if(!exportRunning.compareAndSet(false, true)) {
+			nbrSkippedExports.incrementAndGet();
+			logger.log(Level.WARNING, "An export is still running, " + reason + " export skipped.");
+			return false;
+		}
+
+		try {
+			exportExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						runExport(reason);
+					} finally {
+						exportRunning.set(false);
+					}
+				}
+			});
+		} catch (RejectedExecutionException rejectedException) {
+			exportRunning.set(false);
+			return false;
+		}
+
+		return true;
+	}
+
+	private void runExport(String reason) {
+		logger.log(Level.INFO, "Starting " + reason + " export.");
+		metrics.restart();
+		lastExportStart = new Date();
+		boolean complete = false;
+
+		try {
+			ExportCheckpoint checkpoint = HiveMetastoreReader.createCheckpoint(hiveMetastoreProps, false);
+			complete = HiveMetastoreReader.export(hiveMetastoreProps, sourcePool, checkpoint, metrics);
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot create the export checkpoints.", ioException);
+		} catch (InvalidParameterException parameterException) {
+			logger.log(Level.SEVERE, parameterException.getMessage(), parameterException);
+		} catch (RuntimeException runtimeException) {
+			// the daemon keeps running for the next exports
+			logger.log(Level.SEVERE, "Export failed.", runtimeException);
+		} finally {
+			HiveMetastoreReader.completeMetrics(hiveMetastoreProps, metrics);
+			if(sourcePool != null)
+				callStatistics.logStatistics();
+		}
+
+		lastExportComplete = complete;
+		nbrExports.incrementAndGet();
+		if(!complete)
+			nbrFailedExports.incrementAndGet();
+
+		logger.log(complete ? Level.INFO : Level.WARNING, "Export " + (complete ? "completed" : "failed") + " in " +
+				(System.currentTimeMillis() - lastExportStart.getTime()) + " ms.");
+	}
+
+	/**
+	 * Stops the daemon: no export is started anymore, the running export is awaited, then the sources are closed.
+	 */
+	void stop() {
+		if(!stopped.compareAndSet(false, true))
+			return;
+
+		logger.log(Level.INFO, "Stopping export daemon.");
+		timer.shutdownNow();
+		exportExecutor.shutdown();
+
+		try {
+			if(!exportExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES))
+				logger.log(Level.WARNING, "The running export did not complete within " + SHUTDOWN_TIMEOUT_MINUTES +
+						" minutes.");
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+		}
+
+		if(sourcePool != null)
+			sourcePool.close();
+
+		unregister();
+		metrics.unregister();
+		terminated.countDown();
+	}
+
+	/**
+	 * Waits until the daemon is stopped.
+	 * @throws InterruptedException when the thread is interrupted while waiting.
+	 */
+	void awaitTermination() throws InterruptedException {
+		terminated.await();
+	}
+
+	private void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+
+			if(server.isRegistered(name))
+				server.unregisterMBean(name);
+
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (JMException jmException) {
+			logger.log(Level.WARNING, "Cannot publish the export daemon over JMX.", jmException);
+		}
+	}
+
+	private void unregister() {
+		if(registeredName == null)
+			return;
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+		} catch (JMException jmException) {
+			logger.log(Level.WARNING, "Cannot unpublish the export daemon.", jmException);
+		}
+
+		registeredName = null;
+	}
+
+	@Override
+	public boolean triggerExport() {
+		return !stopped.get() && requestExport("JMX");
+	}
+
+	@Override
+	public boolean isExportRunning() {
+		return exportRunning.get();
+	}
+
+	@Override
+	public long getNbrExports() {
+		return nbrExports.get();
+	}
+
+	@Override
+	public long getNbrFailedExports() {
+		return nbrFailedExports.get();
+	}
+
+	@Override
+	public long getNbrSkippedExports() {
+		return nbrSkippedExports.get();
+	}
+
+	@Override
+	public Date getLastExportStart() {
+		return lastExportStart;
+	}
+
+	@Override
+	public boolean isLastExportComplete() {
+		return lastExportComplete;
+	}
+
+	@Override
+	public Date getNextScheduledExport() {
+		return nextScheduledExport;
+	}
+
+	@Override
+	public String getSchedule() {
+		return schedule == null ? null : schedule.toString();
+	}
+}
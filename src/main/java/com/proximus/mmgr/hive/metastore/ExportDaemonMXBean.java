@@ -0,0 +1,57 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.Date;
+
+/**
+ * The state of the export daemon, published over JMX under <b>com.proximus.mmgr:type=HiveMetastoreExportDaemon</b>,
+ * and the operation triggering an export.
+ * @author Jonathan Puvilland
+ *
+ */
+public interface ExportDaemonMXBean {
+	/**
+	 * Starts an export, unless an export is already running.
+	 * @return true when the export was started.
+	 */
+	public boolean triggerExport();
+
+	/**
+	 * @return true while an export is running.
+	 */
+	public boolean isExportRunning();
+
+	/**
+	 * @return the number of exports run since the daemon started.
+	 */
+	public long getNbrExports();
+
+	/**
+	 * @return the number of exports which did not complete without failure.
+	 */
+	public long getNbrFailedExports();
+
+	/**
+	 * @return the number of exports skipped because the previous export was still running.
+	 */
+	public long getNbrSkippedExports();
+
+	/**
+	 * @return the start time of the last export, or null before the first export.
+	 */
+	public Date getLastExportStart();
+
+	/**
+	 * @return true when the last export completed without failure.
+	 */
+	public boolean isLastExportComplete();
+
+	/**
+	 * @return the time of the next scheduled export, or null when the exports are not scheduled.
+	 */
+	public Date getNextScheduledExport();
+
+	/**
+	 * @return the cron expression of the schedule, or null when the exports are not scheduled.
+	 */
+	public String getSchedule();
+}
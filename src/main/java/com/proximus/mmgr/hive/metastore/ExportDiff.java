@@ -0,0 +1,329 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static com.proximus.mmgr.ElementWritable.DEFAULT_SEPARATOR;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.proximus.mmgr.CsvEncoder;
+import com.proximus.mmgr.CsvReader;
+import com.proximus.mmgr.ElementSchema;
+
+/**
+ * Compares two exports and writes the Elements added, removed and changed between them to a diff file, whatever
+ * the size of the exports.<p>
+ * Each output file of both exports is sorted by Element id with an <i>ExternalSorter</i>, within
+ * <i>sort_memory_mb</i> MB of heap and using <i>sort_threads</i> threads; the previous and current files are sorted
+ * at the same time. The sorted records are then merge-joined by id: an id only found in the current export is
+ * added, an id only found in the previous export is removed, and an id found in both is changed when any of its
+ * attributes differ. Attributes are compared one by one, following the schema of the Element type; the attributes
+ * are located by name in the header of each file, so that exports with different attributes can be compared.<p>
+ * The diff file holds one record per added or removed Element, and one record per changed attribute:
+ * <b>change,type,id,attribute,previous_value,current_value</b>. The number of changes of each Element type is
+ * logged and returned.
+ * @author Jonathan Puvilland
+ *
+ */
+class ExportDiff {
+	static final String ADDED = "added";
+	static final String REMOVED = "removed";
+	static final String CHANGED = "changed";
+	static final String HEADER = "change,type,id,attribute,previous_value,current_value";
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	private static final int DEFAULT_SORT_MEMORY_MB = 256;
+	private static final int FLUSH_SIZE = 1 << 16;
+	private static final Logger logger = Logger.getLogger(ExportDiff.class.getName());
+
+	private final Properties hiveMetastoreProps;
+	private final Charset charset;
+	private final long sortMemoryBytes;
+	private final int nbrSortThreads;
+	private final File sortDir;
+	private final CsvEncoder encoder = CsvEncoder.getInstance(DEFAULT_SEPARATOR);
+	private final Map<String, long[]> nbrChanges = new TreeMap<String, long[]>();
+
+	/**
+	 * One of the output files of an export, with the schema of its Elements.
+	 */
+	private static final class Output {
+		final String fileKey;
+		final String defaultFileName;
+		final ElementSchema<?> schema;
+
+		Output(String fileKey, String defaultFileName, ElementSchema<?> schema) {
+			this.fileKey = fileKey;
+			this.defaultFileName = defaultFileName;
+			this.schema = schema;
+		}
+	}
+
+	private static final List<Output> OUTPUTS = Arrays.asList(
+			new Output("metastore_database_file", "HiveMetastoreDatabases.csv", DatabaseElement.SCHEMA),
+			new Output("metastore_table_file", "HiveMetastoreTables.csv", TableElement.SCHEMA),
+			new Output("metastore_column_file", "HiveMetastoreColumns.csv", ColumnElement.SCHEMA),
+			new Output("metastore_partition_file", "HiveMetastorePartitions.csv", PartitionElement.SCHEMA));
+
+	/**
+	 * Creates a diff of exports written with the output settings of the HiveMetastoreReader properties.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @throws InvalidParameterException when the sort properties are invalid.
+	 */
+	ExportDiff(Properties hiveMetastoreProps) throws InvalidParameterException {
+		this.hiveMetastoreProps = hiveMetastoreProps;
+		this.charset = hiveMetastoreProps.getProperty("output_sink", "writer").trim().equals("channel") ?
+				Charset.forName("UTF-8") : Charset.defaultCharset();
+		this.sortMemoryBytes = (long) HiveMetastoreReader.getIntProperty(hiveMetastoreProps, "sort_memory_mb",
+				DEFAULT_SORT_MEMORY_MB) << 20;
+		this.nbrSortThreads = HiveMetastoreReader.getIntProperty(hiveMetastoreProps, "sort_threads",
+				Runtime.getRuntime().availableProcessors());
+
+		String sortDirName = hiveMetastoreProps.getProperty("sort_tmp_dir");
+		this.sortDir = sortDirName == null || sortDirName.trim().isEmpty() ? null : new File(sortDirName.trim());
+	}
+
+	/**
+	 * Compares the output files of two exports and writes the changes to a diff file.
+	 * @param previousDir the folder of the previous export
+	 * @param currentDir the folder of the current export
+	 * @param diffFile the diff file, overwritten
+	 * @return the number of added, removed and changed Elements of each Element type.
+	 * @throws IOException when an output file cannot be read, or the diff file cannot be written.
+	 */
+	Map<String, long[]> diff(File previousDir, File currentDir, File diffFile) throws IOException {
+		nbrChanges.clear();
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(diffFile), charset));
+
+		try {
+			out.append(HEADER).append(LINE_SEPARATOR);
+
+			for(Output output : OUTPUTS) {
+				String fileName = hiveMetastoreProps.getProperty(output.fileKey, output.defaultFileName);
+				diffOutput(output.schema, new File(previousDir, fileName), new File(currentDir, fileName), out);
+			}
+		} finally {
+			out.close();
+		}
+
+		for(Map.Entry<String, long[]> entry : nbrChanges.entrySet())
+			logger.log(Level.INFO, entry.getKey() + ": " + entry.getValue()[0] + " added, " + entry.getValue()[1] +
+					" removed, " + entry.getValue()[2] + " changed.");
+
+		return nbrChanges;
+	}
+
+	/**
+	 * Sorts an output file of both exports by id, then merge-joins the sorted records.
+	 */
+	private void diffOutput(ElementSchema<?> schema, File previousFile, File currentFile, Writer out)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		ExecutorService readers = Executors.newFixedThreadPool(2);
+		ExternalSorter previousSorter = new ExternalSorter(sortDir, sortMemoryBytes / 2, nbrSortThreads);
+		ExternalSorter currentSorter = new ExternalSorter(sortDir, sortMemoryBytes / 2, nbrSortThreads);
+		ExternalSorter.SortedRecords previous = null;
+		ExternalSorter.SortedRecords current = null;
+
+		try {
+			Future<String[]> previousHeader = readers.submit(sortFile(previousFile, previousSorter));
+			Future<String[]> currentHeader = readers.submit(sortFile(currentFile, currentSorter));
+			int[] previousIndexes = indexAttributes(schema, await(previousHeader), previousFile);
+			int[] currentIndexes = indexAttributes(schema, await(currentHeader), currentFile);
+
+			previous = previousSorter.sort();
+			current = currentSorter.sort();
+			logger.log(Level.INFO, previousFile.getName() + ": " + previousSorter.getNbrRecords() + " previous and " +
+					currentSorter.getNbrRecords() + " current records sorted in " +
+					(System.currentTimeMillis() - start) + " ms, " + (previousSorter.getNbrRuns() +
+					currentSorter.getNbrRuns()) + " runs spilled.");
+
+			mergeJoin(schema, previous, previousIndexes, current, currentIndexes, out);
+		} finally {
+			readers.shutdownNow();
+			if(previous != null)
+				previous.close();
+			if(current != null)
+				current.close();
+			previousSorter.close();
+			currentSorter.close();
+		}
+	}
+
+	/**
+	 * @return a task reading the records of a file into a sorter, keyed by id, and returning the header of the file.
+	 */
+	private Callable<String[]> sortFile(final File file, final ExternalSorter sorter) {
+		return new Callable<String[]>() {
+			@Override
+			public String[] call() throws IOException {
+				CsvReader in = new CsvReader(new InputStreamReader(new FileInputStream(file), charset),
+						DEFAULT_SEPARATOR);
+
+				try {
+					String headerRecord = in.readRecord();
+					if(headerRecord == null)
+						throw new IOException("Empty output file: " + file);
+
+					String[] header = in.parseFields(headerRecord);
+					int idIndex = Arrays.asList(header).indexOf("id");
+					if(idIndex < 0)
+						throw new IOException("No id attribute in the header of " + file);
+
+					String record;
+					while((record = in.readRecord()) != null) {
+						if(record.isEmpty())
+							continue;
+
+						String[] fields = in.parseFields(record);
+						sorter.add(idIndex < fields.length ? fields[idIndex] : "", record);
+					}
+
+					return header;
+				} finally {
+					in.close();
+				}
+			}
+		};
+	}
+
+	private static String[] await(Future<String[]> header) throws IOException {
+		try {
+			return header.get();
+		} catch (ExecutionException executionException) {
+			if(executionException.getCause() instanceof IOException)
+				throw (IOException) executionException.getCause();
+			throw new IOException("Cannot sort the output file.", executionException.getCause());
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while sorting the output file.", interruptedException);
+		}
+	}
+
+	/**
+	 * @return the position of each attribute of the schema in the header of a file, -1 when it is missing.
+	 */
+	private static int[] indexAttributes(ElementSchema<?> schema, String[] header, File file) {
+		List<String> names = Arrays.asList(header);
+		int[] indexes = new int[schema.size()];
+
+		for(int i = 0; i < indexes.length; i++) {
+			indexes[i] = names.indexOf(schema.getAttribute(i).name());
+			if(indexes[i] < 0)
+				logger.log(Level.WARNING, "Attribute " + schema.getAttribute(i).name() + " not found in " + file);
+		}
+
+		return indexes;
+	}
+
+	private void mergeJoin(ElementSchema<?> schema, ExternalSorter.SortedRecords previous, int[] previousIndexes,
+			ExternalSorter.SortedRecords current, int[] currentIndexes, Writer out) throws IOException {
+		StringBuilder changes = new StringBuilder();
+		boolean hasPrevious = previous.next();
+		boolean hasCurrent = current.next();
+
+		while(hasPrevious || hasCurrent) {
+			int comparison = !hasPrevious ? 1 : !hasCurrent ? -1 : previous.getKey().compareTo(current.getKey());
+
+			if(comparison < 0) {
+				String[] fields = CsvReader.parseFields(previous.getRecord(), DEFAULT_SEPARATOR);
+				appendChange(changes, REMOVED, value(fields, previousIndexes, 0), previous.getKey(), null, null, null);
+				hasPrevious = previous.next();
+			} else if(comparison > 0) {
+				String[] fields = CsvReader.parseFields(current.getRecord(), DEFAULT_SEPARATOR);
+				appendChange(changes, ADDED, value(fields, currentIndexes, 0), current.getKey(), null, null, null);
+				hasCurrent = current.next();
+			} else {
+				if(!previous.getRecord().equals(current.getRecord()))
+					compareAttributes(schema,
+							CsvReader.parseFields(previous.getRecord(), DEFAULT_SEPARATOR), previousIndexes,
+							CsvReader.parseFields(current.getRecord(), DEFAULT_SEPARATOR), currentIndexes,
+							current.getKey(), changes);
+				hasPrevious = previous.next();
+				hasCurrent = current.next();
+			}
+
+			if(changes.length() >= FLUSH_SIZE) {
+				out.append(changes);
+				changes.setLength(0);
+			}
+		}
+
+		out.append(changes);
+	}
+
+	private void compareAttributes(ElementSchema<?> schema, String[] previousFields, int[] previousIndexes,
+			String[] currentFields, int[] currentIndexes, String id, StringBuilder changes) throws IOException {
+		String type = value(currentFields, currentIndexes, 0);
+		boolean changed = false;
+
+		for(int i = 0; i < schema.size(); i++) {
+			String previousValue = value(previousFields, previousIndexes, i);
+			String currentValue = value(currentFields, currentIndexes, i);
+
+			if(previousValue.equals(currentValue))
+				continue;
+
+			appendChange(changes, CHANGED, type, id, schema.getAttribute(i).name(), previousValue, currentValue);
+			changed = true;
+		}
+
+		if(changed)
+			count(type)[2]++;
+	}
+
+	/**
+	 * @return the value of an attribute of the schema, empty when the attribute is missing from the file.
+	 */
+	private static String value(String[] fields, int[] indexes, int attribute) {
+		int index = indexes[attribute];
+		return index >= 0 && index < fields.length ? fields[index] : "";
+	}
+
+	private long[] count(String type) {
+		long[] counts = nbrChanges.get(type);
+
+		if(counts == null) {
+			counts = new long[3];
+			nbrChanges.put(type, counts);
+		}
+
+		return counts;
+	}
+
+	private void appendChange(StringBuilder changes, String change, String type, String id, String attribute,
+			String previousValue, String currentValue) throws IOException {
+		if(attribute == null)
+			count(type)[change.equals(ADDED) ? 0 : 1]++;
+
+		changes.append(change).append(DEFAULT_SEPARATOR);
+		encoder.encode(type, changes);
+		changes.append(DEFAULT_SEPARATOR);
+		encoder.encode(id, changes);
+		changes.append(DEFAULT_SEPARATOR);
+		encoder.encode(attribute, changes);
+		changes.append(DEFAULT_SEPARATOR);
+		encoder.encode(previousValue, changes);
+		changes.append(DEFAULT_SEPARATOR);
+		encoder.encode(currentValue, changes);
+		changes.append(LINE_SEPARATOR);
+	}
+}
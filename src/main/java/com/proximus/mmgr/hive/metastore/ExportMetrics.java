@@ -0,0 +1,441 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the metrics of an export: the time spent in each phase, the latency of each HiveMetastore method and
+ * the records and characters written to each output. Metrics are updated concurrently by the export threads, at
+ * most a few times per batch, and can be read while the export runs.<p>
+ * Phase times are summed over the threads: with several export threads, they add up to more than the elapsed
+ * time. Latencies are kept in histograms of power-of-two buckets, so percentiles are accurate within a factor of 2.
+ * At the end of the export, the metrics are logged and written to a summary file.
+ * @author Jonathan Puvilland
+ *
+ */
+class ExportMetrics implements ExportMetricsMXBean {
+	static final String OBJECT_NAME = "com.proximus.mmgr:type=HiveMetastoreExport";
+	private static final Logger logger = Logger.getLogger(ExportMetrics.class.getName());
+
+	/**
+	 * The phases of an export. The Columns of a Table are retrieved with the Table, by the table fetch. The statistics
+	 * are retrieved by their own threads, concurrently with the other phases; the statistics wait is the time the
+	 * export spent waiting for them.
+	 */
+	enum Phase {
+		AUTHENTICATION, HIVE_CONFIGURATION, CONNECTION, DATABASE_FETCH, TABLE_FETCH, PARTITION_FETCH, SERIALIZATION,
+		WRITE, FLUSH, SORT, STATISTICS_FETCH, STATISTICS_WAIT;
+
+		String getName() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * The output files of an export.
+	 */
+	enum Output {
+		DATABASE, TABLE, COLUMN, PARTITION;
+
+		String getName() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * A latency histogram with one bucket per power of two microseconds.
+	 */
+	static class LatencyHistogram {
+		private static final int NBR_BUCKETS = 40;
+		private final AtomicLongArray buckets = new AtomicLongArray(NBR_BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		void record(long nanos) {
+			long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+			buckets.incrementAndGet(Math.min(NBR_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros)));
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+
+			for(long max = maxNanos.get(); nanos > max && !maxNanos.compareAndSet(max, nanos); max = maxNanos.get())
+				;
+		}
+
+		long getCount() {
+			return count.get();
+		}
+
+		long getTotalMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+		}
+
+		long getMaxMicros() {
+			return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+		}
+
+		/**
+		 * @param percentile the percentile, between 0 and 100
+		 * @return the upper bound of the bucket holding the percentile, at most the maximum latency, in microseconds.
+		 */
+		long getPercentileMicros(double percentile) {
+			long rank = (long) Math.ceil(count.get() * percentile / 100);
+			long seen = 0;
+
+			for(int i = 0; i < NBR_BUCKETS; i++) {
+				seen += buckets.get(i);
+				if(seen >= rank && seen > 0)
+					return Math.min(getMaxMicros(), (1L << (i + 1)) - 1);
+			}
+
+			return getMaxMicros();
+		}
+	}
+
+	private volatile long startNanos = System.nanoTime();
+	private volatile long endNanos;
+	private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+	private final AtomicLongArray records = new AtomicLongArray(Output.values().length);
+	private final AtomicLongArray characters = new AtomicLongArray(Output.values().length);
+	private final AtomicLongArray sortedRuns = new AtomicLongArray(Output.values().length);
+	private final AtomicLongArray spilledBytes = new AtomicLongArray(Output.values().length);
+	private final ConcurrentMap<String, LatencyHistogram> callLatencies =
+			new ConcurrentHashMap<String, LatencyHistogram>();
+	private ObjectName registeredName;
+
+	/**
+	 * Adds the time spent in a phase.
+	 * @param phase the phase of the export
+	 * @param nanos the time spent, in nanoseconds
+	 */
+	void addPhase(Phase phase, long nanos) {
+		phaseNanos.addAndGet(phase.ordinal(), nanos);
+	}
+
+	/**
+	 * Adds the number of records formatted for an output.
+	 * @param output the output file
+	 * @param nbrRecords the number of records
+	 */
+	void addRecords(Output output, long nbrRecords) {
+		records.addAndGet(output.ordinal(), nbrRecords);
+	}
+
+	/**
+	 * Adds the number of characters written to an output.
+	 * @param output the output file
+	 * @param nbrCharacters the number of characters
+	 */
+	void addCharacters(Output output, long nbrCharacters) {
+		characters.addAndGet(output.ordinal(), nbrCharacters);
+	}
+
+	/**
+	 * Adds the runs of records sorted and spilled to disk for a sorted output.
+	 * @param output the output file
+	 * @param nbrRuns the number of runs
+	 * @param nbrBytes the size of the runs, in bytes
+	 */
+	void addSortedRuns(Output output, long nbrRuns, long nbrBytes) {
+		sortedRuns.addAndGet(output.ordinal(), nbrRuns);
+		spilledBytes.addAndGet(output.ordinal(), nbrBytes);
+	}
+
+	/**
+	 * Records the latency of a HiveMetastore call.
+	 * @param method the name of the HiveMetastore method
+	 * @param nanos the latency of the call, in nanoseconds
+	 */
+	void recordCall(String method, long nanos) {
+		LatencyHistogram histogram = callLatencies.get(method);
+
+		if(histogram == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram();
+			histogram = callLatencies.putIfAbsent(method, newHistogram);
+			if(histogram == null)
+				histogram = newHistogram;
+		}
+
+		histogram.record(nanos);
+	}
+
+	long getPhaseNanos(Phase phase) {
+		return phaseNanos.get(phase.ordinal());
+	}
+
+	long getRecords(Output output) {
+		return records.get(output.ordinal());
+	}
+
+	long getCharacters(Output output) {
+		return characters.get(output.ordinal());
+	}
+
+	long getSortedRuns(Output output) {
+		return sortedRuns.get(output.ordinal());
+	}
+
+	long getSpilledBytes(Output output) {
+		return spilledBytes.get(output.ordinal());
+	}
+
+	LatencyHistogram getCallLatency(String method) {
+		return callLatencies.get(method);
+	}
+
+	private Map<String, LatencyHistogram> getSortedCallLatencies() {
+		return new TreeMap<String, LatencyHistogram>(callLatencies);
+	}
+
+	/**
+	 * Clears the metrics and restarts the clock, before each export of a daemon. The metrics must not be updated
+	 * during the call.
+	 */
+	void restart() {
+		for(int i = 0; i < phaseNanos.length(); i++)
+			phaseNanos.set(i, 0);
+
+		for(int i = 0; i < records.length(); i++) {
+			records.set(i, 0);
+			characters.set(i, 0);
+			sortedRuns.set(i, 0);
+			spilledBytes.set(i, 0);
+		}
+
+		callLatencies.clear();
+		endNanos = 0;
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Stops the clock of the export, so that the rates are computed over the export only.
+	 */
+	void stop() {
+		endNanos = System.nanoTime();
+	}
+
+	@Override
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis((endNanos != 0 ? endNanos : System.nanoTime()) - startNanos);
+	}
+
+	@Override
+	public Map<String, Long> getPhaseMillis() {
+		Map<String, Long> phaseMillis = new TreeMap<String, Long>();
+
+		for(Phase phase : Phase.values())
+			phaseMillis.put(phase.getName(), TimeUnit.NANOSECONDS.toMillis(getPhaseNanos(phase)));
+
+		return phaseMillis;
+	}
+
+	@Override
+	public Map<String, Long> getRecordsWritten() {
+		Map<String, Long> recordsWritten = new TreeMap<String, Long>();
+
+		for(Output output : Output.values())
+			recordsWritten.put(output.getName(), getRecords(output));
+
+		return recordsWritten;
+	}
+
+	@Override
+	public Map<String, Long> getCharactersWritten() {
+		Map<String, Long> charactersWritten = new TreeMap<String, Long>();
+
+		for(Output output : Output.values())
+			charactersWritten.put(output.getName(), getCharacters(output));
+
+		return charactersWritten;
+	}
+
+	@Override
+	public Map<String, Double> getRecordsPerSecond() {
+		Map<String, Double> recordsPerSecond = new TreeMap<String, Double>();
+
+		for(Output output : Output.values())
+			recordsPerSecond.put(output.getName(), perSecond(getRecords(output)));
+
+		return recordsPerSecond;
+	}
+
+	@Override
+	public Map<String, Double> getCharactersPerSecond() {
+		Map<String, Double> charactersPerSecond = new TreeMap<String, Double>();
+
+		for(Output output : Output.values())
+			charactersPerSecond.put(output.getName(), perSecond(getCharacters(output)));
+
+		return charactersPerSecond;
+	}
+
+	private double perSecond(long value) {
+		return value * 1000.0 / Math.max(1, getElapsedMillis());
+	}
+
+	@Override
+	public Map<String, Long> getCallCounts() {
+		Map<String, Long> callCounts = new TreeMap<String, Long>();
+
+		for(Map.Entry<String, LatencyHistogram> entry : callLatencies.entrySet())
+			callCounts.put(entry.getKey(), entry.getValue().getCount());
+
+		return callCounts;
+	}
+
+	@Override
+	public Map<String, Long> getCallLatencyP50Micros() {
+		return getCallLatencyPercentile(50);
+	}
+
+	@Override
+	public Map<String, Long> getCallLatencyP99Micros() {
+		return getCallLatencyPercentile(99);
+	}
+
+	private Map<String, Long> getCallLatencyPercentile(double percentile) {
+		Map<String, Long> latencies = new TreeMap<String, Long>();
+
+		for(Map.Entry<String, LatencyHistogram> entry : callLatencies.entrySet())
+			latencies.put(entry.getKey(), entry.getValue().getPercentileMicros(percentile));
+
+		return latencies;
+	}
+
+	@Override
+	public Map<String, Long> getCallLatencyMaxMicros() {
+		Map<String, Long> latencies = new TreeMap<String, Long>();
+
+		for(Map.Entry<String, LatencyHistogram> entry : callLatencies.entrySet())
+			latencies.put(entry.getKey(), entry.getValue().getMaxMicros());
+
+		return latencies;
+	}
+
+	/**
+	 * Publishes the metrics in the platform MBean server. A failure is logged and does not stop the export.
+	 */
+	void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+
+			if(server.isRegistered(name))
+				server.unregisterMBean(name);
+
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (JMException jmException) {
+			logger.log(Level.WARNING, "Cannot publish the export metrics over JMX.", jmException);
+		}
+	}
+
+	/**
+	 * Removes the metrics from the platform MBean server.
+	 */
+	void unregister() {
+		if(registeredName == null)
+			return;
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+		} catch (JMException jmException) {
+			logger.log(Level.WARNING, "Cannot unpublish the export metrics.", jmException);
+		}
+
+		registeredName = null;
+	}
+
+	/**
+	 * Logs the time spent in each phase, the rate of each output and the latency of each HiveMetastore method.
+	 */
+	void logStatistics() {
+		StringBuilder phases = new StringBuilder("Export phases in ").append(getElapsedMillis()).append(" ms:");
+		for(Phase phase : Phase.values())
+			if(getPhaseNanos(phase) > 0)
+				phases.append(' ').append(phase.getName()).append(' ')
+					.append(TimeUnit.NANOSECONDS.toMillis(getPhaseNanos(phase))).append(" ms");
+		logger.log(Level.INFO, phases.toString());
+
+		for(Output output : Output.values())
+			logger.log(Level.INFO, "Output " + output.getName() + ": " + getRecords(output) + " records, " +
+					getCharacters(output) + " characters, " + Math.round(perSecond(getRecords(output))) +
+					" records/s, " + Math.round(perSecond(getCharacters(output))) + " characters/s" +
+					(getSortedRuns(output) > 0 ? ", " + getSortedRuns(output) + " sorted runs of " +
+					getSpilledBytes(output) + " bytes." : "."));
+
+		for(Map.Entry<String, LatencyHistogram> entry : getSortedCallLatencies().entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			logger.log(Level.INFO, "HiveMetastore " + entry.getKey() + ": " + histogram.getCount() + " calls, p50 " +
+					histogram.getPercentileMicros(50) + " us, p99 " + histogram.getPercentileMicros(99) + " us, max " +
+					histogram.getMaxMicros() + " us.");
+		}
+	}
+
+	/**
+	 * Writes the metrics to a csv file of <b>metric,name,value</b> records, for example
+	 * <b>phase_millis,table_fetch,1234</b> or <b>call_p99_micros,getTableObjectsByName,5600</b>.
+	 * @param summaryFile the summary file
+	 * @throws IOException when the file cannot be written.
+	 */
+	void writeSummary(File summaryFile) throws IOException {
+		BufferedWriter summary = new BufferedWriter(new FileWriter(summaryFile));
+
+		try {
+			summary.write("metric,name,value");
+			summary.newLine();
+			writeSummaryRecord(summary, "elapsed_millis", "export", getElapsedMillis());
+
+			for(Phase phase : Phase.values())
+				writeSummaryRecord(summary, "phase_millis", phase.getName(),
+						TimeUnit.NANOSECONDS.toMillis(getPhaseNanos(phase)));
+
+			for(Output output : Output.values()) {
+				writeSummaryRecord(summary, "records", output.getName(), getRecords(output));
+				writeSummaryRecord(summary, "characters", output.getName(), getCharacters(output));
+				writeSummaryRecord(summary, "records_per_second", output.getName(),
+						Math.round(perSecond(getRecords(output))));
+				writeSummaryRecord(summary, "characters_per_second", output.getName(),
+						Math.round(perSecond(getCharacters(output))));
+				writeSummaryRecord(summary, "sorted_runs", output.getName(), getSortedRuns(output));
+				writeSummaryRecord(summary, "spilled_bytes", output.getName(), getSpilledBytes(output));
+			}
+
+			for(Map.Entry<String, LatencyHistogram> entry : getSortedCallLatencies().entrySet()) {
+				LatencyHistogram histogram = entry.getValue();
+				writeSummaryRecord(summary, "call_count", entry.getKey(), histogram.getCount());
+				writeSummaryRecord(summary, "call_total_millis", entry.getKey(), histogram.getTotalMillis());
+				writeSummaryRecord(summary, "call_p50_micros", entry.getKey(), histogram.getPercentileMicros(50));
+				writeSummaryRecord(summary, "call_p99_micros", entry.getKey(), histogram.getPercentileMicros(99));
+				writeSummaryRecord(summary, "call_max_micros", entry.getKey(), histogram.getMaxMicros());
+			}
+		} finally {
+			summary.close();
+		}
+
+		logger.log(Level.INFO, "Export metrics written to: " + summaryFile.getAbsolutePath());
+	}
+
+	private static void writeSummaryRecord(BufferedWriter summary, String metric, String name, long value)
+			throws IOException {
+		summary.write(metric + "," + name + "," + value);
+		summary.newLine();
+	}
+}
@@ -0,0 +1,61 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.Map;
+
+/**
+ * The metrics of a running export, published over JMX under <b>com.proximus.mmgr:type=HiveMetastoreExport</b>
+ * so that a slow export can be diagnosed while it runs, for example with jconsole.
+ * @author Jonathan Puvilland
+ *
+ */
+public interface ExportMetricsMXBean {
+	/**
+	 * @return the time since the start of the export, in milliseconds.
+	 */
+	public long getElapsedMillis();
+
+	/**
+	 * @return the time spent in each phase of the export, in milliseconds, summed over the export threads.
+	 */
+	public Map<String, Long> getPhaseMillis();
+
+	/**
+	 * @return the number of records written to each output.
+	 */
+	public Map<String, Long> getRecordsWritten();
+
+	/**
+	 * @return the number of characters written to each output.
+	 */
+	public Map<String, Long> getCharactersWritten();
+
+	/**
+	 * @return the number of records written to each output per second since the start of the export.
+	 */
+	public Map<String, Double> getRecordsPerSecond();
+
+	/**
+	 * @return the number of characters written to each output per second since the start of the export.
+	 */
+	public Map<String, Double> getCharactersPerSecond();
+
+	/**
+	 * @return the number of calls of each HiveMetastore method.
+	 */
+	public Map<String, Long> getCallCounts();
+
+	/**
+	 * @return the median latency of each HiveMetastore method, in microseconds.
+	 */
+	public Map<String, Long> getCallLatencyP50Micros();
+
+	/**
+	 * @return the 99th percentile of the latency of each HiveMetastore method, in microseconds.
+	 */
+	public Map<String, Long> getCallLatencyP99Micros();
+
+	/**
+	 * @return the maximum latency of each HiveMetastore method, in microseconds.
+	 */
+	public Map<String, Long> getCallLatencyMaxMicros();
+}
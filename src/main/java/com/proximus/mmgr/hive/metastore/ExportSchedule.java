@@ -0,0 +1,140 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.security.InvalidParameterException;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * The schedule of the exports of a daemon, as a cron expression of 5 fields: minute (0-59), hour (0-23), day of
+ * month (1-31), month (1-12) and day of week (0-7, 0 and 7 being Sunday). Each field is <b>*</b>, a value, a range
+ * <b>1-5</b>, a list <b>0,30</b> or a step <b>*&#47;15</b> or <b>8-18/2</b>. Like cron, when both the day of month and the
+ * day of week are restricted, a day matching either of them is selected. Times are in the default time zone, for
+ * example <b>0 6-22 * * 1-5</b> exports every hour from 6:00 to 22:00 on weekdays.
+ * @author Jonathan Puvilland
+ *
+ */
+class ExportSchedule {
+	private static final int MAX_DAYS_SEARCHED = 366 * 5;
+
+	private final String expression;
+	private final BitSet minutes;
+	private final BitSet hours;
+	private final BitSet daysOfMonth;
+	private final BitSet months;
+	private final BitSet daysOfWeek;
+	private final boolean anyDayOfMonth;
+	private final boolean anyDayOfWeek;
+
+	/**
+	 * Parses a cron expression.
+	 * @param expression the 5 fields of the expression, separated by spaces
+	 * @throws InvalidParameterException when the expression is invalid.
+	 */
+	ExportSchedule(String expression) {
+		String[] fields = expression.trim().split("\\s+");
+
+		if(fields.length != 5)
+			throw new InvalidParameterException("Invalid schedule, 5 fields expected: " + expression);
+
+		this.expression = expression.trim();
+		this.minutes = parseField(fields[0], 0, 59, expression);
+		this.hours = parseField(fields[1], 0, 23, expression);
+		this.daysOfMonth = parseField(fields[2], 1, 31, expression);
+		this.months = parseField(fields[3], 1, 12, expression);
+		this.daysOfWeek = parseField(fields[4], 0, 7, expression);
+		this.anyDayOfMonth = fields[2].startsWith("*");
+		this.anyDayOfWeek = fields[4].startsWith("*");
+
+		// Sunday is both 0 and 7
+		if(daysOfWeek.get(7))
+			daysOfWeek.set(0);
+	}
+
+	private static BitSet parseField(String field, int min, int max, String expression) {
+		BitSet values = new BitSet(max + 1);
+
+		for(String item : field.split(",")) {
+			int step = 1;
+			int slash = item.indexOf('/');
+
+			try {
+				if(slash >= 0) {
+					step = Integer.parseInt(item.substring(slash + 1));
+					item = item.substring(0, slash);
+				}
+
+				int first = min;
+				int last = max;
+
+				if(!item.equals("*")) {
+					int dash = item.indexOf('-');
+					first = Integer.parseInt(dash >= 0 ? item.substring(0, dash) : item);
+					last = dash >= 0 ? Integer.parseInt(item.substring(dash + 1)) : slash >= 0 ? max : first;
+				}
+
+				if(first < min || last > max || first > last || step < 1)
+					throw new InvalidParameterException("Invalid schedule field " + field + ": " + expression);
+
+				for(int value = first; value <= last; value += step)
+					values.set(value);
+			} catch (NumberFormatException formatException) {
+				throw new InvalidParameterException("Invalid schedule field " + field + ": " + expression);
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * @param after a date
+	 * @return the first scheduled minute strictly after the date, or null when no date matches within 5 years.
+	 */
+	Date next(Date after) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(after);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		calendar.add(Calendar.MINUTE, 1);
+
+		for(int day = 0; day < MAX_DAYS_SEARCHED; day++) {
+			if(matchesDay(calendar)) {
+				for(int hour = hours.nextSetBit(calendar.get(Calendar.HOUR_OF_DAY)); hour >= 0;
+						hour = hours.nextSetBit(hour + 1)) {
+					int fromMinute = hour == calendar.get(Calendar.HOUR_OF_DAY) ? calendar.get(Calendar.MINUTE) : 0;
+					int minute = minutes.nextSetBit(fromMinute);
+
+					if(minute >= 0) {
+						calendar.set(Calendar.HOUR_OF_DAY, hour);
+						calendar.set(Calendar.MINUTE, minute);
+						return calendar.getTime();
+					}
+				}
+			}
+
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+			calendar.set(Calendar.HOUR_OF_DAY, 0);
+			calendar.set(Calendar.MINUTE, 0);
+		}
+
+		return null;
+	}
+
+	private boolean matchesDay(Calendar calendar) {
+		if(!months.get(calendar.get(Calendar.MONTH) + 1))
+			return false;
+
+		boolean dayOfMonth = daysOfMonth.get(calendar.get(Calendar.DAY_OF_MONTH));
+		boolean dayOfWeek = daysOfWeek.get(calendar.get(Calendar.DAY_OF_WEEK) - 1);
+
+		if(!anyDayOfMonth && !anyDayOfWeek)
+			return dayOfMonth || dayOfWeek;
+
+		return dayOfMonth && dayOfWeek;
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+}
@@ -0,0 +1,482 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sorts records by key within a bounded amount of memory. Records are buffered until the buffer reaches its share
+ * of the memory budget; the full buffer is then sorted and written to a temporary run file by one of the
+ * <i>nbrThreads</i> sorting threads, while the next records are buffered. At most <i>nbrThreads</i> buffers are
+ * sorted at a time, so that the memory used stays below the budget.<p>
+ * The sorted records are read through a k-way merge of the runs. When there are more runs than the merge fan-in, runs
+ * are first merged by groups into larger runs. Records with the same key are sorted by record, so that the order of
+ * the output never depends on the order of the input. When all the records fit in a single buffer, they are sorted
+ * in memory and no run file is written.<p>
+ * Run files hold the length and UTF-8 bytes of the key and of the record of each entry. They are deleted when the
+ * sorted records are closed, or when the sorter is closed.
+ * @author Jonathan Puvilland
+ *
+ */
+class ExternalSorter implements Closeable {
+	static final int DEFAULT_MERGE_FAN_IN = 64;
+	// estimated heap used by an entry besides its characters: the entry, two Strings and their arrays
+	private static final int ENTRY_OVERHEAD = 96;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final AtomicInteger nbrSorters = new AtomicInteger();
+
+	private final File tmpDir;
+	private final long bufferBytes;
+	private final int mergeFanIn;
+	private final ExecutorService sorters;
+	private final Semaphore sortSlots;
+	private final List<Future<File>> pendingRuns = new ArrayList<Future<File>>();
+	private final List<File> runs = new ArrayList<File>();
+	private final AtomicLong sortNanos = new AtomicLong();
+	private final AtomicLong spilledBytes = new AtomicLong();
+	private List<Entry> buffer = new ArrayList<Entry>();
+	private long bufferedBytes;
+	private long nbrRecords;
+	private int nbrRuns;
+	private long mergeNanos;
+
+	/**
+	 * A record and its sort key.
+	 */
+	private static final class Entry implements Comparable<Entry> {
+		final String key;
+		final String record;
+
+		Entry(String key, String record) {
+			this.key = key;
+			this.record = record;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			int comparison = key.compareTo(other.key);
+			return comparison != 0 ? comparison : record.compareTo(other.record);
+		}
+	}
+
+	/**
+	 * Creates a sorter with the default merge fan-in.
+	 * @param tmpDir the folder of the run files, or null for the default temporary folder
+	 * @param memoryBytes the heap available to the buffered records
+	 * @param nbrThreads the number of threads sorting and writing runs
+	 */
+	ExternalSorter(File tmpDir, long memoryBytes, int nbrThreads) {
+		this(tmpDir, memoryBytes, nbrThreads, DEFAULT_MERGE_FAN_IN);
+	}
+
+	/**
+	 * Creates a sorter.
+	 * @param tmpDir the folder of the run files, or null for the default temporary folder
+	 * @param memoryBytes the heap available to the buffered records
+	 * @param nbrThreads the number of threads sorting and writing runs
+	 * @param mergeFanIn the maximum number of runs merged at once
+	 */
+	ExternalSorter(File tmpDir, long memoryBytes, int nbrThreads, int mergeFanIn) {
+		this.tmpDir = tmpDir;
+		// the buffer being filled and the buffers being sorted share the budget
+		this.bufferBytes = Math.max(1, memoryBytes / (nbrThreads + 1));
+		this.mergeFanIn = Math.max(2, mergeFanIn);
+		this.sortSlots = new Semaphore(nbrThreads);
+		this.sorters = Executors.newFixedThreadPool(nbrThreads, new ThreadFactory() {
+			private final int sorterId = nbrSorters.incrementAndGet();
+			private final AtomicInteger nbrThreadsCreated = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "external-sorter-" + sorterId + "-" +
+						nbrThreadsCreated.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Adds a record. Blocks while all the sorting threads are busy and the buffer is full.
+	 * @param key the sort key of the record
+	 * @param record the record
+	 * @throws IOException when a run cannot be written, or the thread is interrupted.
+	 */
+	void add(String key, String record) throws IOException {
+		buffer.add(new Entry(key, record));
+		bufferedBytes += 2L * (key.length() + record.length()) + ENTRY_OVERHEAD;
+		nbrRecords++;
+
+		if(bufferedBytes >= bufferBytes)
+			spill();
+	}
+
+	private void spill() throws IOException {
+		final List<Entry> run = buffer;
+		buffer = new ArrayList<Entry>();
+		bufferedBytes = 0;
+
+		try {
+			sortSlots.acquire();
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while sorting records.", interruptedException);
+		}
+
+		try {
+			pendingRuns.add(sorters.submit(new Callable<File>() {
+				@Override
+				public File call() throws IOException {
+					try {
+						long start = System.nanoTime();
+						Collections.sort(run);
+						File runFile = writeRun(new SortedRecords(
+								Collections.<RunCursor>singletonList(new MemoryCursor(run.iterator())),
+								Collections.<File>emptyList()));
+						sortNanos.addAndGet(System.nanoTime() - start);
+						return runFile;
+					} finally {
+						sortSlots.release();
+					}
+				}
+			}));
+		} catch (RuntimeException rejectedException) {
+			sortSlots.release();
+			throw rejectedException;
+		}
+
+		nbrRuns++;
+	}
+
+	/**
+	 * Writes sorted records to a new run file, then closes them.
+	 */
+	private File writeRun(SortedRecords records) throws IOException {
+		File runFile;
+		DataOutputStream out;
+
+		try {
+			runFile = File.createTempFile("sort", ".run", tmpDir);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), BUFFER_SIZE));
+		} catch (IOException ioException) {
+			records.close();
+			throw ioException;
+		}
+
+		try {
+			while(records.next()) {
+				writeString(out, records.getKey());
+				writeString(out, records.getRecord());
+			}
+		} catch (IOException ioException) {
+			out.close();
+			runFile.delete();
+			throw ioException;
+		} finally {
+			records.close();
+		}
+
+		out.close();
+		spilledBytes.addAndGet(runFile.length());
+		return runFile;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Sorts the remaining records and returns all the records in order. No record can be added afterwards.
+	 * @return the sorted records, to be closed after reading.
+	 * @throws IOException when a run cannot be written or merged.
+	 */
+	SortedRecords sort() throws IOException {
+		if(pendingRuns.isEmpty()) {
+			long start = System.nanoTime();
+			Collections.sort(buffer);
+			sortNanos.addAndGet(System.nanoTime() - start);
+
+			List<RunCursor> cursors = new ArrayList<RunCursor>();
+			cursors.add(new MemoryCursor(buffer.iterator()));
+			buffer = new ArrayList<Entry>();
+			return new SortedRecords(cursors, Collections.<File>emptyList());
+		}
+
+		if(!buffer.isEmpty())
+			spill();
+
+		awaitRuns();
+
+		long start = System.nanoTime();
+
+		while(runs.size() > mergeFanIn) {
+			List<File> group = new ArrayList<File>(runs.subList(0, mergeFanIn));
+			runs.removeAll(group);
+			runs.add(writeRun(new SortedRecords(openRuns(group), group)));
+		}
+
+		mergeNanos += System.nanoTime() - start;
+
+		List<File> finalRuns = new ArrayList<File>(runs);
+		runs.clear();
+		return new SortedRecords(openRuns(finalRuns), finalRuns);
+	}
+
+	private void awaitRuns() throws IOException {
+		IOException failure = null;
+
+		for(Future<File> pendingRun : pendingRuns) {
+			try {
+				runs.add(pendingRun.get());
+			} catch (ExecutionException executionException) {
+				if(failure == null)
+					failure = executionException.getCause() instanceof IOException ?
+							(IOException) executionException.getCause() :
+							new IOException("Cannot sort records.", executionException.getCause());
+			} catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while sorting records.", interruptedException);
+			}
+		}
+
+		pendingRuns.clear();
+
+		if(failure != null)
+			throw failure;
+	}
+
+	private List<RunCursor> openRuns(List<File> runFiles) throws IOException {
+		List<RunCursor> cursors = new ArrayList<RunCursor>(runFiles.size());
+
+		try {
+			for(File runFile : runFiles)
+				cursors.add(new FileCursor(runFile));
+		} catch (IOException ioException) {
+			for(RunCursor cursor : cursors)
+				cursor.close();
+			throw ioException;
+		}
+
+		return cursors;
+	}
+
+	/**
+	 * @return the number of records added.
+	 */
+	long getNbrRecords() {
+		return nbrRecords;
+	}
+
+	/**
+	 * @return the number of sorted runs written to disk, 0 when the records were sorted in memory.
+	 */
+	int getNbrRuns() {
+		return nbrRuns;
+	}
+
+	/**
+	 * @return the size of the runs written to disk, in bytes, including the runs of intermediate merges.
+	 */
+	long getSpilledBytes() {
+		return spilledBytes.get();
+	}
+
+	/**
+	 * @return the time spent sorting and writing runs, summed over the sorting threads, in nanoseconds.
+	 */
+	long getSortNanos() {
+		return sortNanos.get();
+	}
+
+	/**
+	 * @return the time spent in intermediate merges, in nanoseconds.
+	 */
+	long getMergeNanos() {
+		return mergeNanos;
+	}
+
+	/**
+	 * Stops the sorting threads and deletes the run files not handed to sorted records.
+	 */
+	@Override
+	public void close() {
+		for(Future<File> pendingRun : pendingRuns) {
+			if(pendingRun.cancel(true))
+				continue;
+
+			try {
+				runs.add(pendingRun.get());
+			} catch (ExecutionException executionException) {
+				// the run was not written
+			} catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		pendingRuns.clear();
+		sorters.shutdownNow();
+
+		for(File runFile : runs)
+			runFile.delete();
+		runs.clear();
+		buffer = new ArrayList<Entry>();
+	}
+
+	/**
+	 * A sorted source of entries: a sorted buffer or a run file.
+	 */
+	private abstract static class RunCursor implements Comparable<RunCursor> {
+		Entry current;
+
+		/**
+		 * Moves to the next entry.
+		 * @return false at the end of the source.
+		 */
+		abstract boolean advance() throws IOException;
+
+		void close() {
+		}
+
+		@Override
+		public int compareTo(RunCursor other) {
+			return current.compareTo(other.current);
+		}
+	}
+
+	private static final class MemoryCursor extends RunCursor {
+		private final Iterator<Entry> entries;
+
+		MemoryCursor(Iterator<Entry> entries) {
+			this.entries = entries;
+		}
+
+		@Override
+		boolean advance() {
+			current = entries.hasNext() ? entries.next() : null;
+			return current != null;
+		}
+	}
+
+	private static final class FileCursor extends RunCursor {
+		private final DataInputStream in;
+
+		FileCursor(File runFile) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), BUFFER_SIZE));
+		}
+
+		@Override
+		boolean advance() throws IOException {
+			String key;
+
+			try {
+				key = readString(in);
+			} catch (EOFException endOfRun) {
+				current = null;
+				return false;
+			}
+
+			current = new Entry(key, readString(in));
+			return true;
+		}
+
+		@Override
+		void close() {
+			try {
+				in.close();
+			} catch (IOException ioException) {
+				// nothing left to read
+			}
+		}
+	}
+
+	/**
+	 * The sorted records, read through a k-way merge of sorted sources.
+	 */
+	static final class SortedRecords implements Closeable {
+		private final PriorityQueue<RunCursor> queue;
+		private final List<RunCursor> cursors;
+		private final List<File> runFiles;
+		private RunCursor pending;
+		private Entry current;
+
+		private SortedRecords(List<RunCursor> cursors, List<File> runFiles) throws IOException {
+			this.cursors = cursors;
+			this.runFiles = runFiles;
+			this.queue = new PriorityQueue<RunCursor>(Math.max(1, cursors.size()));
+
+			try {
+				for(RunCursor cursor : cursors)
+					if(cursor.advance())
+						queue.add(cursor);
+			} catch (IOException ioException) {
+				close();
+				throw ioException;
+			}
+		}
+
+		/**
+		 * Moves to the next record.
+		 * @return false when all the records were read.
+		 * @throws IOException when a run cannot be read.
+		 */
+		boolean next() throws IOException {
+			if(pending != null && pending.advance())
+				queue.add(pending);
+
+			pending = queue.poll();
+			current = pending == null ? null : pending.current;
+			return current != null;
+		}
+
+		String getKey() {
+			return current.key;
+		}
+
+		String getRecord() {
+			return current.record;
+		}
+
+		/**
+		 * Closes and deletes the runs.
+		 */
+		@Override
+		public void close() {
+			for(RunCursor cursor : cursors)
+				cursor.close();
+
+			for(File runFile : runFiles)
+				runFile.delete();
+		}
+	}
+}
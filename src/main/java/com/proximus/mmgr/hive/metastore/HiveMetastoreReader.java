@@ -5,9 +5,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -15,13 +19,11 @@ import java.util.logging.SimpleFormatter;
 
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
-import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
-import org.apache.hadoop.hive.metastore.api.FieldSchema;
 import org.apache.hadoop.hive.metastore.api.MetaException;
-import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
-import org.apache.hadoop.hive.metastore.api.Table;
-import org.apache.thrift.TException;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.thrift.TException;
+
+import com.proximus.mmgr.ElementWritable;
 
 /**
  * Reads the Hive Metastore repository using the Hive Metastore api, and exports Hive Metadata into a set of
@@ -35,19 +37,55 @@ public class HiveMetastoreReader {
 	private static final String KEYTAB_AUTHENTICATION_METHOD = "keytab";
 	private static final String TICKET_AUTHENTICATION_METHOD = "ticket";
 	private static final String NO_AUTHENTICATION_METHOD = "none";
+	private static final String THRIFT_METASTORE_SOURCE = "thrift";
+	private static final String SYNTHETIC_METASTORE_SOURCE = "synthetic";
+	private static final String JDBC_METASTORE_SOURCE = "jdbc";
 	private static final String PROPERTIES_FILE = "./etc/HiveMetastoreConfig.xml";
+	private static final int DEFAULT_TABLE_BATCH_SIZE = 100;
+	private static final int DEFAULT_EXPORT_THREADS = 1;
+	private static final int DEFAULT_PIPELINE_QUEUE_CAPACITY = 16;
+	private static final int DEFAULT_CHECKPOINT_INTERVAL_SECONDS = 60;
+	private static final String RESUME_ARGUMENT = "--resume";
+	private static final String DAEMON_ARGUMENT = "--daemon";
+	private static final String SYNC_ARGUMENT = "--sync";
+	private static final String FROM_SNAPSHOT_ARGUMENT = "--from-snapshot";
+	private static final String DIFF_ARGUMENT = "--diff";
 	private static final Logger logger = Logger.getLogger(HiveMetastoreReader.class.getName());
 	private static FileHandler logFileHandler;
 
 	/**
 	 * Reads the HiveMetastoreReader configuration file, connects to the HiveMetastore and exports Hive Metadata
 	 * to a set of csv files 
-	 * @param args not used
+	 * @param args <b>--resume</b> to resume an interrupted export from its checkpoint journal, <b>--daemon</b> to keep
+	 * running and export on a schedule or when triggered, <b>--sync</b> to write delta files from the HiveMetastore
+	 * notification log, <b>--from-snapshot</b> to regenerate the csv files from the snapshot store, <b>--diff</b>
+	 * followed by the folder of a previous export to write the changes between that export and the output folder
 	 */
 	public static void main(String[] args) 
 	{
-		HiveMetastoreReader thisReader = new HiveMetastoreReader();
 		Properties metastoreReaderProperties = new Properties();
+		boolean resume = false;
+		boolean daemon = false;
+		boolean sync = false;
+		boolean fromSnapshot = false;
+		File diffDir = null;
+		
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			
+			if(arg.equals(DIFF_ARGUMENT) && i + 1 < args.length)
+				diffDir = new File(args[++i]);
+			else if(arg.equals(RESUME_ARGUMENT))
+				resume = true;
+			else if(arg.equals(DAEMON_ARGUMENT))
+				daemon = true;
+			else if(arg.equals(SYNC_ARGUMENT))
+				sync = true;
+			else if(arg.equals(FROM_SNAPSHOT_ARGUMENT))
+				fromSnapshot = true;
+			else
+				logger.log(Level.WARNING, "Unknown argument ignored: " + arg);
+		}
 		
 		//Read the program configuration file
 		try {
@@ -65,22 +103,619 @@ public class HiveMetastoreReader {
 			System.exit(-1);
 		}
 		
-		MetadataBufferedWriters bufferedWriters = thisReader.new MetadataBufferedWriters(metastoreReaderProperties);
-
-		//Read hive-site configuration and creates a hive metastore client
+		if(diffDir != null) {
+			if(resume || daemon || sync || fromSnapshot) {
+				logger.log(Level.SEVERE, DIFF_ARGUMENT + " cannot be used with " + RESUME_ARGUMENT + ", " +
+						DAEMON_ARGUMENT + ", " + SYNC_ARGUMENT + " or " + FROM_SNAPSHOT_ARGUMENT + ".");
+				System.exit(-1);
+			}
+			
+			if(!diffExports(metastoreReaderProperties, diffDir))
+				System.exit(-1);
+			return;
+		}
+		
+		if(fromSnapshot) {
+			if(resume || daemon || sync) {
+				logger.log(Level.SEVERE, FROM_SNAPSHOT_ARGUMENT + " cannot be used with " + RESUME_ARGUMENT + ", " +
+						DAEMON_ARGUMENT + " or " + SYNC_ARGUMENT + ".");
+				System.exit(-1);
+			}
+			
+			if(!exportFromSnapshotStore(metastoreReaderProperties))
+				System.exit(-1);
+			return;
+		}
+		
+		if(sync) {
+			if(resume || daemon) {
+				logger.log(Level.SEVERE, SYNC_ARGUMENT + " cannot be used with " + RESUME_ARGUMENT + " or " +
+						DAEMON_ARGUMENT + ".");
+				System.exit(-1);
+			}
+			
+			runSync(metastoreReaderProperties);
+			return;
+		}
+		
+		if(daemon) {
+			if(resume) {
+				logger.log(Level.SEVERE, RESUME_ARGUMENT + " cannot be used with " + DAEMON_ARGUMENT + ".");
+				System.exit(-1);
+			}
+			
+			runDaemon(metastoreReaderProperties);
+			return;
+		}
+		
+		ExportCheckpoint checkpoint = null;
+		
 		try {
-			HiveMetaStoreClient hiveClient = new HiveMetaStoreClient(getHiveConfiguration(metastoreReaderProperties));
-			exportheaders(bufferedWriters);
-	    	exportDatabases(hiveClient, bufferedWriters);
-
+			checkpoint = createCheckpoint(metastoreReaderProperties, resume);
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot read the checkpoint journal.", ioException);
+			System.exit(-1);
+		} catch (InvalidParameterException parameterException) {
+			logger.log(Level.SEVERE, parameterException.getMessage(), parameterException);
+			System.exit(-1);
+		}
+		
+		ResilientMetastoreSource.CallStatistics callStatistics = new ResilientMetastoreSource.CallStatistics();
+		ExportMetrics metrics = new ExportMetrics();
+		MetastoreSourcePool sourcePool = null;
+		metrics.register();
+		
+		//Read hive-site configuration and creates a pool of hive metastore clients
+		try {
+			sourcePool = openMetastoreSourcePool(metastoreReaderProperties, callStatistics, metrics);
+			export(metastoreReaderProperties, sourcePool, checkpoint, metrics);
+			
+			if(sourcePool != null)
+				callStatistics.logStatistics();
 		} catch (MetaException metaException) {
         	logger.log(Level.SEVERE, "Cannot access Hive Metastore ! Make sure the HiveMetastoreConfig.xml properties " +
         			"correctly references the hive-site.xml file location on your cluster.", metaException);
 		} catch (InvalidParameterException parameterException) {
 			logger.log(Level.SEVERE, parameterException.getMessage(), parameterException);
 		} finally {
-			bufferedWriters.closeBufferedWriters();
+			if(sourcePool != null)
+				sourcePool.close();
+			completeMetrics(metastoreReaderProperties, metrics);
+			metrics.unregister();
+		}
+	}
+	
+	/**
+	 * Runs the exports in a daemon until the process is stopped. The HiveMetastore connections are opened once and
+	 * kept for all the exports.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 */
+	protected static void runDaemon(Properties hiveMetastoreProps)
+	{
+		ResilientMetastoreSource.CallStatistics callStatistics = new ResilientMetastoreSource.CallStatistics();
+		ExportMetrics metrics = new ExportMetrics();
+		
+		try {
+			final ExportDaemon daemon = new ExportDaemon(hiveMetastoreProps,
+					openMetastoreSourcePool(hiveMetastoreProps, callStatistics, metrics), callStatistics, metrics);
+			
+			Runtime.getRuntime().addShutdownHook(new Thread("export-daemon-shutdown") {
+				@Override
+				public void run() {
+					daemon.stop();
+				}
+			});
+			
+			daemon.start();
+			daemon.awaitTermination();
+		} catch (MetaException metaException) {
+        	logger.log(Level.SEVERE, "Cannot access Hive Metastore ! Make sure the HiveMetastoreConfig.xml properties " +
+        			"correctly references the hive-site.xml file location on your cluster.", metaException);
+			System.exit(-1);
+		} catch (InvalidParameterException parameterException) {
+			logger.log(Level.SEVERE, parameterException.getMessage(), parameterException);
+			System.exit(-1);
+		} catch (InterruptedException interruptedException) {
+			logger.log(Level.WARNING, "Export daemon interrupted.", interruptedException);
+		}
+	}
+	
+	/**
+	 * Keeps the output files in sync with the HiveMetastore notification log. The log is read every
+	 * <i>sync_poll_seconds</i> seconds until the process is stopped, or once when the interval is 0.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 */
+	protected static void runSync(Properties hiveMetastoreProps)
+	{
+		ResilientMetastoreSource.CallStatistics callStatistics = new ResilientMetastoreSource.CallStatistics();
+		ExportMetrics metrics = new ExportMetrics();
+		final CountDownLatch stopped = new CountDownLatch(1);
+		final Thread syncThread = Thread.currentThread();
+		MetastoreSourcePool sourcePool = null;
+		
+		try {
+			int pollSeconds = getIntProperty(hiveMetastoreProps, "sync_poll_seconds", 0, 0);
+			
+			sourcePool = openMetastoreSourcePool(hiveMetastoreProps, callStatistics, metrics);
+			if(sourcePool == null)
+				throw new InvalidParameterException(SYNC_ARGUMENT + " requires the HiveMetastore api, not the " +
+						JDBC_METASTORE_SOURCE + " source.");
+			
+			MetastoreSync sync = new MetastoreSync(hiveMetastoreProps, sourcePool, metrics);
+			
+			Runtime.getRuntime().addShutdownHook(new Thread("sync-shutdown") {
+				@Override
+				public void run() {
+					// lets the running sync complete and save its state
+					stopped.countDown();
+					try {
+						syncThread.join(TimeUnit.MINUTES.toMillis(10));
+					} catch (InterruptedException interruptedException) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			
+			do {
+				try {
+					sync.sync();
+				} catch (TException metaException) {
+					logger.log(Level.SEVERE, "Cannot access Hive Metastore while reading the notification log, " +
+							"the events are read again by the next sync.", metaException);
+				} catch (IOException ioException) {
+					logger.log(Level.SEVERE, "Cannot write the delta files or the sync state, the events are read " +
+							"again by the next sync.", ioException);
+				}
+			} while(pollSeconds > 0 && !stopped.await(pollSeconds, TimeUnit.SECONDS));
+			
+			callStatistics.logStatistics();
+		} catch (MetaException metaException) {
+        	logger.log(Level.SEVERE, "Cannot access Hive Metastore ! Make sure the HiveMetastoreConfig.xml properties " +
+        			"correctly references the hive-site.xml file location on your cluster.", metaException);
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot read the sync state.", ioException);
+		} catch (InvalidParameterException parameterException) {
+			logger.log(Level.SEVERE, parameterException.getMessage(), parameterException);
+		} catch (InterruptedException interruptedException) {
+			logger.log(Level.WARNING, "Sync interrupted.", interruptedException);
+		} finally {
+			if(sourcePool != null)
+				sourcePool.close();
+		}
+	}
+	
+	/**
+	 * Opens the pool of HiveMetastore sources shared by the export threads, of <i>metastore_pool_size</i> sources
+	 * (default <i>export_threads</i>, plus <i>statistics_threads</i> when the statistics are exported).
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param callStatistics the statistics of the retried calls, updated by the sources.
+	 * @param metrics the metrics receiving the latency of the calls and the time spent opening the sources.
+	 * @return the pool of sources, or null for the jdbc source, which does not use the HiveMetastore api.
+	 * @throws MetaException when a connection to the HiveMetastore cannot be opened.
+	 * @throws InvalidParameterException when the source properties are invalid.
+	 */
+	protected static MetastoreSourcePool openMetastoreSourcePool(Properties hiveMetastoreProps,
+			ResilientMetastoreSource.CallStatistics callStatistics, ExportMetrics metrics)
+			throws MetaException, InvalidParameterException {
+		if(hiveMetastoreProps.getProperty("metastore_source", THRIFT_METASTORE_SOURCE).equals(JDBC_METASTORE_SOURCE))
+			return null;
+		
+		int nbrExportThreads = getIntProperty(hiveMetastoreProps, "export_threads", DEFAULT_EXPORT_THREADS);
+		int nbrStatisticsThreads = getStatisticsFile(hiveMetastoreProps) == null ? 0 :
+				getIntProperty(hiveMetastoreProps, "statistics_threads", StatisticsExporter.DEFAULT_STATISTICS_THREADS);
+		int clientPoolSize = getIntProperty(hiveMetastoreProps, "metastore_pool_size",
+				nbrExportThreads + nbrStatisticsThreads);
+		
+		if(nbrStatisticsThreads > 0 && clientPoolSize <= nbrStatisticsThreads)
+			throw new InvalidParameterException("metastore_pool_size must be larger than statistics_threads when the " +
+					"statistics are exported.");
+		
+		return new MetastoreSourcePool(openMetastoreSources(hiveMetastoreProps, clientPoolSize, callStatistics,
+				metrics));
+	}
+	
+	/**
+	 * Runs one export to the output files, with the exporter selected by the <i>metastore_source</i>,
+	 * <i>export_threads</i> and <i>pipeline_serializer_threads</i> properties. The output files are overwritten,
+	 * unless the export is resumed from a checkpoint.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param sourcePool the pool of HiveMetastore sources, or null for the jdbc source.
+	 * @param checkpoint the checkpoints of the export, or null when checkpoints are disabled.
+	 * @param metrics the metrics of the export.
+	 * @return true when the export completed without failure.
+	 * @throws InvalidParameterException when the export properties are invalid.
+	 */
+	protected static boolean export(Properties hiveMetastoreProps, MetastoreSourcePool sourcePool,
+			ExportCheckpoint checkpoint, ExportMetrics metrics) throws InvalidParameterException {
+		int tableBatchSize = getIntProperty(hiveMetastoreProps, "table_batch_size", DEFAULT_TABLE_BATCH_SIZE);
+		int nbrExportThreads = getIntProperty(hiveMetastoreProps, "export_threads", DEFAULT_EXPORT_THREADS);
+		int nbrSerializerThreads = getIntProperty(hiveMetastoreProps, "pipeline_serializer_threads", 0, 0);
+		int pipelineQueueCapacity = getIntProperty(hiveMetastoreProps, "pipeline_queue_capacity",
+				DEFAULT_PIPELINE_QUEUE_CAPACITY);
+		int partitionPageSize = getIntProperty(hiveMetastoreProps, "partition_page_size",
+				MetastoreExporter.DEFAULT_PARTITION_PAGE_SIZE, 0);
+		
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(hiveMetastoreProps,
+				checkpoint != null ? checkpoint.getResumeOffsets() : null);
+		bufferedWriters.setMetrics(metrics);
+		SnapshotStore.Writer snapshotStore = null;
+		StatisticsExporter statisticsExporter = null;
+		boolean writersClosed = false;
+		
+		try {
+			MetastoreExporter exporter;
+			
+			if(sourcePool == null)
+				exporter = createJdbcExporter(hiveMetastoreProps, bufferedWriters, tableBatchSize);
+			else if(nbrSerializerThreads > 0)
+				exporter = new PipelinedMetastoreExporter(bufferedWriters, sourcePool, tableBatchSize,
+						nbrExportThreads, nbrSerializerThreads, pipelineQueueCapacity);
+			else if(nbrExportThreads > 1)
+				exporter = new ParallelMetastoreExporter(bufferedWriters, sourcePool, tableBatchSize,
+						nbrExportThreads);
+			else
+				exporter = new MetastoreExporter(bufferedWriters, sourcePool, tableBatchSize);
+			
+			exporter.setMetrics(metrics);
+			exporter.setPartitionPageSize(partitionPageSize);
+			exporter.setFilter(MetastoreFilter.create(hiveMetastoreProps));
+			
+			if(checkpoint != null) {
+				checkpoint.open(bufferedWriters);
+				exporter.setCheckpoint(checkpoint);
+			}
+			
+			File snapshotFile = getSnapshotFile(hiveMetastoreProps);
+			TableSnapshot snapshot = null;
+			snapshotStore = createSnapshotStore(hiveMetastoreProps, checkpoint);
+			
+			if(snapshotStore != null)
+				exporter.setSnapshotStore(snapshotStore);
+			
+			statisticsExporter = createStatisticsExporter(hiveMetastoreProps, sourcePool, checkpoint,
+					partitionPageSize, metrics);
+			
+			if(statisticsExporter != null)
+				exporter.setStatisticsExporter(statisticsExporter);
+			
+			if(snapshotFile != null) {
+				snapshot = TableSnapshot.load(snapshotFile);
+				logger.log(Level.INFO, "Incremental export against " + snapshot.getPreviousSize() +
+						" elements of snapshot " + snapshotFile.getAbsolutePath());
+				exporter.setSnapshot(snapshot);
+			}
+			
+			exporter.export();
+			
+			if(statisticsExporter != null)
+				statisticsExporter.close();
+			exporter.logStatistics();
+			
+			// the last checkpoint of an incomplete export flushes the output files, which must still be open
+			if(checkpoint != null)
+				checkpoint.close(exporter.getNbrFailures() == 0);
+			
+			// sorted records, compressed trailers and the manifest are only written when the outputs are closed
+			writersClosed = true;
+			boolean complete = bufferedWriters.closeBufferedWriters() && exporter.getNbrFailures() == 0;
+			
+			if(snapshot != null)
+				completeIncrementalExport(hiveMetastoreProps, exporter, snapshot, snapshotFile, complete);
+			
+			if(snapshotStore != null)
+				snapshotStore.close(complete);
+			
+			return complete;
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot read or write the incremental export snapshot, the snapshot store or " +
+					"the checkpoint journal.", ioException);
+			return false;
+		} finally {
+			if(statisticsExporter != null)
+				statisticsExporter.close();
+			if(snapshotStore != null)
+				snapshotStore.discard();
+			if(!writersClosed)
+				bufferedWriters.closeBufferedWriters();
+		}
+	}
+	
+	/**
+	 * Stops the metrics of the export, logs them and writes them to <i>metastore_metrics_file</i> (default
+	 * HiveMetastoreMetrics.csv) in the output folder.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param metrics the metrics of the export.
+	 */
+	protected static void completeMetrics(Properties hiveMetastoreProps, ExportMetrics metrics) {
+		metrics.stop();
+		metrics.logStatistics();
+		
+		try {
+			metrics.writeSummary(new File(hiveMetastoreProps.getProperty("metastore_output_dir") + "/" +
+					hiveMetastoreProps.getProperty("metastore_metrics_file", "HiveMetastoreMetrics.csv")));
+		} catch (IOException ioException) {
+			logger.log(Level.WARNING, "Cannot write the export metrics file.", ioException);
+		}
+	}
+	
+	/**
+	 * Returns the snapshot file of the incremental export, set by the <i>incremental_snapshot_file</i> property
+	 * relatively to the output folder.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @return the snapshot file, or null when the export is not incremental.
+	 */
+	protected static File getSnapshotFile(Properties hiveMetastoreProps) {
+		String snapshotFileName = hiveMetastoreProps.getProperty("incremental_snapshot_file");
+		
+		if(snapshotFileName == null || snapshotFileName.trim().isEmpty())
+			return null;
+		
+		return new File(hiveMetastoreProps.getProperty("metastore_output_dir") + "/" + snapshotFileName.trim());
+	}
+	
+	/**
+	 * Creates the writer of the snapshot store when the <i>snapshot_store_file</i> property sets the store file,
+	 * relatively to the output folder. A resumed export only sees the Elements written after its checkpoint: the
+	 * store is not written, and the previous store is kept.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param checkpoint the checkpoints of the export, or null when checkpoints are disabled.
+	 * @return the writer of the snapshot store, or null when the store is disabled.
+	 * @throws IOException when the store file cannot be created.
+	 */
+	protected static SnapshotStore.Writer createSnapshotStore(Properties hiveMetastoreProps,
+			ExportCheckpoint checkpoint) throws IOException {
+		File storeFile = getSnapshotStoreFile(hiveMetastoreProps);
+		
+		if(storeFile == null)
+			return null;
+		
+		if(checkpoint != null && checkpoint.isResumed()) {
+			logger.log(Level.WARNING, "The snapshot store is not written by a resumed export, " + storeFile +
+					" is kept.");
+			return null;
+		}
+		
+		return new SnapshotStore.Writer(storeFile);
+	}
+	
+	/**
+	 * Creates the exporter of the statistics when the <i>statistics_file</i> property sets the statistics file,
+	 * relatively to the output folder. The statistics are retrieved by <i>statistics_threads</i> threads (default 2),
+	 * by pages of <i>partition_page_size</i> Partitions, with sources reserved from the pool until the statistics
+	 * exporter is closed: the export threads never wait for the statistics threads to release a source while the
+	 * statistics threads wait for the export. They are not exported by the jdbc source, nor by a resumed
+	 * export, which only sees the Tables exported after its checkpoint.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param sourcePool the pool of HiveMetastore sources, or null for the jdbc source.
+	 * @param checkpoint the checkpoints of the export, or null when checkpoints are disabled.
+	 * @param partitionPageSize the number of Partitions per page, 0 when the export of Partitions is disabled
+	 * @param metrics the metrics of the export.
+	 * @return the exporter of the statistics, or null when the statistics are not exported.
+	 * @throws IOException when the statistics file cannot be created.
+	 * @throws InvalidParameterException when the statistics properties are invalid.
+	 */
+	protected static StatisticsExporter createStatisticsExporter(Properties hiveMetastoreProps,
+			MetastoreSourcePool sourcePool, ExportCheckpoint checkpoint, int partitionPageSize, ExportMetrics metrics)
+			throws IOException, InvalidParameterException {
+		File statisticsFile = getStatisticsFile(hiveMetastoreProps);
+		
+		if(statisticsFile == null)
+			return null;
+		
+		if(sourcePool == null) {
+			logger.log(Level.WARNING, "The statistics are not exported by the jdbc source.");
+			return null;
+		}
+		
+		if(checkpoint != null && checkpoint.isResumed()) {
+			logger.log(Level.WARNING, "The statistics are not exported by a resumed export, " + statisticsFile +
+					" is kept.");
+			return null;
+		}
+		
+		int nbrStatisticsThreads = getIntProperty(hiveMetastoreProps, "statistics_threads",
+				StatisticsExporter.DEFAULT_STATISTICS_THREADS);
+		Writer out = new BufferedWriter(new FileWriter(statisticsFile));
+		
+		if(MetadataBufferedWriters.isSortedOutput(hiveMetastoreProps))
+			out = new SortedOutputWriter(out, MetadataBufferedWriters.createSorter(hiveMetastoreProps),
+					ElementWritable.DEFAULT_SEPARATOR);
+		
+		MetastoreSourcePool statisticsPool;
+		
+		try {
+			statisticsPool = sourcePool.reserveSources(nbrStatisticsThreads);
+		} catch (InterruptedException interruptedException) {
+			out.close();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reserving the sources of the statistics.", interruptedException);
+		}
+		
+		StatisticsExporter statisticsExporter = new StatisticsExporter(statisticsPool, out, nbrStatisticsThreads,
+				partitionPageSize > 0 ? partitionPageSize : MetastoreExporter.DEFAULT_PARTITION_PAGE_SIZE);
+		statisticsExporter.setMetrics(metrics);
+		
+		try {
+			statisticsExporter.writeHeader();
+		} catch (IOException ioException) {
+			statisticsExporter.close();
+			throw ioException;
+		}
+		
+		return statisticsExporter;
+	}
+	
+	/**
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @return the statistics file set by the <i>statistics_file</i> property, or null when not set.
+	 */
+	protected static File getStatisticsFile(Properties hiveMetastoreProps) {
+		String statisticsFileName = hiveMetastoreProps.getProperty("statistics_file");
+		
+		if(statisticsFileName == null || statisticsFileName.trim().isEmpty())
+			return null;
+		
+		return new File(hiveMetastoreProps.getProperty("metastore_output_dir") + "/" + statisticsFileName.trim());
+	}
+	
+	/**
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @return the snapshot store file set by the <i>snapshot_store_file</i> property, or null when not set.
+	 */
+	protected static File getSnapshotStoreFile(Properties hiveMetastoreProps) {
+		String storeFileName = hiveMetastoreProps.getProperty("snapshot_store_file");
+		
+		if(storeFileName == null || storeFileName.trim().isEmpty())
+			return null;
+		
+		return new File(hiveMetastoreProps.getProperty("metastore_output_dir") + "/" + storeFileName.trim());
+	}
+	
+	/**
+	 * Regenerates the csv output files from the snapshot store, without accessing the HiveMetastore.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @return true when the output files were written.
+	 */
+	protected static boolean exportFromSnapshotStore(Properties hiveMetastoreProps) {
+		File storeFile = getSnapshotStoreFile(hiveMetastoreProps);
+		
+		if(storeFile == null) {
+			logger.log(Level.SEVERE, FROM_SNAPSHOT_ARGUMENT + " requires the snapshot_store_file property.");
+			return false;
+		}
+		
+		long start = System.currentTimeMillis();
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(hiveMetastoreProps);
+		boolean written = false;
+		
+		try {
+			SnapshotStore store = SnapshotStore.open(storeFile);
+			store.writeCsv(bufferedWriters);
+			logger.log(Level.INFO, store.getNbrDatabases() + " databases, " + store.getNbrTables() + " tables, " +
+					store.getNbrColumns() + " columns and " + store.getNbrPartitions() + " partitions exported from " +
+					storeFile.getAbsolutePath() + " in " + (System.currentTimeMillis() - start) + " ms.");
+			written = true;
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot export the snapshot store " + storeFile.getAbsolutePath(), ioException);
+		} finally {
+			written = bufferedWriters.closeBufferedWriters() && written;
+		}
+		
+		return written;
+	}
+	
+	/**
+	 * Compares a previous export with the export of the output folder, and writes the changes to
+	 * <i>metastore_diff_file</i> (default HiveMetastoreDiff.csv) in the output folder.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param previousDir the folder of the previous export
+	 * @return true when the diff file was written.
+	 */
+	protected static boolean diffExports(Properties hiveMetastoreProps, File previousDir) {
+		File currentDir = new File(hiveMetastoreProps.getProperty("metastore_output_dir"));
+		File diffFile = new File(currentDir, hiveMetastoreProps.getProperty("metastore_diff_file",
+				"HiveMetastoreDiff.csv"));
+		long start = System.currentTimeMillis();
+		
+		try {
+			new ExportDiff(hiveMetastoreProps).diff(previousDir, currentDir, diffFile);
+			logger.log(Level.INFO, "Changes since " + previousDir.getAbsolutePath() + " written to " +
+					diffFile.getAbsolutePath() + " in " + (System.currentTimeMillis() - start) + " ms.");
+			return true;
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot compare the export with " + previousDir.getAbsolutePath(), ioException);
+			return false;
+		} catch (InvalidParameterException parameterException) {
+			logger.log(Level.SEVERE, parameterException.getMessage(), parameterException);
+			return false;
+		}
+	}
+	
+	/**
+	 * Creates the checkpoints of the export when the <i>checkpoint_file</i> property sets the journal file, relatively
+	 * to the output folder. Checkpoints are taken every <i>checkpoint_interval_seconds</i> seconds at most (default
+	 * 60). They are only supported by the sequential and parallel exports through the HiveMetastore api, writing
+	 * unsorted, uncompressed single-file outputs; otherwise they are disabled.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param resume true to resume the export from the journal
+	 * @return the checkpoints of the export, or null when checkpoints are disabled.
+	 * @throws IOException when the journal cannot be read.
+	 * @throws InvalidParameterException when the export cannot be resumed.
+	 */
+	protected static ExportCheckpoint createCheckpoint(Properties hiveMetastoreProps, boolean resume)
+			throws IOException, InvalidParameterException {
+		String journalFileName = hiveMetastoreProps.getProperty("checkpoint_file");
+		
+		if(journalFileName == null || journalFileName.trim().isEmpty()) {
+			if(resume)
+				throw new InvalidParameterException(RESUME_ARGUMENT + " requires the checkpoint_file property.");
+			return null;
+		}
+		
+		String unsupportedReason = null;
+		
+		if(hiveMetastoreProps.getProperty("metastore_source", THRIFT_METASTORE_SOURCE).equals(JDBC_METASTORE_SOURCE))
+			unsupportedReason = "the jdbc source";
+		else if(getIntProperty(hiveMetastoreProps, "pipeline_serializer_threads", 0, 0) > 0)
+			unsupportedReason = "the pipelined export";
+		else if(!hiveMetastoreProps.getProperty("output_compression", "none").trim().equals("none") ||
+				!hiveMetastoreProps.getProperty("output_part_size", "0").trim().matches("0*"))
+			unsupportedReason = "compressed or rolled outputs";
+		else if(MetadataBufferedWriters.isSortedOutput(hiveMetastoreProps))
+			unsupportedReason = "sorted outputs";
+		
+		if(unsupportedReason != null) {
+			if(resume)
+				throw new InvalidParameterException("Cannot resume an export with " + unsupportedReason + ".");
+			logger.log(Level.WARNING, "Checkpoints are not supported with " + unsupportedReason + ", disabled.");
+			return null;
+		}
+		
+		File journalFile = new File(hiveMetastoreProps.getProperty("metastore_output_dir") + "/" +
+				journalFileName.trim());
+		long intervalMillis = TimeUnit.SECONDS.toMillis(getIntProperty(hiveMetastoreProps,
+				"checkpoint_interval_seconds", DEFAULT_CHECKPOINT_INTERVAL_SECONDS, 0));
+		
+		return resume ? ExportCheckpoint.resume(journalFile, intervalMillis) :
+			ExportCheckpoint.start(journalFile, intervalMillis);
+	}
+	
+	/**
+	 * Writes the deletions file and saves the snapshot of an incremental export. When the export did not complete,
+	 * Elements which were not seen cannot be considered as deleted: the deletions file is not written and the
+	 * previous fingerprints of those Elements are kept in the snapshot. Elements excluded by the filter of the export
+	 * are always kept. When an export with checkpoints did not complete, the snapshot is not saved, so that the
+	 * resumed export is compared with the same snapshot.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param exporter the exporter which ran the export
+	 * @param snapshot the snapshot updated by the export
+	 * @param snapshotFile the snapshot file
+	 * @param complete true when the export completed without failure and its output files were written
+	 * @throws IOException when the deletions or snapshot file cannot be written.
+	 */
+	protected static void completeIncrementalExport(Properties hiveMetastoreProps, MetastoreExporter exporter,
+			TableSnapshot snapshot, File snapshotFile, boolean complete) throws IOException {
+		
+		if(!exporter.getFilter().isEmpty())
+			logger.log(Level.INFO, snapshot.keepOutOfScope(exporter.getFilter()) + " elements excluded by the " +
+					"export filter kept in the snapshot.");
+		
+		if(complete) {
+			File deletionFile = new File(hiveMetastoreProps.getProperty("metastore_output_dir") + "/" +
+					hiveMetastoreProps.getProperty("metastore_deletion_file", "HiveMetastoreDeletions.csv"));
+			long nbrDeleted = snapshot.writeDeletions(deletionFile);
+			logger.log(Level.INFO, nbrDeleted + " deleted elements written to " + deletionFile.getAbsolutePath());
+		} else {
+			logger.log(Level.WARNING, "Export incomplete, deletions are not computed and unseen elements are kept " +
+					"in the snapshot.");
+		}
+		
+		if(!complete && exporter.getCheckpoint() != null) {
+			logger.log(Level.WARNING, "Snapshot not saved, the export can be resumed from its checkpoint.");
+			return;
 		}
+		
+		snapshot.save(snapshotFile, !complete);
 	}
 	
 	/**
@@ -102,7 +737,7 @@ public class HiveMetastoreReader {
 
 		logFileHandler = new FileHandler(metastoreReaderProperties.getProperty("logFile", "default.log"));
 		logFileHandler.setFormatter(new SimpleFormatter());
-		logger.addHandler(logFileHandler);
+		Logger.getLogger(HiveMetastoreReader.class.getPackage().getName()).addHandler(logFileHandler);
 
 		return metastoreReaderProperties;
 	}
@@ -129,19 +764,211 @@ public class HiveMetastoreReader {
 		
 		String authenticationMethod = hiveMetastoreProps.getProperty("authentication_method");
 		
-		if(!authenticationMethod.equals(KEYTAB_AUTHENTICATION_METHOD) ||
-				!authenticationMethod.equals(TICKET_AUTHENTICATION_METHOD) ||
+		if(!authenticationMethod.equals(KEYTAB_AUTHENTICATION_METHOD) &&
+				!authenticationMethod.equals(TICKET_AUTHENTICATION_METHOD) &&
 				!authenticationMethod.equals(NO_AUTHENTICATION_METHOD))
 			throw new InvalidParameterException("Invalid authentication_method: " + authenticationMethod);
 	}
 	
+	/**
+	 * Reads an optional integer property from the configuration file.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param key the name of the property.
+	 * @param defaultValue the value returned when the property is not set.
+	 * @return the value of the property, or the default value when the property is not set.
+	 * @throws InvalidParameterException when the property is not a strictly positive integer.
+	 */
+	protected static int getIntProperty(Properties hiveMetastoreProps, String key, int defaultValue)
+			throws InvalidParameterException {
+		return getIntProperty(hiveMetastoreProps, key, defaultValue, 1);
+	}
+	
+	/**
+	 * Reads an optional integer property from the configuration file.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param key the name of the property.
+	 * @param defaultValue the value returned when the property is not set.
+	 * @param minValue the minimum accepted value.
+	 * @return the value of the property, or the default value when the property is not set.
+	 * @throws InvalidParameterException when the property is not an integer greater than or equal to minValue.
+	 */
+	protected static int getIntProperty(Properties hiveMetastoreProps, String key, int defaultValue, int minValue)
+			throws InvalidParameterException {
+		String value = hiveMetastoreProps.getProperty(key);
+		
+		if(value == null || value.trim().isEmpty())
+			return defaultValue;
+		
+		try {
+			int intValue = Integer.parseInt(value.trim());
+			if(intValue < minValue)
+				throw new InvalidParameterException("Property " + key + " must be an integer >= " + minValue + ": " +
+						value);
+			return intValue;
+		} catch (NumberFormatException formatException) {
+			throw new InvalidParameterException("Property " + key + " must be an integer >= " + minValue + ": " +
+					value);
+		}
+	}
+	
+	/**
+	 * Opens the MetastoreSources used by the export. The <i>metastore_source</i> property selects the
+	 * implementation:
+	 * <br>- <b>thrift</b> (default): connections to the HiveMetastore described by the hive-site configuration.
+	 * <br>- <b>synthetic</b>: an in-memory catalog sized by the <i>synthetic_databases</i>,
+	 * <i>synthetic_tables_per_database</i> and <i>synthetic_columns_per_table</i> properties, with an optional
+	 * <i>synthetic_latency_micros</i> latency per call.<p>
+	 * The failed calls of the sources are retried as configured by <i>RetryPolicy.create</i>, a thrift source
+	 * reconnecting to the HiveMetastore after a transport failure.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param nbrSources the number of sources to open.
+	 * @param callStatistics the statistics of the retried calls, updated by the sources.
+	 * @param metrics the metrics receiving the latency of the calls and the time spent opening the sources.
+	 * @return the opened sources.
+	 * @throws MetaException when a connection to the HiveMetastore cannot be opened.
+	 * @throws InvalidParameterException when the source properties are invalid.
+	 */
+	protected static List<MetastoreSource> openMetastoreSources(Properties hiveMetastoreProps, int nbrSources,
+			ResilientMetastoreSource.CallStatistics callStatistics, ExportMetrics metrics)
+			throws MetaException, InvalidParameterException
+	{
+		RetryPolicy retryPolicy = RetryPolicy.create(hiveMetastoreProps);
+		String sourceType = hiveMetastoreProps.getProperty("metastore_source", THRIFT_METASTORE_SOURCE);
+		List<MetastoreSource> sources = new ArrayList<MetastoreSource>(nbrSources);
+		
+		if(sourceType.equals(SYNTHETIC_METASTORE_SOURCE)) {
+			int nbrDatabases = getIntProperty(hiveMetastoreProps, "synthetic_databases", 10);
+			int nbrTables = getIntProperty(hiveMetastoreProps, "synthetic_tables_per_database", 100);
+			int nbrColumns = getIntProperty(hiveMetastoreProps, "synthetic_columns_per_table", 50);
+			int nbrPartitions = getIntProperty(hiveMetastoreProps, "synthetic_partitions_per_table", 0, 0);
+			int latencyMicros = getIntProperty(hiveMetastoreProps, "synthetic_latency_micros", 0, 0);
+			
+			logger.log(Level.INFO, "Exporting a synthetic catalog of " + nbrDatabases + " databases, " + nbrTables +
+					" tables per database, " + nbrColumns + " columns and " + nbrPartitions + " partitions per table");
+			
+			for(int i = 0; i < nbrSources; i++) {
+				final SyntheticMetastoreSource source = new SyntheticMetastoreSource(nbrDatabases, nbrTables,
+						nbrColumns);
+				source.setNbrPartitionsPerTable(nbrPartitions);
+				source.setLatencyMicros(latencyMicros);
+				sources.add(new ResilientMetastoreSource(source, new ResilientMetastoreSource.SourceFactory() {
+					@Override
+					public MetastoreSource openSource() {
+						return source;
+					}
+				}, retryPolicy, callStatistics, metrics));
+			}
+		}
+		
+		else if(sourceType.equals(THRIFT_METASTORE_SOURCE)) {
+			final HiveConf hiveConf = getHiveConfiguration(hiveMetastoreProps, metrics);
+			ResilientMetastoreSource.SourceFactory sourceFactory = new ResilientMetastoreSource.SourceFactory() {
+				@Override
+				public MetastoreSource openSource() throws MetaException {
+					logger.log(Level.INFO, "Reopening a HiveMetastore connection");
+					return new ThriftMetastoreSource(hiveConf);
+				}
+			};
+			logger.log(Level.INFO, "Opening " + nbrSources + " HiveMetastore connection(s)");
+			long start = System.nanoTime();
+			
+			try {
+				for(int i = 0; i < nbrSources; i++)
+					sources.add(new ResilientMetastoreSource(new ThriftMetastoreSource(hiveConf), sourceFactory,
+							retryPolicy, callStatistics, metrics));
+			} catch (MetaException metaException) {
+				for(MetastoreSource source : sources)
+					source.close();
+				throw metaException;
+			} finally {
+				metrics.addPhase(ExportMetrics.Phase.CONNECTION, System.nanoTime() - start);
+			}
+		}
+		
+		else
+			throw new InvalidParameterException("Invalid metastore_source: " + sourceType);
+		
+		return sources;
+	}
+	
+	/**
+	 * Creates an exporter reading the HiveMetastore backing database, configured by the following properties:
+	 * <br>- <b>metastore_jdbc_url</b>: the JDBC url of the HiveMetastore database (mandatory).
+	 * <br>- <b>metastore_jdbc_driver</b>: the JDBC driver class, for drivers not registering themselves.
+	 * <br>- <b>metastore_jdbc_user</b> and <b>metastore_jdbc_password</b>: the database credentials.
+	 * <br>- <b>metastore_jdbc_fetch_size</b>: the number of rows fetched per round-trip (default 1000).
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param bufferedWriters the object managing the different file writers.
+	 * @param tableBatchSize the number of Tables written in a single call.
+	 * @return the JDBC exporter.
+	 * @throws InvalidParameterException when the JDBC properties are invalid.
+	 */
+	protected static MetastoreExporter createJdbcExporter(Properties hiveMetastoreProps,
+			MetadataBufferedWriters bufferedWriters, int tableBatchSize) throws InvalidParameterException
+	{
+		String jdbcUrl = hiveMetastoreProps.getProperty("metastore_jdbc_url");
+		if(jdbcUrl == null || jdbcUrl.trim().isEmpty())
+			throw new InvalidParameterException("Property metastore_jdbc_url is not set!");
+		
+		String driverClass = hiveMetastoreProps.getProperty("metastore_jdbc_driver");
+		if(driverClass != null && !driverClass.trim().isEmpty()) {
+			try {
+				Class.forName(driverClass.trim());
+			} catch (ClassNotFoundException classException) {
+				throw new InvalidParameterException("JDBC driver not found in classpath: " + driverClass);
+			}
+		}
+		
+		Properties connectionProperties = new Properties();
+		if(hiveMetastoreProps.containsKey("metastore_jdbc_user"))
+			connectionProperties.setProperty("user", hiveMetastoreProps.getProperty("metastore_jdbc_user"));
+		if(hiveMetastoreProps.containsKey("metastore_jdbc_password"))
+			connectionProperties.setProperty("password", hiveMetastoreProps.getProperty("metastore_jdbc_password"));
+		
+		int fetchSize = getIntProperty(hiveMetastoreProps, "metastore_jdbc_fetch_size",
+				JdbcMetastoreExporter.DEFAULT_FETCH_SIZE);
+		
+		return new JdbcMetastoreExporter(bufferedWriters, jdbcUrl.trim(), connectionProperties, tableBatchSize,
+				fetchSize);
+	}
+	
+	/**
+	 * Renews the Kerberos credentials of a long-running process, before they expire. With a keytab, a new ticket is
+	 * obtained when the current one is close to its end; with a ticket, the ticket cache, renewed outside of the
+	 * program, is read again.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @throws IOException when the credentials cannot be renewed.
+	 */
+	protected static void renewCredentials(Properties hiveMetastoreProps) throws IOException
+	{
+		String authenticationMethod = hiveMetastoreProps.getProperty("authentication_method");
+		
+		if(authenticationMethod.equals(KEYTAB_AUTHENTICATION_METHOD) && UserGroupInformation.isLoginKeytabBased())
+			UserGroupInformation.getLoginUser().checkTGTAndReloginFromKeytab();
+		else if(authenticationMethod.equals(TICKET_AUTHENTICATION_METHOD) && UserGroupInformation.isLoginTicketBased())
+			UserGroupInformation.getLoginUser().reloginFromTicketCache();
+	}
+	
 	/**
 	 * Reads the hive-site configuration file present in the <i>hive_conf_home</i> folder specified in the HiveMetastoreConfig.xml.
 	 * @param hiveMetastoreProps a set of properties for accessing the HiveMetastore and exporting metadata
 	 * @return a HiveConfiguration object for getting access to the HiveMetastore api.
 	 */
 	protected static HiveConf getHiveConfiguration(Properties hiveMetastoreProps) throws InvalidParameterException
+	{
+		return getHiveConfiguration(hiveMetastoreProps, new ExportMetrics());
+	}
+	
+	/**
+	 * Reads the hive-site configuration file present in the <i>hive_conf_home</i> folder specified in the HiveMetastoreConfig.xml.
+	 * @param hiveMetastoreProps a set of properties for accessing the HiveMetastore and exporting metadata
+	 * @param metrics the metrics receiving the time spent reading the configuration and authenticating
+	 * @return a HiveConfiguration object for getting access to the HiveMetastore api.
+	 */
+	protected static HiveConf getHiveConfiguration(Properties hiveMetastoreProps, ExportMetrics metrics)
+			throws InvalidParameterException
 	{		
+		long start = System.nanoTime();
 		String authenticationMethod= hiveMetastoreProps.getProperty("authentication_method");
 		String hiveConfFile = hiveMetastoreProps.getProperty("hive_conf_home") + 
 				hiveMetastoreProps.getProperty("hive_conf_file");
@@ -165,6 +992,9 @@ public class HiveMetastoreReader {
         hiveConf.set("hadoop.security.authentication", "Kerberos");
         UserGroupInformation.setConfiguration(hiveConf);
         
+		metrics.addPhase(ExportMetrics.Phase.HIVE_CONFIGURATION, System.nanoTime() - start);
+		start = System.nanoTime();
+		
 		try {
 			// Keytab authentication
 			if(authenticationMethod.equals(KEYTAB_AUTHENTICATION_METHOD)) {
@@ -196,235 +1026,10 @@ public class HiveMetastoreReader {
 		} catch (IOException ioException) {
 			logger.log(Level.WARNING, "Cannot read Keytab file or Kerberos ticket.", ioException);
 			return null;
+		} finally {
+			metrics.addPhase(ExportMetrics.Phase.AUTHENTICATION, System.nanoTime() - start);
 		}
         
         return hiveConf;
 	}
-	
-	/**
-	 * Writes the Header records to the Database, Table and Column output files.
-	 * @param bufferedWriters the object managing the different file writers.
-	 */
-	private static void exportheaders(MetadataBufferedWriters bufferedWriters) {
-		DatabaseElement dbElement = new DatabaseElement();
-		TableElement tableElement = new TableElement();
-		ColumnElement colElement = new ColumnElement();
-		
-		try {
-			dbElement.writeHeader(bufferedWriters.getDatabaseBufferedWriter());
-		} catch (IOException ioException) {
-			logger.log(Level.SEVERE, "Cannot write to database output file.", ioException);
-		}
-		
-		try {
-			tableElement.writeHeader(bufferedWriters.getTableBufferedWriter());
-		} catch (IOException ioException) {
-			logger.log(Level.SEVERE, "Cannot write to table output file.", ioException);
-		}
-		
-		try {
-			colElement.writeHeader(bufferedWriters.getColumnBufferedWriter());
-		} catch (IOException ioException) {
-			logger.log(Level.SEVERE, "Cannot write to column output file.", ioException);
-		}
-	}
-
-	/**
-	 * Writes the Hive Databases Metadata to the Databases output file.
-	 * @param hiveClient the Hive Client session handler
-	 * @param bufferedWriters the object managing the different file writers.
-	 */
-	private static void exportDatabases(HiveMetaStoreClient hiveClient,
-			MetadataBufferedWriters bufferedWriters)
-	{
-		try
-		{
-			List<String> databases = hiveClient.getAllDatabases();
-
-			for(String dbName : databases)
-			{
-				logger.log(Level.INFO, "Exporting metadata for database: " + dbName);
-				DatabaseElement dbElement = new DatabaseElement(hiveClient.getDatabase(dbName));
-				dbElement.writeRecord(bufferedWriters.getDatabaseBufferedWriter());
-				exportTables(hiveClient, bufferedWriters, dbName);
-			}
-			
-		} catch (TException metaException) {
-			logger.log(Level.SEVERE, "Cannot access HiveMetastore while processing Databases.", metaException);
-		} catch (IOException ioException) {
-			logger.log(Level.SEVERE, "Cannot write to database output file.", ioException);
-		}
-	}
-	
-	/**
-	 * Writes the Hive Tables Metadata of the specified Database to the Tables output file.
-	 * @param hiveClient the Hive Client session handler
-	 * @param bufferedWriters the object managing the different file writers.
-	 * @param dbName the name of the Database holding the Tables to export 
-	 */
-	private static void exportTables(HiveMetaStoreClient hiveClient, MetadataBufferedWriters bufferedWriters,
-			String dbName)
-	{
-		int nbrTablesExported = 0;
-		
-		try
-		{	
-			List<String> tables = hiveClient.getAllTables(dbName);			
-		
-			//Export tables Metadata
-			for(String tableName : tables)
-			{
-				TableElement tableElement = new TableElement(hiveClient.getTable(dbName, tableName));
-				tableElement.writeRecord(bufferedWriters.getTableBufferedWriter());
-				exportColumns(hiveClient, bufferedWriters, dbName, tableName);
-				nbrTablesExported++;
-			}
-
-			logger.log(Level.INFO, nbrTablesExported + " tables sucessfully exported.");
-			
-		} catch (TException metaException) {
-			logger.log(Level.SEVERE, "Cannot access HiveMetastore while processing Tables.", metaException);
-		} catch (IOException ioException) {
-			logger.log(Level.SEVERE, "Cannot write to table output file.", ioException);
-		}		
-	}
-	
-	/**
-	 * Writes the Hive Columns Metadata of the specified Database and Table to the Columns output file.
-	 * @param hiveClient the Hive Client session handler
-	 * @param bufferedWriters the object managing the different file writers.
-	 * @param dbName the name of the Database holding the Table's Columns to export
-	 * @param tableName the name of the Table holding the Columns to export 
-	 */
-	private static void exportColumns(HiveMetaStoreClient hiveClient,
-			HiveMetastoreReader.MetadataBufferedWriters bufferedWriters, String dbName, String tableName)
-	{	
-		try
-		{			
-			Table table = hiveClient.getTable(dbName, tableName);
-			StorageDescriptor sd = table.getSd();
-			
-			//Export columns Metadata
-			for(FieldSchema field : sd.getCols())
-			{
-				ColumnElement colElement = new ColumnElement(table, field);
-				colElement.writeRecord(bufferedWriters.getColumnBufferedWriter());
-			}
-		
-		} catch (TException metaException) {
-			logger.log(Level.SEVERE, "Cannot access HiveMetastore while processing Columns.", metaException);
-		} catch (IOException ioException) {
-			logger.log(Level.SEVERE, "Cannot write to column output file.", ioException);
-		}
-	}
-	
-	/**
-	 * Helper class for opening and closing files to export Databases, Tables and Columns Metadata.
-	 * @author Jonathan Puvilland
-	 *
-	 */
-	 private class MetadataBufferedWriters {
-		private BufferedWriter databaseBuffer;
-		private BufferedWriter tableBuffer;
-		private BufferedWriter columnBuffer;
-		Properties metastoreReaderProperties;
-		
-		
-		/**
-		 * The constructor opens the 3 destination files and handles the buffers.
-		 * @param metastoreReaderProperties runtime configuration parameters containing specifications
-		 * for the 3 output files.
-		 */
-		MetadataBufferedWriters(Properties metastoreReaderProperties) {
-			
-			this.metastoreReaderProperties = metastoreReaderProperties;
-			
-			databaseBuffer = openDatabaseBufferedWriter();
-			tableBuffer = openTableBufferedWriter();
-			columnBuffer = openColumnBufferedWriter();
-			
-		}
-
-		private BufferedWriter openDatabaseBufferedWriter() {
-			BufferedWriter databaseBuffer;
-			
-			try {
-				File file = new File(
-	        		metastoreReaderProperties.getProperty("metastore_output_dir") + "/" +
-	        		metastoreReaderProperties.getProperty("metastore_database_file",
-	        		"HiveMetastoreDatabases.csv"));
-				
-				logger.log(Level.INFO, "Opening database output file: " + file.getAbsolutePath());
-				databaseBuffer = new BufferedWriter(new FileWriter(file));
-				
-				return databaseBuffer;
-			
-			} catch (IOException ioException) {
-				logger.log(Level.SEVERE, "Cannot open database output file.", ioException);
-				return null;
-			}
-		}
-
-		private BufferedWriter openTableBufferedWriter() {
-			BufferedWriter tableBuffer;
-			
-			try {
-				File file = new File(
-	        		metastoreReaderProperties.getProperty("metastore_output_dir") + "/" +
-	        		metastoreReaderProperties.getProperty("metastore_table_file",
-	        		"HiveMetastoreTables.csv"));
-	        
-				logger.log(Level.INFO, "Opening table output file: " + file.getAbsolutePath());
-				tableBuffer = new BufferedWriter(new FileWriter(file));
-				
-				return tableBuffer;
-			
-			} catch (IOException ioException) {
-				logger.log(Level.SEVERE, "Cannot open table output file.", ioException);
-				return null;
-			}
-		}
-
-		private BufferedWriter openColumnBufferedWriter() {
-			BufferedWriter columnBuffer;
-
-			try {
-		        File file = new File(
-		        		metastoreReaderProperties.getProperty("metastore_output_dir") + "/" +
-		        		metastoreReaderProperties.getProperty("metastore_column_file",
-		        		"HiveMetastoreColumns.csv"));
-	        
-				logger.log(Level.INFO, "Opening column output file: " + file.getAbsolutePath());
-				columnBuffer = new BufferedWriter(new FileWriter(file));
-				
-				return columnBuffer;
-			
-			} catch (IOException ioException) {
-				logger.log(Level.SEVERE, "Cannot open column output file.", ioException);
-				return null;
-			}
-		}
-		
-		private BufferedWriter getDatabaseBufferedWriter() {
-			return databaseBuffer;
-		}
-		
-		private BufferedWriter getTableBufferedWriter() {
-			return tableBuffer;
-		}
-		
-		private BufferedWriter getColumnBufferedWriter() {
-			return columnBuffer;
-		}
-		
-		private void closeBufferedWriters() {
-			try {
-				databaseBuffer.close();
-				tableBuffer.close();
-				columnBuffer.close();
-			} catch (IOException ioException) {
-				logger.log(Level.SEVERE, "Cannot close buffered writers", ioException);
-			}
-		}
-	}
 }
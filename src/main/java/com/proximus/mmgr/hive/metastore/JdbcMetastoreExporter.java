@@ -0,0 +1,355 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+
+/**
+ * Exports the Hive Metadata by reading the tables of the HiveMetastore backing database (<i>DBS</i>, <i>TBLS</i>,
+ * <i>SDS</i>, <i>COLUMNS_V2</i>, <i>TABLE_PARAMS</i>, <i>PARTITION_KEYS</i>, <i>PARTITIONS</i> and
+ * <i>PARTITION_PARAMS</i>) instead of calling the HiveMetastore api.<p>
+ * The complete catalog is read with five queries: one for the Databases, one joining the Tables with their
+ * Database, Storage Descriptor and parameters, one joining the Columns with their Table, one for the partition keys
+ * and one joining the Partitions with their Table and Storage Descriptor. The Tables, Columns and partition keys
+ * queries are all ordered by Table id and read together on three connections, like a merge join, so that each Table
+ * is rebuilt with its Columns without holding the catalog in memory. Partitions are read last, and written by pages
+ * of <i>partitionPageSize</i> records. Result sets are streamed with the configured fetch size.<p>
+ * Rows are converted to HiveMetastore Database and Table objects and written by the same code as the api export, so
+ * the output files are identical. Identifiers are quoted with the quote string of the JDBC driver, the HiveMetastore
+ * schemas (Derby, MySQL, PostgreSQL, Oracle, MS SQL Server) all using upper case table and column names.<p>
+ * The include and exclude patterns of the <i>MetastoreFilter</i> are applied to the rows read; the HiveMetastore
+ * filter on the Table attributes is not supported.
+ * @author Jonathan Puvilland
+ *
+ */
+class JdbcMetastoreExporter extends MetastoreExporter {
+	static final int DEFAULT_FETCH_SIZE = 1000;
+	private static final Logger logger = Logger.getLogger(JdbcMetastoreExporter.class.getName());
+
+	private static final String DATABASE_QUERY =
+			"SELECT \"NAME\", \"DESC\", \"DB_LOCATION_URI\", \"OWNER_NAME\" FROM \"DBS\" ORDER BY \"DB_ID\"";
+
+	private static final String TABLE_QUERY =
+			"SELECT t.\"TBL_ID\", d.\"NAME\", t.\"TBL_NAME\", t.\"TBL_TYPE\", t.\"OWNER\", t.\"VIEW_ORIGINAL_TEXT\", " +
+			"t.\"VIEW_EXPANDED_TEXT\", s.\"SD_ID\", s.\"LOCATION\", c.\"PARAM_VALUE\", l.\"PARAM_VALUE\" " +
+			"FROM \"TBLS\" t JOIN \"DBS\" d ON t.\"DB_ID\" = d.\"DB_ID\" " +
+			"LEFT JOIN \"SDS\" s ON t.\"SD_ID\" = s.\"SD_ID\" " +
+			"LEFT JOIN \"TABLE_PARAMS\" c ON c.\"TBL_ID\" = t.\"TBL_ID\" AND c.\"PARAM_KEY\" = 'comment' " +
+			"LEFT JOIN \"TABLE_PARAMS\" l ON l.\"TBL_ID\" = t.\"TBL_ID\" AND l.\"PARAM_KEY\" = 'transient_lastDdlTime' " +
+			"ORDER BY t.\"TBL_ID\"";
+
+	private static final String COLUMN_QUERY =
+			"SELECT t.\"TBL_ID\", c.\"COLUMN_NAME\", c.\"TYPE_NAME\", c.\"COMMENT\" " +
+			"FROM \"TBLS\" t JOIN \"SDS\" s ON t.\"SD_ID\" = s.\"SD_ID\" " +
+			"JOIN \"COLUMNS_V2\" c ON s.\"CD_ID\" = c.\"CD_ID\" " +
+			"ORDER BY t.\"TBL_ID\", c.\"INTEGER_IDX\"";
+
+	private static final String PARTITION_KEY_QUERY =
+			"SELECT \"TBL_ID\", \"PKEY_NAME\", \"PKEY_TYPE\", \"PKEY_COMMENT\" FROM \"PARTITION_KEYS\" " +
+			"ORDER BY \"TBL_ID\", \"INTEGER_IDX\"";
+
+	private static final String PARTITION_QUERY =
+			"SELECT d.\"NAME\", t.\"TBL_NAME\", p.\"PART_NAME\", c.\"PARAM_VALUE\", s.\"LOCATION\", p.\"CREATE_TIME\" " +
+			"FROM \"PARTITIONS\" p JOIN \"TBLS\" t ON p.\"TBL_ID\" = t.\"TBL_ID\" " +
+			"JOIN \"DBS\" d ON t.\"DB_ID\" = d.\"DB_ID\" " +
+			"LEFT JOIN \"SDS\" s ON p.\"SD_ID\" = s.\"SD_ID\" " +
+			"LEFT JOIN \"PARTITION_PARAMS\" c ON c.\"PART_ID\" = p.\"PART_ID\" AND c.\"PARAM_KEY\" = 'comment' " +
+			"ORDER BY p.\"TBL_ID\"";
+
+	private final String jdbcUrl;
+	private final Properties connectionProperties;
+	private final int fetchSize;
+	private long nbrDatabases;
+	private long nbrTables;
+	private long nbrColumns;
+	private long nbrPartitions;
+
+	/**
+	 * Creates an exporter reading the HiveMetastore database.
+	 * @param bufferedWriters the object managing the different file writers.
+	 * @param jdbcUrl the JDBC url of the HiveMetastore database
+	 * @param connectionProperties the JDBC connection properties, usually <i>user</i> and <i>password</i>
+	 * @param tableBatchSize the number of Tables formatted and written in a single call.
+	 * @param fetchSize the number of rows fetched per round-trip to the database
+	 */
+	JdbcMetastoreExporter(MetadataBufferedWriters bufferedWriters, String jdbcUrl, Properties connectionProperties,
+			int tableBatchSize, int fetchSize) {
+		// no HiveMetastore source is used
+		super(bufferedWriters, null, tableBatchSize);
+		this.jdbcUrl = jdbcUrl;
+		this.connectionProperties = connectionProperties;
+		this.fetchSize = fetchSize;
+	}
+
+	@Override
+	void export() {
+		exportHeaders();
+
+		Connection tableConnection = null;
+		Connection columnConnection = null;
+		Connection partitionKeyConnection = null;
+
+		try {
+			tableConnection = openConnection();
+			columnConnection = openConnection();
+			partitionKeyConnection = openConnection();
+			String quote = getIdentifierQuote(tableConnection);
+
+			logger.log(Level.INFO, "Exporting metadata from HiveMetastore database " +
+					tableConnection.getMetaData().getDatabaseProductName() + " with fetch size " + fetchSize);
+
+			if(filter.getTableFilter() != null)
+				logger.log(Level.WARNING, "Table filter " + filter.getTableFilter() + " ignored by the HiveMetastore " +
+						"database export.");
+
+			exportDatabases(tableConnection, quote);
+			exportTables(tableConnection, columnConnection, partitionKeyConnection, quote);
+
+			if(partitionPageSize > 0)
+				exportPartitions(tableConnection, quote);
+
+		} catch (SQLException sqlException) {
+			exportFailed("Cannot query the HiveMetastore database.", sqlException);
+		} catch (IOException ioException) {
+			exportFailed("Cannot write to output file.", ioException);
+		} finally {
+			closeConnection(partitionKeyConnection);
+			closeConnection(columnConnection);
+			closeConnection(tableConnection);
+		}
+	}
+
+	private Connection openConnection() throws SQLException {
+		Connection connection = DriverManager.getConnection(jdbcUrl, connectionProperties);
+
+		// some drivers (PostgreSQL) only stream result sets inside a transaction
+		connection.setAutoCommit(false);
+		connection.setReadOnly(true);
+
+		return connection;
+	}
+
+	private static void closeConnection(Connection connection) {
+		if(connection == null)
+			return;
+
+		try {
+			connection.rollback();
+			connection.close();
+		} catch (SQLException sqlException) {
+			logger.log(Level.WARNING, "Cannot close HiveMetastore database connection.", sqlException);
+		}
+	}
+
+	/**
+	 * @param connection a HiveMetastore database connection
+	 * @return the string quoting identifiers, empty when the database does not support quoted identifiers.
+	 * @throws SQLException when the database meta data cannot be read.
+	 */
+	private static String getIdentifierQuote(Connection connection) throws SQLException {
+		String quote = connection.getMetaData().getIdentifierQuoteString();
+		return quote == null || quote.trim().isEmpty() ? "" : quote.trim();
+	}
+
+	private Statement createStatement(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		statement.setFetchSize(fetchSize);
+		return statement;
+	}
+
+	/**
+	 * Writes the Hive Databases Metadata to the Databases output file.
+	 */
+	private void exportDatabases(Connection connection, String quote) throws SQLException, IOException {
+		Statement statement = createStatement(connection);
+
+		try {
+			ResultSet databases = statement.executeQuery(DATABASE_QUERY.replace("\"", quote));
+
+			while(databases.next()) {
+				if(!filter.acceptDatabase(databases.getString(1)))
+					continue;
+
+				Database database = new Database();
+				database.setName(databases.getString(1));
+				database.setDescription(databases.getString(2));
+				database.setLocationUri(databases.getString(3));
+				database.setOwnerName(databases.getString(4));
+
+				writeDatabase(database);
+				nbrDatabases++;
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Writes the Hive Tables and Columns Metadata to the Tables and Columns output files, by batches of
+	 * <i>tableBatchSize</i> Tables.
+	 */
+	private void exportTables(Connection tableConnection, Connection columnConnection,
+			Connection partitionKeyConnection, String quote) throws SQLException, IOException {
+		Statement tableStatement = createStatement(tableConnection);
+		Statement columnStatement = createStatement(columnConnection);
+		Statement partitionKeyStatement = createStatement(partitionKeyConnection);
+
+		try {
+			ResultSet tables = tableStatement.executeQuery(TABLE_QUERY.replace("\"", quote));
+			ResultSet columns = columnStatement.executeQuery(COLUMN_QUERY.replace("\"", quote));
+			ResultSet partitionKeys = partitionKeyStatement.executeQuery(PARTITION_KEY_QUERY.replace("\"", quote));
+			boolean hasColumn = columns.next();
+			boolean hasPartitionKey = partitionKeys.next();
+			List<Table> batch = new ArrayList<Table>(tableBatchSize);
+
+			while(tables.next()) {
+				long tableId = tables.getLong(1);
+				Table table = readTable(tables);
+				List<FieldSchema> tableColumns = new ArrayList<FieldSchema>();
+
+				// both result sets are ordered by Table id, Columns of Tables without Storage Descriptor are skipped
+				while(hasColumn && columns.getLong(1) < tableId)
+					hasColumn = columns.next();
+
+				while(hasColumn && columns.getLong(1) == tableId) {
+					tableColumns.add(new FieldSchema(columns.getString(2), columns.getString(3),
+							columns.getString(4)));
+					hasColumn = columns.next();
+				}
+
+				if(table.getSd() != null)
+					table.getSd().setCols(tableColumns);
+
+				while(hasPartitionKey && partitionKeys.getLong(1) < tableId)
+					hasPartitionKey = partitionKeys.next();
+
+				while(hasPartitionKey && partitionKeys.getLong(1) == tableId) {
+					table.addToPartitionKeys(new FieldSchema(partitionKeys.getString(2), partitionKeys.getString(3),
+							partitionKeys.getString(4)));
+					hasPartitionKey = partitionKeys.next();
+				}
+
+				if(!filter.acceptTable(table.getDbName(), table.getTableName()))
+					continue;
+
+				batch.add(table);
+				nbrTables++;
+				nbrColumns += tableColumns.size();
+
+				if(batch.size() == tableBatchSize) {
+					writeTables(batch);
+					batch = new ArrayList<Table>(tableBatchSize);
+				}
+			}
+
+			writeTables(batch);
+		} finally {
+			partitionKeyStatement.close();
+			columnStatement.close();
+			tableStatement.close();
+		}
+	}
+
+	/**
+	 * Writes the Hive Partitions Metadata to the Partitions output file, by pages of <i>partitionPageSize</i>
+	 * Partitions. The Partition names are read as stored by the HiveMetastore. During an incremental export,
+	 * Partitions unchanged since the previous snapshot are skipped.
+	 */
+	private void exportPartitions(Connection connection, String quote) throws SQLException, IOException {
+		Statement statement = createStatement(connection);
+
+		try {
+			ResultSet partitions = statement.executeQuery(PARTITION_QUERY.replace("\"", quote));
+			PartitionElement partitionCursor = new PartitionElement();
+			StringBuilder partitionRecords = new StringBuilder();
+			String dbName = null;
+			String tableName = null;
+			int nbrRecords = 0;
+
+			while(partitions.next()) {
+				if(!filter.matchesDatabase(partitions.getString(1)) || !filter.matchesTable(partitions.getString(2)))
+					continue;
+
+				if(!partitions.getString(1).equals(dbName) || !partitions.getString(2).equals(tableName)) {
+					dbName = partitions.getString(1);
+					tableName = partitions.getString(2);
+					partitionCursor.setTable(dbName, tableName);
+				}
+
+				partitionCursor.setPartition(partitions.getString(3), partitions.getString(4),
+						partitions.getString(5), partitions.getInt(6));
+				if(snapshotStore != null)
+					snapshotStore.addPartition(partitionCursor);
+				nbrPartitions++;
+
+				if(appendPartition(partitionRecords, partitionCursor) && ++nbrRecords == partitionPageSize) {
+					metrics.addRecords(ExportMetrics.Output.PARTITION, nbrRecords);
+					bufferedWriters.writePartitionRecords(partitionRecords);
+					partitionRecords.setLength(0);
+					nbrRecords = 0;
+				}
+			}
+
+			metrics.addRecords(ExportMetrics.Output.PARTITION, nbrRecords);
+			bufferedWriters.writePartitionRecords(partitionRecords);
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Converts the current row of the Tables query to a HiveMetastore Table object, without Columns.
+	 */
+	private static Table readTable(ResultSet tables) throws SQLException {
+		Table table = new Table();
+		table.setDbName(tables.getString(2));
+		table.setTableName(tables.getString(3));
+		table.setTableType(tables.getString(4));
+		table.setOwner(tables.getString(5));
+		table.setViewOriginalText(tables.getString(6));
+		table.setViewExpandedText(tables.getString(7));
+
+		// the Storage Descriptor is left null for Tables without SDS row
+		tables.getLong(8);
+		if(!tables.wasNull()) {
+			StorageDescriptor sd = new StorageDescriptor();
+			sd.setLocation(tables.getString(9));
+			table.setSd(sd);
+		}
+
+		Map<String, String> parameters = new HashMap<String, String>();
+		String comment = tables.getString(10);
+		String lastDdlTime = tables.getString(11);
+		if(comment != null)
+			parameters.put("comment", comment);
+		if(lastDdlTime != null)
+			parameters.put("transient_lastDdlTime", lastDdlTime);
+		table.setParameters(parameters);
+
+		return table;
+	}
+
+	@Override
+	void logStatistics() {
+		logger.log(Level.INFO, nbrDatabases + " databases, " + nbrTables + " tables, " + nbrColumns +
+				" columns and " + nbrPartitions + " partitions read from the HiveMetastore database with " +
+				(partitionPageSize > 0 ? 5 : 4) + " queries.");
+		logSnapshotStatistics();
+		filter.logStatistics();
+	}
+}
@@ -0,0 +1,551 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.InvalidParameterException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.proximus.mmgr.ElementWritable;
+import com.proximus.mmgr.FileChannelWriter;
+import com.proximus.mmgr.ParallelDeflaterOutputStream;
+
+/**
+ * Helper class for opening and closing files to export Databases, Tables, Columns and Partitions Metadata.
+ * The <i>write</i> methods are synchronized per output file, so that several export threads can share the same
+ * writers as long as each call holds complete records.<p>
+ * The <i>output_sink</i> property selects how the files are written:
+ * <br>- <b>writer</b> (default): a BufferedWriter over a FileWriter, encoding with the platform charset.
+ * <br>- <b>channel</b>: a FileChannelWriter encoding in UTF-8 into a direct buffer of <i>output_buffer_size</i>
+ * bytes (default 1 MB), optionally preallocating <i>output_preallocate_bytes</i> bytes per file.<p>
+ * When <i>output_compression</i> (<b>gzip</b> or <b>zlib</b>) or <i>output_part_size</i> is set, each output is
+ * written by a RollingOutputWriter to numbered parts of <i>output_part_size</i> characters, compressed in parallel
+ * blocks by <i>output_compression_threads</i> threads, and the list of parts is written to a manifest file when the
+ * writers are closed.<p>
+ * When <i>output_sorted</i> is true, the records of each output are sorted by id, whatever the order of the export:
+ * each output is written through a SortedOutputWriter, whose records are sorted into runs spilled to
+ * <i>sort_tmp_dir</i> by <i>sort_threads</i> threads, within <i>sort_memory_mb</i> MB of heap shared by the 4
+ * outputs. The runs are merged into the output files when the writers are closed.<p>
+ * The outputs of an interrupted export can be reopened at the offsets of a checkpoint, each file being truncated to
+ * its offset and appended to. Offsets are only supported by unsorted, uncompressed outputs written to a single
+ * file.
+ * @author Jonathan Puvilland
+ *
+ */
+class MetadataBufferedWriters {
+	static final String WRITER_OUTPUT_SINK = "writer";
+	static final String CHANNEL_OUTPUT_SINK = "channel";
+	private static final String NO_COMPRESSION = "none";
+	private static final int DATABASE_OUTPUT = 0;
+	private static final int TABLE_OUTPUT = 1;
+	private static final int COLUMN_OUTPUT = 2;
+	private static final int PARTITION_OUTPUT = 3;
+	private static final String[] OUTPUT_NAMES = { "database", "table", "column", "partition" };
+	private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+	private static final int DEFAULT_SORT_MEMORY_MB = 256;
+	private static final Logger logger = Logger.getLogger(MetadataBufferedWriters.class.getName());
+	private Writer databaseBuffer;
+	private Writer tableBuffer;
+	private Writer columnBuffer;
+	private Writer partitionBuffer;
+	private final Map<String, RollingOutputWriter> rollingWriters = new LinkedHashMap<String, RollingOutputWriter>();
+	private ExecutorService compressors;
+	private final File[] outputFiles = new File[4];
+	private final SortedOutputWriter[] sortedWriters = new SortedOutputWriter[4];
+	private final long[] resumeOffsets;
+	private ExportMetrics metrics = new ExportMetrics();
+	Properties metastoreReaderProperties;
+	
+	
+	/**
+	 * The constructor opens the 4 destination files and handles the buffers.
+	 * @param metastoreReaderProperties runtime configuration parameters containing specifications
+	 * for the 4 output files.
+	 */
+	MetadataBufferedWriters(Properties metastoreReaderProperties) {
+		this(metastoreReaderProperties, null);
+	}
+
+	/**
+	 * The constructor opens the 4 destination files at the offsets of a checkpoint and handles the buffers.
+	 * @param metastoreReaderProperties runtime configuration parameters containing specifications
+	 * for the 4 output files.
+	 * @param resumeOffsets the sizes of the database, table, column and partition output files to resume from, or
+	 * null to overwrite the files.
+	 * @throws InvalidParameterException when offsets are set for compressed, rolled or sorted outputs.
+	 */
+	MetadataBufferedWriters(Properties metastoreReaderProperties, long[] resumeOffsets) {
+		
+		this.metastoreReaderProperties = metastoreReaderProperties;
+		this.resumeOffsets = resumeOffsets;
+		
+		databaseBuffer = openDatabaseBufferedWriter();
+		tableBuffer = openTableBufferedWriter();
+		columnBuffer = openColumnBufferedWriter();
+		partitionBuffer = openPartitionBufferedWriter();
+		
+	}
+
+	private Writer openDatabaseBufferedWriter() {
+		Writer databaseBuffer;
+		
+		try {
+			File file = new File(
+        		metastoreReaderProperties.getProperty("metastore_output_dir") + "/" +
+        		metastoreReaderProperties.getProperty("metastore_database_file",
+        		"HiveMetastoreDatabases.csv"));
+			
+			logger.log(Level.INFO, "Opening database output file: " + file.getAbsolutePath());
+			databaseBuffer = openWriter(file, DATABASE_OUTPUT);
+			
+			return databaseBuffer;
+		
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot open database output file.", ioException);
+			return null;
+		}
+	}
+
+	private Writer openTableBufferedWriter() {
+		Writer tableBuffer;
+		
+		try {
+			File file = new File(
+        		metastoreReaderProperties.getProperty("metastore_output_dir") + "/" +
+        		metastoreReaderProperties.getProperty("metastore_table_file",
+        		"HiveMetastoreTables.csv"));
+        
+			logger.log(Level.INFO, "Opening table output file: " + file.getAbsolutePath());
+			tableBuffer = openWriter(file, TABLE_OUTPUT);
+			
+			return tableBuffer;
+		
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot open table output file.", ioException);
+			return null;
+		}
+	}
+
+	private Writer openColumnBufferedWriter() {
+		Writer columnBuffer;
+
+		try {
+	        File file = new File(
+	        		metastoreReaderProperties.getProperty("metastore_output_dir") + "/" +
+	        		metastoreReaderProperties.getProperty("metastore_column_file",
+	        		"HiveMetastoreColumns.csv"));
+        
+			logger.log(Level.INFO, "Opening column output file: " + file.getAbsolutePath());
+			columnBuffer = openWriter(file, COLUMN_OUTPUT);
+			
+			return columnBuffer;
+		
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot open column output file.", ioException);
+			return null;
+		}
+	}
+
+	private Writer openPartitionBufferedWriter() {
+		Writer partitionBuffer;
+
+		try {
+	        File file = new File(
+	        		metastoreReaderProperties.getProperty("metastore_output_dir") + "/" +
+	        		metastoreReaderProperties.getProperty("metastore_partition_file",
+	        		"HiveMetastorePartitions.csv"));
+        
+			logger.log(Level.INFO, "Opening partition output file: " + file.getAbsolutePath());
+			partitionBuffer = openWriter(file, PARTITION_OUTPUT);
+			
+			return partitionBuffer;
+		
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot open partition output file.", ioException);
+			return null;
+		}
+	}
+	
+	/**
+	 * @param metastoreReaderProperties the properties of the HiveMetatstoreReader program.
+	 * @return true when the records of the outputs are sorted by id.
+	 */
+	static boolean isSortedOutput(Properties metastoreReaderProperties) {
+		return Boolean.parseBoolean(metastoreReaderProperties.getProperty("output_sorted", "false").trim());
+	}
+
+	/**
+	 * Creates the sorter of a sorted output, with its share of <i>sort_memory_mb</i> and <i>sort_threads</i>
+	 * threads, spilling its runs to <i>sort_tmp_dir</i>. The memory is shared by the 4 outputs and the statistics
+	 * file, when it is written.
+	 * @param metastoreReaderProperties the properties of the HiveMetatstoreReader program.
+	 * @return the sorter of the output.
+	 * @throws InvalidParameterException when the sort properties are invalid.
+	 */
+	static ExternalSorter createSorter(Properties metastoreReaderProperties) {
+		int nbrOutputs = 4 + (HiveMetastoreReader.getStatisticsFile(metastoreReaderProperties) != null ? 1 : 0);
+		String sortDirName = metastoreReaderProperties.getProperty("sort_tmp_dir");
+		File sortDir = sortDirName == null || sortDirName.trim().isEmpty() ? null : new File(sortDirName.trim());
+		long sortMemoryBytes = (long) HiveMetastoreReader.getIntProperty(metastoreReaderProperties, "sort_memory_mb",
+				DEFAULT_SORT_MEMORY_MB) << 20;
+		int nbrSortThreads = HiveMetastoreReader.getIntProperty(metastoreReaderProperties, "sort_threads",
+				Runtime.getRuntime().availableProcessors());
+
+		return new ExternalSorter(sortDir, sortMemoryBytes / nbrOutputs, nbrSortThreads);
+	}
+
+	/**
+	 * Opens an output file with the sink selected by the <i>output_sink</i> property, sorted by id when
+	 * <i>output_sorted</i> is true.
+	 * @param file the output file
+	 * @param output the index of the output
+	 * @return a writer to the file.
+	 * @throws IOException when the file cannot be opened, or is shorter than its checkpoint offset.
+	 * @throws InvalidParameterException when the sink or sort properties are invalid.
+	 */
+	private Writer openWriter(File file, int output) throws IOException {
+		if(!isSortedOutput(metastoreReaderProperties))
+			return openFileWriter(file, output);
+
+		if(resumeOffsets != null)
+			throw new InvalidParameterException("Sorted outputs cannot be resumed.");
+
+		sortedWriters[output] = new SortedOutputWriter(openFileWriter(file, output),
+				createSorter(metastoreReaderProperties), ElementWritable.DEFAULT_SEPARATOR);
+		return sortedWriters[output];
+	}
+
+	/**
+	 * Opens an output file with the sink selected by the <i>output_sink</i> property. When resuming, the file is
+	 * truncated to its checkpoint offset and appended to.
+	 * @param file the output file
+	 * @param output the index of the output
+	 * @return a buffered writer to the file.
+	 * @throws IOException when the file cannot be opened, or is shorter than its checkpoint offset.
+	 * @throws InvalidParameterException when the sink properties are invalid.
+	 */
+	private Writer openFileWriter(File file, int output) throws IOException {
+		String sink = metastoreReaderProperties.getProperty("output_sink", WRITER_OUTPUT_SINK).trim();
+		String compression = metastoreReaderProperties.getProperty("output_compression", NO_COMPRESSION).trim();
+		long partSize = getSizeProperty("output_part_size", 0);
+		boolean append = resumeOffsets != null;
+
+		outputFiles[output] = file;
+
+		if(!compression.equals(NO_COMPRESSION) || partSize > 0) {
+			if(append)
+				throw new InvalidParameterException("Compressed or rolled outputs cannot be resumed.");
+			return openRollingWriter(file, output, sink, compression, partSize);
+		}
+
+		if(append)
+			truncate(file, resumeOffsets[output]);
+
+		if(sink.equals(WRITER_OUTPUT_SINK))
+			return new BufferedWriter(new FileWriter(file, append));
+
+		if(sink.equals(CHANNEL_OUTPUT_SINK))
+			return new FileChannelWriter(file,
+					(int) getSizeProperty("output_buffer_size", FileChannelWriter.DEFAULT_BUFFER_SIZE),
+					getSizeProperty("output_preallocate_bytes", 0), append);
+
+		throw new InvalidParameterException("Invalid output_sink: " + sink);
+	}
+
+	/**
+	 * Truncates an output file to the offset of a checkpoint, dropping the records written after the checkpoint.
+	 */
+	private static void truncate(File file, long offset) throws IOException {
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+
+		try {
+			if(output.length() < offset)
+				throw new IOException(file + " is shorter than its checkpoint offset " + offset);
+
+			output.setLength(offset);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Opens an output written to numbered and optionally compressed parts. The parts are encoded in UTF-8 with the
+	 * <b>channel</b> sink, and in the platform charset otherwise.
+	 */
+	private Writer openRollingWriter(File file, int output, String sink, String compression, long partSize) {
+		ParallelDeflaterOutputStream.Format format = null;
+
+		if(!compression.equals(NO_COMPRESSION)) {
+			try {
+				format = ParallelDeflaterOutputStream.Format.valueOf(compression.toUpperCase());
+			} catch (IllegalArgumentException formatException) {
+				throw new InvalidParameterException("Invalid output_compression: " + compression);
+			}
+		}
+
+		int nbrCompressors = (int) getSizeProperty("output_compression_threads",
+				Runtime.getRuntime().availableProcessors());
+		int level = (int) getSizeProperty("output_compression_level", DEFAULT_COMPRESSION_LEVEL);
+
+		if(compressors == null && format != null)
+			compressors = Executors.newFixedThreadPool(Math.max(1, nbrCompressors), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "output-compressor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+		Charset charset = sink.equals(CHANNEL_OUTPUT_SINK) ? Charset.forName("UTF-8") : Charset.defaultCharset();
+		RollingOutputWriter writer = new RollingOutputWriter(file, charset, partSize, format, compressors,
+				Math.max(1, nbrCompressors), level);
+		rollingWriters.put(OUTPUT_NAMES[output], writer);
+
+		return writer;
+	}
+
+	/**
+	 * Writes the list of the parts of each output to the manifest file, <i>metastore_manifest_file</i> in the
+	 * output folder, with the number of characters and the size of the file of each part. The parts are listed by
+	 * output name, an output which could not be opened having no entry.
+	 */
+	private void writeManifest() throws IOException {
+		File manifestFile = new File(metastoreReaderProperties.getProperty("metastore_output_dir") + "/" +
+				metastoreReaderProperties.getProperty("metastore_manifest_file", "HiveMetastoreManifest.csv"));
+		BufferedWriter manifest = new BufferedWriter(new FileWriter(manifestFile));
+
+		try {
+			manifest.write("output,part,file,uncompressedSize,fileSize");
+			manifest.newLine();
+
+			for(Map.Entry<String, RollingOutputWriter> rollingWriter : rollingWriters.entrySet()) {
+				List<RollingOutputWriter.Part> parts = rollingWriter.getValue().getParts();
+
+				for(int j = 0; j < parts.size(); j++) {
+					RollingOutputWriter.Part part = parts.get(j);
+					manifest.write(rollingWriter.getKey() + "," + (j + 1) + "," + part.getFile().getName() + "," +
+							part.getSize() + "," + part.getFile().length());
+					manifest.newLine();
+				}
+			}
+		} finally {
+			manifest.close();
+		}
+
+		logger.log(Level.INFO, "Output parts listed in manifest: " + manifestFile.getAbsolutePath());
+	}
+
+	private long getSizeProperty(String key, long defaultValue) {
+		String value = metastoreReaderProperties.getProperty(key);
+
+		if(value == null || value.trim().isEmpty())
+			return defaultValue;
+
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException formatException) {
+			throw new InvalidParameterException("Property " + key + " must be a number of bytes: " + value);
+		}
+	}
+
+	/**
+	 * Sets the metrics receiving the time spent writing and flushing the outputs, and the number of characters
+	 * written to each output.
+	 * @param metrics the metrics of the export
+	 */
+	void setMetrics(ExportMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return true when the outputs are written unsorted to single uncompressed files, whose offsets can be
+	 * checkpointed.
+	 */
+	boolean supportsOffsets() {
+		return rollingWriters.isEmpty() && !isSortedOutput(metastoreReaderProperties);
+	}
+
+	/**
+	 * Flushes the 4 output files and returns their size in bytes. Records written during the call are either
+	 * entirely counted or not at all.
+	 * @return the offsets of the database, table, column and partition output files.
+	 * @throws IOException when a file cannot be flushed, or its offset is not supported.
+	 */
+	long[] flushOutputs() throws IOException {
+		Writer[] buffers = { databaseBuffer, tableBuffer, columnBuffer, partitionBuffer };
+		long[] offsets = new long[buffers.length];
+
+		if(!supportsOffsets())
+			throw new IOException("Offsets of compressed, rolled or sorted outputs are not supported.");
+
+		long start = System.nanoTime();
+
+		for(int i = 0; i < buffers.length; i++) {
+			if(buffers[i] == null)
+				throw new IOException("Output file not opened: " + outputFiles[i]);
+
+			synchronized(buffers[i]) {
+				buffers[i].flush();
+				offsets[i] = buffers[i] instanceof FileChannelWriter ?
+						((FileChannelWriter) buffers[i]).getBytesWritten() : outputFiles[i].length();
+			}
+		}
+
+		metrics.addPhase(ExportMetrics.Phase.FLUSH, System.nanoTime() - start);
+		return offsets;
+	}
+
+	Writer getDatabaseBufferedWriter() {
+		return databaseBuffer;
+	}
+	
+	Writer getTableBufferedWriter() {
+		return tableBuffer;
+	}
+	
+	Writer getColumnBufferedWriter() {
+		return columnBuffer;
+	}
+	
+	Writer getPartitionBufferedWriter() {
+		return partitionBuffer;
+	}
+	
+	/**
+	 * Appends a set of complete Database records to the database output file.
+	 * @param records one or more formatted records, each terminated by a line separator.
+	 * @throws IOException in case of any IO failure when writing to the output file.
+	 */
+	void writeDatabaseRecords(CharSequence records) throws IOException {
+		writeRecords(databaseBuffer, ExportMetrics.Output.DATABASE, records);
+	}
+	
+	/**
+	 * Appends a set of complete Table records to the table output file.
+	 * @param records one or more formatted records, each terminated by a line separator.
+	 * @throws IOException in case of any IO failure when writing to the output file.
+	 */
+	void writeTableRecords(CharSequence records) throws IOException {
+		writeRecords(tableBuffer, ExportMetrics.Output.TABLE, records);
+	}
+	
+	/**
+	 * Appends a set of complete Column records to the column output file.
+	 * @param records one or more formatted records, each terminated by a line separator.
+	 * @throws IOException in case of any IO failure when writing to the output file.
+	 */
+	void writeColumnRecords(CharSequence records) throws IOException {
+		writeRecords(columnBuffer, ExportMetrics.Output.COLUMN, records);
+	}
+	
+	/**
+	 * Appends a set of complete Partition records to the partition output file.
+	 * @param records one or more formatted records, each terminated by a line separator.
+	 * @throws IOException in case of any IO failure when writing to the output file.
+	 */
+	void writePartitionRecords(CharSequence records) throws IOException {
+		writeRecords(partitionBuffer, ExportMetrics.Output.PARTITION, records);
+	}
+	
+	private void writeRecords(Writer buffer, ExportMetrics.Output output, CharSequence records) throws IOException {
+		if(records.length() == 0)
+			return;
+		
+		long start = System.nanoTime();
+		
+		synchronized(buffer) {
+			buffer.append(records);
+		}
+		
+		metrics.addPhase(ExportMetrics.Phase.WRITE, System.nanoTime() - start);
+		metrics.addCharacters(output, records.length());
+	}
+	
+	/**
+	 * Closes the 4 output files. Sorted outputs are merged and written first, the time spent is added to the
+	 * <b>sort</b> phase of the metrics with the number of runs and bytes spilled by each output. Every output is
+	 * closed, even when closing a previous one failed: the sorted records, the compressed trailers and the manifest
+	 * are only written when closing, so an export whose outputs cannot be closed is incomplete.
+	 * @return true when all the output files were completely written and closed.
+	 */
+	boolean closeBufferedWriters() {
+		long start = System.nanoTime();
+		long sortNanos = 0;
+		boolean closed = true;
+		
+		try {
+			for(int i = 0; i < sortedWriters.length; i++) {
+				if(sortedWriters[i] == null)
+					continue;
+				
+				long sortStart = System.nanoTime();
+				
+				try {
+					sortedWriters[i].close();
+				} catch (IOException ioException) {
+					logger.log(Level.SEVERE, "Cannot sort " + outputFiles[i].getName(), ioException);
+					closed = false;
+					continue;
+				} finally {
+					sortNanos += System.nanoTime() - sortStart;
+				}
+				
+				ExternalSorter sorter = sortedWriters[i].getSorter();
+				metrics.addSortedRuns(ExportMetrics.Output.values()[i], sorter.getNbrRuns(), sorter.getSpilledBytes());
+				logger.log(Level.INFO, "Sorted " + sorter.getNbrRecords() + " records of " + outputFiles[i].getName() +
+						": " + sorter.getNbrRuns() + " runs, " + sorter.getSpilledBytes() + " bytes spilled, runs sorted in " +
+						TimeUnit.NANOSECONDS.toMillis(sorter.getSortNanos()) + " ms, merged and written in " +
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sortStart) + " ms.");
+			}
+			
+			closed &= close(databaseBuffer, DATABASE_OUTPUT);
+			closed &= close(tableBuffer, TABLE_OUTPUT);
+			closed &= close(columnBuffer, COLUMN_OUTPUT);
+			closed &= close(partitionBuffer, PARTITION_OUTPUT);
+
+			if(closed && !rollingWriters.isEmpty()) {
+				try {
+					writeManifest();
+				} catch (IOException ioException) {
+					logger.log(Level.SEVERE, "Cannot write the manifest of the output files", ioException);
+					closed = false;
+				}
+			}
+		} finally {
+			if(compressors != null)
+				compressors.shutdown();
+			metrics.addPhase(ExportMetrics.Phase.SORT, sortNanos);
+			metrics.addPhase(ExportMetrics.Phase.FLUSH, System.nanoTime() - start - sortNanos);
+		}
+		
+		return closed;
+	}
+	
+	private boolean close(Writer buffer, int output) {
+		if(buffer == null)
+			return false;
+		
+		try {
+			buffer.close();
+			return true;
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot close " + (outputFiles[output] != null ? outputFiles[output].getName() :
+				"output " + output), ioException);
+			return false;
+		}
+	}
+}
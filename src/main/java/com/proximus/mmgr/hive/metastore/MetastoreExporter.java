@@ -0,0 +1,796 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static com.proximus.mmgr.ElementWritable.DEFAULT_SEPARATOR;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+import com.proximus.mmgr.AbstractElement;
+
+/**
+ * Exports the Hive Databases, Tables, Columns and Partitions Metadata to the output files, using a single
+ * HiveMetastore source borrowed from the source pool. Tables are retrieved by batches, and the records of a batch are
+ * written to the output files in a single call.<p>
+ * The Partitions of a partitioned Table are retrieved by pages: their names are listed first, then each page of
+ * <i>partitionPageSize</i> names is retrieved with one <i>getPartitionsByNames</i> call and written before the next
+ * page is retrieved, so that a Table with hundreds of thousands of Partitions neither fills the heap nor exceeds the
+ * HiveMetastore timeout in a single call. The time spent retrieving the Partitions of each Table is recorded.<p>
+ * The Databases and Tables to export are listed through the <i>MetastoreFilter</i>, so that excluded objects are
+ * never retrieved.<p>
+ * When checkpoints are enabled, the writes of each Database record and of each batch of Tables are reported to the
+ * <i>ExportCheckpoint</i>; a resumed export skips the Databases and Tables written before the checkpoint.<p>
+ * The time spent retrieving and formatting the Metadata, and the number of records formatted for each output, are
+ * added to the <i>ExportMetrics</i> of the export.
+ * @author Jonathan Puvilland
+ *
+ */
+class MetastoreExporter {
+	protected static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	// like hive.metastore.batch.retrieve.max, the page size used by Hive itself
+	static final int DEFAULT_PARTITION_PAGE_SIZE = 300;
+	private static final short ALL_PARTITIONS = -1;
+	private static final Logger logger = Logger.getLogger(MetastoreExporter.class.getName());
+
+	protected final MetadataBufferedWriters bufferedWriters;
+	protected final MetastoreSourcePool sourcePool;
+	protected final int tableBatchSize;
+	protected final TableFetchTimings partitionFetchTimings = new TableFetchTimings();
+	protected int partitionPageSize = DEFAULT_PARTITION_PAGE_SIZE;
+	protected MetastoreFilter filter = new MetastoreFilter();
+	protected ExportMetrics metrics = new ExportMetrics();
+	protected SnapshotStore.Writer snapshotStore;
+	protected StatisticsExporter statisticsExporter;
+	private final AtomicLong nbrTableFetchCalls = new AtomicLong();
+	private final AtomicLong nbrTablesFetched = new AtomicLong();
+	private final AtomicLong nbrFailures = new AtomicLong();
+	private TableSnapshot snapshot;
+	private ExportCheckpoint checkpoint;
+
+	/**
+	 * Creates an exporter writing to the specified output files.
+	 * @param bufferedWriters the object managing the different file writers.
+	 * @param sourcePool the pool of HiveMetastore sources
+	 * @param tableBatchSize the maximum number of Tables retrieved in a single HiveMetastore call.
+	 */
+	MetastoreExporter(MetadataBufferedWriters bufferedWriters, MetastoreSourcePool sourcePool, int tableBatchSize) {
+		this.bufferedWriters = bufferedWriters;
+		this.sourcePool = sourcePool;
+		this.tableBatchSize = tableBatchSize;
+	}
+
+	/**
+	 * Enables the incremental export: Databases, Tables and Partitions unchanged since the previous snapshot are not
+	 * written, and the fingerprints of the exported Elements are recorded in the snapshot.
+	 * @param snapshot the snapshot of the previous export
+	 */
+	void setSnapshot(TableSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Copies all the exported Elements to a snapshot store, including the Elements skipped by an incremental export.
+	 * @param snapshotStore the writer of the snapshot store
+	 */
+	void setSnapshotStore(SnapshotStore.Writer snapshotStore) {
+		this.snapshotStore = snapshotStore;
+	}
+
+	/**
+	 * Exports the statistics of the Tables, Partitions and Columns concurrently with their Metadata, including the
+	 * Tables skipped by an incremental export.
+	 * @param statisticsExporter the exporter of the statistics
+	 */
+	void setStatisticsExporter(StatisticsExporter statisticsExporter) {
+		this.statisticsExporter = statisticsExporter;
+	}
+
+	/**
+	 * Enables the checkpoints of the export, and resumes an interrupted export when the checkpoint was loaded from a
+	 * journal.
+	 * @param checkpoint the checkpoints of the export
+	 */
+	void setCheckpoint(ExportCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * @return the checkpoints of the export, or null when checkpoints are disabled.
+	 */
+	ExportCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * Restricts the export to the Databases and Tables selected by a filter. All the Metadata is exported by default.
+	 * @param filter the filter of the Databases and Tables to export
+	 */
+	void setFilter(MetastoreFilter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * @return the filter of the Databases and Tables to export.
+	 */
+	MetastoreFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Sets the metrics of the export, also receiving the write times of the output files.
+	 * @param metrics the metrics of the export
+	 */
+	void setMetrics(ExportMetrics metrics) {
+		this.metrics = metrics;
+		bufferedWriters.setMetrics(metrics);
+	}
+
+	/**
+	 * @return the metrics of the export.
+	 */
+	ExportMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the number of Partitions retrieved in a single HiveMetastore call.
+	 * @param partitionPageSize the size of the pages of Partitions; 0 to not export Partitions
+	 */
+	void setPartitionPageSize(int partitionPageSize) {
+		this.partitionPageSize = partitionPageSize;
+	}
+
+	/**
+	 * @return the number of failures which prevented part of the Metadata from being exported.
+	 */
+	long getNbrFailures() {
+		return nbrFailures.get();
+	}
+
+	/**
+	 * Logs a failure preventing part of the Metadata from being exported, and counts it so that an incomplete
+	 * export is not mistaken for a complete one.
+	 * @param message the description of the failure
+	 * @param exception the cause of the failure
+	 */
+	protected void exportFailed(String message, Exception exception) {
+		nbrFailures.incrementAndGet();
+		logger.log(Level.SEVERE, message, exception);
+	}
+
+	/**
+	 * Writes the Header records, then the Databases, Tables and Columns Metadata to the output files.
+	 */
+	void export() {
+		exportHeaders();
+
+		try {
+			MetastoreSource source = sourcePool.borrowSource();
+			try {
+				exportDatabases(source);
+			} finally {
+				sourcePool.releaseSource(source);
+			}
+		} catch (InterruptedException interruptedException) {
+			exportFailed("Export interrupted.", interruptedException);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes the Header records to the Database, Table, Column and Partition output files. Headers are taken from the
+	 * Elements schema, no Element is created. A resumed export keeps the headers written before the checkpoint.
+	 */
+	protected void exportHeaders() {
+		if(checkpoint != null && checkpoint.isResumed())
+			return;
+
+		try {
+			bufferedWriters.writeDatabaseRecords(DatabaseElement.SCHEMA.getHeader(DEFAULT_SEPARATOR) + LINE_SEPARATOR);
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot write to database output file.", ioException);
+		}
+
+		try {
+			bufferedWriters.writeTableRecords(TableElement.SCHEMA.getHeader(DEFAULT_SEPARATOR) + LINE_SEPARATOR);
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot write to table output file.", ioException);
+		}
+
+		try {
+			bufferedWriters.writeColumnRecords(ColumnElement.SCHEMA.getHeader(DEFAULT_SEPARATOR) + LINE_SEPARATOR);
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot write to column output file.", ioException);
+		}
+
+		try {
+			bufferedWriters.writePartitionRecords(PartitionElement.SCHEMA.getHeader(DEFAULT_SEPARATOR) +
+					LINE_SEPARATOR);
+		} catch (IOException ioException) {
+			logger.log(Level.SEVERE, "Cannot write to partition output file.", ioException);
+		}
+	}
+
+	/**
+	 * Writes the Hive Databases Metadata to the Databases output file. A Database which cannot be exported is
+	 * counted as a failure and skipped, the remaining Databases are still exported.
+	 * @param source the HiveMetastore source
+	 */
+	private void exportDatabases(MetastoreSource source)
+	{
+		List<String> databases;
+
+		try
+		{
+			databases = listDatabases(source);
+		} catch (TException metaException) {
+			exportFailed("Cannot access HiveMetastore while processing Databases.", metaException);
+			return;
+		}
+
+		for(String dbName : databases)
+		{
+			try
+			{
+				exportDatabase(source, dbName);
+			} catch (TException metaException) {
+				exportFailed("Cannot access HiveMetastore while processing Database " + dbName + ".", metaException);
+				continue;
+			} catch (IOException ioException) {
+				exportFailed("Cannot write to database output file.", ioException);
+				continue;
+			}
+
+			exportTables(source, dbName);
+		}
+	}
+
+	/**
+	 * Writes the Metadata of a single Hive Database to the Databases output file.
+	 * @param source the HiveMetastore source
+	 * @param dbName the name of the Database to export
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 * @throws IOException when the Database record cannot be written.
+	 */
+	protected void exportDatabase(MetastoreSource source, String dbName) throws TException, IOException
+	{
+		if(checkpoint != null && checkpoint.isDatabaseDone(dbName))
+		{
+			logger.log(Level.INFO, "Database already exported before the checkpoint: " + dbName);
+			if(snapshot != null)
+				snapshot.keep(dbName);
+			return;
+		}
+
+		logger.log(Level.INFO, "Exporting metadata for database: " + dbName);
+		Database database = fetchDatabase(source, dbName);
+		boolean written = false;
+
+		beginWrites();
+		try
+		{
+			writeDatabase(database);
+			written = true;
+		} finally {
+			if(checkpoint != null)
+				checkpoint.endDatabaseWrites(dbName, written);
+		}
+	}
+
+	private void beginWrites()
+	{
+		if(checkpoint != null)
+			checkpoint.beginWrites();
+	}
+
+	/**
+	 * Lists the Databases selected by the filter.
+	 * @param source the HiveMetastore source
+	 * @return the names of the Databases to export.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	protected List<String> listDatabases(MetastoreSource source) throws TException
+	{
+		long start = System.nanoTime();
+		try
+		{
+			return filter.listDatabases(source);
+		} finally {
+			metrics.addPhase(ExportMetrics.Phase.DATABASE_FETCH, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @param source the HiveMetastore source
+	 * @param dbName the name of the Database
+	 * @return the HiveMetastore Database object.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	protected Database fetchDatabase(MetastoreSource source, String dbName) throws TException
+	{
+		long start = System.nanoTime();
+		try
+		{
+			return source.getDatabase(dbName);
+		} finally {
+			metrics.addPhase(ExportMetrics.Phase.DATABASE_FETCH, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Lists the Tables of a Database selected by the filter.
+	 * @param source the HiveMetastore source
+	 * @param dbName the name of the Database
+	 * @return the names of the Tables to export.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	protected List<String> listTables(MetastoreSource source, String dbName) throws TException
+	{
+		long start = System.nanoTime();
+		try
+		{
+			return filter.listTables(source, dbName);
+		} finally {
+			metrics.addPhase(ExportMetrics.Phase.TABLE_FETCH, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Removes the Tables written before the checkpoint of a resumed export from a list of Tables to export.
+	 * @param dbName the name of the Database holding the Tables
+	 * @param tableNames the names of the Tables of the Database
+	 * @return the names of the Tables still to export.
+	 */
+	protected List<String> pendingTables(String dbName, List<String> tableNames)
+	{
+		if(checkpoint == null || !checkpoint.isResumed())
+			return tableNames;
+
+		List<String> pendingTables = new ArrayList<String>(tableNames.size());
+
+		for(String tableName : tableNames)
+		{
+			if(!checkpoint.isTableDone(dbName, tableName))
+				pendingTables.add(tableName);
+			else if(snapshot != null)
+				snapshot.keep(dbName + "." + tableName);
+		}
+
+		return pendingTables;
+	}
+
+	/**
+	 * Writes the record of a Hive Database to the Databases output file. During an incremental export, a Database
+	 * unchanged since the previous snapshot is skipped.
+	 * @param database a HiveMetastore Database object
+	 * @throws IOException when the Database record cannot be written.
+	 */
+	protected void writeDatabase(Database database) throws IOException
+	{
+		StringBuilder dbRecord = new StringBuilder();
+
+		if(formatDatabase(database, dbRecord))
+			bufferedWriters.writeDatabaseRecords(dbRecord);
+	}
+
+	/**
+	 * Formats the record of a Hive Database, terminated by a line separator.
+	 * @param database a HiveMetastore Database object
+	 * @param dbRecord the buffer receiving the record
+	 * @return false when the Database is unchanged since the previous snapshot and must not be written.
+	 */
+	protected boolean formatDatabase(Database database, StringBuilder dbRecord)
+	{
+		long start = System.nanoTime();
+		DatabaseElement element = new DatabaseElement(database);
+		appendRecord(dbRecord, element);
+		boolean changed = snapshot == null || snapshot.update(database.getName(), dbRecord);
+
+		if(changed)
+			metrics.addRecords(ExportMetrics.Output.DATABASE, 1);
+		if(snapshotStore != null)
+			snapshotStore.addDatabase(element);
+		metrics.addPhase(ExportMetrics.Phase.SERIALIZATION, System.nanoTime() - start);
+
+		return changed;
+	}
+
+	/**
+	 * Writes the Hive Tables Metadata of the specified Database to the Tables output file. A batch of Tables which
+	 * cannot be exported is counted as a failure and skipped, the remaining batches are still exported.
+	 * @param source the HiveMetastore source
+	 * @param dbName the name of the Database holding the Tables to export
+	 */
+	private void exportTables(MetastoreSource source, String dbName)
+	{
+		int nbrTablesExported = 0;
+		List<String> tables;
+
+		try
+		{
+			tables = pendingTables(dbName, listTables(source, dbName));
+		} catch (TException metaException) {
+			exportFailed("Cannot access HiveMetastore while processing Tables of " + dbName + ".", metaException);
+			return;
+		}
+
+		//Export tables Metadata
+		for(int batchStart = 0; batchStart < tables.size(); batchStart += tableBatchSize)
+		{
+			List<String> batch = tables.subList(batchStart, Math.min(batchStart + tableBatchSize, tables.size()));
+
+			try
+			{
+				nbrTablesExported += exportTableBatch(source, dbName, batch);
+			} catch (TException metaException) {
+				exportFailed("Cannot access HiveMetastore while processing Tables of " + dbName + ".", metaException);
+			} catch (IOException ioException) {
+				exportFailed("Cannot write to table output file.", ioException);
+			} catch (RuntimeException runtimeException) {
+				exportFailed("Cannot export a batch of " + batch.size() + " tables of " + dbName + ".",
+						runtimeException);
+			}
+		}
+
+		logger.log(Level.INFO, nbrTablesExported + " tables sucessfully exported.");
+	}
+
+	/**
+	 * Writes the Tables, Columns and Partitions Metadata of a batch of Tables to the output files.
+	 * @param source the HiveMetastore source
+	 * @param dbName the name of the Database holding the Tables to export
+	 * @param tableNames the names of the Tables to export
+	 * @return the number of Tables retrieved.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 * @throws IOException when the records cannot be written.
+	 */
+	protected int exportTableBatch(MetastoreSource source, String dbName, List<String> tableNames)
+			throws TException, IOException
+	{
+		List<Table> tables = fetchTables(source, dbName, tableNames);
+		boolean written = false;
+
+		beginWrites();
+		try
+		{
+			writeTables(tables);
+			exportPartitions(source, tables);
+			written = true;
+		} finally {
+			if(checkpoint != null)
+				checkpoint.endTableWrites(dbName, tableNames, written);
+		}
+
+		return tables.size();
+	}
+
+	/**
+	 * Writes the records of a batch of Tables and of their Columns to the Tables and Columns output files. The
+	 * records of the batch are formatted first, then written with one call per output file.
+	 * @param tables the HiveMetastore Table objects, holding their Columns in their Storage Descriptor
+	 * @throws IOException when the records cannot be written.
+	 */
+	protected void writeTables(List<Table> tables) throws IOException
+	{
+		StringBuilder tableRecords = new StringBuilder();
+		StringBuilder columnRecords = new StringBuilder();
+
+		formatTables(tables, tableRecords, columnRecords);
+
+		bufferedWriters.writeTableRecords(tableRecords);
+		bufferedWriters.writeColumnRecords(columnRecords);
+	}
+
+	/**
+	 * Formats the records of a batch of Tables and of their Columns, each terminated by a line separator. During
+	 * an incremental export, Tables unchanged since the previous snapshot are skipped.
+	 * @param tables the HiveMetastore Table objects, holding their Columns in their Storage Descriptor
+	 * @param tableRecords the buffer receiving the Table records
+	 * @param columnRecords the buffer receiving the Column records
+	 */
+	protected void formatTables(List<Table> tables, StringBuilder tableRecords, StringBuilder columnRecords)
+	{
+		long start = System.nanoTime();
+		TableElement tableCursor = new TableElement();
+		ColumnElement columnCursor = new ColumnElement();
+		int nbrTables = 0;
+		int nbrColumns = 0;
+
+		if(snapshotStore != null)
+			snapshotStore.addTables(tables);
+		if(statisticsExporter != null)
+			statisticsExporter.submitTables(tables);
+
+		for(Table table : tables)
+		{
+			if(snapshot != null && !snapshot.update(table))
+				continue;
+
+			tableCursor.setTable(table);
+			appendRecord(tableRecords, tableCursor);
+			nbrColumns += appendColumns(columnRecords, columnCursor, table);
+			nbrTables++;
+		}
+
+		metrics.addRecords(ExportMetrics.Output.TABLE, nbrTables);
+		metrics.addRecords(ExportMetrics.Output.COLUMN, nbrColumns);
+		metrics.addPhase(ExportMetrics.Phase.SERIALIZATION, System.nanoTime() - start);
+	}
+
+	/**
+	 * Writes the Partitions of the partitioned Tables of a batch to the Partitions output file, unless the export
+	 * of Partitions is disabled.
+	 * @param source the HiveMetastore source
+	 * @param tables the HiveMetastore Table objects
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 * @throws IOException when the records cannot be written.
+	 */
+	protected void exportPartitions(MetastoreSource source, List<Table> tables) throws TException, IOException
+	{
+		if(partitionPageSize <= 0)
+			return;
+
+		for(Table table : tables)
+			if(table.getPartitionKeysSize() > 0)
+				exportTablePartitions(source, table);
+	}
+
+	/**
+	 * Writes the Partitions of a Table, retrieved by pages of <i>partitionPageSize</i> Partitions.
+	 * @param source the HiveMetastore source
+	 * @param table the HiveMetastore Table object holding the partition keys
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 * @throws IOException when the records cannot be written.
+	 */
+	private void exportTablePartitions(MetastoreSource source, Table table) throws TException, IOException
+	{
+		long start = System.nanoTime();
+		List<String> partitionNames = pendingPartitions(table, listPartitionNames(source, table));
+		long fetchNanos = System.nanoTime() - start;
+		int nbrPartitions = 0;
+		int nbrCalls = 1;
+
+		for(int pageStart = 0; pageStart < partitionNames.size(); pageStart += partitionPageSize)
+		{
+			List<String> page = partitionNames.subList(pageStart,
+					Math.min(pageStart + partitionPageSize, partitionNames.size()));
+
+			start = System.nanoTime();
+			List<Partition> partitions = source.getPartitionsByNames(table.getDbName(), table.getTableName(), page);
+			fetchNanos += System.nanoTime() - start;
+			nbrCalls++;
+			nbrPartitions += partitions.size();
+
+			StringBuilder partitionRecords = new StringBuilder();
+			formatPartitions(table, partitions, partitionRecords);
+			bufferedWriters.writePartitionRecords(partitionRecords);
+		}
+
+		recordPartitionFetch(table, nbrPartitions, nbrCalls, fetchNanos);
+	}
+
+	/**
+	 * Returns the Partitions of a Table to retrieve. During an incremental export, the Partitions of a Table unchanged
+	 * since the previous snapshot are kept in the snapshot and only the new ones are retrieved, unless all the
+	 * Partitions are copied to the snapshot store or their statistics are exported.
+	 * @param table the HiveMetastore Table object
+	 * @param partitionNames the names of all the Partitions of the Table
+	 * @return the names of the Partitions to retrieve.
+	 */
+	protected List<String> pendingPartitions(Table table, List<String> partitionNames)
+	{
+		if(snapshot == null || snapshotStore != null || statisticsExporter != null || !snapshot.isUnchanged(table))
+			return partitionNames;
+
+		return snapshot.keepPartitions(table, partitionNames);
+	}
+
+	/**
+	 * Records the time spent retrieving the Partitions of a Table.
+	 * @param table the HiveMetastore Table object
+	 * @param nbrPartitions the number of Partitions retrieved
+	 * @param nbrCalls the number of HiveMetastore calls
+	 * @param fetchNanos the time spent in the HiveMetastore calls, in nanoseconds
+	 */
+	protected void recordPartitionFetch(Table table, int nbrPartitions, int nbrCalls, long fetchNanos)
+	{
+		partitionFetchTimings.record(table.getDbName() + "." + table.getTableName(), nbrPartitions, nbrCalls,
+				fetchNanos);
+		metrics.addPhase(ExportMetrics.Phase.PARTITION_FETCH, fetchNanos);
+	}
+
+	/**
+	 * @param source the HiveMetastore source
+	 * @param table a partitioned HiveMetastore Table object
+	 * @return the names of all the Partitions of the Table.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	protected static List<String> listPartitionNames(MetastoreSource source, Table table) throws TException
+	{
+		return source.listPartitionNames(table.getDbName(), table.getTableName(), ALL_PARTITIONS);
+	}
+
+	/**
+	 * Formats the records of a page of Partitions of a Table, each terminated by a line separator. During an
+	 * incremental export, Partitions unchanged since the previous snapshot are skipped.
+	 * @param table the HiveMetastore Table object holding the partition keys
+	 * @param partitions the HiveMetastore Partition objects
+	 * @param partitionRecords the buffer receiving the Partition records
+	 * @throws MetaException when the values of a Partition do not match the partition keys of the Table.
+	 */
+	protected void formatPartitions(Table table, List<Partition> partitions, StringBuilder partitionRecords)
+			throws MetaException
+	{
+		long start = System.nanoTime();
+		PartitionElement partitionCursor = new PartitionElement();
+		partitionCursor.setTable(table);
+		int nbrPartitions = 0;
+
+		for(Partition partition : partitions)
+		{
+			partitionCursor.setPartition(partition);
+			if(appendPartition(partitionRecords, partitionCursor))
+				nbrPartitions++;
+		}
+
+		if(snapshotStore != null)
+			snapshotStore.addPartitions(table, partitions);
+		if(statisticsExporter != null)
+			statisticsExporter.addPartitions(table, partitions);
+		metrics.addRecords(ExportMetrics.Output.PARTITION, nbrPartitions);
+		metrics.addPhase(ExportMetrics.Phase.SERIALIZATION, System.nanoTime() - start);
+	}
+
+	/**
+	 * Appends the record of a Partition, unless it is unchanged since the previous snapshot.
+	 * @param partitionRecords the buffer receiving the Partition record
+	 * @param partitionCursor the PartitionElement pointing to the Partition
+	 * @return false when the Partition is unchanged and its record was not appended.
+	 */
+	protected boolean appendPartition(StringBuilder partitionRecords, PartitionElement partitionCursor)
+	{
+		int recordStart = partitionRecords.length();
+		appendRecord(partitionRecords, partitionCursor);
+
+		if(snapshot == null || snapshot.update(partitionCursor,
+				partitionRecords.subSequence(recordStart, partitionRecords.length())))
+			return true;
+
+		partitionRecords.setLength(recordStart);
+		return false;
+	}
+
+	/**
+	 * Retrieves the Table objects of a batch of Table names. A batch of a single Table is retrieved with
+	 * <i>getTable</i>, larger batches are retrieved with one <i>getTableObjectsByName</i> call.
+	 * @param source the HiveMetastore source
+	 * @param dbName the name of the Database holding the Tables
+	 * @param tableNames the names of the Tables to retrieve
+	 * @return the HiveMetastore Table objects. Tables dropped in the meantime are not returned.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	protected List<Table> fetchTables(MetastoreSource source, String dbName, List<String> tableNames)
+			throws TException
+	{
+		List<Table> tables;
+		long start = System.nanoTime();
+
+		try
+		{
+			if(tableNames.size() == 1)
+				tables = Collections.singletonList(source.getTable(dbName, tableNames.get(0)));
+			else
+				tables = source.getTableObjectsByName(dbName, tableNames);
+		} catch (NoSuchObjectException noSuchObjectException) {
+			// dropped since it was listed, like the Tables skipped by getTableObjectsByName
+			tables = Collections.emptyList();
+		} finally {
+			metrics.addPhase(ExportMetrics.Phase.TABLE_FETCH, System.nanoTime() - start);
+		}
+
+		nbrTableFetchCalls.incrementAndGet();
+		nbrTablesFetched.addAndGet(tableNames.size());
+
+		return tables;
+	}
+
+	/**
+	 * Formats the Hive Columns Metadata of the specified Table, followed by its partition keys. Columns are read from
+	 * the Table's Storage Descriptor, no additional HiveMetastore call is made. The same ColumnElement is re-pointed to each Column,
+	 * so no object is created per Column.
+	 * @param columnRecords the buffer receiving the Column records
+	 * @param columnCursor the reusable ColumnElement
+	 * @param table the HiveMetastore Table object holding the Columns to export
+	 * @return the number of Column records appended.
+	 */
+	private static int appendColumns(StringBuilder columnRecords, ColumnElement columnCursor, Table table)
+	{
+		StorageDescriptor sd = table.getSd();
+
+		if(sd == null || sd.getCols() == null)
+			return 0;
+
+		columnCursor.setTable(table);
+
+		//Export columns Metadata
+		for(FieldSchema field : sd.getCols())
+		{
+			columnCursor.setColumn(field);
+			appendRecord(columnRecords, columnCursor);
+		}
+
+		if(table.getPartitionKeysSize() == 0)
+			return sd.getColsSize();
+
+		for(FieldSchema partitionKey : table.getPartitionKeys())
+		{
+			columnCursor.setPartitionKey(partitionKey);
+			appendRecord(columnRecords, columnCursor);
+		}
+
+		return sd.getColsSize() + table.getPartitionKeysSize();
+	}
+
+	/**
+	 * Appends the record of an Element, terminated by a line separator, to a buffer of records.
+	 * @param records the buffer of records
+	 * @param element the Element to format
+	 */
+	protected static void appendRecord(StringBuilder records, AbstractElement<?> element) {
+		element.appendRecord(records);
+		records.append(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Logs the number of HiveMetastore calls made to retrieve Tables, and the number of calls saved compared to
+	 * retrieving each Table twice (once for the Table, once for its Columns).
+	 */
+	void logStatistics() {
+		long nbrPerTableCalls = 2 * nbrTablesFetched.get();
+
+		logger.log(Level.INFO, nbrTablesFetched + " tables retrieved with " + nbrTableFetchCalls +
+				" HiveMetastore calls, " + (nbrPerTableCalls - nbrTableFetchCalls.get()) + " calls saved.");
+		logPartitionStatistics();
+		logSnapshotStatistics();
+		filter.logStatistics();
+	}
+
+	/**
+	 * Logs the number of Partitions retrieved, the time spent in the HiveMetastore calls and the Tables whose
+	 * Partitions took the longest to retrieve.
+	 */
+	protected void logPartitionStatistics() {
+		if(partitionFetchTimings.getNbrTables() == 0)
+			return;
+
+		logger.log(Level.INFO, partitionFetchTimings.getNbrPartitions() + " partitions of " +
+				partitionFetchTimings.getNbrTables() + " tables retrieved with " + partitionFetchTimings.getNbrCalls() +
+				" HiveMetastore calls in " + partitionFetchTimings.getFetchMillis() + " ms.");
+
+		for(TableFetchTimings.TableFetchTiming timing : partitionFetchTimings.getSlowestTables())
+			logger.log(Level.INFO, "Slowest partition retrieval: " + timing);
+	}
+
+	/**
+	 * Logs the number of Elements added, changed and unchanged since the previous snapshot, during an incremental
+	 * export.
+	 */
+	protected void logSnapshotStatistics() {
+		if(snapshot != null)
+			logger.log(Level.INFO, "Incremental export: " + snapshot.getNbrAdded() + " elements added, " +
+					snapshot.getNbrChanged() + " changed, " + snapshot.getNbrUnchanged() + " unchanged.");
+	}
+}
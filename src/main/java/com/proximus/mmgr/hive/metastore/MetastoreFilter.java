@@ -0,0 +1,284 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.thrift.TException;
+
+/**
+ * Selects the Databases and Tables to export, with include and exclude patterns on their names and a HiveMetastore
+ * filter on the Table attributes. Whenever possible, the selection is pushed to the HiveMetastore, so that excluded
+ * objects are never fetched:<p>
+ * - <i>database_include</i> is passed to <i>getDatabases(pattern)</i>.
+ * <br>- <i>table_include</i> is passed to <i>getTables(dbName, pattern)</i>.
+ * <br>- <i>table_filter</i> is passed to <i>listTableNamesByFilter</i>, for example
+ * <b>hive_filter_field_params__transient_lastDdlTime &gt; "1451606400"</b>; <i>table_include</i> is then applied
+ * by the reader.
+ * <br>- <i>database_exclude</i> and <i>table_exclude</i> have no HiveMetastore equivalent and are applied by the
+ * reader.<p>
+ * Patterns follow the HiveMetastore syntax: case-insensitive, <b>*</b> matches any characters and <b>|</b>
+ * separates alternatives, for example <b>sales_*|finance</b>. The names returned by the HiveMetastore and the
+ * names pruned by the reader are counted; counting the names pruned by the HiveMetastore requires listing all the
+ * names once more, and is only done when <i>filter_count_server_pruned</i> is set.
+ * @author Jonathan Puvilland
+ *
+ */
+class MetastoreFilter {
+	private static final Logger logger = Logger.getLogger(MetastoreFilter.class.getName());
+	private static final short ALL_TABLES = -1;
+
+	private final String databaseInclude;
+	private final Pattern databaseIncludePattern;
+	private final Pattern databaseExcludePattern;
+	private final String tableInclude;
+	private final Pattern tableIncludePattern;
+	private final Pattern tableExcludePattern;
+	private final String tableFilter;
+	private final boolean countServerPruned;
+	private final AtomicLong nbrDatabasesListed = new AtomicLong();
+	private final AtomicLong nbrDatabasesServerPruned = new AtomicLong();
+	private final AtomicLong nbrDatabasesClientPruned = new AtomicLong();
+	private final AtomicLong nbrTablesListed = new AtomicLong();
+	private final AtomicLong nbrTablesServerPruned = new AtomicLong();
+	private final AtomicLong nbrTablesClientPruned = new AtomicLong();
+
+	/**
+	 * Creates a filter selecting all the Databases and Tables.
+	 */
+	MetastoreFilter() {
+		this(null, null, null, null, null, false);
+	}
+
+	/**
+	 * Creates a filter. Null or empty patterns are ignored.
+	 * @param databaseInclude the pattern of the Databases to export
+	 * @param databaseExclude the pattern of the Databases not to export
+	 * @param tableInclude the pattern of the Tables to export
+	 * @param tableExclude the pattern of the Tables not to export
+	 * @param tableFilter the HiveMetastore filter of the Tables to export
+	 * @param countServerPruned true to count the names pruned by the HiveMetastore
+	 * @throws InvalidParameterException when a pattern is invalid.
+	 */
+	MetastoreFilter(String databaseInclude, String databaseExclude, String tableInclude, String tableExclude,
+			String tableFilter, boolean countServerPruned) {
+		this.databaseInclude = trimToNull(databaseInclude);
+		this.databaseIncludePattern = compile(this.databaseInclude);
+		this.databaseExcludePattern = compile(trimToNull(databaseExclude));
+		this.tableInclude = trimToNull(tableInclude);
+		this.tableIncludePattern = compile(this.tableInclude);
+		this.tableExcludePattern = compile(trimToNull(tableExclude));
+		this.tableFilter = trimToNull(tableFilter);
+		this.countServerPruned = countServerPruned;
+	}
+
+	/**
+	 * Creates the filter configured by the <i>database_include</i>, <i>database_exclude</i>, <i>table_include</i>,
+	 * <i>table_exclude</i>, <i>table_filter</i> and <i>filter_count_server_pruned</i> properties.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @return the filter.
+	 * @throws InvalidParameterException when a pattern is invalid.
+	 */
+	static MetastoreFilter create(Properties hiveMetastoreProps) {
+		return new MetastoreFilter(hiveMetastoreProps.getProperty("database_include"),
+				hiveMetastoreProps.getProperty("database_exclude"), hiveMetastoreProps.getProperty("table_include"),
+				hiveMetastoreProps.getProperty("table_exclude"), hiveMetastoreProps.getProperty("table_filter"),
+				Boolean.parseBoolean(hiveMetastoreProps.getProperty("filter_count_server_pruned", "false").trim()));
+	}
+
+	private static String trimToNull(String value) {
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+	/**
+	 * Converts a HiveMetastore pattern to a regular expression, like the HiveMetastore does.
+	 * @param hivePattern a pattern such as <b>sales_*|finance</b>, or null
+	 * @return the case-insensitive regular expression matching the same names, or null.
+	 * @throws InvalidParameterException when the pattern is invalid.
+	 */
+	static Pattern compile(String hivePattern) {
+		if(hivePattern == null)
+			return null;
+
+		StringBuilder regex = new StringBuilder("(?i)(?:");
+		String[] alternatives = hivePattern.split("\\|");
+
+		for(int i = 0; i < alternatives.length; i++) {
+			if(i > 0)
+				regex.append('|');
+			regex.append(alternatives[i].trim().replace("*", ".*"));
+		}
+
+		try {
+			return Pattern.compile(regex.append(')').toString());
+		} catch (PatternSyntaxException syntaxException) {
+			throw new InvalidParameterException("Invalid pattern " + hivePattern + ": " + syntaxException.getMessage());
+		}
+	}
+
+	/**
+	 * @return true when all the Databases and Tables are selected.
+	 */
+	boolean isEmpty() {
+		return databaseInclude == null && databaseExcludePattern == null && tableInclude == null &&
+				tableExcludePattern == null && tableFilter == null;
+	}
+
+	/**
+	 * @return the HiveMetastore filter of the Tables, or null.
+	 */
+	String getTableFilter() {
+		return tableFilter;
+	}
+
+	/**
+	 * Lists the names of the selected Databases.
+	 * @param source the HiveMetastore source
+	 * @return the names of the Databases to export.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	List<String> listDatabases(MetastoreSource source) throws TException {
+		if(databaseInclude == null)
+			return prune(source.getAllDatabases(), nbrDatabasesListed, nbrDatabasesClientPruned, true);
+
+		List<String> databases = source.getDatabases(databaseInclude);
+
+		if(countServerPruned)
+			nbrDatabasesServerPruned.addAndGet(source.getAllDatabases().size() - databases.size());
+
+		return prune(databases, nbrDatabasesListed, nbrDatabasesClientPruned, true);
+	}
+
+	/**
+	 * Lists the names of the selected Tables of a Database.
+	 * @param source the HiveMetastore source
+	 * @param dbName the name of the Database
+	 * @return the names of the Tables to export.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	List<String> listTables(MetastoreSource source, String dbName) throws TException {
+		if(tableFilter == null && tableInclude == null)
+			return prune(source.getAllTables(dbName), nbrTablesListed, nbrTablesClientPruned, false);
+
+		List<String> tables = tableFilter != null ? source.listTableNamesByFilter(dbName, tableFilter, ALL_TABLES) :
+			source.getTables(dbName, tableInclude);
+
+		if(countServerPruned)
+			nbrTablesServerPruned.addAndGet(source.getAllTables(dbName).size() - tables.size());
+
+		return prune(tables, nbrTablesListed, nbrTablesClientPruned, false);
+	}
+
+	private List<String> prune(List<String> names, AtomicLong nbrListed, AtomicLong nbrPruned, boolean databases) {
+		nbrListed.addAndGet(names.size());
+		List<String> selected = new ArrayList<String>(names.size());
+
+		for(String name : names)
+			if(databases ? matchesDatabase(name) : matchesTable(name))
+				selected.add(name);
+
+		nbrPruned.addAndGet(names.size() - selected.size());
+		return selected;
+	}
+
+	/**
+	 * Checks a Database read without the HiveMetastore api, counting it as pruned by the reader when it is not
+	 * selected.
+	 * @param dbName the name of the Database
+	 * @return true when the Database must be exported.
+	 */
+	boolean acceptDatabase(String dbName) {
+		nbrDatabasesListed.incrementAndGet();
+
+		if(matchesDatabase(dbName))
+			return true;
+
+		nbrDatabasesClientPruned.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Checks a Table read without the HiveMetastore api, counting it as pruned by the reader when it is not
+	 * selected. The HiveMetastore filter is not applied.
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @return true when the Table must be exported.
+	 */
+	boolean acceptTable(String dbName, String tableName) {
+		nbrTablesListed.incrementAndGet();
+
+		if(matchesDatabase(dbName) && matchesTable(tableName))
+			return true;
+
+		nbrTablesClientPruned.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * @param dbName the name of a Database
+	 * @return true when the Database is selected by the patterns.
+	 */
+	boolean matchesDatabase(String dbName) {
+		return (databaseIncludePattern == null || databaseIncludePattern.matcher(dbName).matches()) &&
+				(databaseExcludePattern == null || !databaseExcludePattern.matcher(dbName).matches());
+	}
+
+	/**
+	 * @param tableName the name of a Table
+	 * @return true when the Table is selected by the patterns.
+	 */
+	boolean matchesTable(String tableName) {
+		return (tableIncludePattern == null || tableIncludePattern.matcher(tableName).matches()) &&
+				(tableExcludePattern == null || !tableExcludePattern.matcher(tableName).matches());
+	}
+
+	/**
+	 * Tells whether an exported Table is known to be selected by this filter, so that a Table not seen by the
+	 * export can be considered as dropped. No Table can be known to be selected by the HiveMetastore filter, which
+	 * depends on its attributes.
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @return true when the Table is in the scope of the export.
+	 */
+	boolean isTableInScope(String dbName, String tableName) {
+		return tableFilter == null && matchesDatabase(dbName) && matchesTable(tableName);
+	}
+
+	/**
+	 * Logs the number of Databases and Tables returned by the HiveMetastore and pruned by the HiveMetastore and by
+	 * the reader.
+	 */
+	void logStatistics() {
+		if(isEmpty())
+			return;
+
+		logger.log(Level.INFO, "Databases: " + nbrDatabasesListed + " listed, " +
+				(countServerPruned ? nbrDatabasesServerPruned.toString() : "uncounted") + " pruned by the " +
+				"HiveMetastore, " + nbrDatabasesClientPruned + " pruned by the reader.");
+		logger.log(Level.INFO, "Tables: " + nbrTablesListed + " listed, " +
+				(countServerPruned ? nbrTablesServerPruned.toString() : "uncounted") + " pruned by the " +
+				"HiveMetastore, " + nbrTablesClientPruned + " pruned by the reader.");
+	}
+
+	long getNbrDatabasesServerPruned() {
+		return nbrDatabasesServerPruned.get();
+	}
+
+	long getNbrDatabasesClientPruned() {
+		return nbrDatabasesClientPruned.get();
+	}
+
+	long getNbrTablesServerPruned() {
+		return nbrTablesServerPruned.get();
+	}
+
+	long getNbrTablesClientPruned() {
+		return nbrTablesClientPruned.get();
+	}
+}
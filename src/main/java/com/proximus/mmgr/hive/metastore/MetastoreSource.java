@@ -0,0 +1,147 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsObj;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+/**
+ * The HiveMetastore calls used to export Hive Metadata. The main implementation (<i>ThriftMetastoreSource</i>)
+ * delegates to a <i>HiveMetaStoreClient</i>; other implementations allow running and measuring the export without
+ * a Hive cluster. Like the HiveMetastore client, an implementation is not required to be thread-safe.
+ * @author Jonathan Puvilland
+ *
+ */
+public interface MetastoreSource {
+	/**
+	 * @return the names of all the Databases of the HiveMetastore.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	public List<String> getAllDatabases() throws TException;
+	
+	/**
+	 * @param databasePattern a HiveMetastore pattern, such as <b>sales_*|finance</b>
+	 * @return the names of the Databases matching the pattern.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	public List<String> getDatabases(String databasePattern) throws TException;
+	
+	/**
+	 * @param dbName the name of a Database
+	 * @return the Metadata of the Database.
+	 * @throws TException when the HiveMetastore cannot be accessed or the Database does not exist.
+	 */
+	public Database getDatabase(String dbName) throws TException;
+	
+	/**
+	 * @param dbName the name of a Database
+	 * @return the names of all the Tables of the Database.
+	 * @throws TException when the HiveMetastore cannot be accessed or the Database does not exist.
+	 */
+	public List<String> getAllTables(String dbName) throws TException;
+	
+	/**
+	 * @param dbName the name of a Database
+	 * @param tablePattern a HiveMetastore pattern, such as <b>fact_*|dim_customer</b>
+	 * @return the names of the Tables of the Database matching the pattern.
+	 * @throws TException when the HiveMetastore cannot be accessed or the Database does not exist.
+	 */
+	public List<String> getTables(String dbName, String tablePattern) throws TException;
+	
+	/**
+	 * @param dbName the name of a Database
+	 * @param filter a HiveMetastore filter on the Table attributes, such as
+	 * <b>hive_filter_field_params__transient_lastDdlTime &gt; "1451606400"</b>
+	 * @param maxTables the maximum number of names returned, -1 for all the Tables
+	 * @return the names of the Tables of the Database matching the filter.
+	 * @throws TException when the HiveMetastore cannot be accessed, the Database does not exist or the filter is
+	 * invalid.
+	 */
+	public List<String> listTableNamesByFilter(String dbName, String filter, short maxTables) throws TException;
+	
+	/**
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @return the Metadata of the Table.
+	 * @throws TException when the HiveMetastore cannot be accessed or the Table does not exist.
+	 */
+	public Table getTable(String dbName, String tableName) throws TException;
+	
+	/**
+	 * Retrieves the Metadata of several Tables with a single call.
+	 * @param dbName the name of the Database holding the Tables
+	 * @param tableNames the names of the Tables
+	 * @return the Metadata of the Tables. Tables which do not exist are not returned.
+	 * @throws TException when the HiveMetastore cannot be accessed or the Database does not exist.
+	 */
+	public List<Table> getTableObjectsByName(String dbName, List<String> tableNames) throws TException;
+	
+	/**
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @param maxPartitions the maximum number of names returned, -1 for all the Partitions
+	 * @return the names of the Partitions of the Table, such as <b>ds=2016-01-01/hr=00</b>.
+	 * @throws TException when the HiveMetastore cannot be accessed or the Table does not exist.
+	 */
+	public List<String> listPartitionNames(String dbName, String tableName, short maxPartitions) throws TException;
+	
+	/**
+	 * Retrieves the Metadata of several Partitions of a Table with a single call.
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @param partitionNames the names of the Partitions, as returned by <i>listPartitionNames</i>
+	 * @return the Metadata of the Partitions. Partitions which do not exist are not returned.
+	 * @throws TException when the HiveMetastore cannot be accessed or the Table does not exist.
+	 */
+	public List<Partition> getPartitionsByNames(String dbName, String tableName, List<String> partitionNames)
+			throws TException;
+	
+	/**
+	 * Retrieves the statistics of several Columns of a Table with a single call.
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @param colNames the names of the Columns
+	 * @return the statistics of the Columns. Columns without statistics are not returned.
+	 * @throws TException when the HiveMetastore cannot be accessed or the Table does not exist.
+	 */
+	public List<ColumnStatisticsObj> getTableColumnStatistics(String dbName, String tableName, List<String> colNames)
+			throws TException;
+	
+	/**
+	 * Retrieves the statistics of several Columns of several Partitions of a Table with a single call.
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @param partitionNames the names of the Partitions, as returned by <i>listPartitionNames</i>
+	 * @param colNames the names of the Columns
+	 * @return the statistics of the Columns by Partition name. Partitions and Columns without statistics are not
+	 * returned.
+	 * @throws TException when the HiveMetastore cannot be accessed or the Table does not exist.
+	 */
+	public Map<String, List<ColumnStatisticsObj>> getPartitionColumnStatistics(String dbName, String tableName,
+			List<String> partitionNames, List<String> colNames) throws TException;
+	
+	/**
+	 * @return the id of the last event of the HiveMetastore notification log, written by the
+	 * <i>DbNotificationListener</i>; 0 when the log is empty.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	public long getCurrentNotificationEventId() throws TException;
+	
+	/**
+	 * @param lastEventId the id of the last event already read
+	 * @param maxEvents the maximum number of events returned
+	 * @return the events following the last event read, in the order of their ids.
+	 * @throws TException when the HiveMetastore cannot be accessed.
+	 */
+	public List<NotificationEvent> getNextNotification(long lastEventId, int maxEvents) throws TException;
+	
+	/**
+	 * Releases the connection to the HiveMetastore.
+	 */
+	public void close();
+}
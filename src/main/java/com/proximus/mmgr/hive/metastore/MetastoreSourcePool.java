@@ -0,0 +1,106 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of MetastoreSources. A <i>HiveMetaStoreClient</i> is not thread-safe, so each export thread
+ * borrows a source for the duration of a HiveMetastore call sequence and releases it afterwards.
+ * @author Jonathan Puvilland
+ *
+ */
+class MetastoreSourcePool {
+	private final List<MetastoreSource> sources;
+	private final BlockingQueue<MetastoreSource> idleSources;
+	private final MetastoreSourcePool owner;
+	private int nbrReserved;
+
+	/**
+	 * Creates a pool holding the specified sources. The pool takes ownership of the sources and closes them
+	 * when the pool is closed.
+	 * @param sources the already opened MetastoreSources
+	 */
+	MetastoreSourcePool(List<? extends MetastoreSource> sources) {
+		this(sources, null);
+	}
+
+	private MetastoreSourcePool(List<? extends MetastoreSource> sources, MetastoreSourcePool owner) {
+		this.sources = new ArrayList<MetastoreSource>(sources);
+		this.idleSources = new ArrayBlockingQueue<MetastoreSource>(Math.max(1, sources.size()), false, sources);
+		this.owner = owner;
+	}
+
+	/**
+	 * Takes sources out of the pool for the exclusive use of a second pool, so that the threads of each pool
+	 * never wait for the sources held by the threads of the other. The sources are returned to this pool when the
+	 * second pool is closed.
+	 * @param nbrSources the number of sources to reserve, lower than the size of the pool
+	 * @return the pool of the reserved sources.
+	 * @throws InterruptedException when the calling thread is interrupted while waiting for the sources.
+	 */
+	MetastoreSourcePool reserveSources(int nbrSources) throws InterruptedException {
+		List<MetastoreSource> reserved = new ArrayList<MetastoreSource>(nbrSources);
+
+		try {
+			for(int i = 0; i < nbrSources; i++)
+				reserved.add(idleSources.take());
+		} catch (InterruptedException interruptedException) {
+			for(MetastoreSource source : reserved)
+				releaseSource(source);
+			throw interruptedException;
+		}
+
+		synchronized(this) {
+			nbrReserved += nbrSources;
+		}
+
+		return new MetastoreSourcePool(reserved, this);
+	}
+
+	/**
+	 * Takes a source from the pool, waiting until one is released if all sources are in use.
+	 * @return a MetastoreSource for the exclusive use of the calling thread.
+	 * @throws InterruptedException when the calling thread is interrupted while waiting.
+	 */
+	MetastoreSource borrowSource() throws InterruptedException {
+		return idleSources.take();
+	}
+
+	/**
+	 * Returns a source to the pool.
+	 * @param source a source previously obtained with <i>borrowSource</i>
+	 */
+	void releaseSource(MetastoreSource source) {
+		idleSources.offer(source);
+	}
+
+	/**
+	 * @return the number of sources in the pool, excluding the reserved sources.
+	 */
+	synchronized int getPoolSize() {
+		return sources.size() - nbrReserved;
+	}
+
+	/**
+	 * Closes all the sources of the pool. The sources of a pool of reserved sources are returned to their pool
+	 * instead.
+	 */
+	void close() {
+		if(owner != null) {
+			for(MetastoreSource source : sources)
+				owner.releaseSource(source);
+
+			synchronized(owner) {
+				owner.nbrReserved -= sources.size();
+			}
+		} else {
+			for(MetastoreSource source : sources)
+				source.close();
+		}
+
+		sources.clear();
+		idleSources.clear();
+	}
+}
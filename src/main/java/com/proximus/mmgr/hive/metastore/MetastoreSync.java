@@ -0,0 +1,610 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static com.proximus.mmgr.ElementWritable.DEFAULT_SEPARATOR;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+import com.proximus.mmgr.CsvEncoder;
+
+/**
+ * Keeps the output files in sync with the HiveMetastore by tailing its notification log, written by the
+ * <i>DbNotificationListener</i>, instead of reading the whole catalog again.<p>
+ * The first sync runs a full export and records the id of the last event of the log. Each following sync reads the
+ * events logged since that id, and applies the CREATE, ALTER and DROP events of the Databases and Tables to a local
+ * model of the catalog, the names of the exported Databases and of their Tables. The events of a sync are coalesced:
+ * a Database or a Table changed several times is retrieved once, and a Table created then dropped is not retrieved
+ * at all. The records of the changed Databases and Tables, with the Columns and Partitions of the Tables, are written
+ * to delta files named after the output files and the id of the last event applied, such as
+ * <b>HiveMetastoreTables_delta_1234.csv</b>; the dropped Databases and Tables are written to a delta of the
+ * deletions file. A Table renamed by an ALTER event cannot be retrieved under the name of the event: its Database is
+ * listed again to find the new name.<p>
+ * The model and the id of the last event applied are saved in a state file after each sync, so that the events are
+ * applied at least once. When the events following the last id were purged from the log, or the log was reset, a
+ * full export is run again. Partition and insert events are not applied.
+ * @author Jonathan Puvilland
+ *
+ */
+class MetastoreSync {
+	static final String CREATE_DATABASE_EVENT = "CREATE_DATABASE";
+	static final String ALTER_DATABASE_EVENT = "ALTER_DATABASE";
+	static final String DROP_DATABASE_EVENT = "DROP_DATABASE";
+	static final String CREATE_TABLE_EVENT = "CREATE_TABLE";
+	static final String ALTER_TABLE_EVENT = "ALTER_TABLE";
+	static final String DROP_TABLE_EVENT = "DROP_TABLE";
+	private static final Logger logger = Logger.getLogger(MetastoreSync.class.getName());
+	private static final int MAGIC = 0x484d5359;
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int DEFAULT_EVENT_BATCH_SIZE = 1000;
+	private static final int DEFAULT_TABLE_BATCH_SIZE = 100;
+	private static final String[][] OUTPUT_FILES = {
+		{ "metastore_database_file", "HiveMetastoreDatabases.csv" },
+		{ "metastore_table_file", "HiveMetastoreTables.csv" },
+		{ "metastore_column_file", "HiveMetastoreColumns.csv" },
+		{ "metastore_partition_file", "HiveMetastorePartitions.csv" },
+		{ "metastore_manifest_file", "HiveMetastoreManifest.csv" } };
+
+	/**
+	 * The change of a Database or a Table, resulting from the events of a sync.
+	 */
+	private enum Change {
+		REFETCH, DROP
+	}
+
+	private final Properties hiveMetastoreProps;
+	private final MetastoreSourcePool sourcePool;
+	private final MetastoreFilter filter;
+	private final ExportMetrics metrics;
+	private final File stateFile;
+	private final int eventBatchSize;
+	private final int tableBatchSize;
+	private final int partitionPageSize;
+	private Map<String, Set<String>> catalog;
+	private long lastEventId;
+	private long pendingEventId;
+	private final Map<String, Change> databaseChanges = new LinkedHashMap<String, Change>();
+	private final Map<String, Map<String, Change>> tableChanges = new LinkedHashMap<String, Map<String, Change>>();
+	private long nbrEventsApplied;
+	private long nbrEventsIgnored;
+
+	/**
+	 * Creates the sync of the output files configured by the properties, loading the state of the previous sync from
+	 * <i>sync_state_file</i> (default HiveMetastoreSync.state) in the output folder.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @param sourcePool the pool of HiveMetastore sources
+	 * @param metrics the metrics of the full exports and of the delta files
+	 * @throws IOException when the state file cannot be read.
+	 * @throws InvalidParameterException when the sync properties are invalid.
+	 */
+	MetastoreSync(Properties hiveMetastoreProps, MetastoreSourcePool sourcePool, ExportMetrics metrics)
+			throws IOException, InvalidParameterException {
+		this.hiveMetastoreProps = hiveMetastoreProps;
+		this.sourcePool = sourcePool;
+		this.metrics = metrics;
+		this.filter = MetastoreFilter.create(hiveMetastoreProps);
+		this.stateFile = new File(hiveMetastoreProps.getProperty("metastore_output_dir") + "/" +
+				hiveMetastoreProps.getProperty("sync_state_file", "HiveMetastoreSync.state").trim());
+		this.eventBatchSize = HiveMetastoreReader.getIntProperty(hiveMetastoreProps, "sync_event_batch_size",
+				DEFAULT_EVENT_BATCH_SIZE);
+		this.tableBatchSize = HiveMetastoreReader.getIntProperty(hiveMetastoreProps, "table_batch_size",
+				DEFAULT_TABLE_BATCH_SIZE);
+		this.partitionPageSize = HiveMetastoreReader.getIntProperty(hiveMetastoreProps, "partition_page_size",
+				MetastoreExporter.DEFAULT_PARTITION_PAGE_SIZE, 0);
+
+		if(stateFile.exists())
+			loadState();
+	}
+
+	/**
+	 * @return the id of the last event applied, or 0 before the first sync.
+	 */
+	long getLastEventId() {
+		return lastEventId;
+	}
+
+	/**
+	 * @return the names of the Tables of each Database of the local model, or null before the first sync.
+	 */
+	Map<String, Set<String>> getCatalog() {
+		return catalog;
+	}
+
+	/**
+	 * Applies the events logged since the previous sync, or runs a full export on the first sync and when the
+	 * events since the previous sync are not available anymore. The state is saved once the delta files or the
+	 * full export are written.
+	 * @return the number of events read.
+	 * @throws TException when the HiveMetastore cannot be accessed; the state is left unchanged.
+	 * @throws IOException when the delta files or the state file cannot be written.
+	 * @throws InterruptedException when the thread is interrupted while waiting for a HiveMetastore source.
+	 */
+	int sync() throws TException, IOException, InterruptedException {
+		int nbrEvents = 0;
+		boolean fullExport = false;
+		boolean synced = false;
+
+		try {
+			MetastoreSource source = sourcePool.borrowSource();
+
+			try {
+				if(catalog == null) {
+					logger.log(Level.INFO, "No sync state in " + stateFile.getAbsolutePath() +
+							", running a full export.");
+					fullExport = true;
+				} else {
+					nbrEvents = readEvents(source);
+					fullExport = nbrEvents < 0;
+				}
+
+				if(fullExport)
+					loadCatalog(source);
+				else if(!databaseChanges.isEmpty() || !tableChanges.isEmpty())
+					writeDelta(source);
+			} finally {
+				sourcePool.releaseSource(source);
+			}
+
+			if(fullExport && !HiveMetastoreReader.export(hiveMetastoreProps, sourcePool, null, metrics))
+				throw new IOException("The full export did not complete, the sync state is not saved.");
+
+			lastEventId = pendingEventId;
+			saveState();
+			synced = true;
+		} finally {
+			// the model may be partly updated: the next sync starts again from the saved state
+			if(!synced)
+				resetState();
+		}
+
+		return Math.max(nbrEvents, 0);
+	}
+
+	private void resetState() throws IOException {
+		catalog = null;
+		lastEventId = 0;
+
+		if(stateFile.exists())
+			loadState();
+	}
+
+	/**
+	 * Records the id of the last event of the log, then lists the exported Databases and Tables into the model. The
+	 * events logged while listing are applied again by the next sync.
+	 */
+	private void loadCatalog(MetastoreSource source) throws TException {
+		long currentEventId = source.getCurrentNotificationEventId();
+		Map<String, Set<String>> loadedCatalog = new TreeMap<String, Set<String>>();
+
+		for(String dbName : filter.listDatabases(source))
+			loadedCatalog.put(dbName, new TreeSet<String>(filter.listTables(source, dbName)));
+
+		catalog = loadedCatalog;
+		pendingEventId = currentEventId;
+		databaseChanges.clear();
+		tableChanges.clear();
+	}
+
+	/**
+	 * Reads the events logged since the last event applied, up to the last event of the log when the sync started,
+	 * and coalesces them into the changes of the sync.
+	 * @return the number of events read, or -1 when a full export is required.
+	 */
+	private int readEvents(MetastoreSource source) throws TException {
+		long currentEventId = source.getCurrentNotificationEventId();
+		long eventId = lastEventId;
+		int nbrEvents = 0;
+
+		databaseChanges.clear();
+		tableChanges.clear();
+
+		if(currentEventId < lastEventId) {
+			logger.log(Level.WARNING, "The notification log was reset, last event " + currentEventId +
+					" before the last event applied " + lastEventId + ".");
+			return -1;
+		}
+
+		while(eventId < currentEventId) {
+			List<NotificationEvent> events = source.getNextNotification(eventId, eventBatchSize);
+
+			if(events.isEmpty())
+				break;
+
+			if(events.get(0).getEventId() > eventId + 1) {
+				logger.log(Level.WARNING, "Events " + (eventId + 1) + " to " + (events.get(0).getEventId() - 1) +
+						" were purged from the notification log before being applied.");
+				return -1;
+			}
+
+			for(NotificationEvent event : events) {
+				addEvent(event);
+				eventId = event.getEventId();
+			}
+
+			nbrEvents += events.size();
+		}
+
+		logger.log(Level.INFO, nbrEvents + " events read up to event " + eventId + ": " + databaseChanges.size() +
+				" database and " + countTableChanges() + " table changes.");
+		pendingEventId = eventId;
+		return nbrEvents;
+	}
+
+	private int countTableChanges() {
+		int nbrChanges = 0;
+
+		for(Map<String, Change> changes : tableChanges.values())
+			nbrChanges += changes.size();
+
+		return nbrChanges;
+	}
+
+	/**
+	 * Coalesces an event into the changes of the sync, the last change of a Database or a Table replacing the
+	 * previous ones. A dropped Database drops its Tables.
+	 */
+	private void addEvent(NotificationEvent event) {
+		String type = event.getEventType();
+		String dbName = event.getDbName();
+		String tableName = event.getTableName();
+
+		if(dbName == null || !filter.matchesDatabase(dbName)) {
+			nbrEventsIgnored++;
+			return;
+		}
+
+		if(type.equals(CREATE_DATABASE_EVENT) || type.equals(ALTER_DATABASE_EVENT))
+			databaseChanges.put(dbName, Change.REFETCH);
+		else if(type.equals(DROP_DATABASE_EVENT)) {
+			databaseChanges.put(dbName, Change.DROP);
+			Map<String, Change> changes = getTableChanges(dbName);
+
+			for(Map.Entry<String, Change> change : changes.entrySet())
+				change.setValue(Change.DROP);
+			if(catalog.containsKey(dbName))
+				for(String droppedTable : catalog.get(dbName))
+					changes.put(droppedTable, Change.DROP);
+		} else if(tableName == null || !filter.matchesTable(tableName)) {
+			nbrEventsIgnored++;
+			return;
+		} else if(type.equals(CREATE_TABLE_EVENT) || type.equals(ALTER_TABLE_EVENT))
+			getTableChanges(dbName).put(tableName, Change.REFETCH);
+		else if(type.equals(DROP_TABLE_EVENT))
+			getTableChanges(dbName).put(tableName, Change.DROP);
+		else {
+			nbrEventsIgnored++;
+			return;
+		}
+
+		nbrEventsApplied++;
+	}
+
+	private Map<String, Change> getTableChanges(String dbName) {
+		Map<String, Change> changes = tableChanges.get(dbName);
+
+		if(changes == null) {
+			changes = new LinkedHashMap<String, Change>();
+			tableChanges.put(dbName, changes);
+		}
+
+		return changes;
+	}
+
+	/**
+	 * Retrieves the changed Databases and Tables, writes them to the delta files and updates the model. The delta
+	 * files are deleted when they cannot be completely written.
+	 */
+	private void writeDelta(MetastoreSource source) throws TException, IOException {
+		Properties deltaProps = getDeltaProperties(pendingEventId);
+		File deletionFile = new File(hiveMetastoreProps.getProperty("metastore_output_dir") + "/" +
+				getDeltaFileName(hiveMetastoreProps.getProperty("metastore_deletion_file", "HiveMetastoreDeletions.csv"),
+						pendingEventId));
+		MetadataBufferedWriters deltaWriters = new MetadataBufferedWriters(deltaProps);
+		StringBuilder deletionRecords = new StringBuilder();
+		Set<String> renamedDatabases = new LinkedHashSet<String>();
+		boolean written = false;
+
+		try {
+			MetastoreExporter exporter = new MetastoreExporter(deltaWriters, sourcePool, tableBatchSize);
+			exporter.setMetrics(metrics);
+			exporter.setPartitionPageSize(partitionPageSize);
+			exporter.exportHeaders();
+
+			// Tables first, so that the Tables of a dropped Database are still in the model
+			for(Map.Entry<String, Map<String, Change>> entry : tableChanges.entrySet()) {
+				List<String> refetched = new ArrayList<String>();
+
+				for(Map.Entry<String, Change> change : entry.getValue().entrySet())
+					if(change.getValue() == Change.REFETCH)
+						refetched.add(change.getKey());
+					else
+						dropTable(entry.getKey(), change.getKey(), deletionRecords);
+
+				if(refetchTables(exporter, source, entry.getKey(), refetched, deletionRecords))
+					renamedDatabases.add(entry.getKey());
+			}
+
+			for(Map.Entry<String, Change> change : databaseChanges.entrySet())
+				if(change.getValue() == Change.REFETCH)
+					refetchDatabase(exporter, source, change.getKey(), deletionRecords);
+				else
+					dropDatabase(change.getKey(), deletionRecords);
+
+			for(String dbName : renamedDatabases)
+				if(catalog.containsKey(dbName))
+					relistTables(exporter, source, dbName, deletionRecords);
+
+			writeDeletions(deletionFile, deletionRecords);
+			written = true;
+		} finally {
+			if(!deltaWriters.closeBufferedWriters())
+				written = false;
+
+			if(!written)
+				deleteDeltaFiles(deltaProps, deletionFile);
+		}
+
+		if(!written)
+			throw new IOException("Cannot close the delta files of event " + pendingEventId + ".");
+
+		logger.log(Level.INFO, "Delta files of event " + pendingEventId + " written: " + nbrEventsApplied +
+				" events applied, " + nbrEventsIgnored + " ignored since the start.");
+	}
+
+	/**
+	 * Retrieves and writes a batch of changed Tables of a Database, adding them to the model. A Table which cannot be
+	 * retrieved was dropped or renamed since its event, and is removed from the model.
+	 * @return true when a Table could not be retrieved, and the Database must be listed again.
+	 */
+	private boolean refetchTables(MetastoreExporter exporter, MetastoreSource source, String dbName,
+			List<String> tableNames, StringBuilder deletionRecords) throws TException, IOException {
+		boolean missingTables = false;
+
+		for(int batchStart = 0; batchStart < tableNames.size(); batchStart += tableBatchSize) {
+			List<String> batch = tableNames.subList(batchStart, Math.min(batchStart + tableBatchSize,
+					tableNames.size()));
+			List<Table> tables;
+
+			try {
+				tables = exporter.fetchTables(source, dbName, batch);
+			} catch (NoSuchObjectException noSuchObjectException) {
+				tables = Collections.emptyList();
+			}
+
+			exporter.writeTables(tables);
+			exporter.exportPartitions(source, tables);
+
+			Set<String> fetched = new HashSet<String>();
+			for(Table table : tables) {
+				fetched.add(table.getTableName());
+				addTable(dbName, table.getTableName());
+			}
+
+			for(String tableName : batch)
+				if(!fetched.contains(tableName)) {
+					dropTable(dbName, tableName, deletionRecords);
+					missingTables = true;
+				}
+		}
+
+		return missingTables;
+	}
+
+	/**
+	 * Lists the Tables of a Database again, writing the Tables missing from the model and dropping the Tables not
+	 * listed anymore.
+	 */
+	private void relistTables(MetastoreExporter exporter, MetastoreSource source, String dbName,
+			StringBuilder deletionRecords) throws TException, IOException {
+		Set<String> listed = new TreeSet<String>(exporter.listTables(source, dbName));
+		List<String> added = new ArrayList<String>();
+
+		for(String tableName : listed)
+			if(!catalog.get(dbName).contains(tableName))
+				added.add(tableName);
+
+		for(String tableName : new ArrayList<String>(catalog.get(dbName)))
+			if(!listed.contains(tableName))
+				dropTable(dbName, tableName, deletionRecords);
+
+		refetchTables(exporter, source, dbName, added, deletionRecords);
+	}
+
+	private void refetchDatabase(MetastoreExporter exporter, MetastoreSource source, String dbName,
+			StringBuilder deletionRecords) throws TException, IOException {
+		try {
+			exporter.exportDatabase(source, dbName);
+		} catch (NoSuchObjectException noSuchObjectException) {
+			dropDatabase(dbName, deletionRecords);
+			return;
+		}
+
+		if(!catalog.containsKey(dbName))
+			catalog.put(dbName, new TreeSet<String>());
+	}
+
+	private void addTable(String dbName, String tableName) {
+		Set<String> tables = catalog.get(dbName);
+
+		if(tables == null) {
+			tables = new TreeSet<String>();
+			catalog.put(dbName, tables);
+		}
+
+		tables.add(tableName);
+	}
+
+	private void dropTable(String dbName, String tableName, StringBuilder deletionRecords) throws IOException {
+		Set<String> tables = catalog.get(dbName);
+
+		// a Table created and dropped since the previous sync was never written
+		if(tables != null && tables.remove(tableName))
+			appendDeletion(deletionRecords, TableElement.TABLE_ELEMENT_TYPE, dbName + "." + tableName);
+	}
+
+	private void dropDatabase(String dbName, StringBuilder deletionRecords) throws IOException {
+		Set<String> tables = catalog.remove(dbName);
+
+		if(tables == null)
+			return;
+
+		for(String tableName : tables)
+			appendDeletion(deletionRecords, TableElement.TABLE_ELEMENT_TYPE, dbName + "." + tableName);
+		appendDeletion(deletionRecords, DatabaseElement.DATABASE_ELEMENT_TYPE, dbName);
+	}
+
+	private static void appendDeletion(StringBuilder deletionRecords, String type, String id) throws IOException {
+		deletionRecords.append(type).append(DEFAULT_SEPARATOR);
+		CsvEncoder.getInstance(DEFAULT_SEPARATOR).encode(id, deletionRecords);
+		deletionRecords.append(MetastoreExporter.LINE_SEPARATOR);
+	}
+
+	/**
+	 * Writes the deletions of the sync with a <b>type,id</b> header, like the deletions file of an incremental export.
+	 */
+	private static void writeDeletions(File deletionFile, StringBuilder deletionRecords) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(deletionFile), BUFFER_SIZE);
+
+		try {
+			out.write("type" + DEFAULT_SEPARATOR + "id");
+			out.newLine();
+			out.append(deletionRecords);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @param eventId the id of the last event applied by the delta
+	 * @return the properties of the output files, naming the delta files after the event.
+	 */
+	Properties getDeltaProperties(long eventId) {
+		Properties deltaProps = new Properties();
+		deltaProps.putAll(hiveMetastoreProps);
+
+		for(String[] outputFile : OUTPUT_FILES)
+			deltaProps.setProperty(outputFile[0], getDeltaFileName(hiveMetastoreProps.getProperty(outputFile[0],
+					outputFile[1]), eventId));
+
+		return deltaProps;
+	}
+
+	/**
+	 * @param fileName the name of an output file, such as <b>HiveMetastoreTables.csv</b>
+	 * @param eventId the id of the last event applied by the delta
+	 * @return the name of the delta file, such as <b>HiveMetastoreTables_delta_1234.csv</b>.
+	 */
+	static String getDeltaFileName(String fileName, long eventId) {
+		int extension = fileName.lastIndexOf('.');
+
+		if(extension <= 0)
+			return fileName + "_delta_" + eventId;
+
+		return fileName.substring(0, extension) + "_delta_" + eventId + fileName.substring(extension);
+	}
+
+	private void deleteDeltaFiles(Properties deltaProps, File deletionFile) {
+		String outputDir = hiveMetastoreProps.getProperty("metastore_output_dir");
+
+		for(String[] outputFile : OUTPUT_FILES) {
+			File file = new File(outputDir + "/" + deltaProps.getProperty(outputFile[0]));
+			if(file.exists() && !file.delete())
+				logger.log(Level.WARNING, "Cannot delete the incomplete delta file " + file.getAbsolutePath());
+		}
+
+		if(deletionFile.exists() && !deletionFile.delete())
+			logger.log(Level.WARNING, "Cannot delete the incomplete delta file " + deletionFile.getAbsolutePath());
+	}
+
+	private void loadState() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile),
+				BUFFER_SIZE));
+
+		try {
+			if(in.readInt() != MAGIC)
+				throw new IOException("Not a sync state file: " + stateFile);
+
+			int version = in.readInt();
+			if(version != VERSION)
+				throw new IOException("Unsupported sync state version " + version + ": " + stateFile);
+
+			long loadedEventId = in.readLong();
+			int nbrDatabases = in.readInt();
+			Map<String, Set<String>> loadedCatalog = new TreeMap<String, Set<String>>();
+
+			for(int i = 0; i < nbrDatabases; i++) {
+				String dbName = in.readUTF();
+				int nbrTables = in.readInt();
+				Set<String> tables = new TreeSet<String>();
+
+				for(int j = 0; j < nbrTables; j++)
+					tables.add(in.readUTF());
+				loadedCatalog.put(dbName, tables);
+			}
+
+			lastEventId = loadedEventId;
+			catalog = loadedCatalog;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Saves the model and the id of the last event applied. The file is written next to the destination then
+	 * renamed, so that an interrupted save keeps the previous state.
+	 */
+	private void saveState() throws IOException {
+		File tmpFile = new File(stateFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile),
+				BUFFER_SIZE));
+
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(lastEventId);
+			out.writeInt(catalog.size());
+
+			for(Map.Entry<String, Set<String>> entry : catalog.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().size());
+				for(String tableName : entry.getValue())
+					out.writeUTF(tableName);
+			}
+		} finally {
+			out.close();
+		}
+
+		if(stateFile.exists() && !stateFile.delete())
+			throw new IOException("Cannot replace sync state file " + stateFile);
+
+		if(!tmpFile.renameTo(stateFile))
+			throw new IOException("Cannot rename " + tmpFile + " to " + stateFile);
+	}
+}
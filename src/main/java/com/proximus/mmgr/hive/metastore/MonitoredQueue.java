@@ -0,0 +1,117 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue between two stages of the export pipeline, measuring how long each side waits for the other.<p>
+ * A producer waiting on a full queue is stalled by a slower consumer stage (backpressure); a consumer waiting on an
+ * empty queue is starved by a slower producer stage. Both waits are accumulated, together with the maximum depth
+ * reached by the queue, so that the slowest stage of the pipeline can be identified.
+ * @author Jonathan Puvilland
+ *
+ * @param <E> the type of the items exchanged between the stages
+ */
+class MonitoredQueue<E> {
+	private final String name;
+	private final BlockingQueue<E> queue;
+	private final int capacity;
+	private final AtomicLong producerStallNanos = new AtomicLong();
+	private final AtomicLong consumerStallNanos = new AtomicLong();
+	private final AtomicLong nbrItems = new AtomicLong();
+	private final AtomicInteger maxDepth = new AtomicInteger();
+
+	/**
+	 * @param name the name of the queue, used in statistics
+	 * @param capacity the maximum number of items held by the queue
+	 */
+	MonitoredQueue(String name, int capacity) {
+		this.name = name;
+		this.capacity = capacity;
+		this.queue = new ArrayBlockingQueue<E>(capacity);
+	}
+
+	/**
+	 * Adds an item, waiting for space when the queue is full.
+	 * @param item the item to add
+	 * @throws InterruptedException when interrupted while waiting.
+	 */
+	void put(E item) throws InterruptedException {
+		if(!queue.offer(item)) {
+			long start = System.nanoTime();
+			queue.put(item);
+			producerStallNanos.addAndGet(System.nanoTime() - start);
+		}
+
+		nbrItems.incrementAndGet();
+
+		int depth = queue.size();
+		int max = maxDepth.get();
+		while(depth > max && !maxDepth.compareAndSet(max, depth))
+			max = maxDepth.get();
+	}
+
+	/**
+	 * Removes an item, waiting for one when the queue is empty.
+	 * @return the oldest item of the queue.
+	 * @throws InterruptedException when interrupted while waiting.
+	 */
+	E take() throws InterruptedException {
+		E item = queue.poll();
+
+		if(item == null) {
+			long start = System.nanoTime();
+			item = queue.take();
+			consumerStallNanos.addAndGet(System.nanoTime() - start);
+		}
+
+		return item;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the current number of items in the queue.
+	 */
+	int getDepth() {
+		return queue.size();
+	}
+
+	int getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	long getNbrItems() {
+		return nbrItems.get();
+	}
+
+	/**
+	 * @return the total time producers waited for space, in milliseconds.
+	 */
+	long getProducerStallMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(producerStallNanos.get());
+	}
+
+	/**
+	 * @return the total time consumers waited for items, in milliseconds.
+	 */
+	long getConsumerStallMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(consumerStallNanos.get());
+	}
+
+	@Override
+	public String toString() {
+		return name + " queue: depth " + getDepth() + "/" + capacity + ", max depth " + getMaxDepth() + ", " +
+				nbrItems + " items, producers stalled " + getProducerStallMillis() + " ms, consumers stalled " +
+				getConsumerStallMillis() + " ms";
+	}
+}
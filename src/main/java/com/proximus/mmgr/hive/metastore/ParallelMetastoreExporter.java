@@ -0,0 +1,169 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.thrift.TException;
+
+/**
+ * Exports the Hive Metadata with several worker threads sharing a pool of HiveMetastore sources.<p>
+ * Work is split per batch of Tables rather than per Database: each Database task lists its Tables and forks one
+ * task per batch in a work-stealing <i>ForkJoinPool</i>, so idle workers pick up the batches of a large Database
+ * instead of waiting for the thread that listed it. A worker only holds a HiveMetastore source for the duration of
+ * a task; when the pool is smaller than the number of workers, workers wait for a free source.
+ * @author Jonathan Puvilland
+ *
+ */
+class ParallelMetastoreExporter extends MetastoreExporter {
+	private static final Logger logger = Logger.getLogger(ParallelMetastoreExporter.class.getName());
+	private final int nbrWorkers;
+
+	/**
+	 * Creates an exporter running <i>nbrWorkers</i> worker threads.
+	 * @param bufferedWriters the object managing the different file writers.
+	 * @param sourcePool the pool of HiveMetastore sources shared by the workers
+	 * @param tableBatchSize the maximum number of Tables retrieved in a single HiveMetastore call.
+	 * @param nbrWorkers the number of worker threads
+	 */
+	ParallelMetastoreExporter(MetadataBufferedWriters bufferedWriters, MetastoreSourcePool sourcePool,
+			int tableBatchSize, int nbrWorkers) {
+		super(bufferedWriters, sourcePool, tableBatchSize);
+		this.nbrWorkers = nbrWorkers;
+	}
+
+	@Override
+	void export() {
+		exportHeaders();
+
+		List<String> databases;
+
+		try {
+			MetastoreSource source = sourcePool.borrowSource();
+			try {
+				databases = listDatabases(source);
+			} finally {
+				sourcePool.releaseSource(source);
+			}
+		} catch (TException metaException) {
+			exportFailed("Cannot access HiveMetastore while processing Databases.", metaException);
+			return;
+		} catch (InterruptedException interruptedException) {
+			exportFailed("Export interrupted.", interruptedException);
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		logger.log(Level.INFO, "Exporting " + databases.size() + " databases with " + nbrWorkers + " workers and " +
+				sourcePool.getPoolSize() + " HiveMetastore source(s)");
+
+		List<DatabaseTask> databaseTasks = new ArrayList<DatabaseTask>(databases.size());
+		for(String dbName : databases)
+			databaseTasks.add(new DatabaseTask(dbName));
+
+		ForkJoinPool workers = new ForkJoinPool(nbrWorkers);
+		try {
+			for(DatabaseTask databaseTask : databaseTasks)
+				workers.execute(databaseTask);
+
+			for(DatabaseTask databaseTask : databaseTasks)
+				databaseTask.join();
+		} finally {
+			workers.shutdown();
+		}
+	}
+
+	/**
+	 * Exports a Database record, lists its Tables and forks one task per batch of Tables.
+	 */
+	private class DatabaseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final String dbName;
+
+		DatabaseTask(String dbName) {
+			this.dbName = dbName;
+		}
+
+		@Override
+		protected void compute() {
+			List<String> tables;
+
+			try {
+				MetastoreSource source = sourcePool.borrowSource();
+				try {
+					exportDatabase(source, dbName);
+					tables = pendingTables(dbName, listTables(source, dbName));
+				} finally {
+					sourcePool.releaseSource(source);
+				}
+			} catch (TException metaException) {
+				exportFailed("Cannot access HiveMetastore while processing Database " + dbName + ".",
+						metaException);
+				return;
+			} catch (IOException ioException) {
+				exportFailed("Cannot write to database output file.", ioException);
+				return;
+			} catch (InterruptedException interruptedException) {
+				exportFailed("Export interrupted.", interruptedException);
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			AtomicInteger nbrTablesExported = new AtomicInteger();
+			List<TableBatchTask> batchTasks = new ArrayList<TableBatchTask>();
+
+			for(int batchStart = 0; batchStart < tables.size(); batchStart += tableBatchSize) {
+				List<String> batch = tables.subList(batchStart, Math.min(batchStart + tableBatchSize, tables.size()));
+				batchTasks.add(new TableBatchTask(dbName, batch, nbrTablesExported));
+			}
+
+			invokeAll(batchTasks);
+
+			logger.log(Level.INFO, nbrTablesExported + " tables sucessfully exported for database: " + dbName);
+		}
+	}
+
+	/**
+	 * Exports the Tables and Columns of a batch of Tables with a source borrowed from the pool.
+	 */
+	private class TableBatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final String dbName;
+		private final List<String> tableNames;
+		private final AtomicInteger nbrTablesExported;
+
+		TableBatchTask(String dbName, List<String> tableNames, AtomicInteger nbrTablesExported) {
+			this.dbName = dbName;
+			this.tableNames = tableNames;
+			this.nbrTablesExported = nbrTablesExported;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				MetastoreSource source = sourcePool.borrowSource();
+				try {
+					nbrTablesExported.addAndGet(exportTableBatch(source, dbName, tableNames));
+				} finally {
+					sourcePool.releaseSource(source);
+				}
+			} catch (TException metaException) {
+				exportFailed("Cannot access HiveMetastore while processing Tables of " + dbName + ".",
+						metaException);
+			} catch (IOException ioException) {
+				exportFailed("Cannot write to table output file.", ioException);
+			} catch (RuntimeException runtimeException) {
+				exportFailed("Cannot export a batch of " + tableNames.size() + " tables of " + dbName + ".",
+						runtimeException);
+			} catch (InterruptedException interruptedException) {
+				exportFailed("Export interrupted.", interruptedException);
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
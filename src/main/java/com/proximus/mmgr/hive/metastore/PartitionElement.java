@@ -0,0 +1,102 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.List;
+
+import org.apache.hadoop.hive.metastore.Warehouse;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+
+import com.proximus.mmgr.AbstractElement;
+import com.proximus.mmgr.ElementSchema;
+import com.proximus.mmgr.ElementWritable;
+import com.proximus.mmgr.QualifiedName;
+import com.proximus.mmgr.hive.metastore.ElementAttributes.PartitionAttributes;
+
+/**
+ * A sub-type of Elements that captures the Metadata of a HiveMetastore Partition. The list of attributes is declared
+ * in the <i>PartitionAttributes</i> interface. All the Element's manipulation methods are inherited from the
+ * <i>AbstractElement</i> parent class.<p>
+ * A Partition is named like in the HiveMetastore, from the Table's partition keys and the Partition's values, for
+ * example <b>ds=2016-01-01/hr=00</b>; its id is prefixed by the Table's qualified name. Like a ColumnElement, a
+ * PartitionElement can be reused as a cursor: <i>setTable</i> is followed by one <i>setPartition</i> per Partition.
+ * @author Jonathan Puvilland
+ *
+ */
+public class PartitionElement extends AbstractElement<PartitionAttributes> implements ElementWritable {
+	public static final String PARTITION_ELEMENT_TYPE = "PART";
+	static final ElementSchema<PartitionAttributes> SCHEMA = ElementSchema.forType(PartitionAttributes.class);
+	private final QualifiedName id = new QualifiedName();
+	private List<FieldSchema> partitionKeys;
+
+	public PartitionElement() {
+		super(SCHEMA);
+		this.setAttribute(PartitionAttributes.id, "id");
+		this.setAttribute(PartitionAttributes.name, "name");
+	}
+
+	/**
+	 * Creates a PartitionElement initialized with a HiveMetastore Partition Metadata
+	 * @param table the HiveMetastore Table object holding the partition keys
+	 * @param partition a HiveMetastore Partition object
+	 * @throws MetaException when the Partition values do not match the Table's partition keys.
+	 */
+	public PartitionElement(Table table, Partition partition) throws MetaException {
+		super(SCHEMA);
+		setTable(table);
+		setPartition(partition);
+	}
+
+	/**
+	 * Points this Element to the Partitions of a HiveMetastore Table. Must be followed by <i>setPartition</i>.
+	 * @param table a HiveMetastore Table object
+	 */
+	public void setTable(Table table) {
+		setTable(table.getDbName(), table.getTableName());
+		this.partitionKeys = table.getPartitionKeys();
+	}
+
+	/**
+	 * Points this Element to the Partitions of a Table, named by <i>setPartition(String, String, String, int)</i>.
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 */
+	public void setTable(String dbName, String tableName) {
+		String tableId = dbName == null ? tableName : dbName + "." + tableName;
+		id.set(tableId, null);
+		this.partitionKeys = null;
+		this.setAttribute(PartitionAttributes.parent, tableId);
+		this.setAttribute(PartitionAttributes.type, PARTITION_ELEMENT_TYPE);
+	}
+
+	/**
+	 * Re-points this Element to a Partition of the current Table.
+	 * @param partition a HiveMetastore Partition object
+	 * @throws MetaException when the Partition values do not match the Table's partition keys.
+	 */
+	public void setPartition(Partition partition) throws MetaException {
+		StorageDescriptor sd = partition.getSd();
+
+		// Get comment from partition parameters if available
+		setPartition(Warehouse.makePartName(partitionKeys, partition.getValues()),
+				partition.getParametersSize() > 0 ? partition.getParameters().get("comment") : null,
+				sd != null ? sd.getLocation() : null, partition.getCreateTime());
+	}
+
+	/**
+	 * Re-points this Element to a Partition of the current Table.
+	 * @param partName the name of the Partition, as built by the HiveMetastore from the partition keys and values
+	 * @param comment the comment of the Partition, possibly null
+	 * @param locationUri the storage location of the Partition, possibly null
+	 * @param createTime the creation time of the Partition, in seconds since the epoch
+	 */
+	public void setPartition(String partName, String comment, String locationUri, int createTime) {
+		this.setAttribute(PartitionAttributes.name, partName);
+		this.setAttributeValue(PartitionAttributes.id, id.setName(partName));
+		this.setAttribute(PartitionAttributes.description, comment);
+		this.setAttribute(PartitionAttributes.locationUri, locationUri);
+		this.setAttribute(PartitionAttributes.createTime, Integer.toString(createTime));
+	}
+}
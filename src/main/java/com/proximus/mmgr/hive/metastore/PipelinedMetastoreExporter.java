@@ -0,0 +1,498 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+/**
+ * Exports the Hive Metadata with a pipeline of three stages, so that the HiveMetastore latency, the formatting of
+ * records and the writes to the output files overlap instead of adding up:<p>
+ * - <b>fetchers</b>: threads sharing the pool of HiveMetastore sources, retrieving Databases, batches of Tables and
+ * pages of Partitions.
+ * <br>- <b>serializers</b>: threads formatting the retrieved objects into chunks of complete records.
+ * <br>- <b>writers</b>: one thread per output file (database, table, column, partition), writing the chunks of
+ * records.<p>
+ * Stages exchange their work through bounded queues. A stage producing faster than the next one blocks on the full
+ * queue, so the heap holds at most <i>queueCapacity</i> batches of Tables and <i>queueCapacity</i> chunks of records
+ * per output file, whatever the size of the catalog. Each queue records its maximum depth and how long its producers
+ * and consumers waited; they are logged periodically during the export, and at the end of the export.
+ * @author Jonathan Puvilland
+ *
+ */
+class PipelinedMetastoreExporter extends MetastoreExporter {
+	private static final Logger logger = Logger.getLogger(PipelinedMetastoreExporter.class.getName());
+	private static final int MONITOR_INTERVAL_SECONDS = 10;
+	private static final FetchedBatch END_OF_BATCHES = new FetchedBatch(null, Collections.<Table>emptyList());
+	private static final CharSequence END_OF_RECORDS = new StringBuilder();
+
+	private final int nbrFetchers;
+	private final int nbrSerializers;
+	private final MonitoredQueue<FetchedBatch> fetchQueue;
+	private final MonitoredQueue<CharSequence> databaseQueue;
+	private final MonitoredQueue<CharSequence> tableQueue;
+	private final MonitoredQueue<CharSequence> columnQueue;
+	private final MonitoredQueue<CharSequence> partitionQueue;
+	private final AtomicInteger nbrPendingFetches = new AtomicInteger();
+	private final CountDownLatch fetchesDone = new CountDownLatch(1);
+	private ExecutorService fetchers;
+
+	/**
+	 * The objects retrieved by a fetcher: a Database, a batch of Tables, or a page of Partitions of a Table.
+	 */
+	private static final class FetchedBatch {
+		final Database database;
+		final List<Table> tables;
+		final Table partitionedTable;
+		final List<Partition> partitions;
+
+		FetchedBatch(Database database, List<Table> tables) {
+			this.database = database;
+			this.tables = tables;
+			this.partitionedTable = null;
+			this.partitions = Collections.<Partition>emptyList();
+		}
+
+		FetchedBatch(Table partitionedTable, List<Partition> partitions) {
+			this.database = null;
+			this.tables = Collections.<Table>emptyList();
+			this.partitionedTable = partitionedTable;
+			this.partitions = partitions;
+		}
+	}
+
+	/**
+	 * Creates a pipelined exporter.
+	 * @param bufferedWriters the object managing the different file writers.
+	 * @param sourcePool the pool of HiveMetastore sources shared by the fetchers
+	 * @param tableBatchSize the maximum number of Tables retrieved in a single HiveMetastore call.
+	 * @param nbrFetchers the number of fetcher threads
+	 * @param nbrSerializers the number of serializer threads
+	 * @param queueCapacity the capacity of each queue between the stages
+	 */
+	PipelinedMetastoreExporter(MetadataBufferedWriters bufferedWriters, MetastoreSourcePool sourcePool,
+			int tableBatchSize, int nbrFetchers, int nbrSerializers, int queueCapacity) {
+		super(bufferedWriters, sourcePool, tableBatchSize);
+		this.nbrFetchers = nbrFetchers;
+		this.nbrSerializers = nbrSerializers;
+		this.fetchQueue = new MonitoredQueue<FetchedBatch>("fetch", queueCapacity);
+		this.databaseQueue = new MonitoredQueue<CharSequence>("database", queueCapacity);
+		this.tableQueue = new MonitoredQueue<CharSequence>("table", queueCapacity);
+		this.columnQueue = new MonitoredQueue<CharSequence>("column", queueCapacity);
+		this.partitionQueue = new MonitoredQueue<CharSequence>("partition", queueCapacity);
+	}
+
+	/**
+	 * @return the queues between the stages: fetch (fetchers to serializers), then database, table, column and
+	 * partition (serializers to writers).
+	 */
+	List<MonitoredQueue<?>> getQueues() {
+		return Arrays.<MonitoredQueue<?>>asList(fetchQueue, databaseQueue, tableQueue, columnQueue, partitionQueue);
+	}
+
+	@Override
+	void export() {
+		exportHeaders();
+
+		List<String> databases;
+
+		try {
+			MetastoreSource source = sourcePool.borrowSource();
+			try {
+				databases = listDatabases(source);
+			} finally {
+				sourcePool.releaseSource(source);
+			}
+		} catch (TException metaException) {
+			exportFailed("Cannot access HiveMetastore while processing Databases.", metaException);
+			return;
+		} catch (InterruptedException interruptedException) {
+			exportFailed("Export interrupted.", interruptedException);
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		logger.log(Level.INFO, "Exporting " + databases.size() + " databases with " + nbrFetchers + " fetchers, " +
+				nbrSerializers + " serializers and " + sourcePool.getPoolSize() + " HiveMetastore source(s)");
+
+		List<Thread> writers = Arrays.<Thread>asList(
+				new WriterStage(databaseQueue) {
+					@Override
+					void write(CharSequence records) throws IOException {
+						bufferedWriters.writeDatabaseRecords(records);
+					}
+				},
+				new WriterStage(tableQueue) {
+					@Override
+					void write(CharSequence records) throws IOException {
+						bufferedWriters.writeTableRecords(records);
+					}
+				},
+				new WriterStage(columnQueue) {
+					@Override
+					void write(CharSequence records) throws IOException {
+						bufferedWriters.writeColumnRecords(records);
+					}
+				},
+				new WriterStage(partitionQueue) {
+					@Override
+					void write(CharSequence records) throws IOException {
+						bufferedWriters.writePartitionRecords(records);
+					}
+				});
+
+		List<Thread> serializers = new ArrayList<Thread>(nbrSerializers);
+		for(int i = 0; i < nbrSerializers; i++)
+			serializers.add(new SerializerStage(i));
+
+		startAll(writers);
+		startAll(serializers);
+
+		ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(daemonThreads("monitor"));
+		monitor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				logQueueDepths();
+			}
+		}, MONITOR_INTERVAL_SECONDS, MONITOR_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+		fetchers = Executors.newFixedThreadPool(nbrFetchers, daemonThreads("fetcher"));
+
+		try {
+			nbrPendingFetches.set(databases.size());
+			if(databases.isEmpty())
+				fetchesDone.countDown();
+
+			for(String dbName : databases)
+				fetchers.execute(new DatabaseFetch(dbName));
+
+			fetchesDone.await();
+
+			// each stage is told the end of its input once the previous stage has completed
+			for(int i = 0; i < nbrSerializers; i++)
+				fetchQueue.put(END_OF_BATCHES);
+			joinAll(serializers);
+
+			databaseQueue.put(END_OF_RECORDS);
+			tableQueue.put(END_OF_RECORDS);
+			columnQueue.put(END_OF_RECORDS);
+			partitionQueue.put(END_OF_RECORDS);
+			joinAll(writers);
+
+		} catch (InterruptedException interruptedException) {
+			exportFailed("Export interrupted.", interruptedException);
+			interruptAll(serializers);
+			interruptAll(writers);
+			Thread.currentThread().interrupt();
+		} finally {
+			fetchers.shutdownNow();
+			monitor.shutdownNow();
+		}
+	}
+
+	private static ThreadFactory daemonThreads(final String stageName) {
+		return new ThreadFactory() {
+			private final AtomicInteger nbrThreads = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "export-" + stageName + "-" + nbrThreads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	private static void startAll(List<Thread> threads) {
+		for(Thread thread : threads)
+			thread.start();
+	}
+
+	private static void joinAll(List<Thread> threads) throws InterruptedException {
+		for(Thread thread : threads)
+			thread.join();
+	}
+
+	private static void interruptAll(List<Thread> threads) {
+		for(Thread thread : threads)
+			thread.interrupt();
+	}
+
+	/**
+	 * Marks the end of a fetch task, and the end of the fetch stage when no task is left.
+	 */
+	private void fetchDone() {
+		if(nbrPendingFetches.decrementAndGet() == 0)
+			fetchesDone.countDown();
+	}
+
+	/**
+	 * Retrieves a Database, lists its Tables and submits one fetch task per batch of Tables.
+	 */
+	private class DatabaseFetch implements Runnable {
+		private final String dbName;
+
+		DatabaseFetch(String dbName) {
+			this.dbName = dbName;
+		}
+
+		@Override
+		public void run() {
+			try {
+				Database database;
+				List<String> tables;
+
+				MetastoreSource source = sourcePool.borrowSource();
+				try {
+					logger.log(Level.INFO, "Exporting metadata for database: " + dbName);
+					database = fetchDatabase(source, dbName);
+					tables = listTables(source, dbName);
+				} finally {
+					sourcePool.releaseSource(source);
+				}
+
+				fetchQueue.put(new FetchedBatch(database, Collections.<Table>emptyList()));
+
+				for(int batchStart = 0; batchStart < tables.size(); batchStart += tableBatchSize) {
+					List<String> batch = tables.subList(batchStart, Math.min(batchStart + tableBatchSize,
+							tables.size()));
+					nbrPendingFetches.incrementAndGet();
+					fetchers.execute(new TableBatchFetch(dbName, batch));
+				}
+			} catch (TException metaException) {
+				exportFailed("Cannot access HiveMetastore while processing Database " + dbName + ".", metaException);
+			} catch (InterruptedException interruptedException) {
+				exportFailed("Export interrupted.", interruptedException);
+				Thread.currentThread().interrupt();
+			} finally {
+				fetchDone();
+			}
+		}
+	}
+
+	/**
+	 * Retrieves a batch of Tables, then the Partitions of its partitioned Tables page by page. The HiveMetastore
+	 * source is released before handing the batch or a page to the serializers, so that a fetcher stalled by
+	 * backpressure does not hold a connection.
+	 */
+	private class TableBatchFetch implements Runnable {
+		private final String dbName;
+		private final List<String> tableNames;
+
+		TableBatchFetch(String dbName, List<String> tableNames) {
+			this.dbName = dbName;
+			this.tableNames = tableNames;
+		}
+
+		@Override
+		public void run() {
+			try {
+				List<Table> tables;
+
+				MetastoreSource source = sourcePool.borrowSource();
+				try {
+					tables = fetchTables(source, dbName, tableNames);
+				} finally {
+					sourcePool.releaseSource(source);
+				}
+
+				fetchQueue.put(new FetchedBatch(null, tables));
+
+				if(partitionPageSize > 0)
+					for(Table table : tables)
+						if(table.getPartitionKeysSize() > 0)
+							fetchPartitions(table);
+			} catch (TException metaException) {
+				exportFailed("Cannot access HiveMetastore while processing Tables of " + dbName + ".",
+						metaException);
+			} catch (InterruptedException interruptedException) {
+				exportFailed("Export interrupted.", interruptedException);
+				Thread.currentThread().interrupt();
+			} finally {
+				fetchDone();
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the Partitions of a Table by pages of <i>partitionPageSize</i> Partitions, each page being handed to
+	 * the serializers.
+	 */
+	private void fetchPartitions(Table table) throws TException, InterruptedException {
+		List<String> partitionNames;
+		long fetchNanos = 0;
+
+		MetastoreSource source = sourcePool.borrowSource();
+		long start = System.nanoTime();
+		try {
+			partitionNames = pendingPartitions(table, listPartitionNames(source, table));
+		} finally {
+			fetchNanos += System.nanoTime() - start;
+			sourcePool.releaseSource(source);
+		}
+
+		int nbrPartitions = 0;
+		int nbrCalls = 1;
+
+		for(int pageStart = 0; pageStart < partitionNames.size(); pageStart += partitionPageSize) {
+			List<String> page = partitionNames.subList(pageStart,
+					Math.min(pageStart + partitionPageSize, partitionNames.size()));
+			List<Partition> partitions;
+
+			source = sourcePool.borrowSource();
+			start = System.nanoTime();
+			try {
+				partitions = source.getPartitionsByNames(table.getDbName(), table.getTableName(), page);
+			} finally {
+				fetchNanos += System.nanoTime() - start;
+				sourcePool.releaseSource(source);
+			}
+
+			nbrCalls++;
+			nbrPartitions += partitions.size();
+			fetchQueue.put(new FetchedBatch(table, partitions));
+		}
+
+		recordPartitionFetch(table, nbrPartitions, nbrCalls, fetchNanos);
+	}
+
+	/**
+	 * Formats the fetched Databases, Tables and Partitions into chunks of records, one chunk per fetched batch and output file.
+	 */
+	private class SerializerStage extends Thread {
+		SerializerStage(int index) {
+			super("export-serializer-" + (index + 1));
+			setDaemon(true);
+		}
+
+		/**
+		 * Formats the batches until the end marker. A batch which cannot be formatted is counted as a failure and
+		 * the following batches are still taken, so that the fetchers are not blocked.
+		 */
+		@Override
+		public void run() {
+			try {
+				for(FetchedBatch batch = fetchQueue.take(); batch != END_OF_BATCHES; batch = fetchQueue.take()) {
+					try {
+						serialize(batch);
+					} catch (RuntimeException runtimeException) {
+						exportFailed("Cannot format a batch of " + batch.tables.size() + " tables and " +
+								batch.partitions.size() + " partitions.", runtimeException);
+					}
+				}
+			} catch (InterruptedException interruptedException) {
+				exportFailed("Export interrupted.", interruptedException);
+			}
+		}
+
+		private void serialize(FetchedBatch batch) throws InterruptedException {
+			if(batch.database != null) {
+				StringBuilder dbRecord = new StringBuilder();
+				if(formatDatabase(batch.database, dbRecord))
+					databaseQueue.put(dbRecord);
+			}
+
+			if(!batch.tables.isEmpty()) {
+				StringBuilder tableRecords = new StringBuilder();
+				StringBuilder columnRecords = new StringBuilder();
+				formatTables(batch.tables, tableRecords, columnRecords);
+
+				if(tableRecords.length() > 0)
+					tableQueue.put(tableRecords);
+				if(columnRecords.length() > 0)
+					columnQueue.put(columnRecords);
+			}
+
+			if(!batch.partitions.isEmpty())
+				serializePartitions(batch);
+		}
+
+		private void serializePartitions(FetchedBatch batch) throws InterruptedException {
+			StringBuilder partitionRecords = new StringBuilder();
+
+			try {
+				formatPartitions(batch.partitionedTable, batch.partitions, partitionRecords);
+			} catch (MetaException metaException) {
+				exportFailed("Invalid partitions for table " + batch.partitionedTable.getDbName() + "." +
+						batch.partitionedTable.getTableName() + ".", metaException);
+				return;
+			}
+
+			partitionQueue.put(partitionRecords);
+		}
+	}
+
+	/**
+	 * Writes the chunks of records of a single output file. After a write failure the remaining chunks are
+	 * drained without being written, so that the serializers are not blocked.
+	 */
+	private abstract class WriterStage extends Thread {
+		private final MonitoredQueue<CharSequence> queue;
+
+		WriterStage(MonitoredQueue<CharSequence> queue) {
+			super("export-writer-" + queue.getName());
+			setDaemon(true);
+			this.queue = queue;
+		}
+
+		abstract void write(CharSequence records) throws IOException;
+
+		@Override
+		public void run() {
+			boolean failed = false;
+
+			try {
+				for(CharSequence records = queue.take(); records != END_OF_RECORDS; records = queue.take()) {
+					if(failed)
+						continue;
+
+					try {
+						write(records);
+					} catch (IOException ioException) {
+						exportFailed("Cannot write to " + queue.getName() + " output file.", ioException);
+						failed = true;
+					} catch (RuntimeException runtimeException) {
+						exportFailed("Cannot write to " + queue.getName() + " output file.", runtimeException);
+						failed = true;
+					}
+				}
+			} catch (InterruptedException interruptedException) {
+				exportFailed("Export interrupted.", interruptedException);
+			}
+		}
+	}
+
+	private void logQueueDepths() {
+		StringBuilder depths = new StringBuilder("Pipeline queue depths:");
+
+		for(MonitoredQueue<?> queue : getQueues())
+			depths.append(' ').append(queue.getName()).append(' ').append(queue.getDepth()).append('/')
+				.append(queue.getCapacity());
+
+		logger.log(Level.INFO, depths.toString());
+	}
+
+	@Override
+	void logStatistics() {
+		super.logStatistics();
+
+		for(MonitoredQueue<?> queue : getQueues())
+			logger.log(Level.INFO, queue.toString());
+	}
+}
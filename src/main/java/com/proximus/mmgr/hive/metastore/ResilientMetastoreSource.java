@@ -0,0 +1,420 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsObj;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * A MetastoreSource retrying the failed calls of another source, so that a HiveMetastore restart or a dropped
+ * connection does not lose the Databases and Tables being exported.<p>
+ * The <i>RetryPolicy</i> decides which failures are retried and how long to wait before retrying them. After a
+ * transport failure the connection is in an unknown state: it is closed, and a new one is opened by the
+ * <i>SourceFactory</i> before the next attempt. A failure to reconnect is itself retried, the HiveMetaStoreClient
+ * reporting it as a MetaException wrapping the TTransportException.<p>
+ * When the policy sets a call timeout, each call runs on a thread of this source and is abandoned when it takes
+ * longer than the timeout: the call is interrupted, the connection closed and the call retried as a transport
+ * failure. The latency of each call, retries included, is recorded in the <i>ExportMetrics</i> of the export. Like
+ * the source it wraps, a ResilientMetastoreSource is not thread-safe.
+ * @author Jonathan Puvilland
+ *
+ */
+class ResilientMetastoreSource implements MetastoreSource {
+	private static final Logger logger = Logger.getLogger(ResilientMetastoreSource.class.getName());
+
+	/**
+	 * Opens a new connection to the HiveMetastore, replacing a connection closed after a transport failure.
+	 */
+	interface SourceFactory {
+		/**
+		 * @return the opened source.
+		 * @throws TException when the connection to the HiveMetastore cannot be opened.
+		 */
+		MetastoreSource openSource() throws TException;
+	}
+
+	/**
+	 * A HiveMetastore call, run again on each attempt.
+	 */
+	private interface Call<T> {
+		T call(MetastoreSource source) throws TException;
+	}
+
+	/**
+	 * The retries, reconnections and timeouts of the calls of a set of sources, and the latency they added to the
+	 * export. Statistics are shared by the sources of a pool and updated concurrently.
+	 */
+	static class CallStatistics {
+		private final AtomicLong nbrCalls = new AtomicLong();
+		private final AtomicLong nbrRetries = new AtomicLong();
+		private final AtomicLong nbrReconnects = new AtomicLong();
+		private final AtomicLong nbrTimeouts = new AtomicLong();
+		private final AtomicLong nbrFailedCalls = new AtomicLong();
+		private final AtomicLong extraLatencyNanos = new AtomicLong();
+
+		long getNbrCalls() {
+			return nbrCalls.get();
+		}
+
+		long getNbrRetries() {
+			return nbrRetries.get();
+		}
+
+		long getNbrReconnects() {
+			return nbrReconnects.get();
+		}
+
+		long getNbrTimeouts() {
+			return nbrTimeouts.get();
+		}
+
+		long getNbrFailedCalls() {
+			return nbrFailedCalls.get();
+		}
+
+		/**
+		 * @return the time spent in failed attempts and waiting before retries, in milliseconds.
+		 */
+		long getExtraLatencyMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(extraLatencyNanos.get());
+		}
+
+		/**
+		 * Logs the number of retried and failed HiveMetastore calls, and the latency added by the retries.
+		 */
+		void logStatistics() {
+			logger.log(nbrRetries.get() > 0 || nbrFailedCalls.get() > 0 ? Level.WARNING : Level.INFO, nbrCalls +
+					" HiveMetastore calls, " + nbrRetries + " retries, " + nbrReconnects + " reconnections, " +
+					nbrTimeouts + " timeouts, " + nbrFailedCalls + " failed calls, " + getExtraLatencyMillis() +
+					" ms added by the retries.");
+		}
+	}
+
+	private final SourceFactory sourceFactory;
+	private final RetryPolicy retryPolicy;
+	private final CallStatistics statistics;
+	private final ExportMetrics metrics;
+	private MetastoreSource source;
+	private ExecutorService callExecutor;
+
+	/**
+	 * Creates a source retrying the calls of an opened source.
+	 * @param source the opened source
+	 * @param sourceFactory the factory opening a new source after a transport failure
+	 * @param retryPolicy the retry policy
+	 * @param statistics the statistics updated by the calls
+	 */
+	ResilientMetastoreSource(MetastoreSource source, SourceFactory sourceFactory, RetryPolicy retryPolicy,
+			CallStatistics statistics) {
+		this(source, sourceFactory, retryPolicy, statistics, new ExportMetrics());
+	}
+
+	/**
+	 * Creates a source retrying the calls of an opened source, and recording their latency.
+	 * @param source the opened source
+	 * @param sourceFactory the factory opening a new source after a transport failure
+	 * @param retryPolicy the retry policy
+	 * @param statistics the statistics updated by the calls
+	 * @param metrics the metrics receiving the latency of each call
+	 */
+	ResilientMetastoreSource(MetastoreSource source, SourceFactory sourceFactory, RetryPolicy retryPolicy,
+			CallStatistics statistics, ExportMetrics metrics) {
+		this.source = source;
+		this.sourceFactory = sourceFactory;
+		this.retryPolicy = retryPolicy;
+		this.statistics = statistics;
+		this.metrics = metrics;
+	}
+
+	private <T> T call(String method, Call<T> call) throws TException {
+		long callStart = System.nanoTime();
+
+		try {
+			return retry(method, call, callStart);
+		} finally {
+			metrics.recordCall(method, System.nanoTime() - callStart);
+		}
+	}
+
+	private <T> T retry(String method, Call<T> call, long callStart) throws TException {
+		statistics.nbrCalls.incrementAndGet();
+
+		for(int retry = 0; ; retry++) {
+			long attemptStart = System.nanoTime();
+
+			try {
+				T result = invoke(method, call);
+				statistics.extraLatencyNanos.addAndGet(attemptStart - callStart);
+				return result;
+			} catch (TException exception) {
+				if(retryPolicy.needsReconnect(exception))
+					disconnect();
+
+				if(!retryPolicy.isRetryable(exception) || retry >= retryPolicy.getMaxRetries()) {
+					statistics.nbrFailedCalls.incrementAndGet();
+					statistics.extraLatencyNanos.addAndGet(attemptStart - callStart);
+					throw exception;
+				}
+
+				long delayMillis = retryPolicy.getDelayMillis(retry);
+				logger.log(Level.WARNING, method + " failed, retry " + (retry + 1) + "/" + retryPolicy.getMaxRetries() +
+						" in " + delayMillis + " ms: " + exception.getMessage());
+				statistics.nbrRetries.incrementAndGet();
+
+				try {
+					Thread.sleep(delayMillis);
+				} catch (InterruptedException interruptedException) {
+					Thread.currentThread().interrupt();
+					statistics.nbrFailedCalls.incrementAndGet();
+					statistics.extraLatencyNanos.addAndGet(System.nanoTime() - callStart);
+					throw exception;
+				}
+			}
+		}
+	}
+
+	private <T> T invoke(String method, final Call<T> call) throws TException {
+		if(source == null)
+			source = sourceFactory.openSource();
+
+		long timeoutMillis = retryPolicy.getCallTimeoutMillis();
+
+		if(timeoutMillis <= 0)
+			return call.call(source);
+
+		final MetastoreSource target = source;
+		Future<T> future = getCallExecutor().submit(new Callable<T>() {
+			@Override
+			public T call() throws TException {
+				return call.call(target);
+			}
+		});
+
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException timeoutException) {
+			future.cancel(true);
+			statistics.nbrTimeouts.incrementAndGet();
+			throw new TTransportException(method + " timed out after " + timeoutMillis + " ms");
+		} catch (InterruptedException interruptedException) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new TTransportException(method + " interrupted");
+		} catch (ExecutionException executionException) {
+			Throwable cause = executionException.getCause();
+			if(cause instanceof TException)
+				throw (TException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new TException(cause);
+		}
+	}
+
+	private ExecutorService getCallExecutor() {
+		if(callExecutor == null)
+			callExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "metastore-call");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+		return callExecutor;
+	}
+
+	/**
+	 * Closes the connection in an unknown state, and the thread of a call which may still be running on it.
+	 */
+	private void disconnect() {
+		if(callExecutor != null) {
+			callExecutor.shutdownNow();
+			callExecutor = null;
+		}
+
+		if(source != null) {
+			source.close();
+			source = null;
+			statistics.nbrReconnects.incrementAndGet();
+		}
+	}
+
+	@Override
+	public List<String> getAllDatabases() throws TException {
+		return call("getAllDatabases", new Call<List<String>>() {
+			@Override
+			public List<String> call(MetastoreSource source) throws TException {
+				return source.getAllDatabases();
+			}
+		});
+	}
+
+	@Override
+	public List<String> getDatabases(final String databasePattern) throws TException {
+		return call("getDatabases", new Call<List<String>>() {
+			@Override
+			public List<String> call(MetastoreSource source) throws TException {
+				return source.getDatabases(databasePattern);
+			}
+		});
+	}
+
+	@Override
+	public Database getDatabase(final String dbName) throws TException {
+		return call("getDatabase", new Call<Database>() {
+			@Override
+			public Database call(MetastoreSource source) throws TException {
+				return source.getDatabase(dbName);
+			}
+		});
+	}
+
+	@Override
+	public List<String> getAllTables(final String dbName) throws TException {
+		return call("getAllTables", new Call<List<String>>() {
+			@Override
+			public List<String> call(MetastoreSource source) throws TException {
+				return source.getAllTables(dbName);
+			}
+		});
+	}
+
+	@Override
+	public List<String> getTables(final String dbName, final String tablePattern) throws TException {
+		return call("getTables", new Call<List<String>>() {
+			@Override
+			public List<String> call(MetastoreSource source) throws TException {
+				return source.getTables(dbName, tablePattern);
+			}
+		});
+	}
+
+	@Override
+	public List<String> listTableNamesByFilter(final String dbName, final String filter, final short maxTables)
+			throws TException {
+		return call("listTableNamesByFilter", new Call<List<String>>() {
+			@Override
+			public List<String> call(MetastoreSource source) throws TException {
+				return source.listTableNamesByFilter(dbName, filter, maxTables);
+			}
+		});
+	}
+
+	@Override
+	public Table getTable(final String dbName, final String tableName) throws TException {
+		return call("getTable", new Call<Table>() {
+			@Override
+			public Table call(MetastoreSource source) throws TException {
+				return source.getTable(dbName, tableName);
+			}
+		});
+	}
+
+	@Override
+	public List<Table> getTableObjectsByName(final String dbName, final List<String> tableNames) throws TException {
+		return call("getTableObjectsByName", new Call<List<Table>>() {
+			@Override
+			public List<Table> call(MetastoreSource source) throws TException {
+				return source.getTableObjectsByName(dbName, tableNames);
+			}
+		});
+	}
+
+	@Override
+	public List<String> listPartitionNames(final String dbName, final String tableName, final short maxPartitions)
+			throws TException {
+		return call("listPartitionNames", new Call<List<String>>() {
+			@Override
+			public List<String> call(MetastoreSource source) throws TException {
+				return source.listPartitionNames(dbName, tableName, maxPartitions);
+			}
+		});
+	}
+
+	@Override
+	public List<Partition> getPartitionsByNames(final String dbName, final String tableName,
+			final List<String> partitionNames) throws TException {
+		return call("getPartitionsByNames", new Call<List<Partition>>() {
+			@Override
+			public List<Partition> call(MetastoreSource source) throws TException {
+				return source.getPartitionsByNames(dbName, tableName, partitionNames);
+			}
+		});
+	}
+
+	@Override
+	public List<ColumnStatisticsObj> getTableColumnStatistics(final String dbName, final String tableName,
+			final List<String> colNames) throws TException {
+		return call("getTableColumnStatistics", new Call<List<ColumnStatisticsObj>>() {
+			@Override
+			public List<ColumnStatisticsObj> call(MetastoreSource source) throws TException {
+				return source.getTableColumnStatistics(dbName, tableName, colNames);
+			}
+		});
+	}
+
+	@Override
+	public Map<String, List<ColumnStatisticsObj>> getPartitionColumnStatistics(final String dbName,
+			final String tableName, final List<String> partitionNames, final List<String> colNames) throws TException {
+		return call("getPartitionColumnStatistics", new Call<Map<String, List<ColumnStatisticsObj>>>() {
+			@Override
+			public Map<String, List<ColumnStatisticsObj>> call(MetastoreSource source) throws TException {
+				return source.getPartitionColumnStatistics(dbName, tableName, partitionNames, colNames);
+			}
+		});
+	}
+
+	@Override
+	public long getCurrentNotificationEventId() throws TException {
+		return call("getCurrentNotificationEventId", new Call<Long>() {
+			@Override
+			public Long call(MetastoreSource source) throws TException {
+				return source.getCurrentNotificationEventId();
+			}
+		});
+	}
+
+	@Override
+	public List<NotificationEvent> getNextNotification(final long lastEventId, final int maxEvents)
+			throws TException {
+		return call("getNextNotification", new Call<List<NotificationEvent>>() {
+			@Override
+			public List<NotificationEvent> call(MetastoreSource source) throws TException {
+				return source.getNextNotification(lastEventId, maxEvents);
+			}
+		});
+	}
+
+	@Override
+	public void close() {
+		if(callExecutor != null) {
+			callExecutor.shutdownNow();
+			callExecutor = null;
+		}
+
+		if(source != null) {
+			source.close();
+			source = null;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.security.InvalidParameterException;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * Decides which failed HiveMetastore calls are retried, and how long to wait before retrying them.<p>
+ * Failures are classified like the HiveMetastore's own <i>RetryingMetaStoreClient</i>:
+ * <br>- a <i>TTransportException</i> (connection reset, socket timeout, metastore restart) is retried on a new
+ * connection, the client being in an unknown state.
+ * <br>- a <i>MetaException</i> wrapping a JDO, TProtocol or TTransport exception is a transient failure of the
+ * metastore server or of its database, retried on the same connection unless the transport failed.
+ * <br>- any other exception (<i>NoSuchObjectException</i>, <i>UnknownDBException</i>, <i>InvalidOperationException</i>,
+ * other <i>MetaException</i>s) is fatal: retrying would fail the same way.<p>
+ * Retries are delayed by a bounded exponential backoff with jitter: the n-th retry waits between half and all of
+ * <i>min(maxDelayMillis, initialDelayMillis * 2^n)</i>, so that the export threads retrying after a metastore
+ * restart do not reconnect all at once.
+ * @author Jonathan Puvilland
+ *
+ */
+class RetryPolicy {
+	static final int DEFAULT_MAX_RETRIES = 3;
+	static final long DEFAULT_INITIAL_DELAY_MILLIS = 1000;
+	static final long DEFAULT_MAX_DELAY_MILLIS = 30000;
+	static final int DEFAULT_CALL_TIMEOUT_SECONDS = 0;
+	private static final Pattern TRANSIENT_META_EXCEPTION =
+			Pattern.compile("(?s).*(JDO[a-zA-Z]*|TProtocol|TTransport)Exception.*");
+	private static final Pattern TRANSPORT_META_EXCEPTION = Pattern.compile("(?s).*(TProtocol|TTransport)Exception.*");
+
+	private final int maxRetries;
+	private final long initialDelayMillis;
+	private final long maxDelayMillis;
+	private final long callTimeoutMillis;
+
+	/**
+	 * Creates a retry policy.
+	 * @param maxRetries the number of retries of a failed call, 0 to never retry
+	 * @param initialDelayMillis the delay before the first retry, in milliseconds
+	 * @param maxDelayMillis the maximum delay between two retries, in milliseconds
+	 * @param callTimeoutMillis the maximum duration of a call, in milliseconds; 0 for no timeout
+	 */
+	RetryPolicy(int maxRetries, long initialDelayMillis, long maxDelayMillis, long callTimeoutMillis) {
+		this.maxRetries = maxRetries;
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = Math.max(initialDelayMillis, maxDelayMillis);
+		this.callTimeoutMillis = callTimeoutMillis;
+	}
+
+	/**
+	 * Creates the retry policy configured by the <i>metastore_retries</i>, <i>metastore_retry_initial_delay_millis</i>,
+	 * <i>metastore_retry_max_delay_millis</i> and <i>metastore_call_timeout_seconds</i> properties.
+	 * @param hiveMetastoreProps the properties of the HiveMetatstoreReader program.
+	 * @return the retry policy.
+	 * @throws InvalidParameterException when a property is invalid.
+	 */
+	static RetryPolicy create(Properties hiveMetastoreProps) {
+		return new RetryPolicy(
+				HiveMetastoreReader.getIntProperty(hiveMetastoreProps, "metastore_retries", DEFAULT_MAX_RETRIES, 0),
+				HiveMetastoreReader.getIntProperty(hiveMetastoreProps, "metastore_retry_initial_delay_millis",
+						(int) DEFAULT_INITIAL_DELAY_MILLIS, 0),
+				HiveMetastoreReader.getIntProperty(hiveMetastoreProps, "metastore_retry_max_delay_millis",
+						(int) DEFAULT_MAX_DELAY_MILLIS, 0),
+				HiveMetastoreReader.getIntProperty(hiveMetastoreProps, "metastore_call_timeout_seconds",
+						DEFAULT_CALL_TIMEOUT_SECONDS, 0) * 1000L);
+	}
+
+	int getMaxRetries() {
+		return maxRetries;
+	}
+
+	long getCallTimeoutMillis() {
+		return callTimeoutMillis;
+	}
+
+	/**
+	 * @param exception the exception thrown by a HiveMetastore call
+	 * @return true when the call may succeed if retried.
+	 */
+	boolean isRetryable(TException exception) {
+		return exception instanceof TTransportException || (exception instanceof MetaException &&
+				exception.getMessage() != null && TRANSIENT_META_EXCEPTION.matcher(exception.getMessage()).matches());
+	}
+
+	/**
+	 * @param exception the exception thrown by a HiveMetastore call
+	 * @return true when the connection must be reopened before retrying.
+	 */
+	boolean needsReconnect(TException exception) {
+		return exception instanceof TTransportException || (exception instanceof MetaException &&
+				exception.getMessage() != null && TRANSPORT_META_EXCEPTION.matcher(exception.getMessage()).matches());
+	}
+
+	/**
+	 * @param retry the number of the retry, starting at 0
+	 * @return the delay before the retry, in milliseconds.
+	 */
+	long getDelayMillis(int retry) {
+		long delay = initialDelayMillis << Math.min(retry, 30);
+
+		if(delay <= 0 || delay > maxDelayMillis)
+			delay = maxDelayMillis;
+
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+}
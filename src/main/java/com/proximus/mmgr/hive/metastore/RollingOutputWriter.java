@@ -0,0 +1,186 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import com.proximus.mmgr.ParallelDeflaterOutputStream;
+
+/**
+ * A Writer spreading an output file over numbered part files of a maximum size, optionally compressed in parallel
+ * blocks. Each part can be loaded independently by Metadata Manager:<p>
+ * - parts are only rolled between two calls to <i>append</i>; callers append complete records, as
+ * <i>MetadataBufferedWriters</i> does, so that no record is split between two parts.
+ * <br>- the first character sequence appended is the header record, repeated at the top of every part.<p>
+ * Parts are named after the output file: <i>HiveMetastoreColumns.csv</i> is written to
+ * <i>HiveMetastoreColumns-00001.csv</i>, <i>HiveMetastoreColumns-00002.csv</i>..., followed by the compression
+ * extension. Without rolling, a single file keeping the output file name is written. The size of a part is the
+ * number of characters written to it, before compression.
+ * @author Jonathan Puvilland
+ *
+ */
+class RollingOutputWriter extends Writer {
+	private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+	private final File outputFile;
+	private final Charset charset;
+	private final long maxPartSize;
+	private final ParallelDeflaterOutputStream.Format compression;
+	private final ExecutorService compressors;
+	private final int nbrCompressors;
+	private final int compressionLevel;
+	private final List<Part> parts = new ArrayList<Part>();
+	private String header;
+	private Writer partWriter;
+	private long partSize;
+
+	/**
+	 * A part file and the number of characters written to it.
+	 */
+	static final class Part {
+		final File file;
+		long size;
+
+		Part(File file) {
+			this.file = file;
+		}
+
+		File getFile() {
+			return file;
+		}
+
+		long getSize() {
+			return size;
+		}
+	}
+
+	/**
+	 * Creates a writer of part files.
+	 * @param outputFile the output file, naming the part files
+	 * @param charset the charset of the output
+	 * @param maxPartSize the number of characters after which a new part is started; 0 for a single file
+	 * @param compression the compression format, or null for uncompressed parts
+	 * @param compressors the thread pool compressing the blocks of the parts
+	 * @param nbrCompressors the number of threads of the compression pool
+	 * @param compressionLevel the compression level, from 1 to 9
+	 */
+	RollingOutputWriter(File outputFile, Charset charset, long maxPartSize,
+			ParallelDeflaterOutputStream.Format compression, ExecutorService compressors, int nbrCompressors,
+			int compressionLevel) {
+		this.outputFile = outputFile;
+		this.charset = charset;
+		this.maxPartSize = maxPartSize;
+		this.compression = compression;
+		this.compressors = compressors;
+		this.nbrCompressors = nbrCompressors;
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * @return the parts written so far, in order.
+	 */
+	List<Part> getParts() {
+		return Collections.unmodifiableList(parts);
+	}
+
+	private File partFile(int partNumber) {
+		String name = outputFile.getName();
+
+		if(maxPartSize > 0) {
+			int extensionStart = name.lastIndexOf('.');
+			String partSuffix = String.format("-%05d", partNumber);
+			name = extensionStart > 0 ? name.substring(0, extensionStart) + partSuffix + name.substring(extensionStart) :
+				name + partSuffix;
+		}
+
+		if(compression != null)
+			name += compression.getExtension();
+
+		return new File(outputFile.getParentFile(), name);
+	}
+
+	private void openPart() throws IOException {
+		Part part = new Part(partFile(parts.size() + 1));
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(part.file), OUTPUT_BUFFER_SIZE);
+
+		if(compression != null)
+			out = new ParallelDeflaterOutputStream(out, compression, compressors, nbrCompressors, compressionLevel,
+					ParallelDeflaterOutputStream.DEFAULT_BLOCK_SIZE);
+
+		parts.add(part);
+		partWriter = new OutputStreamWriter(out, charset);
+		partSize = 0;
+
+		if(header != null)
+			writeToPart(header, 0, header.length());
+	}
+
+	private void closePart() throws IOException {
+		if(partWriter != null) {
+			partWriter.close();
+			partWriter = null;
+		}
+	}
+
+	private void writeToPart(CharSequence value, int start, int end) throws IOException {
+		partWriter.append(value, start, end);
+		partSize += end - start;
+		parts.get(parts.size() - 1).size = partSize;
+	}
+
+	@Override
+	public Writer append(CharSequence value) throws IOException {
+		return append(value, 0, value.length());
+	}
+
+	/**
+	 * Appends complete records, starting a new part beforehand when the current part is full.
+	 */
+	@Override
+	public Writer append(CharSequence value, int start, int end) throws IOException {
+		if(partWriter == null)
+			openPart();
+		else if(maxPartSize > 0 && partSize >= maxPartSize) {
+			closePart();
+			openPart();
+		}
+
+		if(header == null)
+			header = value.subSequence(start, end).toString();
+
+		writeToPart(value, start, end);
+		return this;
+	}
+
+	@Override
+	public void write(char[] buffer, int offset, int length) throws IOException {
+		append(CharBuffer.wrap(buffer, offset, length));
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if(partWriter != null)
+			partWriter.flush();
+	}
+
+	/**
+	 * Closes the last part. An output without any record is written as a single empty part.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(partWriter == null && parts.isEmpty())
+			openPart();
+
+		closePart();
+	}
+}
@@ -0,0 +1,736 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static com.proximus.mmgr.ElementWritable.DEFAULT_SEPARATOR;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+
+import com.proximus.mmgr.AbstractElement;
+import com.proximus.mmgr.ElementSchema;
+import com.proximus.mmgr.QualifiedName;
+import com.proximus.mmgr.hive.metastore.ElementAttributes.DatabasetAttributes;
+import com.proximus.mmgr.hive.metastore.ElementAttributes.PartitionAttributes;
+import com.proximus.mmgr.hive.metastore.ElementAttributes.TableAttributes;
+
+/**
+ * A local copy of the Databases, Tables, Columns and Partitions Metadata of an export, stored in a compact binary
+ * file and read through memory-mapped buffers, so that the Metadata Manager csv files can be regenerated and Tables
+ * looked up without accessing the HiveMetastore, and without loading the catalog in the heap.<p>
+ * The file holds a fixed size header, the Element records, then three indexes sorted by id:<br>
+ * - the <b>Database index</b>: the offset of each Database record<br>
+ * - the <b>Table index</b>: the offset of each Table record, immediately followed by the records of its Columns, the
+ * number of Columns and the range of the Table's Partition pages in the page index<br>
+ * - the <b>page index</b>: the offset and number of records of each page of consecutive Partition records<p>
+ * A record is made of its length followed by the Element attributes, in schema order. Each attribute is written as
+ * a variable length integer, 0 for a null value or the length of the value plus one, followed by the value in UTF-8.
+ * The records are mapped by segments of 1 GB: a record never crosses a segment boundary, the end of a segment which
+ * cannot hold the next record is filled with zeros.<p>
+ * The store is written by the <i>Writer</i> during an export, and replaces the previous store only when the export
+ * completes.
+ * @author Jonathan Puvilland
+ *
+ */
+class SnapshotStore {
+	static final int DEFAULT_SEGMENT_SHIFT = 30;
+	private static final int MAGIC = 0x484d5346;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 128;
+	private static final int DATABASE_ENTRY_SIZE = 8;
+	private static final int TABLE_ENTRY_SIZE = 20;
+	private static final int PAGE_ENTRY_SIZE = 12;
+	// all the Element schemas start with the type and id attributes
+	private static final int ID_ATTRIBUTE = 1;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Logger logger = Logger.getLogger(SnapshotStore.class.getName());
+
+	private final int segmentShift;
+	private final long segmentMask;
+	private final ByteBuffer[] segments;
+	private final ByteBuffer index;
+	private final long recordsEnd;
+	private final int nbrDatabases;
+	private final int nbrTables;
+	private final long nbrColumns;
+	private final long nbrPartitions;
+	private final int tableIndexStart;
+	private final int pageIndexStart;
+
+	private SnapshotStore(File storeFile, FileChannel channel) throws IOException {
+		if(channel.size() < HEADER_SIZE)
+			throw new IOException("Not a snapshot store: " + storeFile);
+
+		ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+
+		if(header.getInt() != MAGIC)
+			throw new IOException("Not a snapshot store: " + storeFile);
+		if(header.getInt() != VERSION)
+			throw new IOException("Unsupported snapshot store version: " + storeFile);
+
+		this.segmentShift = header.getInt();
+		this.segmentMask = (1L << segmentShift) - 1;
+		this.nbrDatabases = header.getInt();
+		this.nbrTables = header.getInt();
+		header.getInt();
+		this.nbrColumns = header.getLong();
+		this.nbrPartitions = header.getLong();
+		this.recordsEnd = header.getLong();
+		long databaseIndexOffset = header.getLong();
+		this.tableIndexStart = (int) (header.getLong() - databaseIndexOffset);
+		this.pageIndexStart = (int) (header.getLong() - databaseIndexOffset);
+
+		if(channel.size() - databaseIndexOffset > Integer.MAX_VALUE)
+			throw new IOException("Snapshot store index larger than 2 GB: " + storeFile);
+
+		this.segments = new ByteBuffer[(int) ((recordsEnd + segmentMask) >>> segmentShift)];
+		for(int i = 0; i < segments.length; i++) {
+			long segmentStart = (long) i << segmentShift;
+			segments[i] = channel.map(MapMode.READ_ONLY, segmentStart,
+					Math.min(segmentMask + 1, recordsEnd - segmentStart));
+		}
+
+		this.index = channel.map(MapMode.READ_ONLY, databaseIndexOffset, channel.size() - databaseIndexOffset);
+	}
+
+	/**
+	 * Opens a snapshot store. The file is mapped in memory, no record is read.
+	 * @param storeFile the snapshot store file
+	 * @return the opened snapshot store.
+	 * @throws IOException when the file cannot be read or is not a snapshot store.
+	 */
+	static SnapshotStore open(File storeFile) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(storeFile, "r");
+
+		try {
+			// the mapped buffers remain valid after the file is closed
+			return new SnapshotStore(storeFile, input.getChannel());
+		} finally {
+			input.close();
+		}
+	}
+
+	int getNbrDatabases() {
+		return nbrDatabases;
+	}
+
+	int getNbrTables() {
+		return nbrTables;
+	}
+
+	long getNbrColumns() {
+		return nbrColumns;
+	}
+
+	long getNbrPartitions() {
+		return nbrPartitions;
+	}
+
+	/**
+	 * Looks up a Database by binary search in the Database index.
+	 * @param dbName the name of the Database
+	 * @return the Database Element, or null when the Database is not in the store.
+	 */
+	DatabaseElement getDatabase(String dbName) {
+		int entry = find(0, DATABASE_ENTRY_SIZE, nbrDatabases, dbName);
+
+		if(entry < 0)
+			return null;
+
+		DatabaseElement database = new DatabaseElement();
+		readRecord(index.getLong(entry * DATABASE_ENTRY_SIZE), database);
+		return database;
+	}
+
+	/**
+	 * Looks up a Table by binary search in the Table index.
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @return the Table Element, or null when the Table is not in the store.
+	 */
+	TableElement getTable(String dbName, String tableName) {
+		int entry = findTable(dbName, tableName);
+
+		if(entry < 0)
+			return null;
+
+		TableElement table = new TableElement();
+		readRecord(index.getLong(tableIndexStart + entry * TABLE_ENTRY_SIZE), table);
+		return table;
+	}
+
+	/**
+	 * Reads the Columns of a Table, followed by its partition keys.
+	 * @param dbName the name of the Database holding the Table
+	 * @param tableName the name of the Table
+	 * @return the Column Elements of the Table, empty when the Table is not in the store.
+	 */
+	List<ColumnElement> getColumns(String dbName, String tableName) {
+		int entry = findTable(dbName, tableName);
+
+		if(entry < 0)
+			return Collections.emptyList();
+
+		int entryPosition = tableIndexStart + entry * TABLE_ENTRY_SIZE;
+		int nbrTableColumns = index.getInt(entryPosition + 8);
+		List<ColumnElement> columns = new ArrayList<ColumnElement>(nbrTableColumns);
+		long offset = index.getLong(entryPosition);
+
+		for(int i = 0; i < nbrTableColumns; i++) {
+			offset = nextRecord(offset);
+			ColumnElement column = new ColumnElement();
+			readRecord(offset, column);
+			columns.add(column);
+		}
+
+		return columns;
+	}
+
+	/**
+	 * Writes the header and the records of the 4 output files, in id order. Each Table record is followed by its
+	 * Columns, and the Partitions of a Table are written in the order they were exported.
+	 * @param bufferedWriters the object managing the different file writers.
+	 * @throws IOException when the records cannot be written.
+	 */
+	void writeCsv(MetadataBufferedWriters bufferedWriters) throws IOException {
+		StringBuilder records = new StringBuilder();
+		StringBuilder columnRecords = new StringBuilder();
+
+		records.append(DatabaseElement.SCHEMA.getHeader(DEFAULT_SEPARATOR)).append(MetastoreExporter.LINE_SEPARATOR);
+		DatabaseElement database = new DatabaseElement();
+
+		for(int i = 0; i < nbrDatabases; i++) {
+			readRecord(index.getLong(i * DATABASE_ENTRY_SIZE), database);
+			MetastoreExporter.appendRecord(records, database);
+
+			if(records.length() >= BUFFER_SIZE) {
+				bufferedWriters.writeDatabaseRecords(records);
+				records.setLength(0);
+			}
+		}
+
+		bufferedWriters.writeDatabaseRecords(records);
+		records.setLength(0);
+
+		records.append(TableElement.SCHEMA.getHeader(DEFAULT_SEPARATOR)).append(MetastoreExporter.LINE_SEPARATOR);
+		columnRecords.append(ColumnElement.SCHEMA.getHeader(DEFAULT_SEPARATOR))
+				.append(MetastoreExporter.LINE_SEPARATOR);
+		TableElement table = new TableElement();
+		ColumnElement column = new ColumnElement();
+
+		for(int i = 0; i < nbrTables; i++) {
+			int entryPosition = tableIndexStart + i * TABLE_ENTRY_SIZE;
+			long offset = index.getLong(entryPosition);
+			readRecord(offset, table);
+			MetastoreExporter.appendRecord(records, table);
+
+			for(int c = index.getInt(entryPosition + 8); c > 0; c--) {
+				offset = nextRecord(offset);
+				readRecord(offset, column);
+				MetastoreExporter.appendRecord(columnRecords, column);
+			}
+
+			if(records.length() + columnRecords.length() >= BUFFER_SIZE) {
+				bufferedWriters.writeTableRecords(records);
+				bufferedWriters.writeColumnRecords(columnRecords);
+				records.setLength(0);
+				columnRecords.setLength(0);
+			}
+		}
+
+		bufferedWriters.writeTableRecords(records);
+		bufferedWriters.writeColumnRecords(columnRecords);
+		records.setLength(0);
+
+		records.append(PartitionElement.SCHEMA.getHeader(DEFAULT_SEPARATOR)).append(MetastoreExporter.LINE_SEPARATOR);
+		PartitionElement partition = new PartitionElement();
+
+		for(int i = 0; i < nbrTables; i++) {
+			int entryPosition = tableIndexStart + i * TABLE_ENTRY_SIZE;
+			int firstPage = index.getInt(entryPosition + 12);
+			int nbrPages = index.getInt(entryPosition + 16);
+
+			for(int page = firstPage; page < firstPage + nbrPages; page++) {
+				int pagePosition = pageIndexStart + page * PAGE_ENTRY_SIZE;
+				long offset = index.getLong(pagePosition);
+
+				for(int p = index.getInt(pagePosition + 8); p > 0; p--) {
+					readRecord(offset, partition);
+					MetastoreExporter.appendRecord(records, partition);
+					offset = nextRecord(offset);
+				}
+
+				if(records.length() >= BUFFER_SIZE) {
+					bufferedWriters.writePartitionRecords(records);
+					records.setLength(0);
+				}
+			}
+		}
+
+		bufferedWriters.writePartitionRecords(records);
+	}
+
+	private int findTable(String dbName, String tableName) {
+		return find(tableIndexStart, TABLE_ENTRY_SIZE, nbrTables, new QualifiedName(dbName, tableName).toString());
+	}
+
+	/**
+	 * Binary search of an id in an index, reading the id of the record of each visited entry.
+	 * @return the position of the entry in the index, or -1 when the id is not found.
+	 */
+	private int find(int indexStart, int entrySize, int nbrEntries, String id) {
+		int low = 0;
+		int high = nbrEntries - 1;
+
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = readValues(index.getLong(indexStart + middle * entrySize), ID_ATTRIBUTE + 1)
+					[ID_ATTRIBUTE].compareTo(id);
+
+			if(comparison < 0)
+				low = middle + 1;
+			else if(comparison > 0)
+				high = middle - 1;
+			else
+				return middle;
+		}
+
+		return -1;
+	}
+
+	private <A extends Enum<A>> void readRecord(long offset, AbstractElement<A> element) {
+		ElementSchema<A> schema = element.getSchema();
+		String[] values = readValues(offset, schema.size());
+
+		for(int i = 0; i < values.length; i++)
+			element.setAttribute(schema.getAttribute(i), values[i]);
+	}
+
+	/**
+	 * Decodes the first attributes of a record. Only absolute reads are made, the buffers can be read concurrently.
+	 */
+	private String[] readValues(long offset, int nbrAttributes) {
+		ByteBuffer segment = segments[(int) (offset >>> segmentShift)];
+		int position = (int) (offset & segmentMask) + 4;
+		String[] values = new String[nbrAttributes];
+
+		for(int i = 0; i < nbrAttributes; i++) {
+			int length = 0;
+			int shift = 0;
+			byte b;
+
+			do {
+				b = segment.get(position++);
+				length |= (b & 0x7f) << shift;
+				shift += 7;
+			} while(b < 0);
+
+			if(length == 0)
+				continue;
+
+			byte[] bytes = new byte[length - 1];
+			ByteBuffer value = segment.duplicate();
+			value.position(position);
+			value.get(bytes);
+			values[i] = new String(bytes, UTF8);
+			position += bytes.length;
+		}
+
+		return values;
+	}
+
+	/**
+	 * @return the offset of the record following a record, after the padding at the end of its segment.
+	 */
+	private long nextRecord(long offset) {
+		long next = offset + 4 + segments[(int) (offset >>> segmentShift)].getInt((int) (offset & segmentMask));
+
+		if(next >= recordsEnd)
+			return next;
+
+		long segmentEnd = (next | segmentMask) + 1;
+
+		if(segmentEnd - next < 4 || segments[(int) (next >>> segmentShift)].getInt((int) (next & segmentMask)) == 0)
+			return segmentEnd;
+
+		return next;
+	}
+
+	/**
+	 * An indexed record, or a page of Partition records.
+	 */
+	private static final class Entry implements Comparable<Entry> {
+		final String id;
+		final long offset;
+		int count;
+
+		Entry(String id, long offset) {
+			this.id = id;
+			this.offset = offset;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			return id.compareTo(other.id);
+		}
+	}
+
+	/**
+	 * Writes a snapshot store during an export, to a temporary file renamed when the store is closed. The records
+	 * are appended as the Elements are exported, from any thread; only the index entries are kept in the heap.<p>
+	 * A failure to write the store does not fail the export: the failure is logged, the next Elements are ignored
+	 * and the store is not saved.
+	 */
+	static class Writer {
+		private final File storeFile;
+		private final File tmpFile;
+		private final int segmentShift;
+		private final RandomAccessFile output;
+		private final DataOutputStream records;
+		private final List<Entry> databases = new ArrayList<Entry>();
+		private final List<Entry> tables = new ArrayList<Entry>();
+		private final List<Entry> pages = new ArrayList<Entry>();
+		private final TableElement tableCursor = new TableElement();
+		private final ColumnElement columnCursor = new ColumnElement();
+		private final PartitionElement partitionCursor = new PartitionElement();
+		private byte[] recordBuffer = new byte[4096];
+		private int recordLength;
+		private long position = HEADER_SIZE;
+		private long nbrColumns;
+		private long nbrPartitions;
+		private Entry page;
+		private IOException failure;
+		private boolean closed;
+
+		/**
+		 * Creates a store writer with segments of 1 GB.
+		 * @param storeFile the snapshot store file, replaced when the store is saved
+		 * @throws IOException when the temporary file cannot be created.
+		 */
+		Writer(File storeFile) throws IOException {
+			this(storeFile, DEFAULT_SEGMENT_SHIFT);
+		}
+
+		/**
+		 * Creates a store writer.
+		 * @param storeFile the snapshot store file, replaced when the store is saved
+		 * @param segmentShift the size of the mapped segments, as a power of 2
+		 * @throws IOException when the temporary file cannot be created.
+		 */
+		Writer(File storeFile, int segmentShift) throws IOException {
+			this.storeFile = storeFile;
+			this.tmpFile = new File(storeFile.getPath() + ".tmp");
+			this.segmentShift = segmentShift;
+			this.output = new RandomAccessFile(tmpFile, "rw");
+			output.setLength(0);
+			output.seek(HEADER_SIZE);
+			this.records = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(output.getChannel()),
+					BUFFER_SIZE));
+		}
+
+		/**
+		 * Appends the record of a Database.
+		 * @param database the Database Element
+		 */
+		synchronized void addDatabase(DatabaseElement database) {
+			if(failure != null)
+				return;
+
+			page = null;
+
+			try {
+				databases.add(new Entry(database.getAttribute(DatabasetAttributes.id),
+						writeRecord(database)));
+			} catch (IOException ioException) {
+				failed(ioException);
+			}
+		}
+
+		/**
+		 * Appends the records of a batch of Tables, each followed by the records of its Columns and partition keys.
+		 * @param tables the HiveMetastore Table objects, holding their Columns in their Storage Descriptor
+		 */
+		synchronized void addTables(List<Table> tables) {
+			if(failure != null)
+				return;
+
+			page = null;
+
+			try {
+				for(Table table : tables) {
+					tableCursor.setTable(table);
+					Entry entry = new Entry(tableCursor.getAttribute(TableAttributes.id), writeRecord(tableCursor));
+					StorageDescriptor sd = table.getSd();
+
+					if(sd != null && sd.getCols() != null) {
+						columnCursor.setTable(table);
+
+						for(FieldSchema field : sd.getCols()) {
+							columnCursor.setColumn(field);
+							writeRecord(columnCursor);
+							entry.count++;
+						}
+
+						for(int i = 0; i < table.getPartitionKeysSize(); i++) {
+							columnCursor.setPartitionKey(table.getPartitionKeys().get(i));
+							writeRecord(columnCursor);
+							entry.count++;
+						}
+					}
+
+					this.tables.add(entry);
+					nbrColumns += entry.count;
+				}
+			} catch (IOException ioException) {
+				failed(ioException);
+			}
+		}
+
+		/**
+		 * Appends the records of a page of Partitions of a Table.
+		 * @param table the HiveMetastore Table object holding the partition keys
+		 * @param partitions the HiveMetastore Partition objects
+		 * @throws MetaException when the values of a Partition do not match the partition keys of the Table.
+		 */
+		synchronized void addPartitions(Table table, List<Partition> partitions) throws MetaException {
+			page = null;
+			partitionCursor.setTable(table);
+
+			for(Partition partition : partitions) {
+				partitionCursor.setPartition(partition);
+				addPartition(partitionCursor);
+			}
+		}
+
+		/**
+		 * Appends the record of a Partition. Consecutive Partitions of the same Table are stored as a single page.
+		 * @param partition the Partition Element
+		 */
+		synchronized void addPartition(PartitionElement partition) {
+			if(failure != null)
+				return;
+
+			String tableId = partition.getAttribute(PartitionAttributes.parent);
+
+			try {
+				long offset = writeRecord(partition);
+
+				if(page == null || !page.id.equals(tableId)) {
+					page = new Entry(tableId, offset);
+					pages.add(page);
+				}
+
+				page.count++;
+				nbrPartitions++;
+			} catch (IOException ioException) {
+				failed(ioException);
+			}
+		}
+
+		private <A extends Enum<A>> long writeRecord(AbstractElement<A> element) throws IOException {
+			ElementSchema<A> schema = element.getSchema();
+			recordLength = 0;
+
+			for(int i = 0; i < schema.size(); i++) {
+				String value = element.getAttribute(schema.getAttribute(i));
+
+				if(value == null) {
+					writeVarint(0);
+					continue;
+				}
+
+				byte[] bytes = value.getBytes(UTF8);
+				writeVarint(bytes.length + 1);
+				ensureCapacity(bytes.length);
+				System.arraycopy(bytes, 0, recordBuffer, recordLength, bytes.length);
+				recordLength += bytes.length;
+			}
+
+			long segmentSize = 1L << segmentShift;
+			long segmentEnd = (position | (segmentSize - 1)) + 1;
+
+			if(4 + recordLength > segmentSize - HEADER_SIZE)
+				throw new IOException("Record of " + element.getAttribute(schema.getAttribute(ID_ATTRIBUTE)) +
+						" larger than the segments of the snapshot store.");
+
+			if(position + 4 + recordLength > segmentEnd) {
+				for(; position < segmentEnd; position++)
+					records.write(0);
+			}
+
+			long offset = position;
+			records.writeInt(recordLength);
+			records.write(recordBuffer, 0, recordLength);
+			position += 4 + recordLength;
+
+			return offset;
+		}
+
+		private void writeVarint(int value) {
+			ensureCapacity(5);
+
+			while((value & ~0x7f) != 0) {
+				recordBuffer[recordLength++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+
+			recordBuffer[recordLength++] = (byte) value;
+		}
+
+		private void ensureCapacity(int length) {
+			if(recordLength + length > recordBuffer.length) {
+				byte[] larger = new byte[Math.max(recordBuffer.length * 2, recordLength + length)];
+				System.arraycopy(recordBuffer, 0, larger, 0, recordLength);
+				recordBuffer = larger;
+			}
+		}
+
+		private void failed(IOException ioException) {
+			failure = ioException;
+			logger.log(Level.WARNING, "Cannot write the snapshot store " + tmpFile + ", it will not be saved.",
+					ioException);
+		}
+
+		/**
+		 * Writes the indexes and replaces the snapshot store file, or discards the store. A failure to write or save
+		 * the store is logged and the previous store file is kept.
+		 * @param save true to save the store, false to discard it
+		 * @return true when the store was saved.
+		 */
+		synchronized boolean close(boolean save) {
+			if(closed)
+				return false;
+
+			closed = true;
+			boolean saved = false;
+
+			try {
+				if(save && failure == null) {
+					writeIndexes();
+					records.close();
+					output.close();
+
+					if(storeFile.exists() && !storeFile.delete())
+						throw new IOException("Cannot replace snapshot store " + storeFile);
+
+					if(!tmpFile.renameTo(storeFile))
+						throw new IOException("Cannot rename " + tmpFile + " to " + storeFile);
+
+					saved = true;
+				}
+			} catch (IOException ioException) {
+				logger.log(Level.WARNING, "Cannot save the snapshot store " + storeFile + ".", ioException);
+			} finally {
+				if(!saved) {
+					closeQuietly();
+
+					if(tmpFile.exists() && !tmpFile.delete())
+						logger.log(Level.WARNING, "Cannot delete " + tmpFile);
+				}
+			}
+
+			if(!saved) {
+				logger.log(Level.WARNING, "Snapshot store not saved, the previous " + storeFile + " is kept.");
+				return false;
+			}
+
+			logger.log(Level.INFO, databases.size() + " databases, " + tables.size() + " tables, " + nbrColumns +
+					" columns and " + nbrPartitions + " partitions saved to snapshot store " +
+					storeFile.getAbsolutePath());
+			return true;
+		}
+
+		/**
+		 * Discards the store unless it was closed.
+		 */
+		void discard() {
+			close(false);
+		}
+
+		private void closeQuietly() {
+			try {
+				records.close();
+			} catch (IOException ioException) {
+				logger.log(Level.FINE, "Cannot close " + tmpFile, ioException);
+			}
+
+			try {
+				output.close();
+			} catch (IOException ioException) {
+				logger.log(Level.FINE, "Cannot close " + tmpFile, ioException);
+			}
+		}
+
+		private void writeIndexes() throws IOException {
+			Collections.sort(databases);
+			Collections.sort(tables);
+			// stable sort, the pages of a Table are kept in export order
+			Collections.sort(pages);
+
+			long recordsEnd = position;
+			long databaseIndexOffset = position;
+
+			for(Entry database : databases)
+				records.writeLong(database.offset);
+
+			long tableIndexOffset = databaseIndexOffset + (long) databases.size() * DATABASE_ENTRY_SIZE;
+			int nextPage = 0;
+
+			for(Entry table : tables) {
+				while(nextPage < pages.size() && pages.get(nextPage).id.compareTo(table.id) < 0)
+					nextPage++;
+
+				int firstPage = nextPage;
+
+				while(nextPage < pages.size() && pages.get(nextPage).id.equals(table.id))
+					nextPage++;
+
+				records.writeLong(table.offset);
+				records.writeInt(table.count);
+				records.writeInt(firstPage);
+				records.writeInt(nextPage - firstPage);
+			}
+
+			long pageIndexOffset = tableIndexOffset + (long) tables.size() * TABLE_ENTRY_SIZE;
+
+			for(Entry partitionPage : pages) {
+				records.writeLong(partitionPage.offset);
+				records.writeInt(partitionPage.count);
+			}
+
+			records.flush();
+
+			output.seek(0);
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(segmentShift);
+			output.writeInt(databases.size());
+			output.writeInt(tables.size());
+			output.writeInt(pages.size());
+			output.writeLong(nbrColumns);
+			output.writeLong(nbrPartitions);
+			output.writeLong(recordsEnd);
+			output.writeLong(databaseIndexOffset);
+			output.writeLong(tableIndexOffset);
+			output.writeLong(pageIndexOffset);
+		}
+	}
+}
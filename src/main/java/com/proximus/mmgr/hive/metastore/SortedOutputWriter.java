@@ -0,0 +1,152 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+import com.proximus.mmgr.CsvEncoder;
+
+/**
+ * Writes an output file sorted by Element id. The first record written is the header of the file and is written
+ * first; the following records are given to an <i>ExternalSorter</i>, keyed by their id, the second field of every
+ * Element record, unquoted by the rules of <i>CsvReader</i> so that the outputs are sorted in the order in which
+ * <i>ExportDiff</i> merges them. The sorter buffers the records within its memory budget and sorts them into runs
+ * on its own threads while the export goes on; the sorted records are merged and written to the underlying writer
+ * when this writer is closed.<p>
+ * Records can be written in any number of calls, as long as each record ends with a line separator. Line feeds and
+ * carriage returns inside quoted values are kept; outside quotes, they end the record and are replaced by the line
+ * separator of the platform. The sorted output cannot be flushed before it is closed.
+ * @author Jonathan Puvilland
+ *
+ */
+class SortedOutputWriter extends Writer {
+	private static final int ID_FIELD = 1;
+
+	private final Writer out;
+	private final ExternalSorter sorter;
+	private final char separator;
+	private final StringBuilder record = new StringBuilder();
+	private final StringBuilder id = new StringBuilder();
+	private boolean headerWritten;
+	private boolean quoted;
+	private boolean quoteClosed;
+	private int field;
+	private boolean closed;
+
+	/**
+	 * Creates a sorted writer.
+	 * @param out the writer of the output file, closed with this writer
+	 * @param sorter the sorter of the records, closed with this writer
+	 * @param separator the character separating the fields of a record
+	 */
+	SortedOutputWriter(Writer out, ExternalSorter sorter, char separator) {
+		this.out = out;
+		this.sorter = sorter;
+		this.separator = separator;
+	}
+
+	@Override
+	public void write(char[] chars, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; i++)
+			write(chars[i]);
+	}
+
+	@Override
+	public void write(String chars, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; i++)
+			write(chars.charAt(i));
+	}
+
+	@Override
+	public Writer append(CharSequence chars) throws IOException {
+		for(int i = 0; i < chars.length(); i++)
+			write(chars.charAt(i));
+		return this;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if(closed)
+			throw new IOException("Sorted output already closed.");
+
+		if(!quoted && (c == '\n' || c == '\r')) {
+			quoteClosed = false;
+			if(c == '\n')
+				endRecord();
+			return;
+		}
+
+		if(c == CsvEncoder.QUOTE) {
+			// a quote following the closing quote is a doubled quote, kept in the id like CsvReader does
+			if(!quoted && quoteClosed && field == ID_FIELD)
+				id.append((char) c);
+			quoteClosed = quoted;
+			quoted = !quoted;
+		} else {
+			quoteClosed = false;
+			if(!quoted && c == separator)
+				field++;
+			else if(field == ID_FIELD)
+				id.append((char) c);
+		}
+
+		record.append((char) c);
+	}
+
+	private void endRecord() throws IOException {
+		if(!headerWritten) {
+			out.append(record).append(MetastoreExporter.LINE_SEPARATOR);
+			headerWritten = true;
+		} else {
+			sorter.add(id.toString(), record.toString());
+		}
+
+		record.setLength(0);
+		id.setLength(0);
+		field = 0;
+	}
+
+	/**
+	 * The records are only written when the writer is closed.
+	 */
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * @return the sorter of the records, whose statistics are complete once the writer is closed.
+	 */
+	ExternalSorter getSorter() {
+		return sorter;
+	}
+
+	/**
+	 * Merges the sorted records, writes them to the output file and closes it. A last record missing its line
+	 * separator is sorted with the others.
+	 * @throws IOException when the records cannot be sorted or written.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed)
+			return;
+
+		closed = true;
+
+		try {
+			if(record.length() > 0)
+				endRecord();
+
+			ExternalSorter.SortedRecords sortedRecords = sorter.sort();
+
+			try {
+				while(sortedRecords.next())
+					out.append(sortedRecords.getRecord()).append(MetastoreExporter.LINE_SEPARATOR);
+			} finally {
+				sortedRecords.close();
+			}
+		} finally {
+			sorter.close();
+			out.close();
+		}
+	}
+}
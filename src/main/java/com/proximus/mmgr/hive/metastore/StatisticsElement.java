@@ -0,0 +1,130 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.Map;
+
+import org.apache.hadoop.hive.metastore.api.BinaryColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.BooleanColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsData;
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsObj;
+import org.apache.hadoop.hive.metastore.api.DecimalColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.DoubleColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.LongColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.StringColumnStatsData;
+
+import com.proximus.mmgr.AbstractElement;
+import com.proximus.mmgr.ElementSchema;
+import com.proximus.mmgr.ElementWritable;
+import com.proximus.mmgr.hive.metastore.ElementAttributes.StatisticsAttributes;
+
+/**
+ * A sub-type of Elements that captures the statistics of a HiveMetastore Table, Partition or Column. The list of
+ * attributes is declared in the <i>StatisticsAttributes</i> interface. A statistics record has the type and id of
+ * the Element it describes, so that it can be joined with the Table, Partition and Column records:
+ * <br>- <b>TBL</b> and <b>PART</b>: the row count, sizes and number of files kept in the parameters of a Table or a
+ * Partition.
+ * <br>- <b>COL</b>: the null count, number of distinct values, lengths, boolean counts and bounds of a Column of an
+ * unpartitioned Table.
+ * <br>- <b>PCOL</b>: the same statistics for a Column of a Partition, whose id is the Partition id followed by the
+ * Column name.<p>
+ * Statistics which are not gathered by Hive are left empty. A StatisticsElement can be reused as a cursor: each
+ * <i>set</i> method replaces all the attributes.
+ * @author Jonathan Puvilland
+ *
+ */
+public class StatisticsElement extends AbstractElement<StatisticsAttributes> implements ElementWritable {
+	public static final String PARTITION_COLUMN_ELEMENT_TYPE = "PCOL";
+	static final ElementSchema<StatisticsAttributes> SCHEMA = ElementSchema.forType(StatisticsAttributes.class);
+
+	public StatisticsElement() {
+		super(SCHEMA);
+		this.setAttribute(StatisticsAttributes.id, "id");
+		this.setAttribute(StatisticsAttributes.name, "name");
+	}
+
+	/**
+	 * Re-points this Element to the basic statistics of a Table or Partition.
+	 * @param type the type of the Element, <b>TBL</b> or <b>PART</b>
+	 * @param parentId the id of the Database holding the Table, or of the Table holding the Partition
+	 * @param name the name of the Table or Partition
+	 * @param parameters the parameters of the Table or Partition, possibly null
+	 */
+	public void setBasicStatistics(String type, String parentId, String name, Map<String, String> parameters) {
+		setElement(type, parentId, name);
+
+		if(parameters == null)
+			return;
+
+		this.setAttribute(StatisticsAttributes.numRows, parameters.get("numRows"));
+		this.setAttribute(StatisticsAttributes.rawDataSize, parameters.get("rawDataSize"));
+		this.setAttribute(StatisticsAttributes.totalSize, parameters.get("totalSize"));
+		this.setAttribute(StatisticsAttributes.numFiles, parameters.get("numFiles"));
+	}
+
+	/**
+	 * Re-points this Element to the statistics of a Column.
+	 * @param type the type of the Element, <b>COL</b> or <b>PCOL</b>
+	 * @param parentId the id of the Table or Partition holding the Column
+	 * @param statistics the HiveMetastore statistics of the Column
+	 */
+	public void setColumnStatistics(String type, String parentId, ColumnStatisticsObj statistics) {
+		setElement(type, parentId, statistics.getColName());
+		ColumnStatisticsData data = statistics.getStatsData();
+
+		if(data == null)
+			return;
+
+		if(data.isSetLongStats()) {
+			LongColumnStatsData longStats = data.getLongStats();
+			setCounts(longStats.getNumNulls(), longStats.getNumDVs());
+			if(longStats.isSetLowValue())
+				this.setAttribute(StatisticsAttributes.lowValue, Long.toString(longStats.getLowValue()));
+			if(longStats.isSetHighValue())
+				this.setAttribute(StatisticsAttributes.highValue, Long.toString(longStats.getHighValue()));
+		} else if(data.isSetDoubleStats()) {
+			DoubleColumnStatsData doubleStats = data.getDoubleStats();
+			setCounts(doubleStats.getNumNulls(), doubleStats.getNumDVs());
+			if(doubleStats.isSetLowValue())
+				this.setAttribute(StatisticsAttributes.lowValue, Double.toString(doubleStats.getLowValue()));
+			if(doubleStats.isSetHighValue())
+				this.setAttribute(StatisticsAttributes.highValue, Double.toString(doubleStats.getHighValue()));
+		} else if(data.isSetStringStats()) {
+			StringColumnStatsData stringStats = data.getStringStats();
+			setCounts(stringStats.getNumNulls(), stringStats.getNumDVs());
+			setLengths(stringStats.getAvgColLen(), stringStats.getMaxColLen());
+		} else if(data.isSetBinaryStats()) {
+			BinaryColumnStatsData binaryStats = data.getBinaryStats();
+			this.setAttribute(StatisticsAttributes.numNulls, Long.toString(binaryStats.getNumNulls()));
+			setLengths(binaryStats.getAvgColLen(), binaryStats.getMaxColLen());
+		} else if(data.isSetBooleanStats()) {
+			BooleanColumnStatsData booleanStats = data.getBooleanStats();
+			this.setAttribute(StatisticsAttributes.numNulls, Long.toString(booleanStats.getNumNulls()));
+			this.setAttribute(StatisticsAttributes.numTrues, Long.toString(booleanStats.getNumTrues()));
+			this.setAttribute(StatisticsAttributes.numFalses, Long.toString(booleanStats.getNumFalses()));
+		} else if(data.isSetDecimalStats()) {
+			DecimalColumnStatsData decimalStats = data.getDecimalStats();
+			setCounts(decimalStats.getNumNulls(), decimalStats.getNumDVs());
+		}
+	}
+
+	private void setElement(String type, String parentId, String name) {
+		for(StatisticsAttributes attribute : StatisticsAttributes.values())
+			if(!SCHEMA.isMandatory(attribute))
+				this.setAttribute(attribute, null);
+
+		this.setAttribute(StatisticsAttributes.type, type);
+		this.setAttribute(StatisticsAttributes.id, parentId == null || parentId.isEmpty() ? name :
+			parentId + "." + name);
+		this.setAttribute(StatisticsAttributes.name, name);
+		this.setAttribute(StatisticsAttributes.parent, parentId);
+	}
+
+	private void setCounts(long numNulls, long numDistinctValues) {
+		this.setAttribute(StatisticsAttributes.numNulls, Long.toString(numNulls));
+		this.setAttribute(StatisticsAttributes.numDistinctValues, Long.toString(numDistinctValues));
+	}
+
+	private void setLengths(double avgLength, long maxLength) {
+		this.setAttribute(StatisticsAttributes.avgLength, Double.toString(avgLength));
+		this.setAttribute(StatisticsAttributes.maxLength, Long.toString(maxLength));
+	}
+}
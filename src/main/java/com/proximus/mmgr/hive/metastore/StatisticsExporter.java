@@ -0,0 +1,353 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static com.proximus.mmgr.ElementWritable.DEFAULT_SEPARATOR;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsObj;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.Warehouse;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+/**
+ * Exports the statistics of the Tables, Partitions and Columns to the statistics file, concurrently with the export
+ * of their Metadata. The exporter hands over each batch of Tables it retrieves; the statistics of the Tables are then
+ * retrieved by <i>nbrThreads</i> threads of their own, with sources of their own, so that the export of the
+ * Metadata does not wait for the statistics. The export only waits when <i>MAX_PENDING_TABLES</i>
+ * Tables are queued, and when the statistics are completed at the end of the export.<p>
+ * The statistics are retrieved in bulk, never with one call per Column:
+ * <br>- the row count, sizes and number of files of the Tables and Partitions are read from their parameters,
+ * retrieved with their Metadata, without any call.
+ * <br>- the statistics of all the Columns of an unpartitioned Table are retrieved with a single
+ * <i>getTableColumnStatistics</i> call.
+ * <br>- the statistics of the Columns of a partitioned Table, kept by Partition, are retrieved with one
+ * <i>getPartitionColumnStatistics</i> call per page of <i>partitionPageSize</i> Partitions, after listing the
+ * Partitions.<p>
+ * Views have no statistics. A Table whose statistics cannot be retrieved is logged and counted as a failure of the
+ * statistics; it does not fail the export. The time spent retrieving the statistics and the time the export waited
+ * for them are added to the <i>ExportMetrics</i> of the export, and their share of the export time is logged.
+ * @author Jonathan Puvilland
+ *
+ */
+class StatisticsExporter {
+	static final int DEFAULT_STATISTICS_THREADS = 2;
+	// Tables queued for their statistics before the export waits for the statistics threads
+	static final int MAX_PENDING_TABLES = 1000;
+	private static final String VIRTUAL_VIEW = "VIRTUAL_VIEW";
+	private static final short ALL_PARTITIONS = -1;
+	private static final Logger logger = Logger.getLogger(StatisticsExporter.class.getName());
+	private static final AtomicInteger nbrExporters = new AtomicInteger();
+
+	private final MetastoreSourcePool sourcePool;
+	private final Writer out;
+	private final int nbrThreads;
+	private final int partitionPageSize;
+	private final ExecutorService fetchers;
+	private final Semaphore pendingTables = new Semaphore(MAX_PENDING_TABLES);
+	private final AtomicLong nbrTables = new AtomicLong();
+	private final AtomicLong nbrPartitions = new AtomicLong();
+	private final AtomicLong nbrColumns = new AtomicLong();
+	private final AtomicLong nbrCalls = new AtomicLong();
+	private final AtomicLong nbrFailures = new AtomicLong();
+	private ExportMetrics metrics = new ExportMetrics();
+	private boolean closed;
+
+	/**
+	 * The names and parameters of a Table, kept until its statistics are retrieved instead of the whole Table.
+	 */
+	private static final class TableRequest {
+		final String dbName;
+		final String tableName;
+		final Map<String, String> parameters;
+		final List<String> colNames;
+		final boolean partitioned;
+
+		TableRequest(Table table) {
+			this.dbName = table.getDbName();
+			this.tableName = table.getTableName();
+			this.parameters = table.getParameters();
+			this.colNames = new ArrayList<String>(table.getSd().getColsSize());
+			this.partitioned = table.getPartitionKeysSize() > 0;
+
+			for(FieldSchema column : table.getSd().getCols())
+				colNames.add(column.getName());
+		}
+
+		String getTableId() {
+			return dbName + "." + tableName;
+		}
+	}
+
+	/**
+	 * Creates an exporter of statistics.
+	 * @param sourcePool the pool of HiveMetastore sources dedicated to the statistics, closed with the exporter
+	 * @param out the writer of the statistics file, closed with the exporter
+	 * @param nbrThreads the number of threads retrieving the statistics
+	 * @param partitionPageSize the number of Partitions whose statistics are retrieved in a single call
+	 */
+	StatisticsExporter(MetastoreSourcePool sourcePool, Writer out, int nbrThreads, int partitionPageSize) {
+		this.sourcePool = sourcePool;
+		this.out = out;
+		this.nbrThreads = nbrThreads;
+		this.partitionPageSize = partitionPageSize;
+		this.fetchers = Executors.newFixedThreadPool(nbrThreads, new ThreadFactory() {
+			private final int exporterId = nbrExporters.incrementAndGet();
+			private final AtomicInteger nbrThreadsCreated = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "statistics-" + exporterId + "-" +
+						nbrThreadsCreated.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Sets the metrics receiving the time spent retrieving the statistics, and waiting for them.
+	 * @param metrics the metrics of the export
+	 */
+	void setMetrics(ExportMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Writes the header record of the statistics file.
+	 * @throws IOException when the header cannot be written.
+	 */
+	void writeHeader() throws IOException {
+		write(StatisticsElement.SCHEMA.getHeader(DEFAULT_SEPARATOR) + MetastoreExporter.LINE_SEPARATOR);
+	}
+
+	/**
+	 * Queues the retrieval of the statistics of a batch of Tables and of their Columns. Waits while
+	 * <i>MAX_PENDING_TABLES</i> Tables are queued.
+	 * @param tables the HiveMetastore Table objects
+	 */
+	void submitTables(List<Table> tables) {
+		for(Table table : tables) {
+			if(VIRTUAL_VIEW.equals(table.getTableType()) || table.getSd() == null || table.getSd().getCols() == null)
+				continue;
+
+			final TableRequest request = new TableRequest(table);
+			long start = System.nanoTime();
+
+			try {
+				pendingTables.acquire();
+			} catch (InterruptedException interruptedException) {
+				statisticsFailed("Interrupted while queuing the statistics of " + request.getTableId() + ".",
+						interruptedException);
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				metrics.addPhase(ExportMetrics.Phase.STATISTICS_WAIT, System.nanoTime() - start);
+			}
+
+			fetchers.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						exportTableStatistics(request);
+					} finally {
+						pendingTables.release();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writes the row count, sizes and number of files of a page of Partitions, read from their parameters.
+	 * @param table the HiveMetastore Table object holding the partition keys
+	 * @param partitions the HiveMetastore Partition objects
+	 * @throws MetaException when the values of a Partition do not match the partition keys of the Table.
+	 */
+	void addPartitions(Table table, List<Partition> partitions) throws MetaException {
+		String tableId = table.getDbName() + "." + table.getTableName();
+		StatisticsElement cursor = new StatisticsElement();
+		StringBuilder records = new StringBuilder();
+
+		for(Partition partition : partitions) {
+			cursor.setBasicStatistics(PartitionElement.PARTITION_ELEMENT_TYPE, tableId,
+					Warehouse.makePartName(table.getPartitionKeys(), partition.getValues()), partition.getParameters());
+			MetastoreExporter.appendRecord(records, cursor);
+		}
+
+		nbrPartitions.addAndGet(partitions.size());
+		writeRecords(records, tableId);
+	}
+
+	/**
+	 * Retrieves and writes the statistics of a Table and of its Columns, on a statistics thread.
+	 */
+	private void exportTableStatistics(TableRequest request) {
+		long start = System.nanoTime();
+		MetastoreSource source = null;
+
+		try {
+			source = sourcePool.borrowSource();
+			StatisticsElement cursor = new StatisticsElement();
+			StringBuilder records = new StringBuilder();
+
+			cursor.setBasicStatistics(TableElement.TABLE_ELEMENT_TYPE, request.dbName, request.tableName,
+					request.parameters);
+			MetastoreExporter.appendRecord(records, cursor);
+
+			if(!request.partitioned) {
+				List<ColumnStatisticsObj> statistics = source.getTableColumnStatistics(request.dbName,
+						request.tableName, request.colNames);
+				nbrCalls.incrementAndGet();
+				appendColumns(records, cursor, ColumnElement.COL_ELEMENT_TYPE, request.getTableId(), statistics);
+			} else if(!request.colNames.isEmpty()) {
+				writeRecords(records, request.getTableId());
+				records.setLength(0);
+				exportPartitionColumnStatistics(source, request, cursor);
+			}
+
+			writeRecords(records, request.getTableId());
+			nbrTables.incrementAndGet();
+		} catch (TException metaException) {
+			statisticsFailed("Cannot retrieve the statistics of " + request.getTableId() + ".", metaException);
+		} catch (InterruptedException interruptedException) {
+			statisticsFailed("Interrupted while retrieving the statistics of " + request.getTableId() + ".",
+					interruptedException);
+			Thread.currentThread().interrupt();
+		} finally {
+			if(source != null)
+				sourcePool.releaseSource(source);
+			metrics.addPhase(ExportMetrics.Phase.STATISTICS_FETCH, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Retrieves and writes the statistics of the Columns of a partitioned Table, by pages of Partitions.
+	 */
+	private void exportPartitionColumnStatistics(MetastoreSource source, TableRequest request,
+			StatisticsElement cursor) throws TException {
+		List<String> partitionNames = source.listPartitionNames(request.dbName, request.tableName, ALL_PARTITIONS);
+		nbrCalls.incrementAndGet();
+
+		for(int pageStart = 0; pageStart < partitionNames.size(); pageStart += partitionPageSize) {
+			List<String> page = partitionNames.subList(pageStart,
+					Math.min(pageStart + partitionPageSize, partitionNames.size()));
+			Map<String, List<ColumnStatisticsObj>> statistics = source.getPartitionColumnStatistics(request.dbName,
+					request.tableName, page, request.colNames);
+			nbrCalls.incrementAndGet();
+			StringBuilder records = new StringBuilder();
+
+			// in the order of the Partitions, the statistics being returned by name
+			for(String partitionName : page)
+				if(statistics.containsKey(partitionName))
+					appendColumns(records, cursor, StatisticsElement.PARTITION_COLUMN_ELEMENT_TYPE,
+							request.getTableId() + "." + partitionName, statistics.get(partitionName));
+
+			writeRecords(records, request.getTableId());
+		}
+	}
+
+	private void appendColumns(StringBuilder records, StatisticsElement cursor, String type, String parentId,
+			List<ColumnStatisticsObj> statistics) {
+		if(statistics == null)
+			return;
+
+		for(ColumnStatisticsObj columnStatistics : statistics) {
+			cursor.setColumnStatistics(type, parentId, columnStatistics);
+			MetastoreExporter.appendRecord(records, cursor);
+		}
+
+		nbrColumns.addAndGet(statistics.size());
+	}
+
+	private void writeRecords(StringBuilder records, String tableId) {
+		try {
+			write(records);
+		} catch (IOException ioException) {
+			statisticsFailed("Cannot write the statistics of " + tableId + ".", ioException);
+		}
+	}
+
+	private void write(CharSequence records) throws IOException {
+		if(records.length() == 0)
+			return;
+
+		synchronized(out) {
+			out.append(records);
+		}
+	}
+
+	private void statisticsFailed(String message, Exception exception) {
+		nbrFailures.incrementAndGet();
+		logger.log(Level.WARNING, message, exception);
+	}
+
+	/**
+	 * @return the number of Tables whose statistics could not be exported.
+	 */
+	long getNbrFailures() {
+		return nbrFailures.get();
+	}
+
+	/**
+	 * Waits for the statistics of the queued Tables, closes the statistics file and logs the number of statistics
+	 * exported and their share of the export time. Called once the export of the Metadata is over.
+	 * @return true when the statistics of all the Tables were exported.
+	 */
+	boolean close() {
+		if(closed)
+			return nbrFailures.get() == 0;
+
+		closed = true;
+		long start = System.nanoTime();
+		fetchers.shutdown();
+
+		try {
+			while(!fetchers.awaitTermination(1, TimeUnit.MINUTES))
+				logger.log(Level.INFO, "Waiting for the statistics of " +
+						(MAX_PENDING_TABLES - pendingTables.availablePermits()) + " tables.");
+		} catch (InterruptedException interruptedException) {
+			statisticsFailed("Interrupted while waiting for the statistics.", interruptedException);
+			fetchers.shutdownNow();
+			Thread.currentThread().interrupt();
+		} finally {
+			metrics.addPhase(ExportMetrics.Phase.STATISTICS_WAIT, System.nanoTime() - start);
+		}
+
+		sourcePool.close();
+
+		try {
+			out.close();
+		} catch (IOException ioException) {
+			statisticsFailed("Cannot close the statistics file.", ioException);
+		}
+
+		long fetchMillis = TimeUnit.NANOSECONDS.toMillis(metrics.getPhaseNanos(ExportMetrics.Phase.STATISTICS_FETCH));
+		long waitMillis = TimeUnit.NANOSECONDS.toMillis(metrics.getPhaseNanos(ExportMetrics.Phase.STATISTICS_WAIT));
+		long elapsedMillis = Math.max(1, metrics.getElapsedMillis());
+
+		logger.log(Level.INFO, "Statistics of " + nbrTables + " tables, " + nbrPartitions + " partitions and " +
+				nbrColumns + " columns exported with " + nbrCalls + " HiveMetastore calls, " + nbrFailures +
+				" failures. Statistics retrieved in " + fetchMillis + " ms by " + nbrThreads + " threads (" +
+				Math.round(fetchMillis * 100.0 / (elapsedMillis * nbrThreads)) + "% of their time over the export), " +
+				"export waiting " + waitMillis + " ms for the statistics (" +
+				Math.round(waitMillis * 100.0 / elapsedMillis) + "% of the export time).");
+
+		return nbrFailures.get() == 0;
+	}
+}
@@ -0,0 +1,613 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.hive.metastore.api.BooleanColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsData;
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsObj;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.DecimalColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.DoubleColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.LongColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.StringColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+/**
+ * A MetastoreSource generating a synthetic Hive catalog in memory, for testing and profiling the export without a
+ * Hive cluster. The catalog holds <i>nbrDatabases</i> Databases of <i>nbrTablesPerDatabase</i> Tables, each Table
+ * having <i>nbrColumnsPerTable</i> Columns. Objects are generated on each call from their name, so the same catalog
+ * is returned by every call and every instance, and a catalog of any size does not consume any heap.<p>
+ * Every <i>viewFrequency</i>th Table is a view holding a multi-line SQL text. When <i>nbrPartitionsPerTable</i> is
+ * set, the other Tables are partitioned by day and hour (<b>ds=2016-01-01/hr=00</b>). Comments and view texts contain
+ * separators and quotes, like real-life Metadata. A latency can be injected in each call to simulate the
+ * HiveMetastore round-trip.<p>
+ * Tables and Partitions which are not views hold row counts and sizes in their parameters. Column statistics are
+ * returned for the string, integer, double, decimal and boolean Columns: by Table for the unpartitioned Tables, by
+ * Partition for the partitioned Tables, like the statistics gathered by Hive.<p>
+ * Table filters support a single condition on the owner or on a parameter of the Tables, such as
+ * <b>hive_filter_field_params__transient_lastDdlTime &gt;= "1451606400"</b>, compared as strings.<p>
+ * The synthetic catalog never changes: its notification log is empty.
+ * @author Jonathan Puvilland
+ *
+ */
+public class SyntheticMetastoreSource implements MetastoreSource {
+	public static final String DATABASE_PREFIX = "db_";
+	public static final String TABLE_PREFIX = "tbl_";
+	public static final String COLUMN_PREFIX = "col_";
+	private static final String[] DATA_TYPES = { "string", "bigint", "int", "double", "timestamp", "decimal(18,2)",
+		"boolean", "date", "array<string>", "map<string,string>" };
+	private static final String[] WORDS = { "customer", "identifier", "amount", "billing", "date", "of", "the",
+		"contract", "status", "code,", "\"active\"", "product", "invoice", "line", "total", "in", "EUR", "(legacy)" };
+	private static final int LAST_DDL_TIME = 1451606400;
+	private static final List<FieldSchema> PARTITION_KEYS = Arrays.asList(
+			new FieldSchema("ds", "string", "day of the load"), new FieldSchema("hr", "int", null));
+	private static final Pattern TABLE_FILTER =
+			Pattern.compile("\\s*hive_filter_field_(owner__|params__(\\w+))\\s*(=|<>|!=|<=|>=|<|>)\\s*\"([^\"]*)\"\\s*");
+
+	private final int nbrDatabases;
+	private final int nbrTablesPerDatabase;
+	private final int nbrColumnsPerTable;
+	private int commentLength = 40;
+	private int viewTextLength = 2000;
+	private int viewFrequency = 10;
+	private int nbrPartitionsPerTable = 0;
+	private long latencyMicros = 0;
+	private final AtomicLong nbrCalls = new AtomicLong();
+
+	/**
+	 * Creates a synthetic catalog of the specified size.
+	 * @param nbrDatabases the number of Databases
+	 * @param nbrTablesPerDatabase the number of Tables in each Database
+	 * @param nbrColumnsPerTable the number of Columns of each Table
+	 */
+	public SyntheticMetastoreSource(int nbrDatabases, int nbrTablesPerDatabase, int nbrColumnsPerTable) {
+		this.nbrDatabases = nbrDatabases;
+		this.nbrTablesPerDatabase = nbrTablesPerDatabase;
+		this.nbrColumnsPerTable = nbrColumnsPerTable;
+	}
+
+	/**
+	 * Sets the approximate length of Database, Table and Column comments. 0 generates elements without comment.
+	 * @param commentLength the number of characters of the comments
+	 */
+	public void setCommentLength(int commentLength) {
+		this.commentLength = commentLength;
+	}
+
+	/**
+	 * Sets the approximate length of the original and expanded SQL text of views.
+	 * @param viewTextLength the number of characters of the view texts
+	 */
+	public void setViewTextLength(int viewTextLength) {
+		this.viewTextLength = viewTextLength;
+	}
+
+	/**
+	 * Sets the proportion of views among the Tables. 0 generates no view.
+	 * @param viewFrequency one Table out of <i>viewFrequency</i> is a view
+	 */
+	public void setViewFrequency(int viewFrequency) {
+		this.viewFrequency = viewFrequency;
+	}
+
+	/**
+	 * Sets the number of Partitions of each Table which is not a view. 0 generates unpartitioned Tables.
+	 * @param nbrPartitionsPerTable the number of Partitions, one per hour from 2016-01-01
+	 */
+	public void setNbrPartitionsPerTable(int nbrPartitionsPerTable) {
+		this.nbrPartitionsPerTable = nbrPartitionsPerTable;
+	}
+
+	/**
+	 * Sets the latency added to each call, simulating the HiveMetastore round-trip.
+	 * @param latencyMicros the latency of a call, in microseconds
+	 */
+	public void setLatencyMicros(long latencyMicros) {
+		this.latencyMicros = latencyMicros;
+	}
+
+	/**
+	 * @return the number of calls made to this source.
+	 */
+	public long getNbrCalls() {
+		return nbrCalls.get();
+	}
+
+	/**
+	 * @return the total number of Tables of the catalog.
+	 */
+	public long getNbrTables() {
+		return (long) nbrDatabases * nbrTablesPerDatabase;
+	}
+
+	/**
+	 * @return the total number of Columns of the catalog.
+	 */
+	public long getNbrColumns() {
+		return getNbrTables() * nbrColumnsPerTable;
+	}
+
+	@Override
+	public List<String> getAllDatabases() throws TException {
+		simulateCall();
+		List<String> databases = new ArrayList<String>(nbrDatabases);
+
+		for(int i = 0; i < nbrDatabases; i++)
+			databases.add(databaseName(i));
+
+		return databases;
+	}
+
+	@Override
+	public List<String> getDatabases(String databasePattern) throws TException {
+		simulateCall();
+		Pattern pattern = MetastoreFilter.compile(databasePattern);
+		List<String> databases = new ArrayList<String>();
+
+		for(int i = 0; i < nbrDatabases; i++)
+			if(pattern.matcher(databaseName(i)).matches())
+				databases.add(databaseName(i));
+
+		return databases;
+	}
+
+	@Override
+	public Database getDatabase(String dbName) throws TException {
+		simulateCall();
+		int dbIndex = checkDatabase(dbName);
+		Random random = new Random(dbIndex);
+
+		Database db = new Database();
+		db.setName(dbName);
+		db.setDescription(commentLength > 0 ? text(random, commentLength, " ") : null);
+		db.setLocationUri("hdfs://synthetic/apps/hive/warehouse/" + dbName + ".db");
+		db.setOwnerName("hive");
+
+		return db;
+	}
+
+	@Override
+	public List<String> getAllTables(String dbName) throws TException {
+		simulateCall();
+		checkDatabase(dbName);
+		List<String> tables = new ArrayList<String>(nbrTablesPerDatabase);
+
+		for(int i = 0; i < nbrTablesPerDatabase; i++)
+			tables.add(tableName(i));
+
+		return tables;
+	}
+
+	@Override
+	public List<String> getTables(String dbName, String tablePattern) throws TException {
+		simulateCall();
+		checkDatabase(dbName);
+		Pattern pattern = MetastoreFilter.compile(tablePattern);
+		List<String> tables = new ArrayList<String>();
+
+		for(int i = 0; i < nbrTablesPerDatabase; i++)
+			if(pattern.matcher(tableName(i)).matches())
+				tables.add(tableName(i));
+
+		return tables;
+	}
+
+	@Override
+	public List<String> listTableNamesByFilter(String dbName, String filter, short maxTables) throws TException {
+		simulateCall();
+		checkDatabase(dbName);
+		Matcher condition = TABLE_FILTER.matcher(filter);
+
+		if(!condition.matches())
+			throw new MetaException("Unsupported filter: " + filter);
+
+		List<String> tables = new ArrayList<String>();
+
+		for(int i = 0; i < nbrTablesPerDatabase && (maxTables < 0 || tables.size() < maxTables); i++) {
+			Table table = generateTable(dbName, tableName(i), i);
+			String value = condition.group(2) == null ? table.getOwner() : table.getParameters().get(condition.group(2));
+
+			if(value != null && compare(value, condition.group(3), condition.group(4)))
+				tables.add(table.getTableName());
+		}
+
+		return tables;
+	}
+
+	private static boolean compare(String value, String operator, String operand) {
+		int comparison = value.compareTo(operand);
+
+		if(operator.equals("="))
+			return comparison == 0;
+		if(operator.equals("<>") || operator.equals("!="))
+			return comparison != 0;
+		if(operator.equals("<"))
+			return comparison < 0;
+		if(operator.equals(">"))
+			return comparison > 0;
+		if(operator.equals("<="))
+			return comparison <= 0;
+		return comparison >= 0;
+	}
+
+	@Override
+	public Table getTable(String dbName, String tableName) throws TException {
+		simulateCall();
+		checkDatabase(dbName);
+		int tableIndex = tableIndex(tableName);
+
+		if(tableIndex < 0)
+			throw new NoSuchObjectException(dbName + "." + tableName + " table not found");
+
+		return generateTable(dbName, tableName, tableIndex);
+	}
+
+	@Override
+	public List<Table> getTableObjectsByName(String dbName, List<String> tableNames) throws TException {
+		simulateCall();
+		checkDatabase(dbName);
+		List<Table> tables = new ArrayList<Table>(tableNames.size());
+
+		for(String tableName : tableNames) {
+			int tableIndex = tableIndex(tableName);
+			if(tableIndex >= 0)
+				tables.add(generateTable(dbName, tableName, tableIndex));
+		}
+
+		return tables;
+	}
+
+	@Override
+	public List<String> listPartitionNames(String dbName, String tableName, short maxPartitions) throws TException {
+		simulateCall();
+		checkPartitionedTable(dbName, tableName);
+		int nbrPartitions = maxPartitions < 0 ? nbrPartitionsPerTable : Math.min(maxPartitions, nbrPartitionsPerTable);
+		List<String> partitionNames = new ArrayList<String>(nbrPartitions);
+		SimpleDateFormat dayFormat = dayFormat();
+
+		for(int i = 0; i < nbrPartitions; i++)
+			partitionNames.add(partitionName(dayFormat, i));
+
+		return partitionNames;
+	}
+
+	@Override
+	public List<Partition> getPartitionsByNames(String dbName, String tableName, List<String> partitionNames)
+			throws TException {
+		simulateCall();
+		checkPartitionedTable(dbName, tableName);
+		List<Partition> partitions = new ArrayList<Partition>(partitionNames.size());
+		SimpleDateFormat dayFormat = dayFormat();
+
+		for(String partitionName : partitionNames) {
+			int partitionIndex = partitionIndex(dayFormat, partitionName);
+			if(partitionIndex >= 0)
+				partitions.add(generatePartition(dayFormat, dbName, tableName, partitionIndex));
+		}
+
+		return partitions;
+	}
+
+	@Override
+	public List<ColumnStatisticsObj> getTableColumnStatistics(String dbName, String tableName, List<String> colNames)
+			throws TException {
+		Table table = getTable(dbName, tableName);
+
+		// the statistics of a partitioned Table are kept by Partition
+		if(table.getPartitionKeysSize() > 0 || table.getParameters().get("numRows") == null)
+			return Collections.emptyList();
+
+		return generateColumnStatistics(dbName + "." + tableName, table, colNames);
+	}
+
+	@Override
+	public Map<String, List<ColumnStatisticsObj>> getPartitionColumnStatistics(String dbName, String tableName,
+			List<String> partitionNames, List<String> colNames) throws TException {
+		simulateCall();
+		checkPartitionedTable(dbName, tableName);
+		Table table = generateTable(dbName, tableName, tableIndex(tableName));
+		Map<String, List<ColumnStatisticsObj>> statistics = new HashMap<String, List<ColumnStatisticsObj>>();
+		SimpleDateFormat dayFormat = dayFormat();
+
+		for(String partitionName : partitionNames) {
+			int partitionIndex = partitionIndex(dayFormat, partitionName);
+			if(partitionIndex < 0)
+				continue;
+
+			table.getParameters().put("numRows", Long.toString((partitionIndex + 1) * 100L));
+			statistics.put(partitionName, generateColumnStatistics(dbName + "." + tableName + "/" + partitionName,
+					table, colNames));
+		}
+
+		return statistics;
+	}
+
+	@Override
+	public long getCurrentNotificationEventId() throws TException {
+		simulateCall();
+		return 0;
+	}
+
+	@Override
+	public List<NotificationEvent> getNextNotification(long lastEventId, int maxEvents) throws TException {
+		simulateCall();
+		return Collections.emptyList();
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Generates the Metadata of a Table, seeded by the Table's name so that the same Table is always generated.
+	 */
+	private Table generateTable(String dbName, String tableName, int tableIndex) {
+		Random random = new Random(((long) dbName.hashCode() << 32) ^ tableIndex);
+		boolean isView = viewFrequency > 0 && tableIndex % viewFrequency == viewFrequency - 1;
+
+		Table table = new Table();
+		table.setDbName(dbName);
+		table.setTableName(tableName);
+		table.setOwner("hive");
+		table.setTableType(isView ? "VIRTUAL_VIEW" : "MANAGED_TABLE");
+		table.setCreateTime(LAST_DDL_TIME);
+
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("transient_lastDdlTime", Integer.toString(LAST_DDL_TIME));
+		if(commentLength > 0)
+			parameters.put("comment", text(random, commentLength, " "));
+		if(!isView)
+			putBasicStatistics(parameters, (tableIndex + 1) * 1000L);
+		table.setParameters(parameters);
+
+		List<FieldSchema> columns = new ArrayList<FieldSchema>(nbrColumnsPerTable);
+		for(int i = 0; i < nbrColumnsPerTable; i++)
+			columns.add(new FieldSchema(columnName(i), DATA_TYPES[random.nextInt(DATA_TYPES.length)],
+					commentLength > 0 ? text(random, commentLength, " ") : null));
+
+		StorageDescriptor sd = new StorageDescriptor();
+		sd.setCols(columns);
+		if(!isView)
+			sd.setLocation("hdfs://synthetic/apps/hive/warehouse/" + dbName + ".db/" + tableName);
+		table.setSd(sd);
+
+		if(!isView && nbrPartitionsPerTable > 0)
+			table.setPartitionKeys(new ArrayList<FieldSchema>(PARTITION_KEYS));
+
+		if(isView) {
+			table.setViewOriginalText(viewText(random, dbName, columns, false));
+			table.setViewExpandedText(viewText(random, dbName, columns, true));
+		}
+
+		return table;
+	}
+
+	/**
+	 * Generates the Metadata of the Partition of a Table holding the data of one hour.
+	 */
+	private static Partition generatePartition(SimpleDateFormat dayFormat, String dbName, String tableName,
+			int partitionIndex) {
+		String partitionName = partitionName(dayFormat, partitionIndex);
+
+		StorageDescriptor sd = new StorageDescriptor();
+		sd.setLocation("hdfs://synthetic/apps/hive/warehouse/" + dbName + ".db/" + tableName + "/" + partitionName);
+
+		Partition partition = new Partition();
+		partition.setDbName(dbName);
+		partition.setTableName(tableName);
+		partition.setValues(Arrays.asList(partitionDay(dayFormat, partitionIndex),
+				String.format("%02d", partitionIndex % 24)));
+		partition.setCreateTime(LAST_DDL_TIME + partitionIndex * 3600);
+		partition.setSd(sd);
+
+		Map<String, String> parameters = new HashMap<String, String>();
+		putBasicStatistics(parameters, (partitionIndex + 1) * 100L);
+		partition.setParameters(parameters);
+
+		return partition;
+	}
+
+	/**
+	 * Sets the row count, sizes and number of files of a Table or Partition, like <b>ANALYZE TABLE</b>.
+	 */
+	private static void putBasicStatistics(Map<String, String> parameters, long numRows) {
+		parameters.put("numRows", Long.toString(numRows));
+		parameters.put("rawDataSize", Long.toString(numRows * 120));
+		parameters.put("totalSize", Long.toString(numRows * 45));
+		parameters.put("numFiles", Long.toString(numRows / 1000 + 1));
+	}
+
+	/**
+	 * Generates the statistics of the Columns of a Table or Partition which are requested and have statistics,
+	 * seeded by the name of their Table or Partition.
+	 */
+	private static List<ColumnStatisticsObj> generateColumnStatistics(String seed, Table table, List<String> colNames) {
+		Set<String> requested = new HashSet<String>(colNames);
+		List<ColumnStatisticsObj> statistics = new ArrayList<ColumnStatisticsObj>();
+		Random random = new Random(seed.hashCode());
+		long numRows = Long.parseLong(table.getParameters().get("numRows"));
+
+		for(FieldSchema column : table.getSd().getCols()) {
+			ColumnStatisticsData data = generateColumnStatistics(random, column.getType(), numRows);
+			if(data != null && requested.contains(column.getName()))
+				statistics.add(new ColumnStatisticsObj(column.getName(), column.getType(), data));
+		}
+
+		return statistics;
+	}
+
+	private static ColumnStatisticsData generateColumnStatistics(Random random, String dataType, long numRows) {
+		long numNulls = random.nextInt((int) Math.min(Integer.MAX_VALUE, numRows / 10 + 1));
+		long numDVs = 1 + random.nextInt((int) Math.min(Integer.MAX_VALUE, numRows));
+
+		if(dataType.equals("string"))
+			return ColumnStatisticsData.stringStats(new StringColumnStatsData(8 + random.nextInt(64),
+					4 + random.nextInt(400) / 10.0, numNulls, numDVs));
+
+		if(dataType.equals("bigint") || dataType.equals("int")) {
+			LongColumnStatsData longStats = new LongColumnStatsData(numNulls, numDVs);
+			longStats.setLowValue(-random.nextInt(1000));
+			longStats.setHighValue(random.nextInt(1000000));
+			return ColumnStatisticsData.longStats(longStats);
+		}
+
+		if(dataType.equals("double"))
+			return ColumnStatisticsData.doubleStats(new DoubleColumnStatsData(numNulls, numDVs));
+
+		if(dataType.startsWith("decimal"))
+			return ColumnStatisticsData.decimalStats(new DecimalColumnStatsData(numNulls, numDVs));
+
+		if(dataType.equals("boolean")) {
+			long numTrues = random.nextInt((int) Math.min(Integer.MAX_VALUE, numRows - numNulls + 1));
+			return ColumnStatisticsData.booleanStats(new BooleanColumnStatsData(numTrues, numRows - numNulls - numTrues,
+					numNulls));
+		}
+
+		return null;
+	}
+
+	/**
+	 * Generates a multi-line SQL select statement of about <i>viewTextLength</i> characters.
+	 */
+	private String viewText(Random random, String dbName, List<FieldSchema> columns, boolean expanded) {
+		StringBuilder sql = new StringBuilder(viewTextLength + 64);
+		sql.append("SELECT ");
+
+		for(int i = 0; sql.length() < viewTextLength / 2 && i < columns.size(); i++) {
+			if(i > 0)
+				sql.append(",\n       ");
+			if(expanded)
+				sql.append("`t`.`").append(columns.get(i).getName()).append('`');
+			else
+				sql.append(columns.get(i).getName());
+		}
+
+		sql.append("\nFROM ").append(dbName).append('.').append(tableName(random.nextInt(Math.max(1, nbrTablesPerDatabase))));
+		sql.append(expanded ? " `t`" : " t");
+		sql.append("\nWHERE status = \"active\"");
+
+		while(sql.length() < viewTextLength)
+			sql.append("\n  AND ").append(text(random, 30, "_")).append(" IS NOT NULL");
+
+		return sql.toString();
+	}
+
+	private static String text(Random random, int length, String wordSeparator) {
+		StringBuilder text = new StringBuilder(length + 16);
+
+		while(text.length() < length) {
+			if(text.length() > 0)
+				text.append(wordSeparator);
+			text.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+
+		return text.toString();
+	}
+
+	private void simulateCall() {
+		nbrCalls.incrementAndGet();
+
+		if(latencyMicros > 0)
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+	}
+
+	private int checkDatabase(String dbName) throws NoSuchObjectException {
+		int dbIndex = index(dbName, DATABASE_PREFIX, nbrDatabases);
+
+		if(dbIndex < 0)
+			throw new NoSuchObjectException(dbName + " database not found");
+
+		return dbIndex;
+	}
+
+	private void checkPartitionedTable(String dbName, String tableName) throws NoSuchObjectException {
+		checkDatabase(dbName);
+		int tableIndex = tableIndex(tableName);
+
+		if(tableIndex < 0)
+			throw new NoSuchObjectException(dbName + "." + tableName + " table not found");
+		if(nbrPartitionsPerTable == 0 || (viewFrequency > 0 && tableIndex % viewFrequency == viewFrequency - 1))
+			throw new NoSuchObjectException(dbName + "." + tableName + " table is not partitioned");
+	}
+
+	private int partitionIndex(SimpleDateFormat dayFormat, String partitionName) {
+		// ds=yyyy-MM-dd/hr=HH
+		if(partitionName == null || !partitionName.matches("ds=\\d{4}-\\d{2}-\\d{2}/hr=\\d{2}"))
+			return -1;
+
+		try {
+			long day = (dayFormat.parse(partitionName.substring(3, 13)).getTime() - LAST_DDL_TIME * 1000L) /
+					TimeUnit.DAYS.toMillis(1);
+			int index = (int) day * 24 + Integer.parseInt(partitionName.substring(17));
+			return index >= 0 && index < nbrPartitionsPerTable ? index : -1;
+		} catch (ParseException parseException) {
+			return -1;
+		}
+	}
+
+	private static SimpleDateFormat dayFormat() {
+		SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+		dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return dayFormat;
+	}
+
+	private static String partitionDay(SimpleDateFormat dayFormat, int partitionIndex) {
+		return dayFormat.format(new Date(LAST_DDL_TIME * 1000L + TimeUnit.DAYS.toMillis(partitionIndex / 24)));
+	}
+
+	private static String partitionName(SimpleDateFormat dayFormat, int partitionIndex) {
+		return "ds=" + partitionDay(dayFormat, partitionIndex) + "/hr=" + String.format("%02d", partitionIndex % 24);
+	}
+
+	private int tableIndex(String tableName) {
+		return index(tableName, TABLE_PREFIX, nbrTablesPerDatabase);
+	}
+
+	private static int index(String name, String prefix, int size) {
+		if(name == null || !name.startsWith(prefix))
+			return -1;
+
+		try {
+			int index = Integer.parseInt(name.substring(prefix.length()));
+			return index < size ? index : -1;
+		} catch (NumberFormatException formatException) {
+			return -1;
+		}
+	}
+
+	static String databaseName(int dbIndex) {
+		return DATABASE_PREFIX + String.format("%04d", dbIndex);
+	}
+
+	static String tableName(int tableIndex) {
+		return TABLE_PREFIX + String.format("%05d", tableIndex);
+	}
+
+	static String columnName(int columnIndex) {
+		return COLUMN_PREFIX + String.format("%03d", columnIndex);
+	}
+}
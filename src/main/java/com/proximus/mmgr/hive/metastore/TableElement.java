@@ -4,21 +4,27 @@ import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
 import org.apache.hadoop.hive.metastore.api.Table;
 
 import com.proximus.mmgr.AbstractElement;
+import com.proximus.mmgr.ElementSchema;
 import com.proximus.mmgr.ElementWritable;
+import com.proximus.mmgr.QualifiedName;
 import com.proximus.mmgr.hive.metastore.ElementAttributes.TableAttributes;
 
 /**
  * A sub-type of Elements that captures the Metadata of a HiveMetastore Table. The list of attributes is declared
  * in the <i>TableAttributes</i> interface. All the Element's manipulation methods are inherited from the
- * <i>AbstractElement</i> parent class.
+ * <i>AbstractElement</i> parent class.<p>
+ * A TableElement can be reused as a cursor: <i>setTable</i> re-points the Element to another Table without
+ * allocating a new Element.
  * @author Jonathan Puvilland
  *
  */
 public class TableElement extends AbstractElement<TableAttributes> implements ElementWritable {
 	public static final String TABLE_ELEMENT_TYPE = "TBL";
+	static final ElementSchema<TableAttributes> SCHEMA = ElementSchema.forType(TableAttributes.class);
+	private final QualifiedName id = new QualifiedName();
 	
 	public TableElement() {
-		super(TableAttributes.class);
+		super(SCHEMA);
 		this.setAttribute(TableAttributes.id, "id");
 		this.setAttribute(TableAttributes.name, "name");
 	}
@@ -28,8 +34,16 @@ public class TableElement extends AbstractElement<TableAttributes> implements El
 	 * @param table a HiveMetastore Table object
 	 */
 	public TableElement(Table table) {
-		super(TableAttributes.class);
-		this.setAttribute(TableAttributes.id, table.getDbName() + "." + table.getTableName());
+		super(SCHEMA);
+		setTable(table);
+	}
+	
+	/**
+	 * Re-points this Element to a HiveMetastore Table. All the attributes are replaced.
+	 * @param table a HiveMetastore Table object
+	 */
+	public void setTable(Table table) {
+		this.setAttributeValue(TableAttributes.id, id.set(table.getDbName(), table.getTableName()));
 		this.setAttribute(TableAttributes.name, table.getTableName());
 		this.setAttribute(TableAttributes.parent, table.getDbName());
 		this.setAttribute(TableAttributes.type, TABLE_ELEMENT_TYPE);
@@ -0,0 +1,124 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the time spent retrieving the Partitions of each Table during an export. The timing of every Table is
+ * logged at FINE level when it is recorded; the totals and the slowest Tables are kept for the end of the export,
+ * so the Tables slowing down the export can be identified without keeping one entry per Table in memory. Timings
+ * can be recorded by several export threads.
+ * @author Jonathan Puvilland
+ *
+ */
+class TableFetchTimings {
+	static final int NBR_SLOWEST_TABLES = 10;
+	private static final Logger logger = Logger.getLogger(TableFetchTimings.class.getName());
+	private static final Comparator<TableFetchTiming> BY_FETCH_TIME = new Comparator<TableFetchTiming>() {
+		@Override
+		public int compare(TableFetchTiming timing1, TableFetchTiming timing2) {
+			return Long.compare(timing1.fetchNanos, timing2.fetchNanos);
+		}
+	};
+
+	// the fastest of the slowest Tables is the head of the queue
+	private final PriorityQueue<TableFetchTiming> slowestTables =
+			new PriorityQueue<TableFetchTiming>(NBR_SLOWEST_TABLES + 1, BY_FETCH_TIME);
+	private long nbrTables;
+	private long nbrPartitions;
+	private long nbrCalls;
+	private long fetchNanos;
+
+	/**
+	 * The time spent retrieving the Partitions of a Table.
+	 */
+	static final class TableFetchTiming {
+		final String tableId;
+		final int nbrPartitions;
+		final int nbrCalls;
+		final long fetchNanos;
+
+		TableFetchTiming(String tableId, int nbrPartitions, int nbrCalls, long fetchNanos) {
+			this.tableId = tableId;
+			this.nbrPartitions = nbrPartitions;
+			this.nbrCalls = nbrCalls;
+			this.fetchNanos = fetchNanos;
+		}
+
+		String getTableId() {
+			return tableId;
+		}
+
+		int getNbrPartitions() {
+			return nbrPartitions;
+		}
+
+		int getNbrCalls() {
+			return nbrCalls;
+		}
+
+		long getFetchMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(fetchNanos);
+		}
+
+		@Override
+		public String toString() {
+			return tableId + " (" + nbrPartitions + " partitions, " + nbrCalls + " calls, " + getFetchMillis() +
+					" ms)";
+		}
+	}
+
+	/**
+	 * Records the retrieval of the Partitions of a Table.
+	 * @param tableId the qualified name of the Table
+	 * @param nbrPartitions the number of Partitions retrieved
+	 * @param nbrCalls the number of HiveMetastore calls made
+	 * @param fetchNanos the time spent in the HiveMetastore calls, in nanoseconds
+	 */
+	void record(String tableId, int nbrPartitions, int nbrCalls, long fetchNanos) {
+		TableFetchTiming timing = new TableFetchTiming(tableId, nbrPartitions, nbrCalls, fetchNanos);
+		logger.log(Level.FINE, "Partitions retrieved for table " + timing);
+
+		synchronized(this) {
+			this.nbrTables++;
+			this.nbrPartitions += nbrPartitions;
+			this.nbrCalls += nbrCalls;
+			this.fetchNanos += fetchNanos;
+
+			slowestTables.add(timing);
+			if(slowestTables.size() > NBR_SLOWEST_TABLES)
+				slowestTables.poll();
+		}
+	}
+
+	synchronized long getNbrTables() {
+		return nbrTables;
+	}
+
+	synchronized long getNbrPartitions() {
+		return nbrPartitions;
+	}
+
+	synchronized long getNbrCalls() {
+		return nbrCalls;
+	}
+
+	synchronized long getFetchMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(fetchNanos);
+	}
+
+	/**
+	 * @return the <i>NBR_SLOWEST_TABLES</i> Tables whose Partitions took the longest to retrieve, slowest first.
+	 */
+	synchronized List<TableFetchTiming> getSlowestTables() {
+		List<TableFetchTiming> tables = new ArrayList<TableFetchTiming>(slowestTables);
+		Collections.sort(tables, Collections.reverseOrder(BY_FETCH_TIME));
+		return tables;
+	}
+}
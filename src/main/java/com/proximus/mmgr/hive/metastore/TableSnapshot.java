@@ -0,0 +1,435 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static com.proximus.mmgr.ElementWritable.DEFAULT_SEPARATOR;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Table;
+
+import com.proximus.mmgr.CsvEncoder;
+import com.proximus.mmgr.hive.metastore.ElementAttributes.PartitionAttributes;
+
+/**
+ * The fingerprints of the Databases, Tables and Partitions exported by a previous run, used for incremental
+ * exports.<p>
+ * A Table fingerprint is made of its <i>transient_lastDdlTime</i> parameter and of a 64 bits hash of its Columns
+ * (name, type and comment). A Database or Partition fingerprint is a hash of its record. The Partitions of a Table
+ * unchanged since the previous run are only listed: the Partitions already in the snapshot are kept without being
+ * retrieved again, so that a Partition altered without changing its Table is only exported again when its Table
+ * changes. During an incremental export, each
+ * exported Element is checked against the previous snapshot: unchanged Elements are skipped, new or changed
+ * Elements are written. Elements of the previous snapshot which are not seen anymore are written to a deletions
+ * file. Columns removed from a changed Table are not listed in the deletions file: the Table and its current Columns
+ * are written again. Elements excluded from the export by the <i>MetastoreFilter</i> are not seen either: they are
+ * kept in the snapshot instead of being considered as deleted.<p>
+ * The snapshot is stored in a compact binary file: a header (magic number, version, number of entries) followed by
+ * one entry per Element (type, id, lastDdlTime, hash), read and written through large buffers.
+ * @author Jonathan Puvilland
+ *
+ */
+class TableSnapshot {
+	static final byte DATABASE_ENTRY = 1;
+	static final byte TABLE_ENTRY = 2;
+	static final byte PARTITION_ENTRY = 3;
+	private static final int MAGIC = 0x484d5353;
+	private static final int VERSION = 2;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final Map<String, Fingerprint> previous;
+	private final ConcurrentMap<String, Fingerprint> current;
+	private final Map<String, List<String>> previousPartitions = new HashMap<String, List<String>>();
+	private final AtomicLong nbrAdded = new AtomicLong();
+	private final AtomicLong nbrChanged = new AtomicLong();
+	private final AtomicLong nbrUnchanged = new AtomicLong();
+
+	/**
+	 * The fingerprint of an exported Element.
+	 */
+	private static final class Fingerprint {
+		final byte type;
+		final long lastDdlTime;
+		final long hash;
+
+		Fingerprint(byte type, long lastDdlTime, long hash) {
+			this.type = type;
+			this.lastDdlTime = lastDdlTime;
+			this.hash = hash;
+		}
+
+		boolean matches(Fingerprint other) {
+			return other != null && type == other.type && lastDdlTime == other.lastDdlTime && hash == other.hash;
+		}
+	}
+
+	private TableSnapshot(Map<String, Fingerprint> previous) {
+		this.previous = previous;
+		this.current = new ConcurrentHashMap<String, Fingerprint>(Math.max(16, previous.size() * 4 / 3 + 1));
+
+		// the Partitions of each Table, kept with their Table when it is not retrieved again
+		for(Map.Entry<String, Fingerprint> entry : previous.entrySet()) {
+			if(entry.getValue().type != PARTITION_ENTRY)
+				continue;
+
+			String tableId = getTableId(entry.getKey());
+			List<String> partitionIds = previousPartitions.get(tableId);
+
+			if(partitionIds == null) {
+				partitionIds = new ArrayList<String>();
+				previousPartitions.put(tableId, partitionIds);
+			}
+
+			partitionIds.add(entry.getKey());
+		}
+	}
+
+	/**
+	 * Loads the snapshot of a previous run. A missing file results in an empty snapshot, all Elements being new.
+	 * @param snapshotFile the snapshot file
+	 * @return the previous snapshot.
+	 * @throws IOException when the snapshot file cannot be read or is not a snapshot file.
+	 */
+	static TableSnapshot load(File snapshotFile) throws IOException {
+		if(!snapshotFile.exists())
+			return new TableSnapshot(new HashMap<String, Fingerprint>());
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile),
+				BUFFER_SIZE));
+		try {
+			if(in.readInt() != MAGIC)
+				throw new IOException("Not a snapshot file: " + snapshotFile);
+
+			// version 1 snapshots have no Partitions, which are all exported again
+			int version = in.readInt();
+			if(version != VERSION && version != 1)
+				throw new IOException("Unsupported snapshot version " + version + ": " + snapshotFile);
+
+			int nbrEntries = in.readInt();
+			Map<String, Fingerprint> previous = new HashMap<String, Fingerprint>(nbrEntries * 4 / 3 + 1);
+
+			for(int i = 0; i < nbrEntries; i++) {
+				byte type = in.readByte();
+				String id = in.readUTF();
+				previous.put(id, new Fingerprint(type, in.readLong(), in.readLong()));
+			}
+
+			return new TableSnapshot(previous);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the number of Elements of the previous snapshot.
+	 */
+	int getPreviousSize() {
+		return previous.size();
+	}
+
+	/**
+	 * Records the fingerprint of a Table exported by the current run.
+	 * @param table a HiveMetastore Table object
+	 * @return true when the Table is new or has changed since the previous snapshot, and must be exported.
+	 */
+	boolean update(Table table) {
+		return update(TABLE_ENTRY, table.getDbName() + "." + table.getTableName(), getLastDdlTime(table),
+				hashColumns(table));
+	}
+
+	/**
+	 * Records the fingerprint of a Partition exported by the current run.
+	 * @param partition the PartitionElement pointing to the Partition
+	 * @param record the Partition record
+	 * @return true when the Partition is new or has changed since the previous snapshot, and must be exported.
+	 */
+	boolean update(PartitionElement partition, CharSequence record) {
+		return update(PARTITION_ENTRY, partition.getAttribute(PartitionAttributes.id), 0,
+				hash(FNV_OFFSET_BASIS, record));
+	}
+
+	/**
+	 * Records the fingerprint of a Database exported by the current run.
+	 * @param dbName the Database name, i.e. the DatabaseElement id
+	 * @param record the Database record
+	 * @return true when the Database is new or has changed since the previous snapshot, and must be exported.
+	 */
+	boolean update(String dbName, CharSequence record) {
+		return update(DATABASE_ENTRY, dbName, 0, hash(FNV_OFFSET_BASIS, record));
+	}
+
+	private boolean update(byte type, String id, long lastDdlTime, long hash) {
+		Fingerprint fingerprint = new Fingerprint(type, lastDdlTime, hash);
+		Fingerprint previousFingerprint = previous.get(id);
+		current.put(id, fingerprint);
+
+		if(previousFingerprint == null) {
+			nbrAdded.incrementAndGet();
+			return true;
+		}
+
+		if(fingerprint.matches(previousFingerprint)) {
+			nbrUnchanged.incrementAndGet();
+			return false;
+		}
+
+		nbrChanged.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Keeps the previous fingerprint of an Element exported before the checkpoint of a resumed export, which is not
+	 * retrieved again. The Partitions of a Table are kept with it.
+	 * @param id the Database name or the Table qualified name
+	 */
+	void keep(String id) {
+		Fingerprint fingerprint = previous.get(id);
+
+		if(fingerprint != null)
+			current.putIfAbsent(id, fingerprint);
+
+		List<String> partitionIds = previousPartitions.get(id);
+
+		if(partitionIds != null)
+			for(String partitionId : partitionIds)
+				current.putIfAbsent(partitionId, previous.get(partitionId));
+	}
+
+	/**
+	 * @param table a HiveMetastore Table object
+	 * @return true when the Table is in the previous snapshot with the same fingerprint.
+	 */
+	boolean isUnchanged(Table table) {
+		Fingerprint fingerprint = new Fingerprint(TABLE_ENTRY, getLastDdlTime(table), hashColumns(table));
+		return fingerprint.matches(previous.get(table.getDbName() + "." + table.getTableName()));
+	}
+
+	/**
+	 * Keeps the previous fingerprints of the listed Partitions of a Table which are in the previous snapshot, so that
+	 * they are not retrieved again. The Partitions of the previous snapshot which are not listed anymore are written
+	 * to the deletions file.
+	 * @param table a HiveMetastore Table object
+	 * @param partitionNames the names of the current Partitions of the Table
+	 * @return the names of the Partitions which are not in the previous snapshot.
+	 */
+	List<String> keepPartitions(Table table, List<String> partitionNames) {
+		String tableId = table.getDbName() + "." + table.getTableName() + ".";
+		List<String> newPartitions = new ArrayList<String>();
+
+		for(String partitionName : partitionNames) {
+			String id = tableId + partitionName;
+			Fingerprint fingerprint = previous.get(id);
+
+			if(fingerprint != null && fingerprint.type == PARTITION_ENTRY) {
+				current.putIfAbsent(id, fingerprint);
+				nbrUnchanged.incrementAndGet();
+			} else
+				newPartitions.add(partitionName);
+		}
+
+		return newPartitions;
+	}
+
+	/**
+	 * Keeps the Elements of the previous snapshot which were not seen by the current run because they are outside the
+	 * scope of the export, so that they are neither written to the deletions file nor removed from the snapshot.
+	 * @param filter the filter of the Databases and Tables exported by the current run
+	 * @return the number of Elements kept.
+	 */
+	long keepOutOfScope(MetastoreFilter filter) {
+		long nbrKept = 0;
+
+		for(Map.Entry<String, Fingerprint> entry : previous.entrySet()) {
+			String id = entry.getKey();
+			boolean inScope;
+
+			if(current.containsKey(id))
+				continue;
+
+			if(entry.getValue().type == DATABASE_ENTRY)
+				inScope = filter.matchesDatabase(id);
+			else {
+				// Hive Database names cannot contain dots
+				String tableId = entry.getValue().type == PARTITION_ENTRY ? getTableId(id) : id;
+				int separator = tableId.indexOf('.');
+				inScope = filter.isTableInScope(tableId.substring(0, separator), tableId.substring(separator + 1));
+			}
+
+			if(!inScope) {
+				current.put(id, entry.getValue());
+				nbrKept++;
+			}
+		}
+
+		return nbrKept;
+	}
+
+	/**
+	 * Writes the Elements of the previous snapshot which were not seen by the current run to a csv file, with a
+	 * <b>type,id</b> header.
+	 * @param deletionFile the deletions file
+	 * @return the number of deleted Elements.
+	 * @throws IOException when the deletions file cannot be written.
+	 */
+	long writeDeletions(File deletionFile) throws IOException {
+		long nbrDeleted = 0;
+		CsvEncoder encoder = CsvEncoder.getInstance(DEFAULT_SEPARATOR);
+		BufferedWriter out = new BufferedWriter(new FileWriter(deletionFile), BUFFER_SIZE);
+
+		try {
+			out.write("type" + DEFAULT_SEPARATOR + "id");
+			out.newLine();
+
+			for(Map.Entry<String, Fingerprint> entry : previous.entrySet()) {
+				if(current.containsKey(entry.getKey()))
+					continue;
+
+				out.write(getElementType(entry.getValue().type));
+				out.write(DEFAULT_SEPARATOR);
+				encoder.encode(entry.getKey(), out);
+				out.newLine();
+				nbrDeleted++;
+			}
+		} finally {
+			out.close();
+		}
+
+		return nbrDeleted;
+	}
+
+	/**
+	 * Saves the snapshot of the current run. The file is written next to the destination then renamed, so that an
+	 * interrupted save keeps the previous snapshot.
+	 * @param snapshotFile the snapshot file
+	 * @param keepUnseen true to keep the Elements of the previous snapshot which were not seen by the current run,
+	 * when the run did not complete and unseen Elements cannot be considered as deleted.
+	 * @throws IOException when the snapshot file cannot be written.
+	 */
+	void save(File snapshotFile, boolean keepUnseen) throws IOException {
+		if(keepUnseen)
+			for(Map.Entry<String, Fingerprint> entry : previous.entrySet())
+				current.putIfAbsent(entry.getKey(), entry.getValue());
+
+		File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile),
+				BUFFER_SIZE));
+
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(current.size());
+
+			for(Map.Entry<String, Fingerprint> entry : current.entrySet()) {
+				Fingerprint fingerprint = entry.getValue();
+				out.writeByte(fingerprint.type);
+				out.writeUTF(entry.getKey());
+				out.writeLong(fingerprint.lastDdlTime);
+				out.writeLong(fingerprint.hash);
+			}
+		} finally {
+			out.close();
+		}
+
+		if(snapshotFile.exists() && !snapshotFile.delete())
+			throw new IOException("Cannot replace snapshot file " + snapshotFile);
+
+		if(!tmpFile.renameTo(snapshotFile))
+			throw new IOException("Cannot rename " + tmpFile + " to " + snapshotFile);
+	}
+
+	private static String getElementType(byte type) {
+		if(type == DATABASE_ENTRY)
+			return DatabaseElement.DATABASE_ELEMENT_TYPE;
+
+		return type == PARTITION_ENTRY ? PartitionElement.PARTITION_ELEMENT_TYPE : TableElement.TABLE_ELEMENT_TYPE;
+	}
+
+	/**
+	 * @param partitionId the id of a Partition, prefixed by the qualified name of its Table
+	 * @return the qualified name of the Table.
+	 */
+	private static String getTableId(String partitionId) {
+		// neither Hive Database nor Table names contain dots
+		return partitionId.substring(0, partitionId.indexOf('.', partitionId.indexOf('.') + 1));
+	}
+
+	long getNbrAdded() {
+		return nbrAdded.get();
+	}
+
+	long getNbrChanged() {
+		return nbrChanged.get();
+	}
+
+	long getNbrUnchanged() {
+		return nbrUnchanged.get();
+	}
+
+	/**
+	 * @param table a HiveMetastore Table object
+	 * @return the <i>transient_lastDdlTime</i> parameter of the Table, or 0 when not available.
+	 */
+	static long getLastDdlTime(Table table) {
+		if(table.getParametersSize() == 0)
+			return 0;
+
+		String lastDdlTime = table.getParameters().get("transient_lastDdlTime");
+
+		try {
+			return lastDdlTime == null ? 0 : Long.parseLong(lastDdlTime.trim());
+		} catch (NumberFormatException formatException) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Computes a 64 bits FNV-1a hash of the name, type and comment of the Table's Columns.
+	 * @param table a HiveMetastore Table object
+	 * @return the hash of the Columns.
+	 */
+	static long hashColumns(Table table) {
+		long hash = FNV_OFFSET_BASIS;
+
+		if(table.getSd() == null || table.getSd().getCols() == null)
+			return hash;
+
+		List<FieldSchema> columns = table.getSd().getCols();
+		for(FieldSchema column : columns) {
+			hash = hash(hash, column.getName());
+			hash = hash(hash, column.getType());
+			hash = hash(hash, column.getComment());
+		}
+
+		return hash;
+	}
+
+	private static long hash(long hash, CharSequence value) {
+		if(value != null)
+			for(int i = 0, length = value.length(); i < length; i++) {
+				hash ^= value.charAt(i);
+				hash *= FNV_PRIME;
+			}
+
+		// value terminator, so that ("ab", "c") and ("a", "bc") differ
+		hash ^= 0xff;
+		hash *= FNV_PRIME;
+		return hash;
+	}
+}
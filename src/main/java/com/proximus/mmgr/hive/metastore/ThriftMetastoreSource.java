@@ -0,0 +1,115 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsObj;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.NotificationEventResponse;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+/**
+ * A MetastoreSource reading a live HiveMetastore through the Thrift <i>HiveMetaStoreClient</i>.
+ * @author Jonathan Puvilland
+ *
+ */
+public class ThriftMetastoreSource implements MetastoreSource {
+	private final HiveMetaStoreClient hiveClient;
+	
+	/**
+	 * Opens a connection to the HiveMetastore.
+	 * @param hiveConf the Hive configuration returned by <i>getHiveConfiguration</i>
+	 * @throws MetaException when the connection to the HiveMetastore cannot be opened.
+	 */
+	public ThriftMetastoreSource(HiveConf hiveConf) throws MetaException {
+		this.hiveClient = new HiveMetaStoreClient(hiveConf);
+	}
+
+	@Override
+	public List<String> getAllDatabases() throws TException {
+		return hiveClient.getAllDatabases();
+	}
+
+	@Override
+	public List<String> getDatabases(String databasePattern) throws TException {
+		return hiveClient.getDatabases(databasePattern);
+	}
+
+	@Override
+	public Database getDatabase(String dbName) throws TException {
+		return hiveClient.getDatabase(dbName);
+	}
+
+	@Override
+	public List<String> getAllTables(String dbName) throws TException {
+		return hiveClient.getAllTables(dbName);
+	}
+
+	@Override
+	public List<String> getTables(String dbName, String tablePattern) throws TException {
+		return hiveClient.getTables(dbName, tablePattern);
+	}
+
+	@Override
+	public List<String> listTableNamesByFilter(String dbName, String filter, short maxTables) throws TException {
+		return hiveClient.listTableNamesByFilter(dbName, filter, maxTables);
+	}
+
+	@Override
+	public Table getTable(String dbName, String tableName) throws TException {
+		return hiveClient.getTable(dbName, tableName);
+	}
+
+	@Override
+	public List<Table> getTableObjectsByName(String dbName, List<String> tableNames) throws TException {
+		return hiveClient.getTableObjectsByName(dbName, tableNames);
+	}
+
+	@Override
+	public List<String> listPartitionNames(String dbName, String tableName, short maxPartitions) throws TException {
+		return hiveClient.listPartitionNames(dbName, tableName, maxPartitions);
+	}
+
+	@Override
+	public List<Partition> getPartitionsByNames(String dbName, String tableName, List<String> partitionNames)
+			throws TException {
+		return hiveClient.getPartitionsByNames(dbName, tableName, partitionNames);
+	}
+
+	@Override
+	public List<ColumnStatisticsObj> getTableColumnStatistics(String dbName, String tableName, List<String> colNames)
+			throws TException {
+		return hiveClient.getTableColumnStatistics(dbName, tableName, colNames);
+	}
+
+	@Override
+	public Map<String, List<ColumnStatisticsObj>> getPartitionColumnStatistics(String dbName, String tableName,
+			List<String> partitionNames, List<String> colNames) throws TException {
+		return hiveClient.getPartitionColumnStatistics(dbName, tableName, partitionNames, colNames);
+	}
+
+	@Override
+	public long getCurrentNotificationEventId() throws TException {
+		return hiveClient.getCurrentNotificationEventId().getEventId();
+	}
+
+	@Override
+	public List<NotificationEvent> getNextNotification(long lastEventId, int maxEvents) throws TException {
+		NotificationEventResponse response = hiveClient.getNextNotification(lastEventId, maxEvents, null);
+		
+		// the response holds no list when there is no new event
+		return response.getEvents() == null ? Collections.<NotificationEvent>emptyList() : response.getEvents();
+	}
+
+	@Override
+	public void close() {
+		hiveClient.close();
+	}
+}
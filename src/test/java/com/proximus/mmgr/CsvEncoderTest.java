@@ -0,0 +1,146 @@
+package com.proximus.mmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CsvEncoderTest {
+	private static final char[] ALPHABET = { 'a', 'b', 'Z', '0', ' ', ',', ';', '|', '"', '\n', '\r', '\t', '\u00e9',
+		'\u20ac' };
+	private static final char[] SEPARATORS = { ',', ';', '|', '\t' };
+
+	@Test
+	public void valPlainValue() throws IOException {
+		StringBuilder out = new StringBuilder();
+		CsvEncoder.getInstance(',').encode("plain value", out);
+		assertEquals("plain value", out.toString());
+		assertFalse(CsvEncoder.getInstance(',').needsQuoting("plain value"));
+	}
+
+	@Test
+	public void valSeparatorQuoteAndNewLine() throws IOException {
+		CsvEncoder encoder = CsvEncoder.getInstance(',');
+		assertEquals("\"a,b\"", encode(encoder, "a,b"));
+		assertEquals("\"say \"\"hi\"\"\"", encode(encoder, "say \"hi\""));
+		assertEquals("\"select *\nfrom t\"", encode(encoder, "select *\nfrom t"));
+		assertEquals("\"\"\"\"", encode(encoder, "\""));
+		assertEquals("", encode(encoder, ""));
+		assertEquals("", encode(encoder, null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void valInvalidSeparator() {
+		CsvEncoder.getInstance('"');
+	}
+
+	/**
+	 * Encodes random records and checks that an RFC 4180 parser reads back the original values, whatever the
+	 * separator and the destination.
+	 */
+	@Test
+	public void valRoundTripFuzz() throws IOException {
+		Random random = new Random(4180);
+
+		for(int iteration = 0; iteration < 5000; iteration++) {
+			CsvEncoder encoder = CsvEncoder.getInstance(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+			List<String> values = new ArrayList<String>();
+			for(int i = random.nextInt(6) + 1; i > 0; i--)
+				values.add(randomValue(random));
+
+			StringBuilder record = new StringBuilder();
+			StringWriter writerRecord = new StringWriter();
+			BufferedWriter bufferedWriter = new BufferedWriter(writerRecord);
+			StringBuilder charArrayRecord = new StringBuilder();
+
+			for(int i = 0; i < values.size(); i++) {
+				if(i > 0) {
+					record.append(encoder.getSeparator());
+					bufferedWriter.append(encoder.getSeparator());
+					charArrayRecord.append(encoder.getSeparator());
+				}
+				String value = values.get(i);
+				encoder.encode(value, record);
+				encoder.encode(value, bufferedWriter);
+				char[] padded = ("xx" + value + "yy").toCharArray();
+				encoder.encode(padded, 2, value.length(), charArrayRecord);
+				assertEquals(value.length() > 0 && encoder.needsQuoting(value), encode(encoder, value).startsWith("\""));
+			}
+			bufferedWriter.flush();
+
+			assertEquals(record.toString(), writerRecord.toString());
+			assertEquals(record.toString(), charArrayRecord.toString());
+			assertEquals(values, parse(record.toString(), encoder.getSeparator()));
+		}
+	}
+
+	@Test
+	public void valLargeMultiLineValue() throws IOException {
+		StringBuilder sql = new StringBuilder();
+		for(int i = 0; i < 10000; i++)
+			sql.append("SELECT \"col").append(i).append("\", other\nFROM t;\r\n");
+
+		StringBuilder out = new StringBuilder();
+		CsvEncoder.getInstance(',').encode(sql, out);
+		assertTrue(out.charAt(0) == '"');
+		assertEquals(sql.toString(), parse(out.toString(), ',').get(0));
+	}
+
+	private static String encode(CsvEncoder encoder, String value) throws IOException {
+		StringBuilder out = new StringBuilder();
+		encoder.encode(value, out);
+		return out.toString();
+	}
+
+	private static String randomValue(Random random) {
+		int length = random.nextInt(4) == 0 ? random.nextInt(200) : random.nextInt(8);
+		StringBuilder value = new StringBuilder(length);
+		for(int i = 0; i < length; i++)
+			value.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+		return value.toString();
+	}
+
+	/**
+	 * A reference RFC 4180 parser of a single record.
+	 */
+	private static List<String> parse(String record, char separator) {
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		int i = 0;
+
+		while(i < record.length()) {
+			char c = record.charAt(i);
+			if(quoted) {
+				if(c == '"' && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				}
+				else if(c == '"')
+					quoted = false;
+				else
+					value.append(c);
+			}
+			else if(c == '"')
+				quoted = true;
+			else if(c == separator) {
+				values.add(value.toString());
+				value.setLength(0);
+			}
+			else
+				value.append(c);
+			i++;
+		}
+
+		values.add(value.toString());
+		return values;
+	}
+}
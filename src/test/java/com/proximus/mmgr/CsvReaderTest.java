@@ -0,0 +1,49 @@
+package com.proximus.mmgr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class CsvReaderTest {
+
+	@Test
+	public void valEncodedRecordsReadBack() throws IOException {
+		String[][] records = { { "TBL", "db.t", "a, \"quoted\"\r\nmulti-line comment", "", "db" },
+			{ "COL", "db.t.c", "c", "line\nfeed", "db.t" } };
+		CsvEncoder encoder = CsvEncoder.getInstance(',');
+		StringBuilder csv = new StringBuilder();
+
+		for(String[] record : records) {
+			for(int i = 0; i < record.length; i++) {
+				if(i > 0)
+					csv.append(',');
+				encoder.encode(record[i], csv);
+			}
+			csv.append("\r\n");
+		}
+
+		CsvReader in = new CsvReader(new StringReader(csv.toString()), ',');
+		assertArrayEquals(records[0], in.parseFields(in.readRecord()));
+		assertArrayEquals(records[1], in.parseFields(in.readRecord()));
+		assertNull(in.readRecord());
+		in.close();
+	}
+
+	@Test
+	public void valLineSeparators() throws IOException {
+		CsvReader in = new CsvReader(new StringReader("a;b\rc;d\n\ne;\"f\"\r\ng"), ';');
+
+		assertEquals("a;b", in.readRecord());
+		assertEquals("c;d", in.readRecord());
+		assertEquals("", in.readRecord());
+		assertArrayEquals(new String[] { "e", "f" }, in.parseFields(in.readRecord()));
+		assertEquals("g", in.readRecord());
+		assertNull(in.readRecord());
+		in.close();
+	}
+}
@@ -0,0 +1,54 @@
+package com.proximus.mmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.proximus.mmgr.DefaultElementAttributes.DefaultAttributes;
+
+public class ElementSchemaTest {
+
+	@Test
+	public void valSharedSchema() {
+		assertSame(ElementSchema.forType(DefaultAttributes.class), ElementSchema.forType(DefaultAttributes.class));
+		assertSame(new SimpleElement("id", "name").getSchema(), new SimpleElement("id2", "name2").getSchema());
+	}
+
+	@Test
+	public void valHeader() {
+		ElementSchema<DefaultAttributes> schema = ElementSchema.forType(DefaultAttributes.class);
+		assertEquals("type,id,name,description,parent", schema.getHeader(','));
+		assertEquals("type|id|name|description|parent", schema.getHeader('|'));
+		assertSame(schema.getHeader(','), schema.getHeader(','));
+
+		ByteBuffer headerBytes = schema.getHeaderBytes(',');
+		byte[] bytes = new byte[headerBytes.remaining()];
+		headerBytes.get(bytes);
+		assertEquals("type,id,name,description,parent", new String(bytes));
+		assertEquals(bytes.length, schema.getHeaderBytes(',').remaining());
+	}
+
+	@Test
+	public void valAttributeIndex() {
+		ElementSchema<DefaultAttributes> schema = ElementSchema.forType(DefaultAttributes.class);
+		assertEquals(5, schema.size());
+		assertEquals(3, schema.indexOf("description"));
+		assertEquals(-1, schema.indexOf("unknown"));
+		assertEquals(DefaultAttributes.parent, schema.getAttribute(4));
+		assertTrue(schema.isMandatory(DefaultAttributes.id));
+		assertTrue(schema.isMandatory(DefaultAttributes.name));
+		assertFalse(schema.isMandatory(DefaultAttributes.type));
+	}
+
+	@Test
+	public void valAttributesCopy() {
+		SimpleElement elem1 = new SimpleElement("id", "name", "S");
+		assertEquals(5, elem1.getAttributes().size());
+		assertEquals("S", elem1.getAttributes().get(DefaultAttributes.type));
+	}
+}
@@ -0,0 +1,68 @@
+package com.proximus.mmgr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileChannelWriterTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), UTF8);
+	}
+
+	@Test
+	public void valUtf8Encoding() throws IOException {
+		File file = outputFolder.newFile("output1.csv");
+		// a 6 bytes buffer holds 2 characters, so surrogate pairs and multi-byte characters cross the buffers
+		String text = "id,caf\u00e9,\u20ac100,\uD83D\uDE00 smile\n";
+		StringBuilder expected = new StringBuilder();
+
+		FileChannelWriter writer = new FileChannelWriter(file, 6, 0);
+		for(int i = 0; i < 50; i++) {
+			writer.write(text);
+			writer.append(new StringBuilder(text), 3, text.length());
+			writer.write('x');
+			expected.append(text).append(text, 3, text.length()).append('x');
+		}
+		writer.close();
+
+		assertEquals(expected.toString(), read(file));
+	}
+
+	@Test
+	public void valPreallocatedFileTruncated() throws IOException {
+		File file = outputFolder.newFile("output2.csv");
+
+		FileChannelWriter writer = new FileChannelWriter(file, FileChannelWriter.DEFAULT_BUFFER_SIZE, 1 << 20);
+		assertEquals(1 << 20, file.length());
+		writer.write("type,id\n");
+		writer.close();
+
+		assertEquals("type,id\n", read(file));
+	}
+
+	@Test
+	public void valExistingFileTruncated() throws IOException {
+		File file = outputFolder.newFile("output3.csv");
+		Files.write(file.toPath(), "previous content".getBytes(UTF8));
+
+		FileChannelWriter writer = new FileChannelWriter(file);
+		writer.write("new");
+		writer.flush();
+		writer.close();
+		writer.close();
+
+		assertEquals("new", read(file));
+	}
+}
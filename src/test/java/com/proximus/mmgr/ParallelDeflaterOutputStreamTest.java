@@ -0,0 +1,93 @@
+package com.proximus.mmgr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ParallelDeflaterOutputStreamTest {
+	private final ExecutorService compressors = Executors.newFixedThreadPool(3);
+
+	@After
+	public void tearDown() {
+		compressors.shutdown();
+	}
+
+	/**
+	 * Repeated records with random values, compressible across the blocks.
+	 */
+	private static byte[] records(int size) {
+		Random random = new Random(42);
+		ByteArrayOutputStream records = new ByteArrayOutputStream(size);
+
+		while(records.size() < size) {
+			byte[] record = ("COL,db_0000.tbl_" + random.nextInt(1000) + ".col_" + random.nextInt(50) + ",,string\n")
+					.getBytes();
+			records.write(record, 0, record.length);
+		}
+
+		return records.toByteArray();
+	}
+
+	private byte[] compress(byte[] data, ParallelDeflaterOutputStream.Format format) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(compressed, format, compressors, 3, 6,
+				ParallelDeflaterOutputStream.DEFAULT_BLOCK_SIZE);
+
+		// single bytes and writes crossing the blocks
+		out.write(data[0]);
+		for(int offset = 1; offset < data.length; offset += 50000)
+			out.write(data, offset, Math.min(50000, data.length - offset));
+		out.close();
+
+		assertEquals(data.length, out.getUncompressedSize());
+		return compressed.toByteArray();
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+
+		for(int length = in.read(buffer); length != -1; length = in.read(buffer))
+			data.write(buffer, 0, length);
+
+		in.close();
+		return data.toByteArray();
+	}
+
+	@Test
+	public void valGzipRoundTrip() throws IOException {
+		byte[] data = records(1 << 20);
+		byte[] compressed = compress(data, ParallelDeflaterOutputStream.Format.GZIP);
+
+		assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+	}
+
+	@Test
+	public void valZlibRoundTrip() throws IOException {
+		byte[] data = records(1 << 20);
+		byte[] compressed = compress(data, ParallelDeflaterOutputStream.Format.ZLIB);
+
+		assertArrayEquals(data, readAll(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+	}
+
+	@Test
+	public void valEmptyStream() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new ParallelDeflaterOutputStream(compressed, ParallelDeflaterOutputStream.Format.GZIP, compressors, 3, 6,
+				ParallelDeflaterOutputStream.DEFAULT_BLOCK_SIZE).close();
+
+		assertEquals(0, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))).length);
+	}
+}
@@ -0,0 +1,37 @@
+package com.proximus.mmgr;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class QualifiedNameTest {
+
+	@Test
+	public void valCharacters() {
+		QualifiedName name = new QualifiedName("db.table", "col");
+		assertEquals(12, name.length());
+		assertEquals('d', name.charAt(0));
+		assertEquals('.', name.charAt(8));
+		assertEquals('c', name.charAt(9));
+		assertEquals("db.table.col", name.toString());
+		assertEquals("table.c", name.subSequence(3, 10).toString());
+		assertEquals("db.table.col", new StringBuilder().append(name).toString());
+	}
+
+	@Test
+	public void valEmptyPrefix() {
+		QualifiedName name = new QualifiedName(null, "db");
+		assertEquals(2, name.length());
+		assertEquals("db", name.toString());
+		assertEquals('b', name.charAt(1));
+	}
+
+	@Test
+	public void valRepoint() {
+		QualifiedName name = new QualifiedName("db", "table1");
+		name.setName("t2");
+		assertEquals("db.t2", name.toString());
+		name.set("other", "t3");
+		assertEquals("other.t3", name.toString());
+	}
+}
@@ -7,6 +7,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
 
 import org.apache.commons.lang.NullArgumentException;
 import org.junit.Test;
@@ -87,5 +88,16 @@ public class SimpleElementTest {
 		SimpleElement elem1 = new SimpleElement("id", "na,me", "desc,ription", "parent", "S");
 		assertEquals(elem1.getRecord(), "S,id,\"na,me\",\"desc,ription\",parent");
 	}
+
+	@Test
+	public void valAppendRecord() throws IOException {
+		SimpleElement elem1 = new SimpleElement("id", "na,me", null, "parent", "S");
+		StringWriter out = new StringWriter();
+		elem1.appendHeader(out);
+		out.append('\n');
+		elem1.appendRecord(out);
+		assertEquals(out.toString(), elem1.getHeader() + "\n" + elem1.getRecord());
+		assertEquals(elem1.getRecord(), "S,id,\"na,me\",,parent");
+	}
 	
 }
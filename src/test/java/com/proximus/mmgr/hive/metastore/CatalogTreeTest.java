@@ -0,0 +1,96 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.junit.Test;
+
+public class CatalogTreeTest {
+	private final SyntheticMetastoreSource source = new SyntheticMetastoreSource(2, 4, 6);
+
+	private CatalogTree loadCatalog() throws TException {
+		CatalogTree catalog = new CatalogTree();
+
+		for(String dbName : source.getAllDatabases()) {
+			catalog.addDatabase(source.getDatabase(dbName));
+			for(Table table : source.getTableObjectsByName(dbName, source.getAllTables(dbName)))
+				catalog.addTable(table);
+		}
+
+		return catalog;
+	}
+
+	@Test
+	public void valRecordsMatchElements() throws TException {
+		CatalogTree catalog = loadCatalog();
+		Table table = source.getTable("db_0001", SyntheticMetastoreSource.tableName(2));
+		table.setPartitionKeys(new ArrayList<FieldSchema>(Arrays.asList(new FieldSchema("dt", "string", null))));
+		catalog.addTable(table);
+
+		DatabaseElement dbCursor = new DatabaseElement();
+		catalog.getDatabase("db_0001").copyTo(dbCursor);
+		assertEquals(new DatabaseElement(source.getDatabase("db_0001")).getRecord(), dbCursor.getRecord());
+
+		CatalogTree.TableNode node = catalog.getTable("db_0001", SyntheticMetastoreSource.tableName(2));
+		TableElement tableCursor = new TableElement();
+		node.copyTo(tableCursor);
+		assertEquals(new TableElement(table).getRecord(), tableCursor.getRecord());
+		assertEquals(tableCursor.getAttribute(ElementAttributes.TableAttributes.id), node.getId());
+
+		ColumnElement columnCursor = new ColumnElement();
+		columnCursor.setTable(table);
+		node.copyColumnTo(columnCursor, 3);
+		assertEquals(new ColumnElement(table, table.getSd().getCols().get(3)).getRecord(), columnCursor.getRecord());
+		assertEquals(columnCursor.getAttribute(ElementAttributes.ColumnAttributes.id), node.getColumnId(3));
+
+		assertEquals(7, node.getNbrColumns());
+		node.copyColumnTo(columnCursor, 6);
+		assertEquals("PKEY,db_0001." + SyntheticMetastoreSource.tableName(2) + ".dt,dt,,db_0001." +
+				SyntheticMetastoreSource.tableName(2) + ",string", columnCursor.getRecord());
+	}
+
+	@Test
+	public void valSharedNamesAndDataTypes() throws TException {
+		CatalogTree catalog = loadCatalog();
+		CatalogTree.TableNode first = catalog.getTable("db_0000", SyntheticMetastoreSource.tableName(0));
+		CatalogTree.TableNode other = catalog.getTable("db_0001", SyntheticMetastoreSource.tableName(3));
+
+		assertSame(first.getColumnName(4), other.getColumnName(4));
+		// 2 database, 4 table and 6 column names, the owner and the table type
+		assertEquals(2 + 4 + 6 + 2, catalog.getNbrNames());
+		// the 48 Columns share the 10 data types of the synthetic catalog
+		assertTrue(catalog.getNbrDataTypes() <= 10);
+		assertEquals(source.getTable("db_0001", SyntheticMetastoreSource.tableName(3)).getSd().getCols().get(4)
+				.getType(), other.getColumnDataType(4));
+	}
+
+	@Test
+	public void valRemovedNodes() throws TException {
+		CatalogTree catalog = loadCatalog();
+		assertEquals(8, catalog.getNbrTables());
+		assertEquals(48, catalog.getNbrColumns());
+
+		catalog.addTable(source.getTable("db_0000", SyntheticMetastoreSource.tableName(1)));
+		assertEquals(8, catalog.getNbrTables());
+		assertEquals(48, catalog.getNbrColumns());
+
+		assertTrue(catalog.removeTable("db_0000", SyntheticMetastoreSource.tableName(1)));
+		assertFalse(catalog.removeTable("db_0000", SyntheticMetastoreSource.tableName(1)));
+		assertNull(catalog.getTable("db_0000", SyntheticMetastoreSource.tableName(1)));
+		assertEquals(7, catalog.getNbrTables());
+
+		assertTrue(catalog.removeDatabase("db_0001"));
+		assertEquals(1, catalog.getNbrDatabases());
+		assertEquals(3, catalog.getNbrTables());
+		assertEquals(18, catalog.getNbrColumns());
+	}
+}
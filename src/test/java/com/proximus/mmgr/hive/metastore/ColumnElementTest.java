@@ -7,6 +7,7 @@ import org.apache.hadoop.hive.metastore.api.Table;
 import org.junit.Test;
 
 import com.proximus.mmgr.hive.metastore.ColumnElement;
+import com.proximus.mmgr.hive.metastore.ElementAttributes.ColumnAttributes;
 
 public class ColumnElementTest {
 
@@ -45,5 +46,40 @@ public class ColumnElementTest {
 		ColumnElement colElem = new ColumnElement(tbl, col);
 		assertEquals(colElem.getRecord(), "COL,db.table.col,col,comment,db.table,type");
 	}
+	
+	@Test
+	public void valEmptyElementHeader() {
+		assertEquals(new ColumnElement().getHeader(), "type,id,name,description,parent,dataType");
+	}
+	
+	@Test
+	public void valCursor() {
+		Table tbl = new Table();
+		tbl.setDbName("db");
+		tbl.setTableName("table");
+		ColumnElement colElem = new ColumnElement();
+		colElem.setTable(tbl);
+		colElem.setColumn(new FieldSchema("col1", "string", "first, column"));
+		assertEquals(colElem.getRecord(), "COL,db.table.col1,col1,\"first, column\",db.table,string");
+		colElem.setColumn(new FieldSchema("col2", "int", null));
+		assertEquals(colElem.getRecord(), "COL,db.table.col2,col2,,db.table,int");
+		assertEquals(colElem.getAttribute(ColumnAttributes.id), "db.table.col2");
+		colElem.setTable("db2", "other");
+		colElem.setColumn("col3", "bigint", null);
+		assertEquals(colElem.getRecord(), "COL,db2.other.col3,col3,,db2.other,bigint");
+	}
+	
+	@Test
+	public void valPartitionKey() {
+		Table tbl = new Table();
+		tbl.setDbName("db");
+		tbl.setTableName("table");
+		ColumnElement colElem = new ColumnElement();
+		colElem.setTable(tbl);
+		colElem.setPartitionKey(new FieldSchema("ds", "string", null));
+		assertEquals(colElem.getRecord(), "PKEY,db.table.ds,ds,,db.table,string");
+		colElem.setColumn(new FieldSchema("col1", "int", null));
+		assertEquals(colElem.getRecord(), "COL,db.table.col1,col1,,db.table,int");
+	}
 
 }
@@ -0,0 +1,172 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.LogManager;
+
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExportCheckpointTest {
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	/**
+	 * A synthetic catalog failing to retrieve the Tables, or the Partitions, of a Database.
+	 */
+	private static class FailingSource extends SyntheticMetastoreSource {
+		private String failingTablesDb;
+		private String failingPartitionsDb;
+
+		FailingSource() {
+			super(3, 20, 5);
+			setViewFrequency(0);
+			setNbrPartitionsPerTable(3);
+		}
+
+		@Override
+		public List<Table> getTableObjectsByName(String dbName, List<String> tableNames) throws TException {
+			if(dbName.equals(failingTablesDb))
+				throw new MetaException("HiveMetastore restarted");
+			return super.getTableObjectsByName(dbName, tableNames);
+		}
+
+		@Override
+		public List<String> listPartitionNames(String dbName, String tableName, short maxPartitions)
+				throws TException {
+			if(dbName.equals(failingPartitionsDb))
+				throw new MetaException("HiveMetastore restarted");
+			return super.listPartitionNames(dbName, tableName, maxPartitions);
+		}
+	}
+
+	private long export(File outputDir, FailingSource source, int nbrWorkers, boolean resume) throws IOException {
+		LogManager.getLogManager().reset();
+
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		File journalFile = new File(outputDir, "checkpoint.journal");
+		ExportCheckpoint checkpoint = resume ? ExportCheckpoint.resume(journalFile, 0) :
+			ExportCheckpoint.start(journalFile, 0);
+
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties,
+				checkpoint.getResumeOffsets());
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.singletonList(source));
+		MetastoreExporter exporter = nbrWorkers > 1 ?
+				new ParallelMetastoreExporter(bufferedWriters, sourcePool, 7, nbrWorkers) :
+				new MetastoreExporter(bufferedWriters, sourcePool, 7);
+
+		checkpoint.open(bufferedWriters);
+		exporter.setCheckpoint(checkpoint);
+		exporter.export();
+		checkpoint.close(exporter.getNbrFailures() == 0);
+		bufferedWriters.closeBufferedWriters();
+		sourcePool.close();
+
+		return exporter.getNbrFailures();
+	}
+
+	private List<String> reference() throws IOException {
+		File outputDir = outputFolder.newFolder("reference");
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.singletonList(new FailingSource()));
+		new MetastoreExporter(bufferedWriters, sourcePool, 7).export();
+		bufferedWriters.closeBufferedWriters();
+		sourcePool.close();
+
+		return sortedLines(outputDir);
+	}
+
+	private static List<String> sortedLines(File outputDir) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		String[] files = { "HiveMetastoreDatabases.csv", "HiveMetastoreTables.csv", "HiveMetastoreColumns.csv",
+				"HiveMetastorePartitions.csv" };
+
+		for(String file : files)
+			lines.addAll(Files.readAllLines(new File(outputDir, file).toPath(), Charset.defaultCharset()));
+
+		Collections.sort(lines);
+		return lines;
+	}
+
+	@Test
+	public void valResumeAfterFailedBatches() throws IOException {
+		File outputDir = outputFolder.newFolder("resumed");
+		FailingSource source = new FailingSource();
+		source.failingTablesDb = "db_0001";
+
+		assertEquals(3, export(outputDir, source, 1, false));
+		assertTrue(new File(outputDir, "checkpoint.journal").exists());
+
+		source.failingTablesDb = null;
+		long nbrCallsBefore = source.getNbrCalls();
+		assertEquals(0, export(outputDir, source, 1, true));
+
+		assertFalse(new File(outputDir, "checkpoint.journal").exists());
+		assertEquals(reference(), sortedLines(outputDir));
+		// database and table listings, then the 3 batches of db_0001 and the partitions of their 20 Tables
+		assertEquals(1 + 3 + 3 + 20 * 2, source.getNbrCalls() - nbrCallsBefore);
+	}
+
+	@Test
+	public void valResumeAfterPartiallyWrittenBatches() throws IOException {
+		File outputDir = outputFolder.newFolder("resumed");
+		FailingSource source = new FailingSource();
+		source.failingPartitionsDb = "db_0001";
+
+		assertTrue(export(outputDir, source, 3, false) > 0);
+
+		source.failingPartitionsDb = null;
+		assertEquals(0, export(outputDir, source, 3, true));
+		assertEquals(reference(), sortedLines(outputDir));
+	}
+
+	@Test
+	public void valResumeDropsRecordsAfterCheckpoint() throws IOException {
+		File outputDir = outputFolder.newFolder("resumed");
+		FailingSource source = new FailingSource();
+		source.failingTablesDb = "db_0002";
+		export(outputDir, source, 1, false);
+
+		// records and journal lines written after the last checkpoint, then a crash cutting a checkpoint line
+		Writer tables = new FileWriter(new File(outputDir, "HiveMetastoreTables.csv"), true);
+		tables.write("TBL,db_0002.tbl_00000,tbl_00000");
+		tables.close();
+		Writer journal = new FileWriter(new File(outputDir, "checkpoint.journal"), true);
+		journal.write("TABLES,db_0002,tbl_00000\nCHECKPOINT,1,2,3");
+		journal.close();
+
+		source.failingTablesDb = null;
+		assertEquals(0, export(outputDir, source, 1, true));
+		assertEquals(reference(), sortedLines(outputDir));
+	}
+
+	@Test
+	public void valResumeWithoutJournalStartsOver() throws IOException {
+		File outputDir = outputFolder.newFolder("resumed");
+		ExportCheckpoint checkpoint = ExportCheckpoint.resume(new File(outputDir, "checkpoint.journal"), 0);
+
+		assertFalse(checkpoint.isResumed());
+		assertEquals(0, export(outputDir, new FailingSource(), 1, true));
+		assertEquals(reference(), sortedLines(outputDir));
+	}
+}
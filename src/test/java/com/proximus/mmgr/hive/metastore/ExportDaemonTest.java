@@ -0,0 +1,75 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.logging.LogManager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExportDaemonTest {
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	private static void awaitExport(ExportDaemon daemon, long nbrExports) throws InterruptedException {
+		for(int i = 0; i < 1000 && (daemon.isExportRunning() || daemon.getNbrExports() < nbrExports); i++)
+			Thread.sleep(10);
+	}
+
+	@Test
+	public void valExportsDoNotOverlap() throws IOException, InterruptedException {
+		LogManager.getLogManager().reset();
+		File outputDir = outputFolder.getRoot();
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		metastoreReaderProperties.setProperty("authentication_method", "none");
+
+		SyntheticMetastoreSource syntheticSource = new SyntheticMetastoreSource(2, 10, 5);
+		syntheticSource.setLatencyMicros(20000);
+		ExportMetrics metrics = new ExportMetrics();
+		ResilientMetastoreSource.CallStatistics callStatistics = new ResilientMetastoreSource.CallStatistics();
+		MetastoreSource source = new ResilientMetastoreSource(syntheticSource, null, new RetryPolicy(0, 1, 1, 0),
+				callStatistics, metrics);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.singletonList(source));
+		ExportDaemon daemon = new ExportDaemon(metastoreReaderProperties, sourcePool, callStatistics, metrics);
+
+		try {
+			assertTrue(daemon.requestExport("test"));
+			assertTrue(daemon.isExportRunning());
+			assertFalse(daemon.requestExport("test"));
+			assertFalse(daemon.triggerExport());
+			assertEquals(2, daemon.getNbrSkippedExports());
+
+			// a trigger file created during an export is kept until the export completes
+			File triggerFile = new File(outputDir, "HiveMetastoreReader.trigger");
+			assertTrue(triggerFile.createNewFile());
+			daemon.pollTriggerFile();
+			assertTrue(triggerFile.exists());
+
+			awaitExport(daemon, 1);
+			assertEquals(1, daemon.getNbrExports());
+			assertTrue(daemon.isLastExportComplete());
+			assertTrue(new File(outputDir, "HiveMetastoreTables.csv").length() > 0);
+			assertTrue(new File(outputDir, "HiveMetastoreMetrics.csv").exists());
+
+			daemon.pollTriggerFile();
+			assertFalse(triggerFile.exists());
+			awaitExport(daemon, 2);
+			assertEquals(2, daemon.getNbrExports());
+			assertEquals(0, daemon.getNbrFailedExports());
+			// the metrics are reset at each export
+			assertEquals(20, metrics.getRecords(ExportMetrics.Output.TABLE));
+		} finally {
+			daemon.stop();
+		}
+
+		assertFalse(daemon.triggerExport());
+	}
+}
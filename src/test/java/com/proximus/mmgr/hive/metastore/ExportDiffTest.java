@@ -0,0 +1,110 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.LogManager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.proximus.mmgr.CsvReader;
+
+public class ExportDiffTest {
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	private static Properties createProperties(File outputDir) {
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		metastoreReaderProperties.setProperty("output_sink", "channel");
+		return metastoreReaderProperties;
+	}
+
+	private static File export(File outputDir, int nbrDatabases, int nbrTablesPerDatabase) throws IOException {
+		LogManager.getLogManager().reset();
+
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(nbrDatabases, nbrTablesPerDatabase, 3);
+		source.setViewFrequency(2);
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(createProperties(outputDir));
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.<MetastoreSource>singletonList(source));
+		new MetastoreExporter(bufferedWriters, sourcePool, 1).export();
+		bufferedWriters.closeBufferedWriters();
+		sourcePool.close();
+
+		return outputDir;
+	}
+
+	private static List<String[]> readChanges(File diffFile) throws IOException {
+		CsvReader in = new CsvReader(new InputStreamReader(new FileInputStream(diffFile), "UTF-8"), ',');
+		List<String[]> changes = new ArrayList<String[]>();
+		String record;
+
+		assertEquals(ExportDiff.HEADER, in.readRecord());
+		while((record = in.readRecord()) != null)
+			changes.add(in.parseFields(record));
+
+		in.close();
+		return changes;
+	}
+
+	@Test
+	public void valAddedRemovedAndChangedElements() throws IOException {
+		File previousDir = export(outputFolder.newFolder("previous"), 2, 4);
+		File currentDir = export(outputFolder.newFolder("current"), 1, 5);
+
+		// the owner of a view, whose multi-line text is quoted, is changed in the current export
+		String viewId = "db_0000." + SyntheticMetastoreSource.tableName(1);
+		File tableFile = new File(currentDir, "HiveMetastoreTables.csv");
+		String tables = new String(Files.readAllBytes(tableFile.toPath()), Charset.forName("UTF-8"));
+		int viewStart = tables.indexOf("TBL," + viewId + ",");
+		int ownerStart = tables.indexOf(",hive,", viewStart);
+		tables = tables.substring(0, ownerStart) + ",etl," + tables.substring(ownerStart + ",hive,".length());
+		Files.write(tableFile.toPath(), tables.getBytes(Charset.forName("UTF-8")));
+
+		Properties metastoreReaderProperties = createProperties(currentDir);
+		metastoreReaderProperties.setProperty("sort_memory_mb", "1");
+		metastoreReaderProperties.setProperty("sort_threads", "2");
+		metastoreReaderProperties.setProperty("sort_tmp_dir", outputFolder.newFolder("sort").getPath());
+		File diffFile = new File(currentDir, "HiveMetastoreDiff.csv");
+		Map<String, long[]> nbrChanges = new ExportDiff(metastoreReaderProperties).diff(previousDir, currentDir,
+				diffFile);
+
+		assertArrayEquals(new long[] { 0, 1, 0 }, nbrChanges.get("DB"));
+		// the views select from another table of their database: the text of some of them changes with the
+		// number of tables
+		assertArrayEquals(new long[] { 1, 4, 2 }, nbrChanges.get("TBL"));
+		assertArrayEquals(new long[] { 3, 12, 0 }, nbrChanges.get("COL"));
+
+		List<String[]> changes = readChanges(diffFile);
+		assertEquals(1 + 4 + 1 + 4 + 15, changes.size());
+		assertTrue(containsChange(changes, new String[] { ExportDiff.CHANGED, "TBL", viewId, "ownerName", "hive",
+				"etl" }));
+		assertTrue(containsChange(changes, new String[] { ExportDiff.REMOVED, "DB", "db_0001", "", "", "" }));
+		assertTrue(containsChange(changes, new String[] { ExportDiff.ADDED, "TBL",
+				"db_0000." + SyntheticMetastoreSource.tableName(4), "", "", "" }));
+		assertEquals(0, new File(metastoreReaderProperties.getProperty("sort_tmp_dir")).list().length);
+	}
+
+	private static boolean containsChange(List<String[]> changes, String[] change) {
+		for(String[] candidate : changes)
+			if(Arrays.equals(candidate, change))
+				return true;
+
+		return false;
+	}
+}
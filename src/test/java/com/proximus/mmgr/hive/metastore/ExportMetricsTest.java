@@ -0,0 +1,105 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.LogManager;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExportMetricsTest {
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	@Test
+	public void valLatencyPercentiles() {
+		ExportMetrics.LatencyHistogram histogram = new ExportMetrics.LatencyHistogram();
+
+		for(int i = 0; i < 98; i++)
+			histogram.record(100000);
+		histogram.record(5000000);
+		histogram.record(20000000);
+
+		assertEquals(100, histogram.getCount());
+		// 100 us falls in the [64, 128[ bucket
+		assertEquals(127, histogram.getPercentileMicros(50));
+		assertEquals(8191, histogram.getPercentileMicros(99));
+		assertEquals(20000, histogram.getPercentileMicros(100));
+		assertEquals(20000, histogram.getMaxMicros());
+	}
+
+	@Test
+	public void valExportMetrics() throws IOException, JMException {
+		LogManager.getLogManager().reset();
+		File outputDir = outputFolder.getRoot();
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+
+		SyntheticMetastoreSource syntheticSource = new SyntheticMetastoreSource(3, 20, 5);
+		syntheticSource.setViewFrequency(0);
+		syntheticSource.setNbrPartitionsPerTable(3);
+		ExportMetrics metrics = new ExportMetrics();
+		MetastoreSource source = new ResilientMetastoreSource(syntheticSource, null, new RetryPolicy(0, 1, 1, 0),
+				new ResilientMetastoreSource.CallStatistics(), metrics);
+
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.singletonList(source));
+		MetastoreExporter exporter = new MetastoreExporter(bufferedWriters, sourcePool, 7);
+		exporter.setMetrics(metrics);
+		metrics.register();
+
+		try {
+			exporter.export();
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			TabularData records = (TabularData) server.getAttribute(new ObjectName(ExportMetrics.OBJECT_NAME),
+					"RecordsWritten");
+			CompositeData tableRecords = records.get(new Object[] { "table" });
+			assertEquals(60L, tableRecords.get("value"));
+		} finally {
+			bufferedWriters.closeBufferedWriters();
+			sourcePool.close();
+			HiveMetastoreReader.completeMetrics(metastoreReaderProperties, metrics);
+			metrics.unregister();
+		}
+
+		assertEquals(3, metrics.getRecords(ExportMetrics.Output.DATABASE));
+		assertEquals(60, metrics.getRecords(ExportMetrics.Output.TABLE));
+		// 5 columns and 2 partition keys per table
+		assertEquals(60 * 7, metrics.getRecords(ExportMetrics.Output.COLUMN));
+		assertEquals(60 * 3, metrics.getRecords(ExportMetrics.Output.PARTITION));
+		// the header record is counted in the characters, not in the records
+		assertEquals(new File(outputDir, "HiveMetastoreTables.csv").length(),
+				metrics.getCharacters(ExportMetrics.Output.TABLE));
+		assertEquals(9, metrics.getCallLatency("getTableObjectsByName").getCount());
+		assertEquals(60, metrics.getCallLatency("listPartitionNames").getCount());
+		assertTrue(metrics.getPhaseNanos(ExportMetrics.Phase.TABLE_FETCH) > 0);
+		assertTrue(metrics.getPhaseNanos(ExportMetrics.Phase.SERIALIZATION) > 0);
+		assertTrue(metrics.getPhaseNanos(ExportMetrics.Phase.WRITE) > 0);
+
+		List<String> summary = Files.readAllLines(new File(outputDir, "HiveMetastoreMetrics.csv").toPath(),
+				Charset.defaultCharset());
+		assertEquals("metric,name,value", summary.get(0));
+		assertTrue(summary.contains("records,column,420"));
+		assertTrue(summary.contains("call_count,getAllDatabases,1"));
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+				new ObjectName(ExportMetrics.OBJECT_NAME)));
+	}
+}
@@ -0,0 +1,57 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+
+import java.security.InvalidParameterException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class ExportScheduleTest {
+	private static final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+
+	private static String next(String expression, String after) throws ParseException {
+		Date next = new ExportSchedule(expression).next(format.parse(after));
+		return format.format(next);
+	}
+
+	@Test
+	public void valNextMinute() throws ParseException {
+		assertEquals("2016-03-01 10:16", next("* * * * *", "2016-03-01 10:15"));
+		assertEquals("2016-03-01 10:30", next("*/15 * * * *", "2016-03-01 10:15"));
+		assertEquals("2016-03-01 11:00", next("0,30 * * * *", "2016-03-01 10:45"));
+	}
+
+	@Test
+	public void valNextDay() throws ParseException {
+		// 2016-03-04 is a Friday
+		assertEquals("2016-03-07 06:00", next("0 6-22 * * 1-5", "2016-03-04 22:30"));
+		assertEquals("2016-03-06 02:00", next("0 2 * * 7", "2016-03-04 22:30"));
+		assertEquals("2016-04-01 00:00", next("0 0 1 * *", "2016-03-04 22:30"));
+		assertEquals("2017-02-28 08:00", next("0 8 28 2 *", "2016-03-04 22:30"));
+	}
+
+	@Test
+	public void valDayOfMonthOrDayOfWeek() throws ParseException {
+		// like cron, the 15th of the month or any Monday
+		assertEquals("2016-03-07 00:00", next("0 0 15 * 1", "2016-03-04 22:30"));
+		assertEquals("2016-03-15 00:00", next("0 0 15 * 1", "2016-03-14 00:00"));
+	}
+
+	@Test(expected = InvalidParameterException.class)
+	public void valInvalidFieldCount() {
+		new ExportSchedule("0 6 * *");
+	}
+
+	@Test(expected = InvalidParameterException.class)
+	public void valInvalidRange() {
+		new ExportSchedule("0 24 * * *");
+	}
+
+	@Test(expected = InvalidParameterException.class)
+	public void valInvalidValue() {
+		new ExportSchedule("0 6 * * mon");
+	}
+}
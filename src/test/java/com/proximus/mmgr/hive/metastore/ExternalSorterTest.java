@@ -0,0 +1,72 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExternalSorterTest {
+	@Rule
+	public TemporaryFolder sortFolder = new TemporaryFolder();
+
+	private static List<String> sort(ExternalSorter sorter, List<String> keys) throws IOException {
+		for(String key : keys)
+			sorter.add(key, "record of " + key);
+
+		List<String> sortedKeys = new ArrayList<String>();
+		ExternalSorter.SortedRecords records = sorter.sort();
+
+		while(records.next()) {
+			assertEquals("record of " + records.getKey(), records.getRecord());
+			sortedKeys.add(records.getKey());
+		}
+
+		records.close();
+		sorter.close();
+		return sortedKeys;
+	}
+
+	private static List<String> randomKeys(int nbrKeys) {
+		Random random = new Random(42);
+		List<String> keys = new ArrayList<String>(nbrKeys);
+
+		for(int i = 0; i < nbrKeys; i++)
+			keys.add("db_" + random.nextInt(100) + ".tbl_" + random.nextInt(1000));
+
+		return keys;
+	}
+
+	@Test
+	public void valInMemorySort() throws IOException {
+		List<String> keys = randomKeys(1000);
+		ExternalSorter sorter = new ExternalSorter(sortFolder.getRoot(), 64L << 20, 2);
+		List<String> sortedKeys = sort(sorter, keys);
+
+		Collections.sort(keys);
+		assertEquals(keys, sortedKeys);
+		assertEquals(0, sorter.getNbrRuns());
+	}
+
+	@Test
+	public void valSpilledRunsMerged() throws IOException {
+		List<String> keys = randomKeys(20000);
+		// buffers of about 100 records, merged 2 runs at a time
+		ExternalSorter sorter = new ExternalSorter(sortFolder.getRoot(), 3 * 100 * 150, 2, 2);
+		List<String> sortedKeys = sort(sorter, keys);
+
+		Collections.sort(keys);
+		assertEquals(keys, sortedKeys);
+		assertEquals(20000, sorter.getNbrRecords());
+		assertTrue(sorter.getNbrRuns() > 100);
+		assertTrue(sorter.getSpilledBytes() > 0);
+		assertEquals(0, sortFolder.getRoot().list().length);
+	}
+}
@@ -1,5 +1,7 @@
 package com.proximus.mmgr.hive.metastore;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.Properties;
@@ -55,4 +57,19 @@ public class HiveMetastoreReaderTest {
 		System.out.println(metastoreReaderProperties.getProperty("authentication_method"));
 		HiveMetastoreReader.checkMetastoreReaderProperties(metastoreReaderProperties);
 	}
+	
+	@Test
+	public void valIntProperty() {
+		Properties metastoreReaderProperties = new Properties();
+		assertEquals(100, HiveMetastoreReader.getIntProperty(metastoreReaderProperties, "table_batch_size", 100));
+		metastoreReaderProperties.setProperty("table_batch_size", "250");
+		assertEquals(250, HiveMetastoreReader.getIntProperty(metastoreReaderProperties, "table_batch_size", 100));
+	}
+	
+	@Test(expected = InvalidParameterException.class)
+	public void valInvalidIntProperty() {
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("table_batch_size", "0");
+		HiveMetastoreReader.getIntProperty(metastoreReaderProperties, "table_batch_size", 100);
+	}
 }
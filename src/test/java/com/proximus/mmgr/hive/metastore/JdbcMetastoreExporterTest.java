@@ -0,0 +1,104 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.LogManager;
+
+import org.apache.thrift.TException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JdbcMetastoreExporterTest {
+	private static final String JDBC_URL = "jdbc:derby:memory:metastore";
+
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	private Connection connection;
+
+	private static SyntheticMetastoreSource newSource() {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(3, 20, 5);
+		source.setNbrPartitionsPerTable(30);
+		return source;
+	}
+
+	@Before
+	public void setUp() throws SQLException, TException {
+		LogManager.getLogManager().reset();
+		connection = DriverManager.getConnection(JDBC_URL + ";create=true");
+
+		JdbcMetastoreLoader loader = new JdbcMetastoreLoader(connection);
+		loader.createSchema();
+		loader.load(newSource());
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		connection.close();
+
+		try {
+			DriverManager.getConnection(JDBC_URL + ";drop=true");
+		} catch (SQLException dropped) {
+			// Derby reports a dropped database with an exception
+		}
+	}
+
+	private List<String> export(File outputDir, MetastoreExporter exporter, MetadataBufferedWriters bufferedWriters) {
+		exporter.export();
+		bufferedWriters.closeBufferedWriters();
+		assertEquals(0, exporter.getNbrFailures());
+
+		List<String> lines = new ArrayList<String>();
+		lines.addAll(readLines(new File(outputDir, "HiveMetastoreDatabases.csv")));
+		lines.addAll(readLines(new File(outputDir, "HiveMetastoreTables.csv")));
+		lines.addAll(readLines(new File(outputDir, "HiveMetastoreColumns.csv")));
+		lines.addAll(readLines(new File(outputDir, "HiveMetastorePartitions.csv")));
+		Collections.sort(lines);
+		return lines;
+	}
+
+	private static MetadataBufferedWriters newWriters(File outputDir) {
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		return new MetadataBufferedWriters(metastoreReaderProperties);
+	}
+
+	private static List<String> readLines(File file) {
+		try {
+			return Files.readAllLines(file.toPath(), Charset.defaultCharset());
+		} catch (IOException ioException) {
+			throw new AssertionError(ioException);
+		}
+	}
+
+	@Test
+	public void valJdbcExportMatchesApiExport() throws IOException {
+		File apiDir = outputFolder.newFolder("api");
+		MetadataBufferedWriters apiWriters = newWriters(apiDir);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.singletonList(newSource()));
+		List<String> api = export(apiDir, new MetastoreExporter(apiWriters, sourcePool, 100), apiWriters);
+
+		File jdbcDir = outputFolder.newFolder("jdbc");
+		MetadataBufferedWriters jdbcWriters = newWriters(jdbcDir);
+		List<String> jdbc = export(jdbcDir, new JdbcMetastoreExporter(jdbcWriters, JDBC_URL, new Properties(), 7, 50),
+				jdbcWriters);
+
+		// 2 views out of 20 tables per database are not partitioned
+		assertEquals(3 + 3 * 20 + 3 * 20 * 5 + 3 * 18 * (2 + 30) + 4, jdbc.size());
+		assertEquals(api, jdbc);
+	}
+}
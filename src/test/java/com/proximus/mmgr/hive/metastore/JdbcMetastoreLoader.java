@@ -0,0 +1,218 @@
+package com.proximus.mmgr.hive.metastore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.metastore.Warehouse;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+/**
+ * Creates the HiveMetastore tables read by the <i>JdbcMetastoreExporter</i> in an empty database, and loads them
+ * with the catalog of a MetastoreSource. Used with an embedded Derby database and a SyntheticMetastoreSource, it
+ * allows testing and profiling the JDBC export without a Hive cluster.<p>
+ * The tables are created with the definition of the Derby schema shipped with Hive 1.2
+ * (<i>hive-schema-1.2.0.derby.sql</i>), restricted to the tables and columns used by the export.
+ * The benchmarks, built without the test sources, hold a copy of this class.
+ * @author Jonathan Puvilland
+ *
+ */
+public class JdbcMetastoreLoader {
+	private static final String[] SCHEMA = {
+		"CREATE TABLE \"DBS\" (\"DB_ID\" BIGINT NOT NULL, \"DESC\" VARCHAR(4000), " +
+				"\"DB_LOCATION_URI\" VARCHAR(4000) NOT NULL, \"NAME\" VARCHAR(128), \"OWNER_NAME\" VARCHAR(128), " +
+				"\"OWNER_TYPE\" VARCHAR(10), PRIMARY KEY (\"DB_ID\"))",
+		"CREATE TABLE \"SDS\" (\"SD_ID\" BIGINT NOT NULL, \"INPUT_FORMAT\" VARCHAR(4000), " +
+				"\"IS_COMPRESSED\" CHAR(1) NOT NULL, \"LOCATION\" VARCHAR(4000), \"NUM_BUCKETS\" INTEGER NOT NULL, " +
+				"\"OUTPUT_FORMAT\" VARCHAR(4000), \"SERDE_ID\" BIGINT, \"CD_ID\" BIGINT, " +
+				"\"IS_STOREDASSUBDIRECTORIES\" CHAR(1) NOT NULL, PRIMARY KEY (\"SD_ID\"))",
+		"CREATE TABLE \"TBLS\" (\"TBL_ID\" BIGINT NOT NULL, \"CREATE_TIME\" INTEGER NOT NULL, \"DB_ID\" BIGINT, " +
+				"\"LAST_ACCESS_TIME\" INTEGER NOT NULL, \"OWNER\" VARCHAR(767), \"RETENTION\" INTEGER NOT NULL, " +
+				"\"SD_ID\" BIGINT, \"TBL_NAME\" VARCHAR(128), \"TBL_TYPE\" VARCHAR(128), " +
+				"\"VIEW_EXPANDED_TEXT\" LONG VARCHAR, \"VIEW_ORIGINAL_TEXT\" LONG VARCHAR, PRIMARY KEY (\"TBL_ID\"))",
+		"CREATE TABLE \"COLUMNS_V2\" (\"CD_ID\" BIGINT NOT NULL, \"COMMENT\" VARCHAR(4000), " +
+				"\"COLUMN_NAME\" VARCHAR(767) NOT NULL, \"TYPE_NAME\" VARCHAR(4000), \"INTEGER_IDX\" INTEGER NOT NULL, " +
+				"PRIMARY KEY (\"CD_ID\", \"COLUMN_NAME\"))",
+		"CREATE TABLE \"TABLE_PARAMS\" (\"TBL_ID\" BIGINT NOT NULL, \"PARAM_KEY\" VARCHAR(256) NOT NULL, " +
+				"\"PARAM_VALUE\" VARCHAR(4000), PRIMARY KEY (\"TBL_ID\", \"PARAM_KEY\"))",
+		"CREATE TABLE \"PARTITION_KEYS\" (\"TBL_ID\" BIGINT NOT NULL, \"PKEY_COMMENT\" VARCHAR(4000), " +
+				"\"PKEY_NAME\" VARCHAR(128) NOT NULL, \"PKEY_TYPE\" VARCHAR(767) NOT NULL, " +
+				"\"INTEGER_IDX\" INTEGER NOT NULL, PRIMARY KEY (\"TBL_ID\", \"PKEY_NAME\"))",
+		"CREATE TABLE \"PARTITIONS\" (\"PART_ID\" BIGINT NOT NULL, \"CREATE_TIME\" INTEGER NOT NULL, " +
+				"\"LAST_ACCESS_TIME\" INTEGER NOT NULL, \"PART_NAME\" VARCHAR(767), \"SD_ID\" BIGINT, " +
+				"\"TBL_ID\" BIGINT, PRIMARY KEY (\"PART_ID\"))",
+		"CREATE TABLE \"PARTITION_PARAMS\" (\"PART_ID\" BIGINT NOT NULL, \"PARAM_KEY\" VARCHAR(256) NOT NULL, " +
+				"\"PARAM_VALUE\" VARCHAR(4000), PRIMARY KEY (\"PART_ID\", \"PARAM_KEY\"))"
+	};
+
+	private final Connection connection;
+	private long nextDbId = 1;
+	private long nextTableId = 1;
+	private long nextSdId = 1;
+	private long nextPartitionId = 1;
+
+	/**
+	 * @param connection a connection to the database receiving the HiveMetastore tables
+	 */
+	public JdbcMetastoreLoader(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Creates the HiveMetastore tables.
+	 * @throws SQLException when the tables cannot be created.
+	 */
+	public void createSchema() throws SQLException {
+		Statement statement = connection.createStatement();
+
+		try {
+			for(String ddl : SCHEMA)
+				statement.execute(ddl);
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Loads all the Databases, Tables, Columns and Partitions of a MetastoreSource.
+	 * @param source the HiveMetastore source
+	 * @throws TException when the source cannot be accessed.
+	 * @throws SQLException when the rows cannot be inserted.
+	 */
+	public void load(MetastoreSource source) throws TException, SQLException {
+		PreparedStatement insertDb = connection.prepareStatement("INSERT INTO \"DBS\" (\"DB_ID\", \"DESC\", " +
+				"\"DB_LOCATION_URI\", \"NAME\", \"OWNER_NAME\", \"OWNER_TYPE\") VALUES (?, ?, ?, ?, ?, 'USER')");
+		PreparedStatement insertSd = connection.prepareStatement("INSERT INTO \"SDS\" (\"SD_ID\", " +
+				"\"IS_COMPRESSED\", \"LOCATION\", \"NUM_BUCKETS\", \"CD_ID\", \"IS_STOREDASSUBDIRECTORIES\") " +
+				"VALUES (?, 'N', ?, -1, ?, 'N')");
+		PreparedStatement insertTable = connection.prepareStatement("INSERT INTO \"TBLS\" (\"TBL_ID\", " +
+				"\"CREATE_TIME\", \"DB_ID\", \"LAST_ACCESS_TIME\", \"OWNER\", \"RETENTION\", \"SD_ID\", \"TBL_NAME\", " +
+				"\"TBL_TYPE\", \"VIEW_EXPANDED_TEXT\", \"VIEW_ORIGINAL_TEXT\") VALUES (?, ?, ?, 0, ?, 0, ?, ?, ?, ?, ?)");
+		PreparedStatement insertColumn = connection.prepareStatement("INSERT INTO \"COLUMNS_V2\" (\"CD_ID\", " +
+				"\"COMMENT\", \"COLUMN_NAME\", \"TYPE_NAME\", \"INTEGER_IDX\") VALUES (?, ?, ?, ?, ?)");
+		PreparedStatement insertParam = connection.prepareStatement("INSERT INTO \"TABLE_PARAMS\" (\"TBL_ID\", " +
+				"\"PARAM_KEY\", \"PARAM_VALUE\") VALUES (?, ?, ?)");
+		PreparedStatement insertPartitionKey = connection.prepareStatement("INSERT INTO \"PARTITION_KEYS\" " +
+				"(\"TBL_ID\", \"PKEY_COMMENT\", \"PKEY_NAME\", \"PKEY_TYPE\", \"INTEGER_IDX\") VALUES (?, ?, ?, ?, ?)");
+		PreparedStatement insertPartition = connection.prepareStatement("INSERT INTO \"PARTITIONS\" (\"PART_ID\", " +
+				"\"CREATE_TIME\", \"LAST_ACCESS_TIME\", \"PART_NAME\", \"SD_ID\", \"TBL_ID\") VALUES (?, ?, 0, ?, ?, ?)");
+
+		try {
+			for(String dbName : source.getAllDatabases()) {
+				Database db = source.getDatabase(dbName);
+				long dbId = nextDbId++;
+
+				insertDb.setLong(1, dbId);
+				insertDb.setString(2, db.getDescription());
+				insertDb.setString(3, db.getLocationUri());
+				insertDb.setString(4, db.getName());
+				insertDb.setString(5, db.getOwnerName());
+				insertDb.executeUpdate();
+
+				List<String> tableNames = source.getAllTables(dbName);
+				for(Table table : source.getTableObjectsByName(dbName, tableNames)) {
+					// the Column Descriptor shares the id of the Table's Storage Descriptor
+					long tableId = nextTableId++;
+					long sdId = nextSdId++;
+
+					insertSd.setLong(1, sdId);
+					insertSd.setString(2, table.getSd().getLocation());
+					insertSd.setLong(3, sdId);
+					insertSd.addBatch();
+
+					insertTable.setLong(1, tableId);
+					insertTable.setInt(2, table.getCreateTime());
+					insertTable.setLong(3, dbId);
+					insertTable.setString(4, table.getOwner());
+					insertTable.setLong(5, sdId);
+					insertTable.setString(6, table.getTableName());
+					insertTable.setString(7, table.getTableType());
+					insertTable.setString(8, table.getViewExpandedText());
+					insertTable.setString(9, table.getViewOriginalText());
+					insertTable.addBatch();
+
+					List<FieldSchema> columns = table.getSd().getCols();
+					for(int i = 0; i < columns.size(); i++) {
+						insertColumn.setLong(1, sdId);
+						insertColumn.setString(2, columns.get(i).getComment());
+						insertColumn.setString(3, columns.get(i).getName());
+						insertColumn.setString(4, columns.get(i).getType());
+						insertColumn.setInt(5, i);
+						insertColumn.addBatch();
+					}
+
+					if(table.getParametersSize() > 0)
+						for(Map.Entry<String, String> parameter : table.getParameters().entrySet()) {
+							insertParam.setLong(1, tableId);
+							insertParam.setString(2, parameter.getKey());
+							insertParam.setString(3, parameter.getValue());
+							insertParam.addBatch();
+						}
+
+					if(table.getPartitionKeysSize() > 0)
+						loadPartitions(source, table, tableId, sdId, insertPartitionKey, insertSd, insertPartition);
+				}
+
+				insertSd.executeBatch();
+				insertTable.executeBatch();
+				insertColumn.executeBatch();
+				insertParam.executeBatch();
+				insertPartitionKey.executeBatch();
+				insertPartition.executeBatch();
+			}
+		} finally {
+			insertPartition.close();
+			insertPartitionKey.close();
+			insertParam.close();
+			insertColumn.close();
+			insertTable.close();
+			insertSd.close();
+			insertDb.close();
+		}
+	}
+
+	/**
+	 * Adds the partition keys and the Partitions of a Table to the batches of inserts. The Storage Descriptor of
+	 * each Partition shares the Column Descriptor of its Table, like the Partitions created by Hive.
+	 */
+	private void loadPartitions(MetastoreSource source, Table table, long tableId, long tableSdId,
+			PreparedStatement insertPartitionKey, PreparedStatement insertSd, PreparedStatement insertPartition)
+			throws TException, SQLException {
+		List<FieldSchema> partitionKeys = table.getPartitionKeys();
+
+		for(int i = 0; i < partitionKeys.size(); i++) {
+			insertPartitionKey.setLong(1, tableId);
+			insertPartitionKey.setString(2, partitionKeys.get(i).getComment());
+			insertPartitionKey.setString(3, partitionKeys.get(i).getName());
+			insertPartitionKey.setString(4, partitionKeys.get(i).getType());
+			insertPartitionKey.setInt(5, i);
+			insertPartitionKey.addBatch();
+		}
+
+		List<String> partitionNames = source.listPartitionNames(table.getDbName(), table.getTableName(), (short) -1);
+
+		for(Partition partition : source.getPartitionsByNames(table.getDbName(), table.getTableName(),
+				partitionNames)) {
+			long sdId = nextSdId++;
+
+			insertSd.setLong(1, sdId);
+			insertSd.setString(2, partition.getSd().getLocation());
+			insertSd.setLong(3, tableSdId);
+			insertSd.addBatch();
+
+			insertPartition.setLong(1, nextPartitionId++);
+			insertPartition.setInt(2, partition.getCreateTime());
+			insertPartition.setString(3, Warehouse.makePartName(partitionKeys, partition.getValues()));
+			insertPartition.setLong(4, sdId);
+			insertPartition.setLong(5, tableId);
+			insertPartition.addBatch();
+		}
+	}
+}
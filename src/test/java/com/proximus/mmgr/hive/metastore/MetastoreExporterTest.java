@@ -0,0 +1,425 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetastoreExporterTest {
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	private int nbrPartitionsPerTable = 0;
+	private int partitionPageSize = MetastoreExporter.DEFAULT_PARTITION_PAGE_SIZE;
+
+	private List<String> export(File outputDir, int nbrSources, int tableBatchSize, int nbrWorkers) {
+		return export(outputDir, nbrSources, tableBatchSize, nbrWorkers, 0);
+	}
+
+	private List<String> export(File outputDir, int nbrSources, int tableBatchSize, int nbrWorkers,
+			int nbrSerializers) {
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		export(metastoreReaderProperties, nbrSources, tableBatchSize, nbrWorkers, nbrSerializers);
+
+		List<String> lines = new ArrayList<String>();
+		lines.addAll(readLines(new File(outputDir, "HiveMetastoreDatabases.csv")));
+		lines.addAll(readLines(new File(outputDir, "HiveMetastoreTables.csv")));
+		lines.addAll(readLines(new File(outputDir, "HiveMetastoreColumns.csv")));
+		lines.addAll(readLines(new File(outputDir, "HiveMetastorePartitions.csv")));
+		return lines;
+	}
+
+	private void export(Properties metastoreReaderProperties, int nbrSources, int tableBatchSize, int nbrWorkers,
+			int nbrSerializers) {
+		LogManager.getLogManager().reset();
+
+		List<MetastoreSource> sources = new ArrayList<MetastoreSource>();
+		for(int i = 0; i < nbrSources; i++) {
+			SyntheticMetastoreSource source = new SyntheticMetastoreSource(3, 20, 5);
+			source.setViewFrequency(0);
+			source.setNbrPartitionsPerTable(nbrPartitionsPerTable);
+			sources.add(source);
+		}
+
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(sources);
+		MetastoreExporter exporter;
+
+		if(nbrSerializers > 0)
+			exporter = new PipelinedMetastoreExporter(bufferedWriters, sourcePool, tableBatchSize, nbrWorkers,
+					nbrSerializers, 1);
+		else if(nbrWorkers > 1)
+			exporter = new ParallelMetastoreExporter(bufferedWriters, sourcePool, tableBatchSize, nbrWorkers);
+		else
+			exporter = new MetastoreExporter(bufferedWriters, sourcePool, tableBatchSize);
+
+		exporter.setPartitionPageSize(partitionPageSize);
+		exporter.export();
+		bufferedWriters.closeBufferedWriters();
+		sourcePool.close();
+	}
+
+	private static List<String> readLines(File file) {
+		try {
+			return Files.readAllLines(file.toPath(), Charset.defaultCharset());
+		} catch (IOException ioException) {
+			throw new AssertionError(ioException);
+		}
+	}
+
+	@Test
+	public void valSequentialExport() throws IOException {
+		File outputDir = outputFolder.newFolder("sequential");
+		export(outputDir, 1, 7, 1);
+
+		List<String> databases = readLines(new File(outputDir, "HiveMetastoreDatabases.csv"));
+		List<String> tables = readLines(new File(outputDir, "HiveMetastoreTables.csv"));
+		List<String> columns = readLines(new File(outputDir, "HiveMetastoreColumns.csv"));
+
+		assertEquals(1 + 3, databases.size());
+		assertEquals(1 + 3 * 20, tables.size());
+		assertEquals(1 + 3 * 20 * 5, columns.size());
+		assertEquals("type,id,name,description,parent,dataType", columns.get(0));
+		assertEquals("TBL,db_0000.tbl_00000", tables.get(1).substring(0, 21));
+	}
+
+	@Test
+	public void valParallelExportMatchesSequential() throws IOException {
+		List<String> sequential = export(outputFolder.newFolder("sequential"), 1, 1, 1);
+		List<String> parallel = export(outputFolder.newFolder("parallel"), 2, 7, 4);
+
+		Collections.sort(sequential);
+		Collections.sort(parallel);
+		assertEquals(sequential, parallel);
+	}
+
+	@Test
+	public void valPipelinedExportMatchesSequential() throws IOException {
+		List<String> sequential = export(outputFolder.newFolder("sequential"), 1, 1, 1);
+		List<String> pipelined = export(outputFolder.newFolder("pipelined"), 2, 3, 3, 2);
+
+		Collections.sort(sequential);
+		Collections.sort(pipelined);
+		assertEquals(sequential, pipelined);
+	}
+
+	/**
+	 * Exports a catalog whose Table tbl_00004 has no name and cannot be formatted, with 3 Tables per batch.
+	 */
+	private MetastoreExporter exportWithFormatFailure(File outputDir, int nbrWorkers, int nbrSerializers) {
+		LogManager.getLogManager().reset();
+
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(3, 20, 5) {
+			@Override
+			public List<Table> getTableObjectsByName(String dbName, List<String> tableNames) throws TException {
+				List<Table> tables = super.getTableObjectsByName(dbName, tableNames);
+				for(Table table : tables)
+					if(table.getTableName().equals(SyntheticMetastoreSource.tableName(4)))
+						table.setTableName("");
+				return tables;
+			}
+		};
+		source.setViewFrequency(0);
+
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.<MetastoreSource>singletonList(source));
+		MetastoreExporter exporter;
+
+		if(nbrSerializers > 0)
+			exporter = new PipelinedMetastoreExporter(bufferedWriters, sourcePool, 3, nbrWorkers, nbrSerializers, 1);
+		else if(nbrWorkers > 1)
+			exporter = new ParallelMetastoreExporter(bufferedWriters, sourcePool, 3, nbrWorkers);
+		else
+			exporter = new MetastoreExporter(bufferedWriters, sourcePool, 3);
+
+		exporter.export();
+		bufferedWriters.closeBufferedWriters();
+		sourcePool.close();
+		return exporter;
+	}
+
+	@Test
+	public void valExportsCountFormatFailures() throws IOException {
+		// the sequential, parallel and pipelined exports go on with the following batches
+		int[][] exporters = { { 1, 0 }, { 3, 0 }, { 1, 1 } };
+
+		for(int[] exporterThreads : exporters) {
+			File outputDir = outputFolder.newFolder();
+			MetastoreExporter exporter = exportWithFormatFailure(outputDir, exporterThreads[0], exporterThreads[1]);
+			String exporterName = exporter.getClass().getSimpleName();
+
+			// one failed batch of 3 tables per database
+			assertEquals(exporterName, 3, exporter.getNbrFailures());
+			assertEquals(exporterName, 1 + 3 * (20 - 3),
+					readLines(new File(outputDir, "HiveMetastoreTables.csv")).size());
+		}
+	}
+
+	@Test
+	public void valTableDroppedBeforeFetchSkipped() throws IOException {
+		LogManager.getLogManager().reset();
+
+		// a Table listed then dropped before its batch of a single Table is fetched
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(2, 5, 3) {
+			@Override
+			public List<String> getAllTables(String dbName) throws TException {
+				List<String> tableNames = new ArrayList<String>(super.getAllTables(dbName));
+				tableNames.add(SyntheticMetastoreSource.tableName(99));
+				return tableNames;
+			}
+		};
+		source.setViewFrequency(0);
+
+		File outputDir = outputFolder.newFolder("dropped");
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.<MetastoreSource>singletonList(source));
+		MetastoreExporter exporter = new MetastoreExporter(bufferedWriters, sourcePool, 1);
+		exporter.export();
+		bufferedWriters.closeBufferedWriters();
+		sourcePool.close();
+
+		assertEquals(0, exporter.getNbrFailures());
+		assertEquals(1 + 2 * 5, readLines(new File(outputDir, "HiveMetastoreTables.csv")).size());
+	}
+
+	/**
+	 * Creates a catalog of 3 Databases of 4 Tables, each listing 3 of its 4 Partitions. The baseline lists the first
+	 * 3 Partitions. The modified catalog drops db_0002 and db_0000.tbl_00003, alters db_0001.tbl_00002, and lists
+	 * the last 3 Partitions, dropping the first one and adding a new one.
+	 */
+	private static SyntheticMetastoreSource incrementalSource(final boolean modified,
+			final AtomicInteger nbrPartitionsFetched) {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(3, 4, 3) {
+			@Override
+			public List<String> getAllDatabases() throws TException {
+				List<String> databases = super.getAllDatabases();
+				return modified ? databases.subList(0, 2) : databases;
+			}
+
+			@Override
+			public List<String> getAllTables(String dbName) throws TException {
+				List<String> tableNames = super.getAllTables(dbName);
+				return modified && dbName.equals("db_0000") ? tableNames.subList(0, 3) : tableNames;
+			}
+
+			@Override
+			public List<Table> getTableObjectsByName(String dbName, List<String> tableNames) throws TException {
+				List<Table> tables = super.getTableObjectsByName(dbName, tableNames);
+				for(Table table : tables)
+					if(modified && dbName.equals("db_0001") &&
+							table.getTableName().equals(SyntheticMetastoreSource.tableName(2)))
+						table.getParameters().put("transient_lastDdlTime", "1500000000");
+				return tables;
+			}
+
+			@Override
+			public List<String> listPartitionNames(String dbName, String tableName, short maxPartitions)
+					throws TException {
+				List<String> partitionNames = super.listPartitionNames(dbName, tableName, maxPartitions);
+				return modified ? partitionNames.subList(1, 4) : partitionNames.subList(0, 3);
+			}
+
+			@Override
+			public List<Partition> getPartitionsByNames(String dbName, String tableName, List<String> partitionNames)
+					throws TException {
+				nbrPartitionsFetched.addAndGet(partitionNames.size());
+				return super.getPartitionsByNames(dbName, tableName, partitionNames);
+			}
+		};
+		source.setViewFrequency(0);
+		source.setNbrPartitionsPerTable(4);
+
+		return source;
+	}
+
+	private MetastoreExporter exportIncremental(File outputDir, File snapshotFile, boolean modified,
+			AtomicInteger nbrPartitionsFetched, int nbrWorkers, int nbrSerializers) throws IOException {
+		LogManager.getLogManager().reset();
+
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.<MetastoreSource>singletonList(
+				incrementalSource(modified, nbrPartitionsFetched)));
+		TableSnapshot snapshot = TableSnapshot.load(snapshotFile);
+		MetastoreExporter exporter;
+
+		// batches of 2 Tables, retrieved with getTableObjectsByName
+		if(nbrSerializers > 0)
+			exporter = new PipelinedMetastoreExporter(bufferedWriters, sourcePool, 2, nbrWorkers, nbrSerializers, 1);
+		else if(nbrWorkers > 1)
+			exporter = new ParallelMetastoreExporter(bufferedWriters, sourcePool, 2, nbrWorkers);
+		else
+			exporter = new MetastoreExporter(bufferedWriters, sourcePool, 2);
+
+		exporter.setSnapshot(snapshot);
+		exporter.export();
+		boolean complete = bufferedWriters.closeBufferedWriters() && exporter.getNbrFailures() == 0;
+		sourcePool.close();
+		HiveMetastoreReader.completeIncrementalExport(metastoreReaderProperties, exporter, snapshot, snapshotFile,
+				complete);
+
+		return exporter;
+	}
+
+	@Test
+	public void valIncrementalExport() throws IOException {
+		int[][] exporters = { { 1, 0 }, { 3, 0 }, { 1, 1 } };
+
+		for(int[] exporterThreads : exporters) {
+			File snapshotFile = new File(outputFolder.newFolder(), "snapshot.bin");
+			AtomicInteger nbrPartitionsFetched = new AtomicInteger();
+			File baselineDir = outputFolder.newFolder();
+			exportIncremental(baselineDir, snapshotFile, false, nbrPartitionsFetched, exporterThreads[0],
+					exporterThreads[1]);
+
+			assertEquals(1 + 3 * 4 * 3, readLines(new File(baselineDir, "HiveMetastorePartitions.csv")).size());
+			assertEquals(Arrays.asList("type,id"), readLines(new File(baselineDir, "HiveMetastoreDeletions.csv")));
+
+			nbrPartitionsFetched.set(0);
+			File outputDir = outputFolder.newFolder();
+			MetastoreExporter exporter = exportIncremental(outputDir, snapshotFile, true, nbrPartitionsFetched,
+					exporterThreads[0], exporterThreads[1]);
+			String exporterName = exporter.getClass().getSimpleName();
+			List<String> tables = readLines(new File(outputDir, "HiveMetastoreTables.csv"));
+			List<String> partitions = readLines(new File(outputDir, "HiveMetastorePartitions.csv"));
+			List<String> deletions = readLines(new File(outputDir, "HiveMetastoreDeletions.csv"));
+
+			assertEquals(exporterName, 0, exporter.getNbrFailures());
+			// unchanged Databases and Tables are skipped
+			assertEquals(exporterName, 1, readLines(new File(outputDir, "HiveMetastoreDatabases.csv")).size());
+			assertEquals(exporterName, 2, tables.size());
+			assertEquals(exporterName, "TBL,db_0001.tbl_00002", tables.get(1).substring(0, 21));
+			assertEquals(exporterName, 1 + 3 + 2, readLines(new File(outputDir, "HiveMetastoreColumns.csv")).size());
+
+			// only the new Partition of each Table is written, all the Partitions of the altered Table are retrieved
+			assertEquals(exporterName, 1 + 7, partitions.size());
+			for(String partition : partitions.subList(1, partitions.size()))
+				assertTrue(exporterName, partition.contains(".ds=2016-01-01/hr=03,"));
+			assertEquals(exporterName, 6 + 3, nbrPartitionsFetched.get());
+
+			// db_0002 with its 4 Tables and 12 Partitions, db_0000.tbl_00003 with its 3 Partitions, and the first
+			// Partition of the 7 remaining Tables
+			assertEquals(exporterName, 1 + 1 + 4 + 12 + 1 + 3 + 7, deletions.size());
+			assertTrue(exporterName, deletions.contains("DB,db_0002"));
+			assertTrue(exporterName, deletions.contains("TBL,db_0002.tbl_00000"));
+			assertTrue(exporterName, deletions.contains("TBL,db_0000.tbl_00003"));
+			assertTrue(exporterName, deletions.contains("PART,db_0000.tbl_00003.ds=2016-01-01/hr=01"));
+			assertTrue(exporterName, deletions.contains("PART,db_0001.tbl_00002.ds=2016-01-01/hr=00"));
+		}
+	}
+
+	@Test
+	public void valPartitionExport() throws IOException {
+		nbrPartitionsPerTable = 30;
+		partitionPageSize = 7;
+		File outputDir = outputFolder.newFolder("partitions");
+		export(outputDir, 1, 7, 1);
+
+		List<String> columns = readLines(new File(outputDir, "HiveMetastoreColumns.csv"));
+		List<String> partitions = readLines(new File(outputDir, "HiveMetastorePartitions.csv"));
+
+		assertEquals(1 + 3 * 20 * (5 + 2), columns.size());
+		assertEquals("PKEY,db_0000.tbl_00000.ds,ds,day of the load,db_0000.tbl_00000,string", columns.get(6));
+		assertEquals(1 + 3 * 20 * 30, partitions.size());
+		assertEquals("type,id,name,description,parent,locationUri,createTime", partitions.get(0));
+		assertEquals("PART,db_0000.tbl_00000.ds=2016-01-01/hr=00,ds=2016-01-01/hr=00,,db_0000.tbl_00000," +
+				"hdfs://synthetic/apps/hive/warehouse/db_0000.db/tbl_00000/ds=2016-01-01/hr=00,1451606400",
+				partitions.get(1));
+		assertEquals("ds=2016-01-02/hr=05", partitions.get(30).split(",")[2]);
+	}
+
+	@Test
+	public void valPartitionedParallelAndPipelinedExportsMatchSequential() throws IOException {
+		nbrPartitionsPerTable = 30;
+		partitionPageSize = 7;
+		List<String> sequential = export(outputFolder.newFolder("sequential"), 1, 1, 1);
+		List<String> parallel = export(outputFolder.newFolder("parallel"), 2, 7, 4);
+		List<String> pipelined = export(outputFolder.newFolder("pipelined"), 2, 3, 3, 2);
+
+		Collections.sort(sequential);
+		Collections.sort(parallel);
+		Collections.sort(pipelined);
+		assertEquals(sequential, parallel);
+		assertEquals(sequential, pipelined);
+	}
+
+	@Test
+	public void valCompressedPartsMatchSequential() throws IOException {
+		List<String> sequential = export(outputFolder.newFolder("sequential"), 1, 1, 1);
+		File outputDir = outputFolder.newFolder("parts");
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		metastoreReaderProperties.setProperty("output_compression", "gzip");
+		metastoreReaderProperties.setProperty("output_compression_threads", "2");
+		metastoreReaderProperties.setProperty("output_part_size", "1000");
+		export(metastoreReaderProperties, 2, 3, 3, 2);
+
+		List<String> manifest = readLines(new File(outputDir, "HiveMetastoreManifest.csv"));
+		List<String> parts = new ArrayList<String>();
+		String[] headers = { sequential.get(0), sequential.get(4), sequential.get(65), sequential.get(366) };
+		String[] outputs = { "database", "table", "column", "partition" };
+
+		assertEquals("output,part,file,uncompressedSize,fileSize", manifest.get(0));
+		assertEquals("database,1,HiveMetastoreDatabases-00001.csv.gz", manifest.get(1).substring(0, 46));
+
+		for(String entry : manifest.subList(1, manifest.size())) {
+			String[] fields = entry.split(",");
+			int output = Arrays.asList(outputs).indexOf(fields[0]);
+			File partFile = new File(outputDir, fields[2]);
+			List<String> lines = readGzipLines(partFile);
+
+			assertEquals(partFile.length(), Long.parseLong(fields[4]));
+			assertEquals(headers[output], lines.get(0));
+			parts.addAll(lines.subList(1, lines.size()));
+		}
+
+		List<String> expected = new ArrayList<String>(sequential);
+		expected.removeAll(Arrays.asList(headers));
+		Collections.sort(expected);
+		Collections.sort(parts);
+		assertEquals(expected, parts);
+		assertTrue(manifest.size() > 1 + 3);
+	}
+
+	private static List<String> readGzipLines(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new FileInputStream(file)), Charset.defaultCharset()));
+		List<String> lines = new ArrayList<String>();
+
+		try {
+			for(String line = reader.readLine(); line != null; line = reader.readLine())
+				lines.add(line);
+		} finally {
+			reader.close();
+		}
+
+		return lines;
+	}
+}
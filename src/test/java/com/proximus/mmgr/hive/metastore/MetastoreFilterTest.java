@@ -0,0 +1,114 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.junit.Test;
+
+public class MetastoreFilterTest {
+
+	@Test
+	public void valHivePatterns() {
+		assertTrue(MetastoreFilter.compile("sales_*|finance").matcher("SALES_EU").matches());
+		assertTrue(MetastoreFilter.compile("sales_*|finance").matcher("finance").matches());
+		assertFalse(MetastoreFilter.compile("sales_*|finance").matcher("finance_eu").matches());
+		assertFalse(MetastoreFilter.compile("sales_*").matcher("presales_eu").matches());
+	}
+
+	@Test(expected = InvalidParameterException.class)
+	public void valInvalidPattern() {
+		new MetastoreFilter("sales_(", null, null, null, null, false);
+	}
+
+	@Test
+	public void valEmptyFilter() throws Exception {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(3, 20, 5);
+		MetastoreFilter filter = MetastoreFilter.create(new Properties());
+
+		assertTrue(filter.isEmpty());
+		assertEquals(3, filter.listDatabases(source).size());
+		assertEquals(20, filter.listTables(source, "db_0000").size());
+		assertTrue(filter.isTableInScope("db_0000", "tbl_00000"));
+	}
+
+	@Test
+	public void valServerAndClientPruning() throws Exception {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(3, 20, 5);
+		MetastoreFilter filter = new MetastoreFilter("db_0000|db_0002", "db_0002", "tbl_0000*", "tbl_00003", null,
+				true);
+
+		assertEquals(Collections.singletonList("db_0000"), filter.listDatabases(source));
+		List<String> tables = filter.listTables(source, "db_0000");
+
+		assertEquals(9, tables.size());
+		assertFalse(tables.contains("tbl_00003"));
+		assertEquals(1, filter.getNbrDatabasesServerPruned());
+		assertEquals(1, filter.getNbrDatabasesClientPruned());
+		assertEquals(10, filter.getNbrTablesServerPruned());
+		assertEquals(1, filter.getNbrTablesClientPruned());
+		assertFalse(filter.isTableInScope("db_0000", "tbl_00003"));
+		assertFalse(filter.isTableInScope("db_0001", "tbl_00000"));
+		assertTrue(filter.isTableInScope("db_0000", "tbl_00000"));
+	}
+
+	@Test
+	public void valServerPrunedNotCounted() throws Exception {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(3, 20, 5);
+		MetastoreFilter filter = new MetastoreFilter(null, null, "tbl_0001*", null, null, false);
+
+		assertEquals(10, filter.listTables(source, "db_0000").size());
+		assertEquals(0, filter.getNbrTablesServerPruned());
+		// a single getTables call, all the names are not listed
+		assertEquals(1, source.getNbrCalls());
+	}
+
+	@Test
+	public void valTableFilter() throws Exception {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(1, 20, 5);
+		MetastoreFilter modified = new MetastoreFilter(null, null, "tbl_0000*", null,
+				"hive_filter_field_params__transient_lastDdlTime >= \"1451606400\"", false);
+		MetastoreFilter notModified = new MetastoreFilter(null, null, null, null,
+				"hive_filter_field_params__transient_lastDdlTime > \"1451606400\"", false);
+
+		assertEquals(10, modified.listTables(source, "db_0000").size());
+		assertEquals(10, modified.getNbrTablesClientPruned());
+		assertEquals(0, notModified.listTables(source, "db_0000").size());
+		// Tables selected on their attributes cannot be known to be dropped
+		assertFalse(modified.isTableInScope("db_0000", "tbl_00000"));
+	}
+
+	@Test(expected = MetaException.class)
+	public void valUnsupportedTableFilter() throws Exception {
+		new SyntheticMetastoreSource(1, 20, 5).listTableNamesByFilter("db_0000", "tableName like \"tbl\"", (short) -1);
+	}
+
+	@Test
+	public void valAcceptRows() {
+		MetastoreFilter filter = new MetastoreFilter(null, "db_0001", null, "tbl_00003|tmp_*", null, false);
+
+		assertTrue(filter.acceptDatabase("db_0000"));
+		assertFalse(filter.acceptDatabase("db_0001"));
+		assertTrue(filter.acceptTable("db_0000", "tbl_00000"));
+		assertFalse(filter.acceptTable("db_0000", "TMP_load"));
+		assertFalse(filter.acceptTable("db_0001", "tbl_00000"));
+		assertEquals(1, filter.getNbrDatabasesClientPruned());
+		assertEquals(2, filter.getNbrTablesClientPruned());
+		assertEquals(Arrays.asList("db_0000", "db_0002"), listDatabases(filter));
+	}
+
+	private static List<String> listDatabases(MetastoreFilter filter) {
+		try {
+			return filter.listDatabases(new SyntheticMetastoreSource(3, 1, 1));
+		} catch (Exception exception) {
+			throw new AssertionError(exception);
+		}
+	}
+}
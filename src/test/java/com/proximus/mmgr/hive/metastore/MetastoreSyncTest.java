@@ -0,0 +1,277 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.LogManager;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetastoreSyncTest {
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	private static final String DB_0 = SyntheticMetastoreSource.databaseName(0);
+	private static final String DB_1 = SyntheticMetastoreSource.databaseName(1);
+
+	/**
+	 * A synthetic catalog of 2 Databases of 8 Tables, of which only the first 5 exist until they are created, with a
+	 * local notification log.
+	 */
+	private static class EventLogSource extends SyntheticMetastoreSource {
+		private final Set<String> databases = new HashSet<String>(Arrays.asList(DB_0, DB_1));
+		private final Set<String> tables = new HashSet<String>();
+		private final List<NotificationEvent> log = new ArrayList<NotificationEvent>();
+		private final Map<String, Integer> nbrFetches = new HashMap<String, Integer>();
+		private long firstEventId = 1;
+
+		EventLogSource() {
+			super(2, 8, 3);
+			setViewFrequency(0);
+
+			for(String dbName : databases)
+				for(int i = 0; i < 5; i++)
+					tables.add(dbName + "." + tableName(i));
+		}
+
+		void createTable(String dbName, String tableName) {
+			tables.add(dbName + "." + tableName);
+			logEvent(MetastoreSync.CREATE_TABLE_EVENT, dbName, tableName);
+		}
+
+		void dropTable(String dbName, String tableName) {
+			tables.remove(dbName + "." + tableName);
+			logEvent(MetastoreSync.DROP_TABLE_EVENT, dbName, tableName);
+		}
+
+		void renameTable(String dbName, String tableName, String newName) {
+			tables.remove(dbName + "." + tableName);
+			tables.add(dbName + "." + newName);
+			// like the Hive 1.2 listener, the event holds the name before the rename
+			logEvent(MetastoreSync.ALTER_TABLE_EVENT, dbName, tableName);
+		}
+
+		void dropDatabase(String dbName) {
+			databases.remove(dbName);
+			logEvent(MetastoreSync.DROP_DATABASE_EVENT, dbName, null);
+		}
+
+		void logEvent(String type, String dbName, String tableName) {
+			NotificationEvent event = new NotificationEvent(firstEventId + log.size(), 0, type, "{}");
+			event.setDbName(dbName);
+			event.setTableName(tableName);
+			log.add(event);
+		}
+
+		void purge(int nbrEvents) {
+			log.subList(0, nbrEvents).clear();
+			firstEventId += nbrEvents;
+		}
+
+		int getNbrFetches(String dbName, String tableName) {
+			Integer count = nbrFetches.get(dbName + "." + tableName);
+			return count == null ? 0 : count;
+		}
+
+		private boolean exists(String dbName, String tableName) {
+			Integer count = nbrFetches.get(dbName + "." + tableName);
+			nbrFetches.put(dbName + "." + tableName, count == null ? 1 : count + 1);
+			return tables.contains(dbName + "." + tableName);
+		}
+
+		@Override
+		public List<String> getAllDatabases() throws TException {
+			List<String> all = new ArrayList<String>(super.getAllDatabases());
+			all.retainAll(databases);
+			return all;
+		}
+
+		@Override
+		public Database getDatabase(String dbName) throws TException {
+			if(!databases.contains(dbName))
+				throw new NoSuchObjectException(dbName + " database not found");
+			return super.getDatabase(dbName);
+		}
+
+		@Override
+		public List<String> getAllTables(String dbName) throws TException {
+			List<String> all = new ArrayList<String>();
+
+			for(String tableName : super.getAllTables(dbName))
+				if(tables.contains(dbName + "." + tableName))
+					all.add(tableName);
+
+			return all;
+		}
+
+		@Override
+		public Table getTable(String dbName, String tableName) throws TException {
+			if(!exists(dbName, tableName))
+				throw new NoSuchObjectException(dbName + "." + tableName + " table not found");
+			return super.getTable(dbName, tableName);
+		}
+
+		@Override
+		public List<Table> getTableObjectsByName(String dbName, List<String> tableNames) throws TException {
+			List<String> existing = new ArrayList<String>();
+
+			for(String tableName : tableNames)
+				if(exists(dbName, tableName))
+					existing.add(tableName);
+
+			return super.getTableObjectsByName(dbName, existing);
+		}
+
+		@Override
+		public long getCurrentNotificationEventId() {
+			return firstEventId + log.size() - 1;
+		}
+
+		@Override
+		public List<NotificationEvent> getNextNotification(long lastEventId, int maxEvents) {
+			List<NotificationEvent> events = new ArrayList<NotificationEvent>();
+
+			for(NotificationEvent event : log)
+				if(event.getEventId() > lastEventId && events.size() < maxEvents)
+					events.add(event);
+
+			return events;
+		}
+	}
+
+	private File outputDir;
+	private Properties metastoreReaderProperties;
+	private EventLogSource source;
+	private MetastoreSourcePool sourcePool;
+
+	@Before
+	public void setUp() {
+		LogManager.getLogManager().reset();
+		outputDir = outputFolder.getRoot();
+		metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		metastoreReaderProperties.setProperty("sync_event_batch_size", "3");
+		source = new EventLogSource();
+		sourcePool = new MetastoreSourcePool(Collections.singletonList(source));
+	}
+
+	private List<String> readLines(String fileName) throws IOException {
+		return Files.readAllLines(new File(outputDir, fileName).toPath(), Charset.defaultCharset());
+	}
+
+	private static List<String> ids(List<String> records, int field) {
+		List<String> ids = new ArrayList<String>();
+
+		for(String record : records.subList(1, records.size()))
+			ids.add(record.split(",")[field]);
+
+		Collections.sort(ids);
+		return ids;
+	}
+
+	@Test
+	public void valCoalescedEvents() throws Exception {
+		MetastoreSync sync = new MetastoreSync(metastoreReaderProperties, sourcePool, new ExportMetrics());
+		String tbl1 = SyntheticMetastoreSource.tableName(1);
+		String tbl5 = SyntheticMetastoreSource.tableName(5);
+		String tbl6 = SyntheticMetastoreSource.tableName(6);
+
+		// the first sync runs a full export
+		source.logEvent(MetastoreSync.CREATE_DATABASE_EVENT, DB_0, null);
+		assertEquals(0, sync.sync());
+		assertEquals(1, sync.getLastEventId());
+		assertEquals(5, sync.getCatalog().get(DB_0).size());
+		assertEquals(11, readLines("HiveMetastoreTables.csv").size());
+
+		for(int i = 0; i < 3; i++)
+			source.logEvent(MetastoreSync.ALTER_TABLE_EVENT, DB_0, tbl1);
+		source.createTable(DB_0, tbl5);
+		source.dropTable(DB_0, SyntheticMetastoreSource.tableName(2));
+		source.createTable(DB_1, tbl6);
+		source.dropTable(DB_1, tbl6);
+		source.logEvent("INSERT", DB_0, tbl1);
+		int nbrFetches = source.getNbrFetches(DB_0, tbl1);
+
+		assertEquals(8, sync.sync());
+		assertEquals(9, sync.getLastEventId());
+		// 3 alterations of a Table, retrieved once
+		assertEquals(nbrFetches + 1, source.getNbrFetches(DB_0, tbl1));
+		// a Table created and dropped, never retrieved
+		assertEquals(0, source.getNbrFetches(DB_1, tbl6));
+
+		List<String> tableIds = ids(readLines("HiveMetastoreTables_delta_9.csv"), 1);
+		assertEquals(Arrays.asList(DB_0 + "." + tbl1, DB_0 + "." + tbl5), tableIds);
+		assertEquals(1 + 2 * 3, readLines("HiveMetastoreColumns_delta_9.csv").size());
+		assertEquals(Arrays.asList("type,id", "TBL," + DB_0 + "." + SyntheticMetastoreSource.tableName(2)),
+				readLines("HiveMetastoreDeletions_delta_9.csv"));
+
+		// the state is reloaded by the next run
+		MetastoreSync reloaded = new MetastoreSync(metastoreReaderProperties, sourcePool, new ExportMetrics());
+		assertEquals(9, reloaded.getLastEventId());
+		assertEquals(sync.getCatalog(), reloaded.getCatalog());
+		assertTrue(reloaded.getCatalog().get(DB_0).contains(tbl5));
+		assertEquals(0, reloaded.sync());
+	}
+
+	@Test
+	public void valRenamedTableAndDroppedDatabase() throws Exception {
+		MetastoreSync sync = new MetastoreSync(metastoreReaderProperties, sourcePool, new ExportMetrics());
+		String tbl3 = SyntheticMetastoreSource.tableName(3);
+		String tbl7 = SyntheticMetastoreSource.tableName(7);
+		sync.sync();
+
+		source.renameTable(DB_0, tbl3, tbl7);
+		source.dropDatabase(DB_1);
+
+		assertEquals(2, sync.sync());
+		assertEquals(Collections.singleton(DB_0), sync.getCatalog().keySet());
+		assertFalse(sync.getCatalog().get(DB_0).contains(tbl3));
+		assertTrue(sync.getCatalog().get(DB_0).contains(tbl7));
+		assertEquals(Collections.singletonList(DB_0 + "." + tbl7), ids(readLines("HiveMetastoreTables_delta_2.csv"), 1));
+
+		List<String> deletions = readLines("HiveMetastoreDeletions_delta_2.csv");
+		assertEquals(1 + 1 + 5 + 1, deletions.size());
+		assertTrue(deletions.contains("TBL," + DB_0 + "." + tbl3));
+		assertTrue(deletions.contains("DB," + DB_1));
+	}
+
+	@Test
+	public void valPurgedEventsRunFullExport() throws Exception {
+		MetastoreSync sync = new MetastoreSync(metastoreReaderProperties, sourcePool, new ExportMetrics());
+		source.logEvent(MetastoreSync.CREATE_DATABASE_EVENT, DB_0, null);
+		sync.sync();
+		assertTrue(new File(outputDir, "HiveMetastoreTables.csv").delete());
+
+		source.createTable(DB_0, SyntheticMetastoreSource.tableName(5));
+		source.createTable(DB_0, SyntheticMetastoreSource.tableName(6));
+		source.purge(2);
+
+		assertEquals(0, sync.sync());
+		assertEquals(3, sync.getLastEventId());
+		assertEquals(7, sync.getCatalog().get(DB_0).size());
+		assertEquals(1 + 7 + 5, readLines("HiveMetastoreTables.csv").size());
+		assertFalse(new File(outputDir, "HiveMetastoreTables_delta_3.csv").exists());
+	}
+}
@@ -0,0 +1,67 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.junit.Test;
+
+import com.proximus.mmgr.hive.metastore.ElementAttributes.PartitionAttributes;
+
+public class PartitionElementTest {
+
+	private static Table partitionedTable() {
+		Table tbl = new Table();
+		tbl.setDbName("db");
+		tbl.setTableName("table");
+		tbl.setPartitionKeys(Arrays.asList(new FieldSchema("ds", "string", null), new FieldSchema("hr", "int", null)));
+		return tbl;
+	}
+
+	private static Partition partition(String ds, String hr, String location) {
+		Partition partition = new Partition();
+		StorageDescriptor sd = new StorageDescriptor();
+		sd.setLocation(location);
+		partition.setValues(Arrays.asList(ds, hr));
+		partition.setSd(sd);
+		partition.setCreateTime(1451606400);
+		return partition;
+	}
+
+	@Test
+	public void valEmptyElementHeader() {
+		assertEquals(new PartitionElement().getHeader(), "type,id,name,description,parent,locationUri,createTime");
+	}
+
+	@Test
+	public void valRecord() throws MetaException {
+		PartitionElement partElem = new PartitionElement(partitionedTable(), partition("2016-01-01", "00", "/p"));
+		assertEquals(partElem.getRecord(),
+				"PART,db.table.ds=2016-01-01/hr=00,ds=2016-01-01/hr=00,,db.table,/p,1451606400");
+	}
+
+	@Test
+	public void valCursor() throws MetaException {
+		PartitionElement partElem = new PartitionElement();
+		partElem.setTable(partitionedTable());
+		partElem.setPartition(partition("2016-01-01", "00", null));
+		assertEquals(partElem.getAttribute(PartitionAttributes.id), "db.table.ds=2016-01-01/hr=00");
+		partElem.setPartition(partition("2016-01-02", "23", null));
+		assertEquals(partElem.getRecord(), "PART,db.table.ds=2016-01-02/hr=23,ds=2016-01-02/hr=23,,db.table,,1451606400");
+		partElem.setTable("db2", "other");
+		partElem.setPartition("country=BE", "belgian, customers", "/be", 0);
+		assertEquals(partElem.getRecord(), "PART,db2.other.country=BE,country=BE,\"belgian, customers\",db2.other,/be,0");
+	}
+
+	@Test(expected = MetaException.class)
+	public void valValuesNotMatchingKeys() throws MetaException {
+		Partition partition = partition("2016-01-01", "00", null);
+		partition.setValues(Arrays.asList("2016-01-01"));
+		new PartitionElement(partitionedTable(), partition);
+	}
+}
@@ -0,0 +1,241 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.LogManager;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResilientMetastoreSourceTest {
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	/**
+	 * A synthetic catalog failing its calls with the queued faults, or every <i>failureFrequency</i>th call with a
+	 * transport failure. A null fault blocks the call until it is interrupted.
+	 */
+	private static class FaultInjectingSource extends SyntheticMetastoreSource {
+		private final LinkedList<TException> faults = new LinkedList<TException>();
+		private int failureFrequency;
+		private int nbrFaultyCalls;
+		private int nbrCloses;
+
+		FaultInjectingSource() {
+			super(3, 20, 5);
+			setViewFrequency(0);
+			setNbrPartitionsPerTable(3);
+		}
+
+		private synchronized void injectFault() throws TException {
+			if(failureFrequency > 0 && ++nbrFaultyCalls % failureFrequency == 0)
+				throw new TTransportException("Connection reset");
+
+			if(faults.isEmpty())
+				return;
+
+			TException fault = faults.poll();
+			if(fault != null)
+				throw fault;
+
+			try {
+				wait();
+			} catch (InterruptedException interruptedException) {
+				throw new TTransportException("Read interrupted");
+			}
+		}
+
+		@Override
+		public List<String> getAllDatabases() throws TException {
+			injectFault();
+			return super.getAllDatabases();
+		}
+
+		@Override
+		public Database getDatabase(String dbName) throws TException {
+			injectFault();
+			return super.getDatabase(dbName);
+		}
+
+		@Override
+		public List<Table> getTableObjectsByName(String dbName, List<String> tableNames) throws TException {
+			injectFault();
+			return super.getTableObjectsByName(dbName, tableNames);
+		}
+
+		@Override
+		public List<String> listPartitionNames(String dbName, String tableName, short maxPartitions)
+				throws TException {
+			injectFault();
+			return super.listPartitionNames(dbName, tableName, maxPartitions);
+		}
+
+		@Override
+		public synchronized void close() {
+			nbrCloses++;
+		}
+	}
+
+	private FaultInjectingSource faultySource;
+	private ResilientMetastoreSource.CallStatistics statistics;
+	private int nbrOpens;
+
+	@Before
+	public void setUp() {
+		LogManager.getLogManager().reset();
+		faultySource = new FaultInjectingSource();
+		statistics = new ResilientMetastoreSource.CallStatistics();
+		nbrOpens = 0;
+	}
+
+	private ResilientMetastoreSource resilientSource(int maxRetries, long callTimeoutMillis) {
+		return new ResilientMetastoreSource(faultySource, new ResilientMetastoreSource.SourceFactory() {
+			@Override
+			public MetastoreSource openSource() {
+				nbrOpens++;
+				return faultySource;
+			}
+		}, new RetryPolicy(maxRetries, 1, 4, callTimeoutMillis), statistics);
+	}
+
+	@Test
+	public void valRetriedAfterTransportFailures() throws TException {
+		faultySource.faults.add(new TTransportException("Connection reset"));
+		faultySource.faults.add(new MetaException("Could not connect to meta store: " +
+				"org.apache.thrift.transport.TTransportException: Connection refused"));
+
+		assertEquals(3, resilientSource(3, 0).getAllDatabases().size());
+		assertEquals(1, statistics.getNbrCalls());
+		assertEquals(2, statistics.getNbrRetries());
+		assertEquals(2, statistics.getNbrReconnects());
+		assertEquals(2, faultySource.nbrCloses);
+		assertEquals(2, nbrOpens);
+		assertEquals(0, statistics.getNbrFailedCalls());
+	}
+
+	@Test
+	public void valTransientMetaExceptionRetriedOnSameConnection() throws TException {
+		faultySource.faults.add(new MetaException("javax.jdo.JDODataStoreException: Communications link failure"));
+
+		assertEquals("db_0001", resilientSource(3, 0).getDatabase("db_0001").getName());
+		assertEquals(1, statistics.getNbrRetries());
+		assertEquals(0, statistics.getNbrReconnects());
+		assertEquals(0, nbrOpens);
+	}
+
+	@Test
+	public void valFatalFailureNotRetried() throws TException {
+		faultySource.faults.add(new NoSuchObjectException("db_0001 table not found"));
+		ResilientMetastoreSource source = resilientSource(3, 0);
+
+		try {
+			source.getTableObjectsByName("db_0001", Collections.singletonList("tbl_00000"));
+			fail("NoSuchObjectException expected");
+		} catch (NoSuchObjectException noSuchObjectException) {
+			assertEquals(0, statistics.getNbrRetries());
+			assertEquals(1, statistics.getNbrFailedCalls());
+		}
+
+		// the connection is kept
+		assertEquals(1, source.getTableObjectsByName("db_0001", Collections.singletonList("tbl_00000")).size());
+		assertEquals(0, nbrOpens);
+	}
+
+	@Test
+	public void valRetriesExhausted() throws TException {
+		for(int i = 0; i < 3; i++)
+			faultySource.faults.add(new TTransportException("Connection reset"));
+		ResilientMetastoreSource source = resilientSource(2, 0);
+
+		try {
+			source.getAllDatabases();
+			fail("TTransportException expected");
+		} catch (TTransportException transportException) {
+			assertEquals(2, statistics.getNbrRetries());
+			assertEquals(1, statistics.getNbrFailedCalls());
+		}
+
+		// the next call runs on a new connection
+		assertEquals(3, source.getAllDatabases().size());
+		assertEquals(3, nbrOpens);
+	}
+
+	@Test
+	public void valCallTimeout() throws TException {
+		faultySource.faults.add(null);
+		ResilientMetastoreSource source = resilientSource(1, 200);
+
+		assertEquals(3, source.getAllDatabases().size());
+		assertEquals(1, statistics.getNbrTimeouts());
+		assertEquals(1, statistics.getNbrReconnects());
+		assertTrue(statistics.getExtraLatencyMillis() >= 200);
+		source.close();
+	}
+
+	@Test
+	public void valBackoffDelays() {
+		RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0);
+
+		for(int retry = 0; retry < 10; retry++) {
+			long maxDelay = Math.min(1000, 100L << retry);
+			long delay = policy.getDelayMillis(retry);
+			assertTrue(delay >= maxDelay / 2 && delay <= maxDelay);
+		}
+
+		assertFalse(policy.isRetryable(new MetaException("Invalid partition key & values")));
+		assertFalse(policy.needsReconnect(new MetaException("javax.jdo.JDOException: deadlock")));
+	}
+
+	@Test
+	public void valExportWithTransportFailures() throws IOException {
+		faultySource.failureFrequency = 7;
+		List<String> reference = export(new FaultInjectingSource(), "reference");
+
+		assertEquals(reference, export(resilientSource(3, 0), "resilient"));
+		assertTrue(statistics.getNbrRetries() > 10);
+		assertEquals(0, statistics.getNbrFailedCalls());
+	}
+
+	private List<String> export(MetastoreSource source, String folder) throws IOException {
+		File outputDir = outputFolder.newFolder(folder);
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.singletonList(source));
+		MetastoreExporter exporter = new MetastoreExporter(bufferedWriters, sourcePool, 7);
+		exporter.export();
+		bufferedWriters.closeBufferedWriters();
+		sourcePool.close();
+		assertEquals(0, exporter.getNbrFailures());
+
+		List<String> lines = new ArrayList<String>();
+		String[] files = { "HiveMetastoreDatabases.csv", "HiveMetastoreTables.csv", "HiveMetastoreColumns.csv",
+				"HiveMetastorePartitions.csv" };
+
+		for(String file : files)
+			lines.addAll(Files.readAllLines(new File(outputDir, file).toPath(), Charset.defaultCharset()));
+
+		return lines;
+	}
+}
@@ -0,0 +1,140 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.LogManager;
+
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotStoreTest {
+	private static final String[] OUTPUT_FILES = { "HiveMetastoreDatabases.csv", "HiveMetastoreTables.csv",
+		"HiveMetastoreColumns.csv", "HiveMetastorePartitions.csv" };
+
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	private SyntheticMetastoreSource createSource() {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(2, 12, 4);
+		source.setViewFrequency(4);
+		source.setViewTextLength(1000);
+		source.setNbrPartitionsPerTable(5);
+		return source;
+	}
+
+	private File export(File outputDir, File storeFile, int segmentShift) throws IOException {
+		LogManager.getLogManager().reset();
+
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputDir.getPath());
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.singletonList(createSource()));
+		SnapshotStore.Writer snapshotStore = new SnapshotStore.Writer(storeFile, segmentShift);
+
+		MetastoreExporter exporter = new MetastoreExporter(bufferedWriters, sourcePool, 5);
+		exporter.setPartitionPageSize(2);
+		exporter.setSnapshotStore(snapshotStore);
+		exporter.export();
+		bufferedWriters.closeBufferedWriters();
+		sourcePool.close();
+		snapshotStore.close(exporter.getNbrFailures() == 0);
+
+		return storeFile;
+	}
+
+	private static List<String> sortedLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>(Files.readAllLines(file.toPath(), Charset.forName("UTF-8")));
+		Collections.sort(lines);
+		return lines;
+	}
+
+	@Test
+	public void valLookups() throws IOException, TException {
+		File storeFile = export(outputFolder.newFolder("export"), new File(outputFolder.getRoot(), "store.bin"),
+				SnapshotStore.DEFAULT_SEGMENT_SHIFT);
+		SnapshotStore store = SnapshotStore.open(storeFile);
+		SyntheticMetastoreSource source = createSource();
+
+		assertEquals(2, store.getNbrDatabases());
+		assertEquals(24, store.getNbrTables());
+		assertEquals(18 * 5, store.getNbrPartitions());
+
+		assertEquals(new DatabaseElement(source.getDatabase("db_0001")).getRecord(),
+				store.getDatabase("db_0001").getRecord());
+
+		Table table = source.getTable("db_0001", SyntheticMetastoreSource.tableName(5));
+		assertEquals(new TableElement(table).getRecord(),
+				store.getTable("db_0001", SyntheticMetastoreSource.tableName(5)).getRecord());
+
+		List<ColumnElement> columns = store.getColumns("db_0001", SyntheticMetastoreSource.tableName(5));
+		assertEquals(table.getSd().getColsSize() + table.getPartitionKeysSize(), columns.size());
+		assertEquals(new ColumnElement(table, table.getSd().getCols().get(2)).getRecord(),
+				columns.get(2).getRecord());
+
+		assertNull(store.getDatabase("db_0002"));
+		assertNull(store.getTable("db_0001", "missing"));
+		assertTrue(store.getColumns("db_0001", "missing").isEmpty());
+	}
+
+	@Test
+	public void valCsvRegeneratedFromStore() throws IOException {
+		File exportDir = outputFolder.newFolder("export");
+		// segments of 4 KB, so that records are padded to the next segment
+		File storeFile = export(exportDir, new File(outputFolder.getRoot(), "store.bin"), 12);
+		assertTrue(storeFile.length() > 4 << 12);
+
+		File regeneratedDir = outputFolder.newFolder("regenerated");
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", regeneratedDir.getPath());
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		SnapshotStore.open(storeFile).writeCsv(bufferedWriters);
+		bufferedWriters.closeBufferedWriters();
+
+		for(String outputFile : OUTPUT_FILES)
+			assertEquals(outputFile, sortedLines(new File(exportDir, outputFile)),
+					sortedLines(new File(regeneratedDir, outputFile)));
+
+		List<String> tables = Files.readAllLines(new File(regeneratedDir, OUTPUT_FILES[1]).toPath(),
+				Charset.forName("UTF-8"));
+		assertTrue(tables.get(1).startsWith("TBL,db_0000." + SyntheticMetastoreSource.tableName(0) + ","));
+	}
+
+	@Test
+	public void valDiscardedStore() throws IOException {
+		File storeFile = new File(outputFolder.getRoot(), "store.bin");
+		SnapshotStore.Writer snapshotStore = new SnapshotStore.Writer(storeFile);
+		snapshotStore.addDatabase(new DatabaseElement());
+		snapshotStore.close(false);
+
+		assertFalse(storeFile.exists());
+		assertFalse(new File(storeFile.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void valUnsavedStoreDoesNotFail() throws IOException {
+		// a directory that cannot be replaced by the store
+		File storeFile = outputFolder.newFolder("store.bin");
+		assertTrue(new File(storeFile, "kept").createNewFile());
+
+		SnapshotStore.Writer snapshotStore = new SnapshotStore.Writer(storeFile);
+		snapshotStore.addDatabase(new DatabaseElement());
+
+		assertFalse(snapshotStore.close(true));
+		assertTrue(new File(storeFile, "kept").exists());
+		assertFalse(new File(storeFile.getPath() + ".tmp").exists());
+	}
+}
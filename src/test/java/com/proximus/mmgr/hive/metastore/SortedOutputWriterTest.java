@@ -0,0 +1,163 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.LogManager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.proximus.mmgr.CsvReader;
+
+public class SortedOutputWriterTest {
+	private static final String[] OUTPUT_FILES = { "HiveMetastoreDatabases.csv", "HiveMetastoreTables.csv",
+		"HiveMetastoreColumns.csv", "HiveMetastorePartitions.csv" };
+
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	private static ExportMetrics export(Properties metastoreReaderProperties, int nbrThreads) throws IOException {
+		LogManager.getLogManager().reset();
+
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(3, 40, 5);
+		source.setViewFrequency(4);
+		source.setNbrPartitionsPerTable(3);
+		ExportMetrics metrics = new ExportMetrics();
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		bufferedWriters.setMetrics(metrics);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.<MetastoreSource>singletonList(source));
+		new MetastoreExporter(bufferedWriters, sourcePool, nbrThreads).export();
+		bufferedWriters.closeBufferedWriters();
+		sourcePool.close();
+
+		return metrics;
+	}
+
+	private static List<String> readRecords(File file) throws IOException {
+		CsvReader in = new CsvReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), ',');
+		List<String> records = new ArrayList<String>();
+		String record;
+
+		while((record = in.readRecord()) != null)
+			records.add(record);
+
+		in.close();
+		return records;
+	}
+
+	@Test
+	public void valRecordsSortedById() throws IOException {
+		File sortDir = outputFolder.newFolder("sort");
+		Properties sortedProperties = new Properties();
+		sortedProperties.setProperty("metastore_output_dir", outputFolder.newFolder("sorted").getPath());
+		sortedProperties.setProperty("output_sink", "channel");
+		sortedProperties.setProperty("output_sorted", "true");
+		// 1 MB shared by the 4 outputs, so that the view records are spilled in several runs
+		sortedProperties.setProperty("sort_memory_mb", "1");
+		sortedProperties.setProperty("sort_threads", "2");
+		sortedProperties.setProperty("sort_tmp_dir", sortDir.getPath());
+		ExportMetrics metrics = export(sortedProperties, 4);
+
+		Properties unsortedProperties = new Properties();
+		unsortedProperties.setProperty("metastore_output_dir", outputFolder.newFolder("unsorted").getPath());
+		unsortedProperties.setProperty("output_sink", "channel");
+		export(unsortedProperties, 1);
+
+		for(String outputFile : OUTPUT_FILES) {
+			List<String> sorted = readRecords(new File(sortedProperties.getProperty("metastore_output_dir"),
+					outputFile));
+			List<String> unsorted = readRecords(new File(unsortedProperties.getProperty("metastore_output_dir"),
+					outputFile));
+			assertEquals(unsorted.get(0), sorted.get(0));
+
+			List<String> ids = new ArrayList<String>();
+			for(String record : sorted.subList(1, sorted.size()))
+				ids.add(CsvReader.parseFields(record, ',')[1]);
+			List<String> sortedIds = new ArrayList<String>(ids);
+			Collections.sort(sortedIds);
+			assertEquals(outputFile, sortedIds, ids);
+
+			Collections.sort(sorted);
+			Collections.sort(unsorted);
+			assertEquals(outputFile, unsorted, sorted);
+		}
+
+		assertTrue(metrics.getSortedRuns(ExportMetrics.Output.TABLE) > 1);
+		assertTrue(metrics.getSpilledBytes(ExportMetrics.Output.TABLE) > 0);
+		assertEquals(0, sortDir.list().length);
+	}
+
+	@Test
+	public void valRecordsWrittenInPieces() throws IOException {
+		StringWriter out = new StringWriter();
+		SortedOutputWriter writer = new SortedOutputWriter(out,
+				new ExternalSorter(outputFolder.getRoot(), 1 << 20, 1), ',');
+
+		writer.append("type,id,name\nCOL,b.c,\"multi\nline\"\r\n");
+		writer.append("COL,a");
+		writer.append(".z,\"a, b\"\nCOL,a.y,y");
+		writer.close();
+
+		String ls = MetastoreExporter.LINE_SEPARATOR;
+		assertEquals("type,id,name" + ls + "COL,a.y,y" + ls + "COL,a.z,\"a, b\"" + ls + "COL,b.c,\"multi\nline\"" + ls,
+				out.toString());
+	}
+
+	@Test
+	public void valQuotedIdsSortedLikeCsvReader() throws IOException {
+		StringWriter out = new StringWriter();
+		SortedOutputWriter writer = new SortedOutputWriter(out,
+				new ExternalSorter(outputFolder.getRoot(), 1 << 20, 1), ',');
+		// unescaped, the ids are a"c, a, b and a,b: the doubled quote sorts before the letter
+		String[] records = { "TBL,\"a\"\"c\",x", "TBL,a,y", "TBL,b,z", "TBL,\"a,b\",w" };
+
+		writer.append("type,id,name\n");
+		for(String record : records)
+			writer.append(record).append('\n');
+		writer.close();
+
+		List<String> ids = new ArrayList<String>();
+		for(String record : out.toString().split(MetastoreExporter.LINE_SEPARATOR))
+			ids.add(CsvReader.parseFields(record, ',')[1]);
+
+		assertEquals(Arrays.asList("id", "a", "a\"c", "a,b", "b"), ids);
+	}
+
+	@Test
+	public void valSortFailureReportedOnClose() throws IOException {
+		LogManager.getLogManager().reset();
+
+		Properties sortedProperties = new Properties();
+		sortedProperties.setProperty("metastore_output_dir", outputFolder.getRoot().getPath());
+		sortedProperties.setProperty("output_sorted", "true");
+		sortedProperties.setProperty("sort_memory_mb", "1");
+		// the runs cannot be spilled, which is only reported when the sorted outputs are merged
+		sortedProperties.setProperty("sort_tmp_dir", new File(outputFolder.getRoot(), "missing").getPath());
+
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(3, 200, 5);
+		source.setViewFrequency(2);
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(sortedProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Collections.<MetastoreSource>singletonList(source));
+		MetastoreExporter exporter = new MetastoreExporter(bufferedWriters, sourcePool, 10);
+		exporter.export();
+		sourcePool.close();
+
+		assertEquals(0, exporter.getNbrFailures());
+		assertFalse(bufferedWriters.closeBufferedWriters());
+		// the outputs following the failed ones are still written: the header of the empty partitions output
+		assertEquals(1, readRecords(new File(outputFolder.getRoot(), OUTPUT_FILES[3])).size());
+	}
+}
@@ -0,0 +1,150 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.LogManager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.proximus.mmgr.CsvReader;
+
+public class StatisticsExporterTest {
+	private static final int TYPE = StatisticsElement.SCHEMA.indexOf("type");
+	private static final int ID = StatisticsElement.SCHEMA.indexOf("id");
+	private static final int NUM_ROWS = StatisticsElement.SCHEMA.indexOf("numRows");
+
+	@Rule
+	public TemporaryFolder outputFolder = new TemporaryFolder();
+
+	/**
+	 * Exports a catalog of 2 Databases of 6 Tables, one in three being a view, whose statistics are retrieved from a
+	 * source reserved from the pool of the export, so that their calls can be counted.
+	 */
+	private List<String[]> export(SyntheticMetastoreSource statisticsSource, int nbrPartitionsPerTable,
+			ExportMetrics metrics) throws IOException {
+		LogManager.getLogManager().reset();
+
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(2, 6, 20);
+		source.setViewFrequency(3);
+		source.setNbrPartitionsPerTable(nbrPartitionsPerTable);
+		statisticsSource.setViewFrequency(3);
+		statisticsSource.setNbrPartitionsPerTable(nbrPartitionsPerTable);
+
+		Properties metastoreReaderProperties = new Properties();
+		metastoreReaderProperties.setProperty("metastore_output_dir", outputFolder.getRoot().getPath());
+		MetadataBufferedWriters bufferedWriters = new MetadataBufferedWriters(metastoreReaderProperties);
+		MetastoreSourcePool sourcePool = new MetastoreSourcePool(Arrays.<MetastoreSource>asList(statisticsSource,
+				source));
+		MetastoreSourcePool statisticsPool;
+
+		try {
+			statisticsPool = sourcePool.reserveSources(1);
+		} catch (InterruptedException interruptedException) {
+			throw new AssertionError(interruptedException);
+		}
+
+		assertEquals(1, sourcePool.getPoolSize());
+
+		StringWriter out = new StringWriter();
+		StatisticsExporter statisticsExporter = new StatisticsExporter(statisticsPool, out, 2, 2);
+		statisticsExporter.setMetrics(metrics);
+		statisticsExporter.writeHeader();
+
+		MetastoreExporter exporter = new MetastoreExporter(bufferedWriters, sourcePool, 4);
+		exporter.setMetrics(metrics);
+		exporter.setStatisticsExporter(statisticsExporter);
+		exporter.export();
+		assertTrue(statisticsExporter.close());
+		assertEquals(0, statisticsExporter.getNbrFailures());
+		// the reserved source is returned to the pool with the statistics exporter
+		assertEquals(2, sourcePool.getPoolSize());
+		bufferedWriters.closeBufferedWriters();
+		sourcePool.close();
+
+		CsvReader in = new CsvReader(new StringReader(out.toString()), ',');
+		List<String[]> records = new ArrayList<String[]>();
+		String record;
+
+		assertEquals(StatisticsElement.SCHEMA.getHeader(','), in.readRecord());
+		while((record = in.readRecord()) != null)
+			records.add(in.parseFields(record));
+
+		in.close();
+		return records;
+	}
+
+	private static Map<String, Integer> countByType(List<String[]> records) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+
+		for(String[] record : records) {
+			Integer count = counts.get(record[TYPE]);
+			counts.put(record[TYPE], count == null ? 1 : count + 1);
+		}
+
+		return counts;
+	}
+
+	@Test
+	public void valTableColumnStatisticsInOneCall() throws IOException {
+		SyntheticMetastoreSource statisticsSource = new SyntheticMetastoreSource(2, 6, 20);
+		ExportMetrics metrics = new ExportMetrics();
+		List<String[]> records = export(statisticsSource, 0, metrics);
+		Map<String, Integer> counts = countByType(records);
+		Set<String> tableIds = new HashSet<String>();
+
+		for(String[] record : records)
+			if(record[TYPE].equals(TableElement.TABLE_ELEMENT_TYPE))
+				tableIds.add(record[ID]);
+
+		// 4 tables per database, views have no statistics
+		assertEquals(8, tableIds.size());
+		assertTrue(tableIds.contains("db_0000.tbl_00000"));
+		assertTrue(counts.get(ColumnElement.COL_ELEMENT_TYPE) > 8);
+		assertEquals(null, counts.get(PartitionElement.PARTITION_ELEMENT_TYPE));
+		// one getTableColumnStatistics call per table, whatever its number of columns
+		assertEquals(8, statisticsSource.getNbrCalls());
+
+		for(String[] record : records) {
+			if(record[ID].equals("db_0001.tbl_00001"))
+				assertEquals("2000", record[NUM_ROWS]);
+			else if(record[TYPE].equals(ColumnElement.COL_ELEMENT_TYPE))
+				assertTrue(tableIds.contains(record[ID].substring(0, record[ID].lastIndexOf('.'))));
+		}
+
+		assertTrue(metrics.getPhaseNanos(ExportMetrics.Phase.STATISTICS_FETCH) > 0);
+	}
+
+	@Test
+	public void valPartitionColumnStatisticsByPage() throws IOException {
+		SyntheticMetastoreSource statisticsSource = new SyntheticMetastoreSource(2, 6, 20);
+		List<String[]> records = export(statisticsSource, 3, new ExportMetrics());
+		Map<String, Integer> counts = countByType(records);
+
+		assertEquals(8, (int) counts.get(TableElement.TABLE_ELEMENT_TYPE));
+		assertEquals(24, (int) counts.get(PartitionElement.PARTITION_ELEMENT_TYPE));
+		assertEquals(null, counts.get(ColumnElement.COL_ELEMENT_TYPE));
+		assertTrue(counts.get(StatisticsElement.PARTITION_COLUMN_ELEMENT_TYPE) > 24);
+		// per table, one listPartitionNames call and one getPartitionColumnStatistics call per page of 2 partitions
+		assertEquals(8 * 3, statisticsSource.getNbrCalls());
+
+		for(String[] record : records)
+			if(record[TYPE].equals(StatisticsElement.PARTITION_COLUMN_ELEMENT_TYPE))
+				assertTrue(record[ID].matches("db_\\d{4}\\.tbl_\\d{5}\\.ds=\\d{4}-\\d{2}-\\d{2}/hr=\\d{2}\\.col_\\d{3}"));
+			else if(record[TYPE].equals(PartitionElement.PARTITION_ELEMENT_TYPE))
+				assertTrue(record[ID].matches("db_\\d{4}\\.tbl_\\d{5}\\.ds=\\d{4}-\\d{2}-\\d{2}/hr=\\d{2}"));
+	}
+}
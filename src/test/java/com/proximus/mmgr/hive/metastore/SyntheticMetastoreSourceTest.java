@@ -0,0 +1,57 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.junit.Test;
+
+public class SyntheticMetastoreSourceTest {
+
+	@Test
+	public void valCatalogSize() throws Exception {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(4, 30, 12);
+		assertEquals(4, source.getAllDatabases().size());
+		assertEquals(30, source.getAllTables("db_0003").size());
+		assertEquals(12, source.getTable("db_0003", "tbl_00029").getSd().getCols().size());
+		assertEquals(4 * 30 * 12, source.getNbrColumns());
+		assertEquals(3, source.getNbrCalls());
+	}
+
+	@Test
+	public void valDeterministicCatalog() throws Exception {
+		SyntheticMetastoreSource source1 = new SyntheticMetastoreSource(2, 10, 5);
+		SyntheticMetastoreSource source2 = new SyntheticMetastoreSource(2, 10, 5);
+		assertEquals(new TableElement(source1.getTable("db_0001", "tbl_00009")).getRecord(),
+				new TableElement(source2.getTable("db_0001", "tbl_00009")).getRecord());
+	}
+
+	@Test
+	public void valViews() throws Exception {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(1, 10, 5);
+		source.setViewTextLength(500);
+		Table view = source.getTable("db_0000", "tbl_00009");
+		assertEquals("VIRTUAL_VIEW", view.getTableType());
+		assertNotNull(view.getViewOriginalText());
+		assertTrue(view.getViewExpandedText().length() >= 500);
+		assertTrue(view.getViewExpandedText().indexOf('\n') >= 0);
+	}
+
+	@Test
+	public void valTableObjectsByNameSkipsUnknownTables() throws Exception {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(1, 10, 5);
+		List<Table> tables = source.getTableObjectsByName("db_0000", Arrays.asList("tbl_00001", "unknown", "tbl_00099"));
+		assertEquals(1, tables.size());
+	}
+
+	@Test(expected = NoSuchObjectException.class)
+	public void valUnknownDatabase() throws Exception {
+		SyntheticMetastoreSource source = new SyntheticMetastoreSource(1, 10, 5);
+		source.getAllTables("db_0001");
+	}
+}
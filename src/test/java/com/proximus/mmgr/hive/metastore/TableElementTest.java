@@ -66,5 +66,32 @@ public class TableElementTest {
 		assertEquals(tblElem.getRecord(), "TBL,db.view,view,this is a view comment,db,,locationUri,ownerName," +
 				"select * from test,\"select col1, col2 from test\"");
 	}
+	
+	@Test
+	public void valMultiLineViewRecord() {
+		Table tbl = new Table();
+		tbl.setDbName("db");
+		tbl.setTableName("view");
+		tbl.setViewOriginalText("select *\nfrom test\nwhere status = \"active\"");
+
+		TableElement tblElem = new TableElement(tbl);
+		assertEquals(tblElem.getRecord(), "TBL,db.view,view,,db,,,," +
+				"\"select *\nfrom test\nwhere status = \"\"active\"\"\",");
+	}
+	
+	@Test
+	public void valCursor() {
+		Table tbl1 = new Table();
+		tbl1.setDbName("db");
+		tbl1.setTableName("table1");
+		tbl1.putToParameters("comment", "first table");
+		Table tbl2 = new Table();
+		tbl2.setDbName("db");
+		tbl2.setTableName("table2");
+
+		TableElement tblElem = new TableElement(tbl1);
+		tblElem.setTable(tbl2);
+		assertEquals(tblElem.getRecord(), "TBL,db.table2,table2,,db,,,,,");
+	}
 
 }
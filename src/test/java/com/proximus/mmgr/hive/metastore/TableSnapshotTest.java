@@ -0,0 +1,152 @@
+package com.proximus.mmgr.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TableSnapshotTest {
+	@Rule
+	public TemporaryFolder snapshotFolder = new TemporaryFolder();
+
+	private final SyntheticMetastoreSource source = new SyntheticMetastoreSource(1, 3, 5);
+
+	private Table table(int tableIndex) throws TException {
+		return source.getTable("db_0000", SyntheticMetastoreSource.tableName(tableIndex));
+	}
+
+	private TableSnapshot firstExport(File snapshotFile) throws IOException, TException {
+		TableSnapshot snapshot = TableSnapshot.load(snapshotFile);
+		assertTrue(snapshot.update("db_0000", "DB,db_0000,db_0000"));
+		for(int i = 0; i < 3; i++)
+			assertTrue(snapshot.update(table(i)));
+		snapshot.save(snapshotFile, false);
+
+		return snapshot;
+	}
+
+	@Test
+	public void valUnchangedTables() throws IOException, TException {
+		File snapshotFile = new File(snapshotFolder.getRoot(), "snapshot.bin");
+		firstExport(snapshotFile);
+
+		TableSnapshot snapshot = TableSnapshot.load(snapshotFile);
+		assertEquals(4, snapshot.getPreviousSize());
+		assertFalse(snapshot.update("db_0000", "DB,db_0000,db_0000"));
+		assertFalse(snapshot.update(table(0)));
+
+		Table renamedColumn = table(1);
+		renamedColumn.getSd().getCols().get(0).setName("renamed");
+		assertTrue(snapshot.update(renamedColumn));
+
+		Table altered = table(2);
+		altered.getParameters().put("transient_lastDdlTime", "1500000000");
+		assertTrue(snapshot.update(altered));
+
+		assertEquals(0, snapshot.getNbrAdded());
+		assertEquals(2, snapshot.getNbrChanged());
+		assertEquals(2, snapshot.getNbrUnchanged());
+	}
+
+	@Test
+	public void valDeletions() throws IOException, TException {
+		File snapshotFile = new File(snapshotFolder.getRoot(), "snapshot.bin");
+		File deletionFile = new File(snapshotFolder.getRoot(), "deletions.csv");
+		firstExport(snapshotFile);
+
+		TableSnapshot snapshot = TableSnapshot.load(snapshotFile);
+		snapshot.update("db_0000", "DB,db_0000,db_0000");
+		snapshot.update(table(0));
+		snapshot.update(table(2));
+
+		assertEquals(1, snapshot.writeDeletions(deletionFile));
+		assertEquals(Arrays.asList("type,id", "TBL,db_0000.tbl_00001"),
+				Files.readAllLines(deletionFile.toPath(), Charset.defaultCharset()));
+
+		snapshot.save(snapshotFile, false);
+		assertEquals(3, TableSnapshot.load(snapshotFile).getPreviousSize());
+	}
+
+	@Test
+	public void valIncompleteExportKeepsUnseenTables() throws IOException, TException {
+		File snapshotFile = new File(snapshotFolder.getRoot(), "snapshot.bin");
+		firstExport(snapshotFile);
+
+		TableSnapshot snapshot = TableSnapshot.load(snapshotFile);
+		snapshot.update(table(0));
+		snapshot.save(snapshotFile, true);
+
+		snapshot = TableSnapshot.load(snapshotFile);
+		assertEquals(4, snapshot.getPreviousSize());
+		assertFalse(snapshot.update(table(1)));
+	}
+
+	@Test
+	public void valExcludedElementsAreNotDeleted() throws IOException, TException {
+		File snapshotFile = new File(snapshotFolder.getRoot(), "snapshot.bin");
+		File deletionFile = new File(snapshotFolder.getRoot(), "deletions.csv");
+		firstExport(snapshotFile);
+
+		TableSnapshot snapshot = TableSnapshot.load(snapshotFile);
+		snapshot.update("db_0000", "DB,db_0000,db_0000");
+		snapshot.update(table(0));
+
+		// tbl_00001 is excluded, tbl_00002 was dropped
+		assertEquals(1, snapshot.keepOutOfScope(new MetastoreFilter(null, null, null, "tbl_00001", null, false)));
+		assertEquals(1, snapshot.writeDeletions(deletionFile));
+		assertEquals(Arrays.asList("type,id", "TBL,db_0000.tbl_00002"),
+				Files.readAllLines(deletionFile.toPath(), Charset.defaultCharset()));
+
+		snapshot.save(snapshotFile, false);
+		assertEquals(3, TableSnapshot.load(snapshotFile).getPreviousSize());
+	}
+
+	private static boolean updatePartition(TableSnapshot snapshot, String partName, String location) {
+		PartitionElement partition = new PartitionElement();
+		partition.setTable("db_0000", SyntheticMetastoreSource.tableName(0));
+		partition.setPartition(partName, null, location, 0);
+
+		return snapshot.update(partition, partition.getRecord());
+	}
+
+	@Test
+	public void valPartitions() throws IOException, TException {
+		File snapshotFile = new File(snapshotFolder.getRoot(), "snapshot.bin");
+		File deletionFile = new File(snapshotFolder.getRoot(), "deletions.csv");
+		TableSnapshot snapshot = TableSnapshot.load(snapshotFile);
+		assertTrue(snapshot.update(table(0)));
+		assertTrue(updatePartition(snapshot, "ds=2016-01-01", "/ds=2016-01-01"));
+		assertTrue(updatePartition(snapshot, "ds=2016-01-02", "/ds=2016-01-02"));
+		snapshot.save(snapshotFile, false);
+
+		snapshot = TableSnapshot.load(snapshotFile);
+		assertTrue(snapshot.isUnchanged(table(0)));
+		assertFalse(updatePartition(snapshot, "ds=2016-01-01", "/ds=2016-01-01"));
+		assertTrue(updatePartition(snapshot, "ds=2016-01-02", "/moved"));
+
+		// ds=2016-01-01 was dropped from the unchanged table, ds=2016-01-03 was added
+		snapshot = TableSnapshot.load(snapshotFile);
+		snapshot.update(table(0));
+		assertEquals(Arrays.asList("ds=2016-01-03"), snapshot.keepPartitions(table(0),
+				Arrays.asList("ds=2016-01-02", "ds=2016-01-03")));
+		assertEquals(1, snapshot.writeDeletions(deletionFile));
+		assertEquals(Arrays.asList("type,id", "PART,db_0000.tbl_00000.ds=2016-01-01"),
+				Files.readAllLines(deletionFile.toPath(), Charset.defaultCharset()));
+
+		// the partitions of a table exported before the checkpoint are kept with it
+		snapshot = TableSnapshot.load(snapshotFile);
+		snapshot.keep("db_0000.tbl_00000");
+		assertEquals(0, snapshot.writeDeletions(deletionFile));
+	}
+}